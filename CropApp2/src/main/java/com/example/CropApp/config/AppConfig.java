@@ -1,7 +1,8 @@
 package com.example.CropApp.config;
 
 
-import jakarta.servlet.http.HttpServletRequest;
+import com.example.CropApp.services.RateLimiter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,65 +14,40 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.cors.CorsConfiguration;
-import org.springframework.web.cors.CorsConfigurationSource;
-
-import java.util.Arrays;
-import java.util.Collections;
 
 @Configuration
 @EnableWebSecurity
 public class AppConfig {
 
+    /**
+     * AppConfig est instancié tôt (le BeanPostProcessor du load balancer demande restTemplate) : pas de
+     * dépendance en champ ici, sinon le DataSource est créé avant TracingConfig et n'est pas enveloppé.
+     */
     @Bean
     @LoadBalanced
     public RestTemplate restTemplate() {
-        return new RestTemplate();
+        RestTemplate restTemplate = new RestTemplate();
+        // Avant l'intercepteur du load balancer (ajouté après) : traceparent part sur l'instance choisie
+        restTemplate.getInterceptors().add(new TracingInterceptor());
+        return restTemplate;
     }
 
     @Bean
-    SecurityFilterChain securityFilterChain(HttpSecurity htpp)throws Exception {
+    SecurityFilterChain securityFilterChain(HttpSecurity htpp, RateLimiter rateLimiter)throws Exception {
         htpp.sessionManagement(Management -> Management.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-                .authorizeHttpRequests(Authorize -> Authorize.requestMatchers("/api/**").authenticated()
+                // Les dispatchs ASYNC (SSE, CompletableFuture) reprennent une requête déjà autorisée
+                .authorizeHttpRequests(Authorize -> Authorize.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        .requestMatchers("/api/**").authenticated()
                         .anyRequest().permitAll())
                 .addFilterBefore(new JwtTokenValidator(), BasicAuthenticationFilter.class)
+                .addFilterAfter(new RateLimitFilter(rateLimiter), JwtTokenValidator.class)
                 .csrf(csrf -> csrf.disable())
-                .cors(cors->cors.configurationSource(corsConfigurationSource()));
+                // CORS terminé par la passerelle (gateway/application.yml) : le navigateur ne parle qu'à elle
+                .cors(cors -> cors.disable());
 
         return htpp.build();
     }
 
-    private CorsConfigurationSource corsConfigurationSource() {
-        return new CorsConfigurationSource() {
-            @Override
-            public CorsConfiguration getCorsConfiguration(HttpServletRequest request) {
-                CorsConfiguration cfg = new CorsConfiguration();
-                cfg.setAllowedOrigins(Arrays.asList(
-
-                        "http://localhost:3000",
-                        "http://localhost:5173",
-                        "http://frontend:3000",
-                        "http://localhost:5000",
-                        "http://apiprediction1:5000",
-                        "http://localhost:52835"
-
-
-        
-
-                ));
-                cfg.setAllowedMethods(Collections.singletonList("*"));
-                cfg.setAllowCredentials(true);
-                cfg.setAllowedHeaders(Collections.singletonList("*"));
-                cfg.setExposedHeaders(Arrays.asList("Authorization"));
-                cfg.setMaxAge(3600L);
-
-                return cfg;
-            }
-        };
-
-
-    }
-
     @Bean
     PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -0,0 +1,84 @@
+package com.example.CropApp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Pool primaire (spring.datasource.*) pour les écritures et pool réplica (replica.datasource.*) pour les
+ * transactions readOnly : historique, profil, recherche par email à la connexion.
+ * Actif seulement avec replica.datasource.enabled=true ; sinon Spring Boot crée son DataSource habituel.
+ */
+@Configuration
+@ConditionalOnProperty(name = "replica.datasource.enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Autowired
+    private ObjectProvider<ReadWriteRoutingDataSource> routingDataSource;
+
+    @Value("${replica.fallback-to-primary:true}")
+    private boolean fallbackToPrimary;
+
+    @Value("${replica.lag-query:}")
+    private String lagQuery;
+
+    @Value("${replica.max-lag-seconds:5}")
+    private long maxLagSeconds;
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Propriétés Hikari directement : replica.datasource.jdbc-url, username, password, maximum-pool-size...
+     */
+    @Bean
+    @ConfigurationProperties("replica.datasource")
+    public HikariDataSource replicaDataSource() {
+        return new HikariDataSource();
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                                       @Qualifier("replicaDataSource") DataSource replica) {
+        return new ReadWriteRoutingDataSource(primary, replica, fallbackToPrimary);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Hibernate rend la connexion à chaque fin de transaction : avec open-in-view, une session qui a lu
+     * sur le réplica ne doit pas garder cette connexion pour une écriture suivante.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+
+    @Scheduled(fixedDelayString = "${replica.health-check-interval-ms:5000}")
+    public void checkReplica() {
+        routingDataSource.getObject().checkReplica(lagQuery, maxLagSeconds);
+    }
+}
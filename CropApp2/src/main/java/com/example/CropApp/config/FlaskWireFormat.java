@@ -0,0 +1,35 @@
+package com.example.CropApp.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * Format d'échange entre CropApp2 et l'API Flask.
+ * "json" (par défaut) ou "cbor" via flask.api.format.
+ */
+@Component
+public class FlaskWireFormat {
+
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf("application/cbor");
+
+    @Value("${flask.api.format:json}")
+    private String format;
+
+    public MediaType mediaType() {
+        return "cbor".equalsIgnoreCase(format) ? APPLICATION_CBOR : MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * En-têtes à utiliser pour un appel Flask : le corps est envoyé et attendu dans le même format.
+     */
+    public HttpHeaders headers() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(mediaType());
+        headers.setAccept(Collections.singletonList(mediaType()));
+        return headers;
+    }
+}
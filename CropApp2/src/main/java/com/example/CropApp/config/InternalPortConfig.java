@@ -0,0 +1,42 @@
+package com.example.CropApp.config;
+
+import org.apache.catalina.connector.Connector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Second connecteur Tomcat pour /internal/** (cache de résultats, calcul d'avance) : ce port n'est joignable
+ * que sur le réseau des répliques (non publié par docker-compose) et annoncé dans Eureka (métadonnée
+ * internal-port), où ResultCache le lit. Le jeton result-cache.peer-token reste exigé en plus.
+ */
+@Configuration
+public class InternalPortConfig {
+
+    public static final String METADATA_KEY = "internal-port";
+
+    @Value("${internal.port:9292}")
+    private int internalPort;
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> internalConnector() {
+        return factory -> {
+            Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+            connector.setPort(internalPort);
+            factory.addAdditionalTomcatConnectors(connector);
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<InternalPortFilter> internalPortFilter() {
+        FilterRegistrationBean<InternalPortFilter> registration =
+                new FilterRegistrationBean<>(new InternalPortFilter(internalPort));
+        // Après traçage, budget SQL et capture, avant Spring Security
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 3);
+        return registration;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.CropApp.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Sépare les deux connecteurs : /internal/** (échanges entre répliques) n'est servi que sur internal.port,
+ * et internal.port ne sert rien d'autre. Une requête arrivée sur le mauvais port reçoit 404.
+ *
+ * Le port local est celui du connecteur Tomcat ; X-Forwarded-Port (forward-headers-strategy) ne le change pas.
+ */
+public class InternalPortFilter extends OncePerRequestFilter {
+
+    public static final String PREFIX = "/internal/";
+
+    private final int internalPort;
+
+    public InternalPortFilter(int internalPort) {
+        this.internalPort = internalPort;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean internalPath = request.getRequestURI().startsWith(PREFIX);
+        boolean internalConnector = request.getLocalPort() == internalPort;
+        if (internalPath != internalConnector) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.CropApp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Enveloppes JDBC autour des pools Hikari : SqlCaptureDataSource (comptage des requêtes SQL) puis
+ * TracingDataSource (span d'emprunt de connexion), et filtre du budget SQL par requête HTTP.
+ */
+@Configuration
+public class JdbcInstrumentationConfig {
+
+    /**
+     * Statique : un BeanPostProcessor est créé avant les autres beans de la configuration.
+     */
+    @Bean
+    public static BeanPostProcessor instrumentedDataSources(Environment environment) {
+        boolean tracing = environment.getProperty("tracing.enabled", Boolean.class, true);
+        boolean capture = environment.getProperty("sql-budget.capture", Boolean.class, true);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof HikariDataSource hikari)) {
+                    return bean;
+                }
+                DataSource instrumented = capture ? new SqlCaptureDataSource(hikari) : hikari;
+                return tracing ? new TracingDataSource(instrumented, beanName) : instrumented;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "sql-budget.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<SqlBudgetFilter> sqlBudgetFilter(@Value("${sql-budget.max-statements:20}") int maxStatements,
+                                                                   @Value("${sql-budget.max-repeats:5}") int maxRepeats) {
+        FilterRegistrationBean<SqlBudgetFilter> registration =
+                new FilterRegistrationBean<>(new SqlBudgetFilter(maxStatements, maxRepeats));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
@@ -30,7 +30,7 @@ public class JwtTokenValidator extends OncePerRequestFilter {
         if(jwt != null && jwt.startsWith("Bearer ")) {
             jwt = jwt.substring(7); // Remove "Bearer " prefix
 
-            try {
+            try (Tracing.Span span = Tracing.span("jwt.validate")) {
                 SecretKey key = Keys.hmacShaKeyFor(JwtConstant.SECRETE_KEY.getBytes());
 
                 Claims claims = Jwts.parser()
@@ -0,0 +1,64 @@
+package com.example.CropApp.config;
+
+import com.example.CropApp.services.RateLimiter;
+import com.example.CropApp.services.WarmupService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applique RateLimiter juste après JwtTokenValidator : par utilisateur si le jeton est valide, sinon par IP.
+ * Les réponses portent RateLimit-Limit, RateLimit-Remaining et RateLimit-Reset ; un refus renvoie 429
+ * avec Retry-After. Les requêtes de préchauffage (WarmupService) ne sont pas comptées.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitFilter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        RateLimiter.Limit limit = rateLimiter.limitFor(request.getMethod(), request.getRequestURI());
+        if (limit == null || "OPTIONS".equalsIgnoreCase(request.getMethod()) || WarmupService.isWarmupRequest(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String identity = authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)
+                ? "user:" + authentication.getName()
+                : "ip:" + request.getRemoteAddr();
+
+        RateLimiter.Decision decision = rateLimiter.tryConsume(limit, identity);
+        response.setHeader("RateLimit-Limit", String.valueOf(decision.getLimit()));
+        response.setHeader("RateLimit-Remaining", String.valueOf(decision.getRemaining()));
+        response.setHeader("RateLimit-Reset", String.valueOf(decision.getResetSeconds()));
+
+        if (!decision.isAllowed()) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf(decision.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("{\"error\":\"Trop de requêtes, réessayez dans "
+                    + decision.getRetryAfterSeconds() + " s\"}");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.CropApp.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Envoie les transactions readOnly vers le pool réplica et tout le reste vers le primaire.
+ *
+ * Doit être enveloppé dans un LazyConnectionDataSourceProxy : la connexion n'est choisie qu'au premier
+ * ordre SQL, une fois le flag readOnly de la transaction connu. Si le réplica est en panne ou en retard
+ * (voir checkReplica), les lectures retombent sur le primaire quand fallbackToPrimary est actif.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    enum Route { PRIMARY, REPLICA }
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final boolean fallbackToPrimary;
+    private volatile boolean replicaHealthy = true;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, boolean fallbackToPrimary) {
+        this.primary = primary;
+        this.replica = replica;
+        this.fallbackToPrimary = fallbackToPrimary;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (readOnly && (replicaHealthy || !fallbackToPrimary)) {
+            return Route.REPLICA;
+        }
+        return Route.PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (determineCurrentLookupKey() != Route.REPLICA) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            if (!fallbackToPrimary) {
+                throw e;
+            }
+            markReplica(false, "connexion impossible : " + e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Vérifie le réplica. lagQuery (optionnelle) renvoie le retard en secondes, soit dans la colonne
+     * Seconds_Behind_Source (SHOW REPLICA STATUS), soit dans la première colonne ; NULL = réplication arrêtée.
+     */
+    public void checkReplica(String lagQuery, long maxLagSeconds) {
+        try (Connection connection = replica.getConnection()) {
+            if (!connection.isValid(2)) {
+                markReplica(false, "connexion invalide");
+                return;
+            }
+            if (lagQuery == null || lagQuery.isBlank()) {
+                markReplica(true, null);
+                return;
+            }
+            try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    markReplica(false, "aucun statut de réplication");
+                    return;
+                }
+                long lag = lagColumn(rs);
+                if (rs.wasNull() || lag > maxLagSeconds) {
+                    markReplica(false, "retard de réplication " + (rs.wasNull() ? "inconnu" : lag + " s"));
+                } else {
+                    markReplica(true, null);
+                }
+            }
+        } catch (SQLException e) {
+            markReplica(false, e.getMessage());
+        }
+    }
+
+    public boolean isReplicaHealthy() {
+        return replicaHealthy;
+    }
+
+    private long lagColumn(ResultSet rs) throws SQLException {
+        try {
+            return rs.getLong("Seconds_Behind_Source");
+        } catch (SQLException e) {
+            return rs.getLong(1);
+        }
+    }
+
+    private void markReplica(boolean healthy, String reason) {
+        if (replicaHealthy != healthy) {
+            if (healthy) {
+                log.info("Réplica de lecture rétabli");
+            } else {
+                log.warn("Réplica de lecture écarté, lectures sur le primaire : {}", reason);
+            }
+        }
+        replicaHealthy = healthy;
+    }
+}
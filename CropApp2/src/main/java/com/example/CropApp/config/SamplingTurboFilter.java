@@ -0,0 +1,71 @@
+package com.example.CropApp.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Échantillonnage des événements fréquents, déclaré dans logback-spring.xml :
+ * {@code <sample>com.example.CropApp.controlleurs=10</sample>} ne garde qu'un événement sur 10 sous ce préfixe.
+ *
+ * Un TurboFilter est consulté avant la création de l'événement : un message écarté ne coûte ni formatage
+ * ni passage dans l'appender asynchrone. WARN et ERROR ne sont jamais échantillonnés. Les appels de l'API fluide
+ * (log.atInfo()...) arrivent ici sans format et ne sont donc pas échantillonnés : utiliser les messages paramétrés.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private final List<String> specs = new ArrayList<>();
+    private String[] prefixes = new String[0];
+    private int[] rates = new int[0];
+    private AtomicLong[] counters = new AtomicLong[0];
+
+    /**
+     * Appelé par Joran pour chaque élément {@code <sample>préfixe=taux</sample>}.
+     */
+    public void addSample(String spec) {
+        specs.add(spec);
+    }
+
+    @Override
+    public void start() {
+        int size = specs.size();
+        prefixes = new String[size];
+        rates = new int[size];
+        counters = new AtomicLong[size];
+        for (int i = 0; i < size; i++) {
+            String spec = specs.get(i);
+            int separator = spec.lastIndexOf('=');
+            if (separator < 0) {
+                addError("Échantillonnage invalide (préfixe=taux attendu) : " + spec);
+                return;
+            }
+            prefixes[i] = spec.substring(0, separator).trim();
+            rates[i] = Math.max(1, Integer.parseInt(spec.substring(separator + 1).trim()));
+            counters[i] = new AtomicLong();
+        }
+        super.start();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format == null : simple test isXxxEnabled(), qui ne doit pas consommer de tirage
+        if (!isStarted() || format == null || level.isGreaterOrEqual(Level.WARN)
+                || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        for (int i = 0; i < prefixes.length; i++) {
+            if (name.startsWith(prefixes[i])) {
+                return rates[i] == 1 || counters[i].getAndIncrement() % rates[i] == 0
+                        ? FilterReply.NEUTRAL : FilterReply.DENY;
+            }
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
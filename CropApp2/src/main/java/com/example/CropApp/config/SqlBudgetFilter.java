@@ -0,0 +1,60 @@
+package com.example.CropApp.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Compte les requêtes SQL de chaque requête HTTP et journalise celles qui dépassent le budget
+ * (sql-budget.max-statements) ou répètent une même forme de requête (sql-budget.max-repeats, signe d'un N+1).
+ *
+ * La capture est aussi déposée dans l'attribut CAPTURE_ATTRIBUTE de la requête, pour les tests MockMvc.
+ * Seule la partie synchrone est comptée : le travail repris par un autre thread (SSE, CompletableFuture) échappe
+ * à la capture.
+ */
+public class SqlBudgetFilter extends OncePerRequestFilter {
+
+    public static final String CAPTURE_ATTRIBUTE = SqlBudgetFilter.class.getName() + ".capture";
+
+    private static final Logger log = LoggerFactory.getLogger(SqlBudgetFilter.class);
+
+    private final int maxStatements;
+    private final int maxRepeats;
+
+    public SqlBudgetFilter(int maxStatements, int maxRepeats) {
+        this.maxStatements = maxStatements;
+        this.maxRepeats = maxRepeats;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatementCapture.Capture capture = SqlStatementCapture.start();
+        request.setAttribute(CAPTURE_ATTRIBUTE, capture);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            capture.close();
+            report(request, capture);
+        }
+    }
+
+    private void report(HttpServletRequest request, SqlStatementCapture.Capture capture) {
+        int count = capture.count();
+        Map.Entry<String, Integer> repeated = capture.mostRepeated();
+        boolean overBudget = count > maxStatements;
+        boolean loop = repeated != null && repeated.getValue() > maxRepeats;
+        if (overBudget || loop) {
+            log.warn("Budget SQL dépassé {} {} : {} requêtes (max {}), forme la plus répétée {} fois (max {}) : {}",
+                    request.getMethod(), request.getRequestURI(), count, maxStatements,
+                    repeated.getValue(), maxRepeats, repeated.getKey());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.CropApp.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Enregistre dans SqlStatementCapture chaque exécution JDBC (JPA comme JdbcTemplate).
+ *
+ * Un executeBatch compte pour une requête, comme un aller-retour vers la base. Sans capture ouverte sur le
+ * thread au moment du prepareStatement, le statement est rendu tel quel : le coût se limite alors au proxy
+ * de la connexion.
+ */
+public class SqlCaptureDataSource extends DelegatingDataSource {
+
+    public SqlCaptureDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return capturing(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return capturing(super.getConnection(username, password));
+    }
+
+    private static Connection capturing(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SqlCaptureDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SqlCaptureDataSource.invoke(target, method, args);
+            if (!SqlStatementCapture.active()) {
+                return result;
+            }
+            String name = method.getName();
+            if (result instanceof CallableStatement && "prepareCall".equals(name)) {
+                return statement(result, CallableStatement.class, (String) args[0]);
+            }
+            if (result instanceof PreparedStatement && "prepareStatement".equals(name)) {
+                return statement(result, PreparedStatement.class, (String) args[0]);
+            }
+            if (result instanceof Statement && "createStatement".equals(name)) {
+                return statement(result, Statement.class, null);
+            }
+            return result;
+        }
+
+        private static Object statement(Object statement, Class<?> type, String sql) {
+            return Proxy.newProxyInstance(SqlCaptureDataSource.class.getClassLoader(),
+                    new Class<?>[]{type}, new StatementHandler(statement, sql));
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Object target;
+        private String sql;
+
+        private StatementHandler(Object target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // Statement.execute*(sql) porte la requête ; PreparedStatement.execute*() reprend celle du prepare
+                String executed = args != null && args.length > 0 && args[0] instanceof String text ? text : sql;
+                if (executed != null) {
+                    SqlStatementCapture.record(executed);
+                }
+            } else if ("addBatch".equals(name) && args != null && args.length == 1 && args[0] instanceof String text) {
+                sql = text;
+            }
+            return SqlCaptureDataSource.invoke(target, method, args);
+        }
+    }
+}
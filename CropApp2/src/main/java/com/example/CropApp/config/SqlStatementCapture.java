@@ -0,0 +1,124 @@
+package com.example.CropApp.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Relevé des requêtes SQL exécutées par le thread courant (voir SqlCaptureDataSource).
+ *
+ * Une capture est ouverte par requête HTTP (SqlBudgetFilter) ou par méthode de test ; les captures
+ * s'emboîtent et chaque requête SQL est comptée dans toutes les captures ouvertes du thread. Hors capture,
+ * rien n'est enregistré. Les requêtes lancées depuis un autre thread (pools, CompletableFuture) ne sont pas
+ * rattachées à la capture de l'appelant.
+ */
+public final class SqlStatementCapture {
+
+    private static final ThreadLocal<Capture> CURRENT = new ThreadLocal<>();
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SqlStatementCapture() {
+    }
+
+    /**
+     * Ouvre une capture sur le thread courant ; à fermer par try-with-resources.
+     */
+    public static Capture start() {
+        Capture capture = new Capture(CURRENT.get());
+        CURRENT.set(capture);
+        return capture;
+    }
+
+    public static boolean active() {
+        return CURRENT.get() != null;
+    }
+
+    static void record(String sql) {
+        for (Capture capture = CURRENT.get(); capture != null; capture = capture.parent) {
+            capture.add(sql);
+        }
+    }
+
+    /**
+     * Forme d'une requête : littéraux remplacés par ?, listes IN (?, ?, ...) ramenées à (?), espaces normalisés.
+     * Deux exécutions de même forme ne diffèrent que par leurs paramètres.
+     */
+    public static String shape(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("(?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static final class Capture implements AutoCloseable {
+
+        private final Capture parent;
+        private final List<String> statements = new ArrayList<>();
+        private boolean closed;
+
+        private Capture(Capture parent) {
+            this.parent = parent;
+        }
+
+        private void add(String sql) {
+            if (!closed) {
+                statements.add(sql);
+            }
+        }
+
+        public int count() {
+            return statements.size();
+        }
+
+        public List<String> statements() {
+            return Collections.unmodifiableList(statements);
+        }
+
+        /**
+         * Nombre d'exécutions par forme, dans l'ordre de première apparition.
+         */
+        public Map<String, Integer> shapes() {
+            Map<String, Integer> shapes = new LinkedHashMap<>();
+            for (String sql : statements) {
+                shapes.merge(shape(sql), 1, Integer::sum);
+            }
+            return shapes;
+        }
+
+        /**
+         * Forme la plus répétée (null si aucune requête) : typiquement la requête d'une boucle N+1.
+         */
+        public Map.Entry<String, Integer> mostRepeated() {
+            Map.Entry<String, Integer> worst = null;
+            for (Map.Entry<String, Integer> entry : shapes().entrySet()) {
+                if (worst == null || entry.getValue() > worst.getValue()) {
+                    worst = entry;
+                }
+            }
+            return worst;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (CURRENT.get() == this) {
+                if (parent == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(parent);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.CropApp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Échantillonnage en fin de trace et export vers le collecteur (tracing.collector-url).
+ *
+ * La décision est prise quand le span racine se termine : une trace en erreur ou plus longue que
+ * tracing.slow-threshold-ms est toujours gardée, les autres avec la probabilité tracing.sample-rate.
+ * Les traces gardées passent par une file bornée vidée par un thread dédié (lots JSON {"spans": [...]}) ;
+ * file pleine ou collecteur absent, la trace est abandonnée sans ralentir la requête. Sans collecteur
+ * configuré, les traces gardées sont résumées dans le journal.
+ */
+@Component
+public class TraceExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceExporter.class);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${tracing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${tracing.collector-url:}")
+    private String collectorUrl;
+
+    @Value("${tracing.slow-threshold-ms:1000}")
+    private long slowThresholdMs;
+
+    @Value("${tracing.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${tracing.max-spans-per-trace:200}")
+    private int maxSpansPerTrace;
+
+    @Value("${tracing.export-queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${tracing.export-batch-size:50}")
+    private int batchSize;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private BlockingQueue<Tracing.Trace> queue;
+    private HttpClient httpClient;
+    private Thread worker;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        worker = new Thread(this::exportLoop, "trace-exporter");
+        worker.setDaemon(true);
+        worker.start();
+        Tracing.install(this::onTraceComplete, maxSpansPerTrace);
+    }
+
+    @PreDestroy
+    public void stop() {
+        Tracing.install(null, maxSpansPerTrace);
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    void onTraceComplete(Tracing.Trace trace) {
+        boolean keep = trace.hasError()
+                || trace.durationMicros() >= slowThresholdMs * 1_000
+                || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        if (keep && !queue.offer(trace)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void exportLoop() {
+        List<Tracing.Trace> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Tracing.Trace first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                export(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.debug("Export des traces impossible : {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void export(List<Tracing.Trace> traces) throws Exception {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            log.warn("{} traces abandonnées (file d'export pleine)", lost);
+        }
+        if (collectorUrl == null || collectorUrl.isBlank()) {
+            for (Tracing.Trace trace : traces) {
+                log.info("Trace {} {} : {} ms, {} spans{}", trace.traceId(), trace.rootName(),
+                        trace.durationMicros() / 1_000, trace.spans().size(), trace.hasError() ? ", en erreur" : "");
+            }
+            return;
+        }
+        List<Map<String, Object>> spans = new ArrayList<>();
+        for (Tracing.Trace trace : traces) {
+            for (Tracing.Span span : trace.spans()) {
+                spans.add(span.toMap());
+            }
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(collectorUrl))
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(Map.of("spans", spans))))
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() >= 300) {
+            log.debug("Collecteur de traces : HTTP {}", response.statusCode());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.CropApp.config;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Traçage minimal au format W3C Trace Context (en-tête traceparent).
+ *
+ * Chaque requête HTTP ouvre une trace (TracingFilter) ; Tracing.span(...) ouvre un span enfant du span courant
+ * du thread, et ne fait rien hors requête tracée. Les spans terminés restent dans leur trace jusqu'à la fin du
+ * span racine : c'est alors seulement que TraceExporter décide de garder ou non la trace (échantillonnage en
+ * fin de trace). Sans exporteur installé, rien n'est conservé.
+ */
+public final class Tracing {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final Span NOOP = new Span(null, null, "noop", 0);
+
+    private static volatile Consumer<Trace> sink;
+    private static volatile int maxSpansPerTrace = 200;
+
+    private Tracing() {
+    }
+
+    static void install(Consumer<Trace> traceSink, int maxSpans) {
+        sink = traceSink;
+        maxSpansPerTrace = maxSpans;
+    }
+
+    public static boolean enabled() {
+        return sink != null;
+    }
+
+    /**
+     * Span racine, rattaché à l'appelant si traceparent est valide (00-traceid-spanid-flags).
+     */
+    public static Span root(String name, String traceparent) {
+        if (sink == null) {
+            return NOOP;
+        }
+        String traceId = null;
+        String parentId = null;
+        if (traceparent != null) {
+            String[] parts = traceparent.trim().split("-");
+            if (parts.length == 4 && parts[1].length() == 32 && parts[2].length() == 16) {
+                traceId = parts[1];
+                parentId = parts[2];
+            }
+        }
+        Trace trace = new Trace(traceId != null ? traceId : randomHex(32));
+        Span span = new Span(trace, parentId, name, 0);
+        trace.root = span;
+        span.previous = CURRENT.get();
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Span enfant du span courant ; à fermer par try-with-resources.
+     */
+    public static Span span(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null || parent.trace == null) {
+            return NOOP;
+        }
+        Span span = new Span(parent.trace, parent.spanId, name, 0);
+        span.previous = parent;
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Span déjà terminé (mesuré ailleurs, ex. étapes Flask de Server-Timing), enfant du span courant.
+     */
+    public static void record(String name, long startEpochMicros, long durationMicros, Map<String, Object> attributes) {
+        Span parent = CURRENT.get();
+        if (parent == null || parent.trace == null) {
+            return;
+        }
+        Span span = new Span(parent.trace, parent.spanId, name, startEpochMicros);
+        span.durationMicros = durationMicros;
+        span.attributes.putAll(attributes);
+        parent.trace.add(span);
+    }
+
+    /**
+     * Marque la trace courante en erreur : elle sera toujours exportée.
+     */
+    public static void error(Throwable t) {
+        Span current = CURRENT.get();
+        if (current != null && current.trace != null) {
+            current.error(t);
+        }
+    }
+
+    /**
+     * En-tête traceparent à transmettre pour le span courant, null hors trace.
+     */
+    public static String traceparent() {
+        Span current = CURRENT.get();
+        if (current == null || current.trace == null) {
+            return null;
+        }
+        return "00-" + current.trace.traceId + "-" + current.spanId + "-01";
+    }
+
+    private static String randomHex(int length) {
+        StringBuilder hex = new StringBuilder(length);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (hex.length() < length) {
+            hex.append(String.format("%016x", random.nextLong()));
+        }
+        return hex.substring(0, length);
+    }
+
+    private static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    public static final class Span implements AutoCloseable {
+
+        private final Trace trace;
+        private final String spanId;
+        private final String parentId;
+        private final String name;
+        private long startEpochMicros;
+        private long startNanos;
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private Span previous;
+        private long durationMicros = -1;
+        private String error;
+
+        private Span(Trace trace, String parentId, String name, long startEpochMicros) {
+            this.trace = trace;
+            this.spanId = trace == null ? null : randomHex(16);
+            this.parentId = parentId;
+            this.name = name;
+            this.startEpochMicros = startEpochMicros > 0 ? startEpochMicros : trace == null ? 0 : nowMicros();
+            this.startNanos = System.nanoTime();
+        }
+
+        public Span attribute(String key, Object value) {
+            if (trace != null && value != null) {
+                attributes.put(key, value);
+            }
+            return this;
+        }
+
+        public Span error(Throwable t) {
+            if (trace != null) {
+                error = t == null ? "erreur"
+                        : t.getClass().getSimpleName() + (t.getMessage() == null ? "" : ": " + t.getMessage());
+                trace.error = true;
+            }
+            return this;
+        }
+
+        public long startEpochMicros() {
+            return startEpochMicros;
+        }
+
+        /**
+         * Avance le début du span du temps déjà écoulé avant son ouverture (ex. dans Tomcat, avant les filtres).
+         */
+        Span backdate(long micros) {
+            if (trace != null) {
+                startEpochMicros -= micros;
+                startNanos -= micros * 1_000;
+            }
+            return this;
+        }
+
+        /**
+         * Retire ce span du thread sans le terminer (requête asynchrone : il sera fermé par un autre thread).
+         */
+        public void detach() {
+            if (trace != null && CURRENT.get() == this) {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (trace == null || durationMicros >= 0) {
+                return;
+            }
+            durationMicros = (System.nanoTime() - startNanos) / 1_000;
+            detach();
+            if (trace.root == this && trace.dropped() > 0) {
+                attributes.put("droppedSpans", trace.dropped());
+            }
+            trace.add(this);
+            if (trace.root == this && sink != null) {
+                sink.accept(trace);
+            }
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("traceId", trace.traceId);
+            map.put("spanId", spanId);
+            map.put("parentId", parentId);
+            map.put("name", name);
+            map.put("start", startEpochMicros);
+            map.put("durationMicros", durationMicros);
+            map.put("service", attributes.getOrDefault("service", "cropapp-service"));
+            if (error != null) {
+                map.put("error", error);
+            }
+            map.put("attributes", attributes);
+            return map;
+        }
+    }
+
+    public static final class Trace {
+
+        private final String traceId;
+        private final List<Span> spans = new ArrayList<>();
+        private Span root;
+        private volatile boolean error;
+        private int dropped;
+
+        private Trace(String traceId) {
+            this.traceId = traceId;
+        }
+
+        private synchronized void add(Span span) {
+            if (spans.size() < maxSpansPerTrace || span == root) {
+                spans.add(span);
+            } else {
+                dropped++;
+            }
+        }
+
+        public String traceId() {
+            return traceId;
+        }
+
+        public boolean hasError() {
+            return error;
+        }
+
+        public long durationMicros() {
+            return root.durationMicros;
+        }
+
+        public String rootName() {
+            return root.name;
+        }
+
+        private synchronized int dropped() {
+            return dropped;
+        }
+
+        public synchronized List<Span> spans() {
+            return Collections.unmodifiableList(new ArrayList<>(spans));
+        }
+    }
+}
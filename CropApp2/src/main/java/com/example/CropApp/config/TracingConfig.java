@@ -0,0 +1,50 @@
+package com.example.CropApp.config;
+
+import jakarta.servlet.ServletException;
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.io.IOException;
+
+/**
+ * Branchement du traçage : filtre racine avant Spring Security et valve Tomcat pour l'instant de réception.
+ * L'intercepteur RestTemplate est posé dans AppConfig, TracingDataSource dans JdbcInstrumentationConfig.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public FilterRegistrationBean<TracingFilter> tracingFilter() {
+        FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<>(new TracingFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> tracingValve() {
+        return factory -> factory.addEngineValves(new ReceivedValve());
+    }
+
+    /**
+     * Note l'instant où Tomcat a commencé à lire la requête (avant décodage et filtres).
+     */
+    static final class ReceivedValve extends ValveBase {
+
+        ReceivedValve() {
+            super(true);
+        }
+
+        @Override
+        public void invoke(Request request, Response response) throws IOException, ServletException {
+            request.setAttribute(TracingFilter.RECEIVED_NANOS, request.getCoyoteRequest().getStartTimeNanos());
+            getNext().invoke(request, response);
+        }
+    }
+}
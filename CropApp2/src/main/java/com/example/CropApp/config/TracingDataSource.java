@@ -0,0 +1,47 @@
+package com.example.CropApp.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Span "db.connection.acquire" autour de l'emprunt d'une connexion au pool Hikari : une attente de pool
+ * saturé apparaît ainsi dans la trace, distincte du temps des requêtes SQL.
+ */
+public class TracingDataSource extends DelegatingDataSource {
+
+    private final String pool;
+
+    public TracingDataSource(DataSource target, String pool) {
+        super(target);
+        this.pool = pool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Tracing.Span span = Tracing.span("db.connection.acquire").attribute("pool", pool);
+        try {
+            return super.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Tracing.Span span = Tracing.span("db.connection.acquire").attribute("pool", pool);
+        try {
+            return super.getConnection(username, password);
+        } catch (SQLException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+}
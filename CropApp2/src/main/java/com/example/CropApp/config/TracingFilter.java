@@ -0,0 +1,98 @@
+package com.example.CropApp.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Ouvre le span racine de chaque requête HTTP, rattaché à l'appelant via l'en-tête traceparent.
+ *
+ * Le temps passé dans Tomcat avant les filtres (lecture des en-têtes, valves) est ajouté comme span
+ * "tomcat.pre-filter" à partir de l'instant de réception posé par TracingConfig.ReceivedValve, et le span
+ * racine commence à cet instant. Pour une requête asynchrone (SSE, CompletableFuture), le span est fermé
+ * à la fin de l'AsyncContext.
+ */
+public class TracingFilter extends OncePerRequestFilter {
+
+    static final String RECEIVED_NANOS = TracingFilter.class.getName() + ".receivedNanos";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!Tracing.enabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Tracing.Span root = Tracing.root(request.getMethod() + " " + request.getRequestURI(), request.getHeader("traceparent"))
+                .attribute("http.method", request.getMethod())
+                .attribute("http.path", request.getRequestURI());
+        if (request.getAttribute(RECEIVED_NANOS) instanceof Long receivedNanos && receivedNanos > 0) {
+            long waitedMicros = Math.max(0, (System.nanoTime() - receivedNanos) / 1_000);
+            root.backdate(waitedMicros);
+            Tracing.record("tomcat.pre-filter", root.startEpochMicros(), waitedMicros, Map.of());
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            root.error(e);
+            throw e;
+        } finally {
+            if (request.isAsyncStarted()) {
+                root.detach();
+                request.getAsyncContext().addListener(new CloseOnComplete(root, response));
+            } else {
+                finish(root, response);
+            }
+        }
+    }
+
+    private static void finish(Tracing.Span root, HttpServletResponse response) {
+        int status = response.getStatus();
+        root.attribute("http.status", status);
+        if (status >= 500) {
+            root.error(new IllegalStateException("HTTP " + status));
+        }
+        root.close();
+    }
+
+    private static final class CloseOnComplete implements AsyncListener {
+
+        private final Tracing.Span root;
+        private final HttpServletResponse response;
+
+        private CloseOnComplete(Tracing.Span root, HttpServletResponse response) {
+            this.root = root;
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish(root, response);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            root.error(new TimeoutException("requête asynchrone expirée"));
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            root.error(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
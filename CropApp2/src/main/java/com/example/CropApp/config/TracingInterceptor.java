@@ -0,0 +1,71 @@
+package com.example.CropApp.config;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Span client autour des appels RestTemplate (Flask) et propagation de l'en-tête traceparent.
+ *
+ * Flask renvoie la durée de ses étapes dans Server-Timing (nom;desc="début en ms";dur=durée en ms) :
+ * elles sont ajoutées à la trace comme spans enfants de l'appel, pour que la décision d'échantillonnage
+ * et la vue en cascade couvrent les deux services.
+ */
+public class TracingInterceptor implements ClientHttpRequestInterceptor {
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Tracing.Span span = Tracing.span("http.client " + request.getMethod() + " " + request.getURI().getPath())
+                .attribute("http.url", request.getURI().toString());
+        try {
+            String traceparent = Tracing.traceparent();
+            if (traceparent != null) {
+                request.getHeaders().set("traceparent", traceparent);
+            }
+            ClientHttpResponse response = execution.execute(request, body);
+            int status = response.getStatusCode().value();
+            span.attribute("http.status", status);
+            if (status >= 500) {
+                span.error(new IllegalStateException("HTTP " + status));
+            }
+            recordServerTiming(response.getHeaders().getFirst("Server-Timing"), span.startEpochMicros());
+            return response;
+        } catch (IOException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    static void recordServerTiming(String header, long clientStartMicros) {
+        if (header == null || header.isBlank()) {
+            return;
+        }
+        for (String metric : header.split(",")) {
+            String[] parts = metric.split(";");
+            String name = parts[0].trim();
+            Map<String, String> params = new HashMap<>();
+            for (int i = 1; i < parts.length; i++) {
+                String[] pair = parts[i].split("=", 2);
+                if (pair.length == 2) {
+                    params.put(pair[0].trim(), pair[1].trim().replace("\"", ""));
+                }
+            }
+            try {
+                double offsetMs = Double.parseDouble(params.getOrDefault("desc", "0"));
+                double durationMs = Double.parseDouble(params.getOrDefault("dur", "0"));
+                Tracing.record("flask." + name, clientStartMicros + Math.round(offsetMs * 1_000),
+                        Math.round(durationMs * 1_000), Map.of("service", "apiprediction"));
+            } catch (NumberFormatException e) {
+                // métrique Server-Timing qui ne vient pas de l'instrumentation Flask : ignorée
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.CropApp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Journal du trafic réel (traffic-capture.enabled=true), rejoué ensuite par traffic-replay/replay.py.
+ *
+ * Une ligne JSON par requête dans un fichier .ndjson.gz local : instant relatif au début de la capture,
+ * méthode, route (identifiants numériques remplacés par {id}), paramètres et corps nettoyés, statut et durée.
+ * Le jeton JWT n'est jamais écrit ; l'utilisateur est remplacé par un pseudonyme HMAC (clé
+ * traffic-capture.pseudonym-key, la même sur toutes les répliques pour qu'un utilisateur garde son pseudonyme).
+ * Seuls les champs de formulaire (culture, district, saison, N/P/K...) gardent leur valeur ; les autres
+ * textes sont remplacés par des x de même longueur, les mots de passe par <redacted>.
+ *
+ * L'écriture se fait sur un thread dédié via une file bornée : file pleine, la ligne est perdue (et comptée),
+ * la requête n'attend jamais le disque.
+ */
+@Component
+@ConditionalOnProperty(name = "traffic-capture.enabled", havingValue = "true")
+public class TrafficCapture {
+
+    private static final Logger log = LoggerFactory.getLogger(TrafficCapture.class);
+
+    /** Champs dont la valeur est conservée : ils déterminent le calcul Flask et le cache de résultats. */
+    static final Set<String> KEPT_FIELDS = Set.of("crop", "crops", "area", "season", "seasons", "city", "nitrogen",
+            "phosphorous", "pottasium", "ph", "k", "type", "q", "limit");
+    private static final Set<String> IDENTITY_FIELDS = Set.of("email", "username", "to");
+    static final String PSEUDONYM_DOMAIN = "@capture.invalid";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${traffic-capture.dir:./data/traffic}")
+    private String dir;
+
+    @Value("${traffic-capture.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${traffic-capture.max-records:1000000}")
+    private long maxRecords;
+
+    @Value("${traffic-capture.max-body-bytes:16384}")
+    private int maxBodyBytes;
+
+    @Value("${traffic-capture.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${traffic-capture.pseudonym-key:}")
+    private String pseudonymKey;
+
+    private long startNanos;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private BlockingQueue<Map<String, Object>> queue;
+    private SecretKeySpec hmacKey;
+    private Path file;
+    private Thread writer;
+
+    @PostConstruct
+    public void start() throws IOException {
+        byte[] key = pseudonymKey == null || pseudonymKey.isBlank() ? randomKey() : pseudonymKey.getBytes(StandardCharsets.UTF_8);
+        hmacKey = new SecretKeySpec(key, "HmacSHA256");
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Files.createDirectories(Paths.get(dir));
+        String host = System.getenv().getOrDefault("HOSTNAME", "local");
+        file = Paths.get(dir, "capture-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                + "-" + host + ".ndjson.gz");
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("v", 1);
+        startNanos = System.nanoTime();
+        header.put("start", System.currentTimeMillis());
+        header.put("host", host);
+        header.put("sampleRate", sampleRate);
+        OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file)), true);
+        out.write(objectMapper.writeValueAsBytes(header));
+        out.write('\n');
+        out.flush();
+
+        writer = new Thread(() -> writeLoop(out), "traffic-capture");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Capture du trafic dans {}", file.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer != null) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    int maxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * Millisecondes écoulées depuis le début de la capture pour un instant System.nanoTime().
+     */
+    double offsetMillis(long nanos) {
+        return Math.round((nanos - startNanos) / 100_000.0) / 10.0;
+    }
+
+    /**
+     * Vrai si les requêtes de cet utilisateur (ou de cette requête anonyme) font partie de l'échantillon :
+     * un utilisateur est gardé ou écarté en entier, sa session reste cohérente au rejeu.
+     */
+    boolean sampled(String pseudonym) {
+        if (sampleRate >= 1.0) {
+            return true;
+        }
+        double draw = pseudonym != null
+                ? (Integer.parseUnsignedInt(pseudonym.substring(1, 7), 16) / (double) 0x1000000)
+                : Math.random();
+        return draw < sampleRate;
+    }
+
+    void record(Map<String, Object> record) {
+        if (records.get() >= maxRecords) {
+            return;
+        }
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Pseudonyme stable d'un utilisateur (email ou identifiant) : "u" suivi de 12 caractères hexadécimaux.
+     */
+    String pseudonym(String identity) {
+        if (identity == null || identity.isBlank()) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(hmacKey);
+            byte[] digest = mac.doFinal(identity.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            return "u" + HexFormat.of().formatHex(digest, 0, 6);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copie nettoyée d'un corps JSON (voir la Javadoc de la classe).
+     */
+    Object sanitize(String field, Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> clean = new LinkedHashMap<>();
+            map.forEach((key, nested) -> clean.put(String.valueOf(key), sanitize(String.valueOf(key), nested)));
+            return clean;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> clean = new ArrayList<>(list.size());
+            list.forEach(item -> clean.add(sanitize(field, item)));
+            return clean;
+        }
+        if (!(value instanceof String text)) {
+            return value;
+        }
+        String name = field == null ? "" : field.toLowerCase(Locale.ROOT);
+        if (name.contains("password")) {
+            return "<redacted>";
+        }
+        if (IDENTITY_FIELDS.contains(name)) {
+            String pseudonym = pseudonym(text);
+            return name.equals("username") ? pseudonym : pseudonym + PSEUDONYM_DOMAIN;
+        }
+        if (KEPT_FIELDS.contains(name)) {
+            return text;
+        }
+        return "x".repeat(Math.min(text.length(), maxBodyBytes));
+    }
+
+    private void writeLoop(OutputStream out) {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        try (out) {
+            while (!Thread.currentThread().isInterrupted()) {
+                Map<String, Object> first;
+                try {
+                    first = queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (Map<String, Object> record : batch) {
+                    write(out, record);
+                }
+                // Flush synchronisé du gzip : le fichier reste lisible même si la JVM est tuée
+                out.flush();
+                batch.clear();
+                if (records.get() >= maxRecords) {
+                    log.info("Capture du trafic arrêtée : traffic-capture.max-records ({}) atteint", maxRecords);
+                    break;
+                }
+                long lost = dropped.getAndSet(0);
+                if (lost > 0) {
+                    log.warn("{} requêtes non capturées (file d'écriture pleine)", lost);
+                }
+            }
+            queue.drainTo(batch);
+            for (Map<String, Object> record : batch) {
+                write(out, record);
+            }
+        } catch (IOException e) {
+            log.warn("Capture du trafic interrompue ({}) : {}", file, e.getMessage());
+        }
+    }
+
+    private void write(OutputStream out, Map<String, Object> record) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(record));
+        out.write('\n');
+        records.incrementAndGet();
+    }
+
+    private static byte[] randomKey() {
+        // Sans clé configurée : pseudonymes propres à cette capture, impossibles à relier à une autre
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.CropApp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Filtre de capture du trafic, enregistré seulement si traffic-capture.enabled=true.
+ * Ordre : après TracingFilter et SqlBudgetFilter, avant Spring Security.
+ */
+@Configuration
+@ConditionalOnProperty(name = "traffic-capture.enabled", havingValue = "true")
+public class TrafficCaptureConfig {
+
+    @Bean
+    public FilterRegistrationBean<TrafficCaptureFilter> trafficCaptureFilter(TrafficCapture capture, ObjectMapper objectMapper) {
+        FilterRegistrationBean<TrafficCaptureFilter> registration =
+                new FilterRegistrationBean<>(new TrafficCaptureFilter(capture, objectMapper));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+}
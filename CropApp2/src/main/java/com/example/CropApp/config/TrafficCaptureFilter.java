@@ -0,0 +1,159 @@
+package com.example.CropApp.config;
+
+import com.example.CropApp.services.IdempotencyStore;
+import com.example.CropApp.services.WarmupService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Envoie chaque requête à TrafficCapture une fois la réponse terminée (à la fin du flux pour les SSE).
+ * Placé juste après TracingFilter, avant Spring Security : les 401 et 429 sont capturés aussi.
+ * /actuator, /internal et les requêtes de préchauffage ne sont pas capturés.
+ */
+public class TrafficCaptureFilter extends OncePerRequestFilter {
+
+    private static final Pattern NUMERIC_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    private final TrafficCapture capture;
+    private final ObjectMapper objectMapper;
+
+    public TrafficCaptureFilter(TrafficCapture capture, ObjectMapper objectMapper) {
+        this.capture = capture;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return path.startsWith("/actuator") || path.startsWith("/internal") || "OPTIONS".equals(request.getMethod())
+                || WarmupService.isWarmupRequest(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long startNanos = request.getAttribute(TracingFilter.RECEIVED_NANOS) instanceof Long received && received > 0
+                ? received : System.nanoTime();
+        ContentCachingRequestWrapper wrapped = new ContentCachingRequestWrapper(request, capture.maxBodyBytes());
+        boolean failed = true;
+        try {
+            filterChain.doFilter(wrapped, response);
+            failed = false;
+        } finally {
+            if (wrapped.isAsyncStarted()) {
+                wrapped.getAsyncContext().addListener(new RecordOnComplete(wrapped, response, startNanos));
+            } else {
+                // Exception remontée : le statut 500 n'est posé qu'au dispatch d'erreur, après ce filtre
+                record(wrapped, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), startNanos);
+            }
+        }
+    }
+
+    private void record(ContentCachingRequestWrapper request, int status, long startNanos) {
+        String user = userOf(request);
+        if (!capture.sampled(user)) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("t", capture.offsetMillis(startNanos));
+        record.put("m", request.getMethod());
+        record.put("r", NUMERIC_SEGMENT.matcher(request.getRequestURI()).replaceAll("/{id}"));
+        if (user != null) {
+            record.put("u", user);
+        }
+        if (!request.getParameterMap().isEmpty() && request.getQueryString() != null) {
+            Map<String, Object> query = new LinkedHashMap<>();
+            request.getParameterMap().forEach((name, values) -> query.put(name, capture.sanitize(name, values[0])));
+            record.put("q", query);
+        }
+        Object body = body(request);
+        if (body != null) {
+            record.put("b", body);
+        }
+        if (request.getHeader(IdempotencyStore.HEADER) != null) {
+            record.put("k", true);
+        }
+        record.put("s", status);
+        record.put("d", Math.round((System.nanoTime() - startNanos) / 100_000.0) / 10.0);
+        capture.record(record);
+    }
+
+    /**
+     * Pseudonyme de l'email du JWT, ou de celui du corps pour /auth/signup et /auth/signing ;
+     * null pour une requête anonyme.
+     */
+    private String userOf(ContentCachingRequestWrapper request) {
+        String authorization = request.getHeader("Authorization");
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            try {
+                return capture.pseudonym(JwtProvider.getEmailFromToken(authorization));
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        if (request.getRequestURI().startsWith("/auth/") && body(request) instanceof Map<?, ?> map
+                && map.get("email") instanceof String email && email.endsWith(TrafficCapture.PSEUDONYM_DOMAIN)) {
+            // Le corps nettoyé porte déjà le pseudonyme suivi de @capture.invalid
+            return email.substring(0, email.length() - TrafficCapture.PSEUDONYM_DOMAIN.length());
+        }
+        return null;
+    }
+
+    private Object body(ContentCachingRequestWrapper request) {
+        byte[] content = request.getContentAsByteArray();
+        if (content.length == 0) {
+            return null;
+        }
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.contains("json")) {
+            return Map.of("bytes", content.length);
+        }
+        try {
+            return capture.sanitize(null, objectMapper.readValue(content, Object.class));
+        } catch (IOException e) {
+            return Map.of("bytes", content.length);
+        }
+    }
+
+    private final class RecordOnComplete implements AsyncListener {
+
+        private final ContentCachingRequestWrapper request;
+        private final HttpServletResponse response;
+        private final long startNanos;
+
+        private RecordOnComplete(ContentCachingRequestWrapper request, HttpServletResponse response, long startNanos) {
+            this.request = request;
+            this.response = response;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response.getStatus(), startNanos);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
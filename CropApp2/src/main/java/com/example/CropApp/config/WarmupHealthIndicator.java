@@ -0,0 +1,24 @@
+package com.example.CropApp.config;
+
+import com.example.CropApp.services.WarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Contribution "warmup" du groupe readiness (/actuator/health/readiness) : OUT_OF_SERVICE tant que
+ * WarmupService n'a pas terminé.
+ */
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private WarmupService warmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = warmupService.getState() == WarmupService.State.READY ? Health.up() : Health.outOfService();
+        return builder.withDetail("state", warmupService.getState()).withDetails(warmupService.details()).build();
+    }
+}
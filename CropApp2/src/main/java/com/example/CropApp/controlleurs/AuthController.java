@@ -5,20 +5,27 @@ import com.example.CropApp.entities.User;
 import com.example.CropApp.repositories.UserRepository;
 import com.example.CropApp.request.LoginRequest;
 import com.example.CropApp.response.AuthResponse;
-import com.example.CropApp.services.CustomUserDetailsImpl;
+import com.example.CropApp.services.LoginThrottle;
+import com.example.CropApp.services.PasswordHashingService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/auth")
@@ -28,17 +35,25 @@ public class AuthController {
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
 
+    /**
+     * Exécuteur des requêtes asynchrones de Spring MVC : les accès base après un hachage s'y font, le pool de
+     * hachage ne sert qu'au calcul BCrypt.
+     */
     @Autowired
-    private CustomUserDetailsImpl customUserDetails;
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor requestExecutor;
 
 
 
 
 
     @PostMapping("/signup")
-    public ResponseEntity<AuthResponse> createUserHandler(@RequestBody User user) throws Exception {
+    public CompletableFuture<ResponseEntity<AuthResponse>> createUserHandler(@RequestBody User user) throws Exception {
 
         User isUserExist = userRepository.findByEmail(user.getEmail());
 
@@ -46,64 +61,96 @@ public class AuthController {
             throw new Exception("Email already exist with another account");
         }
 
-        User createdUser = new User();
-        createdUser.setPassword(passwordEncoder.encode(user.getPassword()));
-        createdUser.setEmail(user.getEmail());
-        createdUser.setFullName(user.getFullName());
-        createdUser.setUsername(user.getUsername());
-
-        User savedUser = userRepository.save(createdUser);
+        // Hachage sur le pool dédié : le thread Tomcat est rendu pendant le calcul BCrypt, l'enregistrement
+        // se fait ensuite sur l'exécuteur des requêtes asynchrones
+        return passwordHashingService.encode(user.getPassword()).thenApplyAsync(hash -> {
+            User createdUser = new User();
+            createdUser.setPassword(hash);
+            createdUser.setEmail(user.getEmail());
+            createdUser.setFullName(user.getFullName());
+            createdUser.setUsername(user.getUsername());
 
+            User savedUser = userRepository.save(createdUser);
 
 
-        Authentication authentication = new UsernamePasswordAuthenticationToken(user.getEmail(), user.getPassword());
 
-        SecurityContextHolder.getContext().setAuthentication(authentication);
+            Authentication authentication = new UsernamePasswordAuthenticationToken(user.getEmail(), user.getPassword());
 
-        String jwt = JwtProvider.generateToken(authentication);
+            String jwt = JwtProvider.generateToken(authentication);
 
-        AuthResponse res = new AuthResponse();
-        res.setMessage("signup success");
-        res.setJwt(jwt);
+            AuthResponse res = new AuthResponse();
+            res.setMessage("signup success");
+            res.setJwt(jwt);
 
-        return new ResponseEntity<>(res, HttpStatus.CREATED);
+            return new ResponseEntity<>(res, HttpStatus.CREATED);
+        }, requestExecutor);
     }
 
 
     @PostMapping("/signing")
-    public ResponseEntity<AuthResponse> signing(@RequestBody LoginRequest loginRequest) {
+    public CompletableFuture<ResponseEntity<AuthResponse>> signing(@RequestBody LoginRequest loginRequest,
+                                                                   HttpServletRequest request) {
 
         String username = loginRequest.getEmail();
         String password = loginRequest.getPassword();
+        String ip = request.getRemoteAddr();
+
+        // Refus avant tout calcul BCrypt
+        long retryAfter = loginThrottle.retryAfterSeconds(username, ip);
+        if (retryAfter > 0) {
+            AuthResponse res = new AuthResponse();
+            res.setMessage("too many login attempts");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                    .body(res));
+        }
 
-        Authentication authentication = authenticate(username, password);
-
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-
-        String jwt = JwtProvider.generateToken(authentication);
+        // Lecture unique de l'utilisateur avant le hachage : la suite ne touche plus la base
         User user = userRepository.findByEmail(username);
-        AuthResponse res = new AuthResponse();
-        res.setMessage("signing successs");
-        res.setJwt(jwt);
-        res.setUsername(user.getUsername());
-        res.setEmail(user.getEmail());
-        res.setFullName(user.getFullName());
-
+        if (user == null) {
+            loginThrottle.recordFailure(username, ip);
+            throw new BadCredentialsException("invalid username");
+        }
 
-        return new ResponseEntity<>(res, HttpStatus.CREATED);
+        return passwordHashingService.matches(password, user.getPassword()).thenApply(matches -> {
+            if (!matches) {
+                loginThrottle.recordFailure(username, ip);
+                throw new BadCredentialsException("invalid password");
+            }
+            loginThrottle.recordSuccess(username);
+            rehashIfNeeded(username, password, user.getPassword());
+
+            UserDetails userDetails = new org.springframework.security.core.userdetails.User(
+                    user.getEmail(), user.getPassword(), new ArrayList<>());
+            Authentication authentication =
+                    new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+
+            String jwt = JwtProvider.generateToken(authentication);
+            AuthResponse res = new AuthResponse();
+            res.setMessage("signing successs");
+            res.setJwt(jwt);
+            res.setUsername(user.getUsername());
+            res.setEmail(user.getEmail());
+            res.setFullName(user.getFullName());
+
+
+            return new ResponseEntity<>(res, HttpStatus.CREATED);
+        });
     }
 
-    private Authentication authenticate(String username, String password) {
-
-        UserDetails userDetails = customUserDetails.loadUserByUsername(username);
-        if(userDetails == null) {
-            throw new BadCredentialsException("invalid username");
+    /**
+     * Le mot de passe en clair n'est disponible qu'ici : on en profite pour remonter le coût BCrypt,
+     * en tâche de fond (si le pool est saturé, ce sera pour la prochaine connexion).
+     */
+    private void rehashIfNeeded(String email, String password, String currentHash) {
+        if (!passwordHashingService.needsRehash(currentHash)) {
+            return;
         }
-
-        if(!passwordEncoder.matches(password, userDetails.getPassword())) {
-            throw new BadCredentialsException("invalid password");
+        try {
+            passwordHashingService.encode(password)
+                    .thenAcceptAsync(hash -> userRepository.updatePasswordByEmail(email, currentHash, hash), requestExecutor);
+        } catch (ResponseStatusException e) {
+            // pool saturé
         }
-
-        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
     }
 }
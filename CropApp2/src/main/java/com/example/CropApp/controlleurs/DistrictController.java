@@ -0,0 +1,36 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.services.DistrictIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocomplétion du champ city des formulaires de prédiction et de recommandation.
+ */
+@RestController
+@RequestMapping("/api/districts")
+public class DistrictController {
+
+    @Autowired
+    private DistrictIndex districtIndex;
+
+    /**
+     * Ex. /api/districts/suggest?q=hyder&limit=5 : [{"name": "Hyderabad", "rainfall": true}, ...]
+     * Index figé au démarrage : réponse cacheable 5 min (cache local de la passerelle, navigateur).
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Map<String, Object>>> suggest(@RequestParam("q") String query,
+                                                             @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(districtIndex.suggest(query, limit));
+    }
+}
@@ -4,6 +4,7 @@ import com.example.CropApp.repositories.RecommendationRepository;
 import com.example.CropApp.services.EmailService;
 import jakarta.mail.MessagingException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,6 +17,7 @@ public class EmailController {
     @Autowired
     private RecommendationRepository recommendationRepository;
 
+    @Lazy
     @Autowired
     private EmailService emailService;
 
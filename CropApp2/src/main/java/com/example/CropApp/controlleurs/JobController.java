@@ -0,0 +1,110 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.entities.Job;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.services.JobService;
+import com.example.CropApp.services.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lots de prédictions ou de recommandations exécutés en arrière-plan (voir JobService).
+ */
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * Corps : {"type": "prediction" | "recommendation", "items": [formdata, ...]}
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(@RequestBody Map<String, Object> request,
+                                                      @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Job job = jobService.submit(String.valueOf(request.get("type")), items(request.get("items")), user);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", job.getId());
+        response.put("status", job.getStatus());
+        response.put("total", job.getTotalItems());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> myJobs(@RequestHeader("Authorization") String jwt,
+                                                            @RequestParam(defaultValue = "20") int limit) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok(jobService.list(user, Math.min(limit, 100)));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable Long id,
+                                                      @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok(jobService.view(id, user));
+    }
+
+    /**
+     * Résultats terminés, par page, dans l'ordre des éléments soumis.
+     */
+    @GetMapping("/{id}/results")
+    public ResponseEntity<List<Map<String, Object>>> results(@PathVariable Long id,
+                                                             @RequestHeader("Authorization") String jwt,
+                                                             @RequestParam(defaultValue = "0") int offset,
+                                                             @RequestParam(defaultValue = "100") int limit) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok(jobService.results(id, user, offset, Math.min(limit, 1000)));
+    }
+
+    /**
+     * Événements item (résultat d'un élément), progress, puis done.
+     */
+    @GetMapping(value = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@PathVariable Long id, @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return jobService.stream(id, user);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable Long id,
+                                                      @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> response = new HashMap<>();
+        response.put("cancelled", jobService.cancel(id, user));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * items doit être une liste d'objets : un autre corps JSON est refusé (400) avant d'atteindre JobService.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> items(Object value) {
+        if (!(value instanceof List<?> list)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "items doit être une liste d'objets");
+        }
+        List<Map<String, Object>> items = new ArrayList<>(list.size());
+        for (Object item : list) {
+            if (!(item instanceof Map<?, ?> map)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "items doit être une liste d'objets");
+            }
+            items.add((Map<String, Object>) map);
+        }
+        return items;
+    }
+}
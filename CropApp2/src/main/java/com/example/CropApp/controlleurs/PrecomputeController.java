@@ -0,0 +1,49 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.services.PrecomputeService;
+import com.example.CropApp.services.ResultCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+/**
+ * Couverture et fraîcheur du calcul d'avance (voir PrecomputeService), et lancement manuel d'un passage sur
+ * cette réplique ; mêmes règles d'accès que /internal/result-cache.
+ */
+@RestController
+@RequestMapping("/internal/precompute")
+public class PrecomputeController {
+
+    @Autowired
+    private PrecomputeService precomputeService;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> stats(@RequestHeader(value = ResultCache.PEER_TOKEN_HEADER, required = false) String token) {
+        check(token);
+        return ResponseEntity.ok(precomputeService.stats());
+    }
+
+    /**
+     * Lance un passage complet en arrière-plan (202) ; 409 si un passage est déjà en cours. Le bilan se lit
+     * ensuite par GET (lastRun).
+     */
+    @PostMapping("/run")
+    public ResponseEntity<Map<String, Object>> run(@RequestHeader(value = ResultCache.PEER_TOKEN_HEADER, required = false) String token) {
+        check(token);
+        precomputeService.runInBackground();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("status", "started"));
+    }
+
+    private void check(String token) {
+        if (!resultCache.acceptsPeer(token)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Jeton de réplique invalide");
+        }
+    }
+}
@@ -2,22 +2,34 @@ package com.example.CropApp.controlleurs;
 
 import com.example.CropApp.entities.Prediction;
 import com.example.CropApp.entities.User;
+import com.example.CropApp.services.DistrictIndex;
+import com.example.CropApp.services.IdempotencyStore;
 import com.example.CropApp.services.PredictionService;
+import com.example.CropApp.services.SweepService;
 import com.example.CropApp.services.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/predictions")
 public class PredictionController {
 
+    private static final Logger log = LoggerFactory.getLogger(PredictionController.class);
+
     @Autowired
     private PredictionService predictionService;
 
@@ -27,22 +39,59 @@ public class PredictionController {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private SweepService sweepService;
+
+    @Autowired
+    private DistrictIndex districtIndex;
+
 
     @PostMapping("/predict")
-    public ResponseEntity<Map<String, Object>> predictCropYield(@RequestBody Map<String, Object> requestData, @RequestHeader("Authorization") String jwt) {
-        try {
-            System.out.println("Received predictionRequest: " + requestData);
-            Map<String, Object> response = predictionService.callFlaskApi(requestData, jwt);
-            return new ResponseEntity<>(response, HttpStatus.OK);
-        } catch (Exception e) {
-            System.err.println("ERROR in PredictionController: " + e.getMessage());
-            e.printStackTrace();
-            
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", e.getMessage());
-            
-            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
-        }
+    public ResponseEntity<Map<String, Object>> predictCropYield(@RequestBody Map<String, Object> requestData, @RequestHeader("Authorization") String jwt,
+                                                                @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        districtIndex.requireKnownCity(requestData);
+        return idempotencyStore.execute(idempotencyKey, jwt, requestData, () -> {
+            try {
+                Map<?, ?> formData = requestData.get("formdata") instanceof Map<?, ?> nested ? nested : Map.of();
+                log.info("Demande de prédiction city={} crop={}", formData.get("city"), formData.get("crop"));
+                Map<String, Object> response = predictionService.callFlaskApi(requestData, jwt);
+                return new ResponseEntity<>(response, HttpStatus.OK);
+            } catch (Exception e) {
+                log.warn("Échec de la prédiction : {}", e.getMessage(), e);
+
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", e.getMessage());
+
+                return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+            }
+        });
+    }
+
+
+    /**
+     * Même calcul que /predict, envoyé par étapes (text/event-stream) : accepted, weather, prediction, saved,
+     * charts puis done (ou error).
+     */
+    @PostMapping(value = "/predict/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter predictCropYieldStream(@RequestBody Map<String, Object> requestData,
+                                             @RequestHeader("Authorization") String jwt) throws Exception {
+        districtIndex.requireKnownCity(requestData);
+        return predictionService.streamPrediction(requestData, jwt);
+    }
+
+
+    /**
+     * Scénarios "what-if" : {"city", "area", "crops": [...], "seasons": [...], "k"} ; seules les k meilleures
+     * combinaisons sont renvoyées et enregistrées dans l'historique.
+     */
+    @PostMapping("/sweep")
+    public ResponseEntity<Map<String, Object>> sweep(@RequestBody Map<String, Object> request,
+                                                     @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok(sweepService.sweep(request, user));
     }
 
 
@@ -58,9 +107,50 @@ public class PredictionController {
     }
 
 
+    /**
+     * Résultat complet d'une prédiction passée (séries des graphiques), même forme que la réponse de /predict.
+     * Lu depuis l'instantané enregistré à la prédiction : aucun appel Flask.
+     * L'instantané ne change plus : la passerelle et le navigateur peuvent le garder une minute.
+     */
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Map<String, Object>> getPredictionResult(@PathVariable Integer id,
+                                                                   @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", id);
+        response.put("result", predictionService.getPredictionResult(id, user));
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(1, TimeUnit.MINUTES))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(response);
+    }
+
+
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity<String> predictionDelete(@PathVariable Integer id) {
-        predictionService.deletePrediciton(id);
+    public ResponseEntity<String> predictionDelete(@PathVariable Integer id,
+                                                   @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        predictionService.deletePrediciton(id, user);
         return ResponseEntity.ok("Prediction deleted");
     }
-}
\ No newline at end of file
+
+    /**
+     * Suppression groupée : corps = liste d'ids, seules les prédictions de l'utilisateur sont supprimées.
+     */
+    @DeleteMapping("/delete")
+    public ResponseEntity<Map<String, Object>> predictionsDelete(@RequestBody List<Integer> ids,
+                                                                 @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> response = new HashMap<>();
+        response.put("deleted", predictionService.deletePredictions(ids, user));
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping(value = "/export", produces = "text/csv")
+    public ResponseEntity<String> exportPredictions(@RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"predictions.csv\"")
+                .body(predictionService.exportPredictionsCsv(user));
+    }
+}
@@ -2,65 +2,99 @@ package com.example.CropApp.controlleurs;
 
 import com.example.CropApp.entities.Recommendation;
 import com.example.CropApp.entities.User;
+import com.example.CropApp.services.DistrictIndex;
+import com.example.CropApp.services.IdempotencyStore;
 import com.example.CropApp.services.RecommendationService;
 import com.example.CropApp.services.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/recommendations")
 public class RecommendationController {
 
+    private static final Logger log = LoggerFactory.getLogger(RecommendationController.class);
+
     @Autowired
     private RecommendationService recommendationService;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private DistrictIndex districtIndex;
+
     /**
      * Générer une nouvelle recommandation
      */
     @PostMapping("/generate")
     public ResponseEntity<Map<String, Object>> generateRecommendation(
             @RequestBody Map<String, Object> requestData,
-            @RequestHeader("Authorization") String jwt) {
-
-        try {
-            System.out.println("Received requestData: " + requestData);
-
-            // Appeler le service Flask via RecommendationService
-            Map<String, Object> response = recommendationService.generateRecommendation(requestData, jwt);
-
-            System.out.println("Flask response: " + response);
-
-            if (response == null || response.isEmpty()) {
-                throw new RuntimeException("Empty or null response from Flask service");
+            @RequestHeader("Authorization") String jwt,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+
+        // Avant l'appel Flask et hors du disjoncteur : une faute de frappe n'est pas une panne
+        districtIndex.requireKnownCity(requestData);
+        return idempotencyStore.execute(idempotencyKey, jwt, requestData, () -> {
+            try {
+                Map<?, ?> formData = requestData.get("formdata") instanceof Map<?, ?> nested ? nested : Map.of();
+                log.info("Demande de recommandation city={}", formData.get("city"));
+
+                // Appeler le service Flask via RecommendationService
+                Map<String, Object> response = recommendationService.generateRecommendation(requestData, jwt);
+
+                log.debug("Réponse Flask : {}", response);
+
+                if (response == null || response.isEmpty()) {
+                    throw new RuntimeException("Empty or null response from Flask service");
+                }
+
+                if (!response.containsKey("result")) {
+                    throw new RuntimeException("Expected key 'result' not found in response");
+                }
+
+                Object resultObject = response.get("result");
+                if (resultObject == null) {
+                    throw new RuntimeException("The value associated with 'result' is null");
+                }
+
+                return new ResponseEntity<>(response, HttpStatus.OK);
+
+            } catch (Exception e) {
+                log.warn("Échec de la recommandation : {}", e.getMessage(), e);
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Une erreur s'est produite lors du traitement de la demande.");
+                errorResponse.put("message", e.getMessage());
+                return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
             }
+        });
+    }
 
-            if (!response.containsKey("result")) {
-                throw new RuntimeException("Expected key 'result' not found in response");
-            }
-
-            Object resultObject = response.get("result");
-            if (resultObject == null) {
-                throw new RuntimeException("The value associated with 'result' is null");
-            }
-
-            return new ResponseEntity<>(response, HttpStatus.OK);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Une erreur s'est produite lors du traitement de la demande.");
-            errorResponse.put("message", e.getMessage());
-            return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
-        }
+    /**
+     * Même calcul que /generate, envoyé par étapes (text/event-stream) : accepted, weather, prediction, saved,
+     * charts puis done (ou error)
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateRecommendationStream(@RequestBody Map<String, Object> inputData,
+                                                   @RequestHeader("Authorization") String jwt) throws Exception {
+        districtIndex.requireKnownCity(inputData);
+        return recommendationService.streamRecommendation(inputData, jwt);
     }
 
     /**
@@ -73,7 +107,7 @@ public class RecommendationController {
             List<Recommendation> recommendations = recommendationService.getRecommendationsForAuthenticatedUser(user);
             return ResponseEntity.ok(recommendations);
         } catch (RuntimeException e) {
-            e.printStackTrace();
+            log.warn("Historique des recommandations indisponible : {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -81,20 +115,63 @@ public class RecommendationController {
     }
 
     /**
-     * Supprimer une recommandation par son ID
+     * Résultat complet d'une recommandation passée (chart_data compris), même forme que la réponse de /generate.
+     * Lu depuis l'instantané enregistré à la recommandation : aucun appel Flask.
+     * L'instantané ne change plus : la passerelle et le navigateur peuvent le garder une minute.
+     */
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Map<String, Object>> getRecommendationResult(@PathVariable Long id,
+                                                                       @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", id);
+        response.put("result", recommendationService.getRecommendationResult(id, user));
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(1, TimeUnit.MINUTES))
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(response);
+    }
+
+    /**
+     * Supprimer une recommandation par son ID (en base ou dans les archives de l'utilisateur)
      */
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity<Map<String, Object>> deleteRecommendation(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> deleteRecommendation(@PathVariable Long id,
+                                                                    @RequestHeader("Authorization") String jwt) {
         Map<String, Object> response = new HashMap<>();
         try {
-            recommendationService.deleteRecommendation(id);
+            User user = userService.findUserProfileByJwt(jwt);
+            recommendationService.deleteRecommendation(id, user);
             response.put("message", "Recommendation deleted successfully");
             return ResponseEntity.ok(response);
-        } catch (RuntimeException e) {
-            e.printStackTrace();
+        } catch (Exception e) {
+            log.warn("Suppression de la recommandation {} impossible : {}", id, e.getMessage());
             response.put("error", "Failed to delete recommendation");
             response.put("message", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
         }
     }
+
+    /**
+     * Suppression groupée : corps = liste d'ids, seules les recommandations de l'utilisateur sont supprimées
+     */
+    @DeleteMapping("/delete")
+    public ResponseEntity<Map<String, Object>> deleteRecommendations(@RequestBody List<Long> ids,
+                                                                     @RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> response = new HashMap<>();
+        response.put("deleted", recommendationService.deleteRecommendations(ids, user));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Export CSV de l'historique complet (base + archives)
+     */
+    @GetMapping(value = "/export", produces = "text/csv")
+    public ResponseEntity<String> exportRecommendations(@RequestHeader("Authorization") String jwt) throws Exception {
+        User user = userService.findUserProfileByJwt(jwt);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"recommendations.csv\"")
+                .body(recommendationService.exportRecommendationsCsv(user));
+    }
 }
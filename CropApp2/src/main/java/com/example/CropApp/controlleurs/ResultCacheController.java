@@ -0,0 +1,62 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.services.ResultCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+/**
+ * Échanges entre répliques pour le cache de résultats (voir ResultCache) ; hors /api, donc sans JWT,
+ * mais protégés par result-cache.peer-token quand il est défini.
+ */
+@RestController
+@RequestMapping("/internal/result-cache")
+public class ResultCacheController {
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> stats(@RequestHeader(value = ResultCache.PEER_TOKEN_HEADER, required = false) String token) {
+        check(token, null);
+        return ResponseEntity.ok(resultCache.stats());
+    }
+
+    @GetMapping("/{key}")
+    public ResponseEntity<ResultCache.Entry> get(@PathVariable String key,
+                                                 @RequestHeader(value = ResultCache.PEER_TOKEN_HEADER, required = false) String token) {
+        check(token, key);
+        ResultCache.Entry entry = resultCache.peerGet(key);
+        return entry != null ? ResponseEntity.ok(entry) : ResponseEntity.notFound().build();
+    }
+
+    @PutMapping("/{key}")
+    public ResponseEntity<Void> put(@PathVariable String key, @RequestBody ResultCache.Entry entry,
+                                    @RequestHeader(value = ResultCache.PEER_TOKEN_HEADER, required = false) String token,
+                                    @RequestHeader(value = ResultCache.PEER_ID_HEADER, required = false) String peer) {
+        check(token, key);
+        resultCache.peerStore(key, entry, peer);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{key}")
+    public ResponseEntity<Void> invalidate(@PathVariable String key,
+                                           @RequestHeader(value = ResultCache.PEER_TOKEN_HEADER, required = false) String token) {
+        check(token, key);
+        resultCache.peerInvalidate(key);
+        return ResponseEntity.noContent().build();
+    }
+
+    private void check(String token, String key) {
+        if (!resultCache.acceptsPeer(token)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Jeton de réplique invalide");
+        }
+        if (key != null && !ResultCache.isValidKey(key)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Clé de cache invalide");
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.example.CropApp.controlleurs;
 
-import com.example.CropApp.entities.User;
+import com.example.CropApp.response.UserProfileResponse;
 import com.example.CropApp.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -18,10 +18,10 @@ public class UserController {
     private UserService userService;
 
     @GetMapping("/profile")
-    public ResponseEntity<User> getUserProfile(
+    public ResponseEntity<UserProfileResponse> getUserProfile(
             @RequestHeader("Authorization") String jwt) throws Exception {
 
-        User user = userService.findUserProfileByJwt(jwt);
-        return new ResponseEntity<>(user, HttpStatus.OK);
+        UserProfileResponse profile = userService.findUserProfileSummaryByJwt(jwt);
+        return new ResponseEntity<>(profile, HttpStatus.OK);
     }
 }
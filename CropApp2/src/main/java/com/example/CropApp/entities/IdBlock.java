@@ -0,0 +1,23 @@
+package com.example.CropApp.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Prochain identifiant libre par table, pour réserver des blocs d'ids hors insertion (mode write-behind).
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "id_block")
+public class IdBlock {
+
+    @Id
+    private String name;
+    private Long nextId;
+}
@@ -28,6 +28,7 @@ public class Prediction {
     private Float area;
     private String crop;
     private String city;
+    private String season;
     @ManyToOne
     @JoinColumn(name = "user_id")
     @JsonBackReference
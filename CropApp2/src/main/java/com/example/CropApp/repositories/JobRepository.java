@@ -0,0 +1,70 @@
+package com.example.CropApp.repositories;
+
+import com.example.CropApp.entities.Job;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface JobRepository extends JpaRepository<Job, Long> {
+
+    @Transactional(readOnly = true)
+    Optional<Job> findByIdAndUserId(Long id, Long userId);
+
+    @Transactional(readOnly = true)
+    List<Job> findByUserIdOrderByCreatedAtDesc(Long userId, Pageable pageable);
+
+    /**
+     * Candidats à exécuter : en file ou dont le bail a expiré (réplique arrêtée). Les utilisateurs qui ont
+     * le moins de jobs en cours passent devant, puis le plus ancien d'abord.
+     */
+    @Query("select j from Job j where (j.status = 'QUEUED' or (j.status = 'RUNNING' and j.leaseUntil < :now)) "
+            + "and (select count(r) from Job r where r.userId = j.userId and r.status = 'RUNNING' "
+            + "and r.leaseUntil >= :now) < :maxRunningPerUser "
+            + "order by (select count(r) from Job r where r.userId = j.userId and r.status = 'RUNNING' "
+            + "and r.leaseUntil >= :now), j.createdAt")
+    List<Job> findClaimable(@Param("now") LocalDateTime now, @Param("maxRunningPerUser") long maxRunningPerUser,
+                             Pageable pageable);
+
+    /**
+     * Prise du bail : une seule réplique voit 1 ligne modifiée, les autres 0.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Job j set j.status = 'RUNNING', j.owner = :owner, j.leaseUntil = :leaseUntil, "
+            + "j.startedAt = coalesce(j.startedAt, :now) where j.id = :id "
+            + "and (j.status = 'QUEUED' or (j.status = 'RUNNING' and j.leaseUntil < :now))")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Prolonge le bail et enregistre la progression ; 0 si le bail a été perdu ou le job annulé.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Job j set j.leaseUntil = :leaseUntil, j.doneItems = :done, j.failedItems = :failed "
+            + "where j.id = :id and j.owner = :owner and j.status = 'RUNNING'")
+    int heartbeat(@Param("id") Long id, @Param("owner") String owner, @Param("leaseUntil") LocalDateTime leaseUntil,
+                  @Param("done") int done, @Param("failed") int failed);
+
+    @Transactional
+    @Modifying
+    @Query("update Job j set j.status = :status, j.doneItems = :done, j.failedItems = :failed, "
+            + "j.finishedAt = :now, j.leaseUntil = null, j.error = :error "
+            + "where j.id = :id and j.owner = :owner and j.status = 'RUNNING'")
+    int finish(@Param("id") Long id, @Param("owner") String owner, @Param("status") String status,
+               @Param("done") int done, @Param("failed") int failed, @Param("now") LocalDateTime now,
+               @Param("error") String error);
+
+    @Transactional
+    @Modifying
+    @Query("update Job j set j.status = 'CANCELLED', j.finishedAt = :now, j.leaseUntil = null "
+            + "where j.id = :id and j.userId = :userId and j.status in ('QUEUED', 'RUNNING')")
+    int cancel(@Param("id") Long id, @Param("userId") Long userId, @Param("now") LocalDateTime now);
+}
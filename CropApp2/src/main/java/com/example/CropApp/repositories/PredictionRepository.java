@@ -2,12 +2,37 @@ package com.example.CropApp.repositories;
 
 import com.example.CropApp.entities.Prediction;
 import com.example.CropApp.entities.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PredictionRepository extends JpaRepository<Prediction, Integer> {
+    @Transactional(readOnly = true)
     List<Prediction> findByUser(User user);
+
+    /**
+     * Lot suivant à archiver, parcouru par id croissant (keyset) pour ne jamais rescanner le début.
+     */
+    @Transactional(readOnly = true)
+    @Query("select p from Prediction p left join fetch p.user where p.date < :cutoff and p.id > :lastId order by p.id")
+    List<Prediction> findArchivable(@Param("cutoff") LocalDateTime cutoff, @Param("lastId") Integer lastId, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Prediction p where p.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Prediction p where p.id in :ids and p.user.id = :userId")
+    int deleteByIdsForUser(@Param("ids") Collection<Integer> ids, @Param("userId") Long userId);
 }
@@ -2,10 +2,35 @@ package com.example.CropApp.repositories;
 
 import com.example.CropApp.entities.Recommendation;
 import com.example.CropApp.entities.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface RecommendationRepository extends JpaRepository<Recommendation, Long> {
+    @Transactional(readOnly = true)
     List<Recommendation> findByUser(User user);
-}
\ No newline at end of file
+
+    /**
+     * Lot suivant à archiver, parcouru par id croissant (keyset) pour ne jamais rescanner le début.
+     */
+    @Transactional(readOnly = true)
+    @Query("select r from Recommendation r join fetch r.user where r.date < :cutoff and r.id > :lastId order by r.id")
+    List<Recommendation> findArchivable(@Param("cutoff") LocalDateTime cutoff, @Param("lastId") Long lastId, Pageable page);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Recommendation r where r.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Recommendation r where r.id in :ids and r.user.id = :userId")
+    int deleteByIdsForUser(@Param("ids") Collection<Long> ids, @Param("userId") Long userId);
+}
@@ -5,7 +5,12 @@ package com.example.CropApp.repositories;
 import java.util.Optional;
 
 import com.example.CropApp.entities.User;
+import com.example.CropApp.response.UserProfileResponse;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Repository;
 
 
@@ -14,6 +19,39 @@ import org.springframework.stereotype.Repository;
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByUsername(String username);
     Optional<User> findByUsernameOrEmail(String username, String email);
+    @Transactional(readOnly = true)
     User findByEmail(String email);
 
+    /**
+     * Email et mot de passe seulement : lus depuis l'index idx_users_email_password.
+     */
+    @Transactional(readOnly = true)
+    Credentials findCredentialsByEmail(String email);
+
+    /**
+     * Profil et agrégats d'historique en une seule requête (index user_id/date).
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.example.CropApp.response.UserProfileResponse(u.id, u.fullName, u.username, u.email, "
+            + "(select count(p) from Prediction p where p.user = u), "
+            + "(select count(r) from Recommendation r where r.user = u), "
+            + "(select max(p.date) from Prediction p where p.user = u), "
+            + "(select max(r.date) from Recommendation r where r.user = u)) "
+            + "from User u where u.email = :email")
+    UserProfileResponse findProfileByEmail(@Param("email") String email);
+
+    /**
+     * Remplace le hash (rehachage à la connexion quand le coût BCrypt augmente), seulement s'il n'a pas changé entre-temps.
+     */
+    @Transactional
+    @Modifying
+    @Query("update User u set u.password = :password where u.email = :email and u.password = :previous")
+    int updatePasswordByEmail(@Param("email") String email, @Param("previous") String previous,
+                              @Param("password") String password);
+
+    interface Credentials {
+        String getEmail();
+        String getPassword();
+    }
+
 }
\ No newline at end of file
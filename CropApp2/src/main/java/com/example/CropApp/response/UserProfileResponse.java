@@ -0,0 +1,25 @@
+package com.example.CropApp.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * En-tête de profil : champs de l'utilisateur et agrégats de son historique, sans charger les collections.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserProfileResponse {
+
+    private Long id;
+    private String fullName;
+    private String username;
+    private String email;
+    private Long predictionCount;
+    private Long recommendationCount;
+    private LocalDateTime lastPredictionAt;
+    private LocalDateTime lastRecommendationAt;
+}
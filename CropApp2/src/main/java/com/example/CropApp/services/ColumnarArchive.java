@@ -0,0 +1,181 @@
+package com.example.CropApp.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fichier d'archive colonne par colonne, compressé en gzip.
+ *
+ * En-tête (magic, version, nombre de lignes, colonnes et types) puis, pour chaque colonne, toutes ses
+ * valeurs à la suite ; les chaînes sont codées par dictionnaire (villes, cultures, saisons se répètent).
+ */
+public final class ColumnarArchive {
+
+    private static final int MAGIC = 0x43524F50; // "CROP"
+    private static final int VERSION = 1;
+
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte STRING = 3;
+    private static final byte TIMESTAMP = 4;
+
+    private ColumnarArchive() {
+    }
+
+    /**
+     * Écrit les lignes (une Map colonne -> valeur par ligne) ; le fichier est remplacé de façon atomique.
+     */
+    public static void write(Path path, List<String> columns, List<Map<String, Object>> rows) throws IOException {
+        Files.createDirectories(path.getParent());
+        // Nom temporaire unique : plusieurs réplicas peuvent écrire dans le même répertoire partagé
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName() + ".", ".tmp");
+
+        try {
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 GZIPOutputStream gzip = new GZIPOutputStream(file);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(rows.size());
+                out.writeInt(columns.size());
+                for (String column : columns) {
+                    byte type = typeOf(column, rows);
+                    out.writeUTF(column);
+                    out.writeByte(type);
+                    writeColumn(out, column, type, rows);
+                }
+                out.flush();
+                gzip.finish();
+                file.getFD().sync();
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Rien à supprimer après le renommage ; sinon, pas de fichier temporaire laissé en cas d'erreur
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static List<Map<String, Object>> read(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Archive invalide : " + path);
+            }
+            int rowCount = in.readInt();
+            int columnCount = in.readInt();
+
+            List<Map<String, Object>> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                rows.add(new LinkedHashMap<>());
+            }
+            for (int c = 0; c < columnCount; c++) {
+                String column = in.readUTF();
+                byte type = in.readByte();
+                readColumn(in, column, type, rows);
+            }
+            return rows;
+        }
+    }
+
+    private static byte typeOf(String column, List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            Object value = row.get(column);
+            if (value instanceof LocalDateTime) {
+                return TIMESTAMP;
+            } else if (value instanceof Float || value instanceof Double) {
+                return DOUBLE;
+            } else if (value instanceof Number) {
+                return LONG;
+            } else if (value != null) {
+                return STRING;
+            }
+        }
+        return STRING;
+    }
+
+    private static void writeColumn(DataOutputStream out, String column, byte type, List<Map<String, Object>> rows)
+            throws IOException {
+        if (type == STRING) {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            for (Map<String, Object> row : rows) {
+                Object value = row.get(column);
+                if (value != null) {
+                    dictionary.putIfAbsent(value.toString(), dictionary.size());
+                }
+            }
+            out.writeInt(dictionary.size());
+            for (String entry : dictionary.keySet()) {
+                out.writeUTF(entry);
+            }
+            for (Map<String, Object> row : rows) {
+                Object value = row.get(column);
+                out.writeInt(value == null ? -1 : dictionary.get(value.toString()));
+            }
+            return;
+        }
+
+        for (Map<String, Object> row : rows) {
+            Object value = row.get(column);
+            out.writeBoolean(value != null);
+            if (value == null) {
+                continue;
+            }
+            switch (type) {
+                case LONG -> out.writeLong(((Number) value).longValue());
+                case DOUBLE -> out.writeDouble(((Number) value).doubleValue());
+                case TIMESTAMP -> {
+                    LocalDateTime date = (LocalDateTime) value;
+                    out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+                    out.writeInt(date.getNano());
+                }
+                default -> throw new IOException("Type de colonne inconnu : " + type);
+            }
+        }
+    }
+
+    private static void readColumn(DataInputStream in, String column, byte type, List<Map<String, Object>> rows)
+            throws IOException {
+        if (type == STRING) {
+            int size = in.readInt();
+            Map<Integer, String> dictionary = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                dictionary.put(i, in.readUTF());
+            }
+            for (Map<String, Object> row : rows) {
+                int index = in.readInt();
+                row.put(column, index < 0 ? null : dictionary.get(index));
+            }
+            return;
+        }
+
+        for (Map<String, Object> row : rows) {
+            if (!in.readBoolean()) {
+                row.put(column, null);
+                continue;
+            }
+            switch (type) {
+                case LONG -> row.put(column, in.readLong());
+                case DOUBLE -> row.put(column, in.readDouble());
+                case TIMESTAMP -> row.put(column, LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+                default -> throw new IOException("Type de colonne inconnu : " + type);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.CropApp.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Anneau de hachage cohérent : chaque membre y occupe virtualNodes positions, une clé appartient au premier
+ * membre rencontré dans le sens horaire. L'arrivée ou le départ d'une réplique ne déplace qu'environ 1/n des clés.
+ * Immuable : un changement de membres construit un nouvel anneau.
+ */
+final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> positions = new TreeMap<>();
+    private final Set<String> members;
+
+    ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        this.members = Set.copyOf(new TreeSet<>(members));
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                positions.put(hash(member + "#" + i), member);
+            }
+        }
+    }
+
+    String owner(String key) {
+        if (positions.isEmpty()) {
+            return null;
+        }
+        SortedMap<Long, String> tail = positions.tailMap(hash(key));
+        return tail.isEmpty() ? positions.firstEntry().getValue() : positions.get(tail.firstKey());
+    }
+
+    Set<String> members() {
+        return members;
+    }
+
+    static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Part de l'anneau détenue par chaque membre (entre 0 et 1), pour les statistiques.
+     */
+    Map<String, Double> shares() {
+        Map<String, Double> shares = new TreeMap<>();
+        if (members.size() == 1) {
+            shares.put(members.iterator().next(), 1.0);
+            return shares;
+        }
+        long previous = positions.isEmpty() ? 0 : positions.lastKey();
+        for (Map.Entry<Long, String> position : positions.entrySet()) {
+            // Arc (previous, position] en arithmétique non signée sur 2^64
+            long arc = position.getKey() - previous;
+            double unsigned = arc >= 0 ? arc : arc + 0x1p64;
+            shares.merge(position.getValue(), unsigned / 0x1p64, Double::sum);
+            previous = position.getKey();
+        }
+        return shares;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.CropApp.services;
+
+/**
+ * Échappement minimal des champs CSV (RFC 4180).
+ */
+final class CsvUtils {
+
+    private CsvUtils() {
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.CropApp.services;
 
-import com.example.CropApp.entities.User;
 import com.example.CropApp.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.GrantedAuthority;
@@ -20,7 +19,7 @@ public class CustomUserDetailsImpl implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByEmail(username);
+        UserRepository.Credentials user = userRepository.findCredentialsByEmail(username);
 
         if(user == null){
             throw new UsernameNotFoundException("User not found with email" + username);
@@ -0,0 +1,230 @@
+package com.example.CropApp.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Index en mémoire des districts connus (data/districts.csv, extrait de rain.csv et crop_production.csv).
+ *
+ * Sert l'autocomplétion (préfixe puis distance d'édition bornée) et valide le champ city avant tout appel
+ * Flask : une faute de frappe est refusée tout de suite avec des suggestions, au lieu d'échouer dans Flask
+ * après un aller-retour. Seuls les districts présents dans rain.csv (rainfall=1) sont acceptés par Flask.
+ * Les noms du type "Chennai (Madras)" sont aussi indexés sous "chennai" et "madras".
+ */
+@Service
+public class DistrictIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(DistrictIndex.class);
+
+    private static final Pattern QUALIFIED = Pattern.compile("^(.*?)\\s*\\((.*)\\)$");
+
+    @Value("${districts.resource:data/districts.csv}")
+    private String resource;
+
+    @Value("${districts.max-edits:2}")
+    private int maxEdits;
+
+    @Value("${districts.suggest-limit:10}")
+    private int defaultLimit;
+
+    private String[] names;
+    private boolean[] rainfall;
+    private int[][] entriesByKey;
+    private DistrictTrie trie;
+
+    @PostConstruct
+    public void load() throws IOException {
+        List<String> canonical = new ArrayList<>();
+        List<Boolean> supported = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ClassPathResource(resource).getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                int comma = line.lastIndexOf(',');
+                canonical.add(line.substring(0, comma).trim());
+                supported.add("1".equals(line.substring(comma + 1).trim()));
+            }
+        }
+        build(canonical, supported);
+        log.info("Index des districts : {} noms, {} clés, {} nœuds", names.length, entriesByKey.length, trie.nodeCount());
+    }
+
+    void build(List<String> canonical, List<Boolean> supported) {
+        names = canonical.toArray(String[]::new);
+        rainfall = new boolean[names.length];
+        // Les noms complets d'abord, puis les alias : "Darrang" (crop_production) mène aussi à "Darrang (Mangaldai)"
+        TreeMap<String, Set<Integer>> keys = new TreeMap<>();
+        for (int i = 0; i < names.length; i++) {
+            rainfall[i] = supported.get(i);
+            keys.computeIfAbsent(normalize(names[i]), k -> new LinkedHashSet<>()).add(i);
+        }
+        for (int i = 0; i < names.length; i++) {
+            for (String alias : aliases(names[i])) {
+                keys.computeIfAbsent(alias, k -> new LinkedHashSet<>()).add(i);
+            }
+        }
+
+        entriesByKey = new int[keys.size()][];
+        int k = 0;
+        for (Set<Integer> entries : keys.values()) {
+            entriesByKey[k++] = entries.stream().mapToInt(Integer::intValue).toArray();
+        }
+        trie = new DistrictTrie(new ArrayList<>(keys.keySet()));
+    }
+
+    /**
+     * Suggestions pour une saisie partielle : les noms commençant par la saisie, complétés par les noms
+     * à faible distance d'édition. Chaque suggestion indique si le district est accepté par la prédiction.
+     */
+    public List<Map<String, Object>> suggest(String query, Integer limit) {
+        int max = limit == null || limit <= 0 ? defaultLimit : Math.min(limit, 50);
+        String key = normalize(query);
+        LinkedHashSet<Integer> found = new LinkedHashSet<>();
+        if (!key.isEmpty()) {
+            int[] range = trie.prefixRange(key);
+            for (int i = range[0]; i < range[1] && found.size() < max; i++) {
+                addAll(found, entriesByKey[i], max);
+            }
+            if (found.size() < max) {
+                for (int entry : closest(key, max)) {
+                    if (found.size() >= max) {
+                        break;
+                    }
+                    found.add(entry);
+                }
+            }
+        }
+        List<Map<String, Object>> suggestions = new ArrayList<>(found.size());
+        for (int entry : found) {
+            Map<String, Object> suggestion = new LinkedHashMap<>();
+            suggestion.put("name", names[entry]);
+            suggestion.put("rainfall", rainfall[entry]);
+            suggestions.add(suggestion);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Remplace formData.city par le nom attendu par Flask, ou refuse la requête (400) avec des suggestions.
+     * Accepte aussi le corps complet des contrôleurs, {"formdata": {...}}.
+     */
+    public void requireKnownCity(Map<String, Object> formData) {
+        if (formData != null && formData.get("formdata") instanceof Map<?, ?> nested) {
+            requireKnownCity((Map<String, Object>) nested);
+            return;
+        }
+        Object city = formData == null ? null : formData.get("city");
+        if (city == null || city.toString().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "city manquant");
+        }
+        formData.put("city", resolve(city.toString()));
+    }
+
+    /**
+     * Nom canonique (tel qu'écrit dans rain.csv) du district saisi ; 400 si inconnu, ambigu ou sans pluviométrie.
+     */
+    public String resolve(String city) {
+        String normalized = normalize(city);
+        int key = trie.find(normalized);
+        if (key >= 0) {
+            List<Integer> usable = new ArrayList<>();
+            for (int entry : entriesByKey[key]) {
+                if (rainfall[entry] && normalize(names[entry]).equals(normalized)) {
+                    // le nom exact l'emporte sur un alias identique
+                    return names[entry];
+                }
+                if (rainfall[entry]) {
+                    usable.add(entry);
+                }
+            }
+            if (usable.size() == 1) {
+                return names[usable.get(0)];
+            }
+            if (usable.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Pas de données pluviométriques pour le district « " + city + " »");
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "District « " + city + " » ambigu, préciser : "
+                    + usable.stream().map(entry -> names[entry]).collect(Collectors.joining(", ")));
+        }
+        String hint = suggest(city, 3).stream()
+                .filter(suggestion -> Boolean.TRUE.equals(suggestion.get("rainfall")))
+                .map(suggestion -> suggestion.get("name").toString())
+                .collect(Collectors.joining(", "));
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "District inconnu « " + city + " »" + (hint.isEmpty() ? "" : ". Suggestions : " + hint));
+    }
+
+    private List<Integer> closest(String key, int max) {
+        // Tolérance proportionnelle à la longueur : une faute sur 4 lettres, jusqu'à districts.max-edits
+        int edits = Math.min(maxEdits, key.length() / 4);
+        if (edits == 0) {
+            return List.of();
+        }
+        TreeMap<Integer, LinkedHashSet<Integer>> byDistance = new TreeMap<>();
+        trie.withinDistance(key, edits, (k, distance) -> {
+            for (int entry : entriesByKey[k]) {
+                byDistance.computeIfAbsent(distance, d -> new LinkedHashSet<>()).add(entry);
+            }
+        });
+        LinkedHashSet<Integer> ordered = new LinkedHashSet<>();
+        byDistance.values().forEach(entries -> addAll(ordered, entries.stream().mapToInt(Integer::intValue).toArray(), max));
+        return new ArrayList<>(ordered);
+    }
+
+    private static void addAll(Set<Integer> target, int[] entries, int max) {
+        for (int entry : entries) {
+            if (target.size() >= max) {
+                return;
+            }
+            target.add(entry);
+        }
+    }
+
+    private static List<String> aliases(String name) {
+        Matcher matcher = QUALIFIED.matcher(name.trim());
+        List<String> aliases = new ArrayList<>();
+        if (matcher.matches()) {
+            aliases.add(normalize(matcher.group(1)));
+            String qualifier = normalize(matcher.group(2).replace(")", "").replace("(", "").replace(".", ""));
+            if (qualifier.length() > 2) {
+                aliases.add(qualifier);
+            }
+        }
+        return aliases;
+    }
+
+    static String normalize(String name) {
+        return name == null ? "" : String.join(" ", name.trim().toLowerCase(Locale.ROOT).split("\\s+")).trim();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.CropApp.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trie immuable rangé dans des tableaux, construit à partir de clés triées et distinctes.
+ *
+ * Les nœuds sont numérotés en largeur : les fils d'un nœud sont contigus et triés par caractère (recherche
+ * dichotomique). Comme les clés sont triées, les clés sous un nœud forment l'intervalle [from, to) : une
+ * recherche par préfixe ne parcourt donc que le préfixe, sans descendre dans le sous-arbre.
+ */
+final class DistrictTrie {
+
+    /**
+     * Reçoit l'indice de la clé trouvée et sa distance d'édition à la requête.
+     */
+    @FunctionalInterface
+    interface Match {
+        void accept(int key, int distance);
+    }
+
+    private final int size;
+    private final char[] label;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] from;
+    private final int[] to;
+    private final int[] terminal;
+    private final int maxLength;
+
+    DistrictTrie(List<String> sortedKeys) {
+        String[] keys = sortedKeys.toArray(String[]::new);
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1].compareTo(keys[i]) >= 0) {
+                throw new IllegalArgumentException("clés non triées ou en double : " + keys[i]);
+            }
+        }
+
+        List<int[]> nodes = new ArrayList<>(); // {lo, hi, depth, label}
+        nodes.add(new int[]{0, keys.length, 0, 0});
+        List<int[]> links = new ArrayList<>(); // {firstChild, childCount, terminal}
+        int longest = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            int lo = nodes.get(i)[0];
+            int hi = nodes.get(i)[1];
+            int depth = nodes.get(i)[2];
+            int word = lo < hi && keys[lo].length() == depth ? lo : -1;
+            int first = nodes.size();
+            int j = word >= 0 ? lo + 1 : lo;
+            while (j < hi) {
+                char c = keys[j].charAt(depth);
+                int k = j;
+                while (k < hi && keys[k].charAt(depth) == c) {
+                    k++;
+                }
+                nodes.add(new int[]{j, k, depth + 1, c});
+                j = k;
+            }
+            links.add(new int[]{first, nodes.size() - first, word});
+            longest = Math.max(longest, depth);
+        }
+
+        size = nodes.size();
+        label = new char[size];
+        firstChild = new int[size];
+        childCount = new int[size];
+        from = new int[size];
+        to = new int[size];
+        terminal = new int[size];
+        for (int i = 0; i < size; i++) {
+            label[i] = (char) nodes.get(i)[3];
+            from[i] = nodes.get(i)[0];
+            to[i] = nodes.get(i)[1];
+            firstChild[i] = links.get(i)[0];
+            childCount[i] = links.get(i)[1];
+            terminal[i] = links.get(i)[2];
+        }
+        maxLength = longest;
+    }
+
+    int nodeCount() {
+        return size;
+    }
+
+    /**
+     * Indice de la clé égale à key, -1 si absente.
+     */
+    int find(String key) {
+        int node = walk(key);
+        return node < 0 ? -1 : terminal[node];
+    }
+
+    /**
+     * Intervalle [from, to) des clés commençant par prefix (vide si aucune).
+     */
+    int[] prefixRange(String prefix) {
+        int node = walk(prefix);
+        return node < 0 ? new int[]{0, 0} : new int[]{from[node], to[node]};
+    }
+
+    /**
+     * Toutes les clés à au plus maxEdits de query (distance de Levenshtein). Le parcours calcule une ligne de la
+     * matrice par nœud et abandonne une branche dès que toute la ligne dépasse maxEdits.
+     */
+    void withinDistance(String query, int maxEdits, Match match) {
+        int m = query.length();
+        if (m - maxEdits > maxLength) {
+            return;
+        }
+        int[][] rows = new int[maxLength + 1][m + 1];
+        for (int j = 0; j <= m; j++) {
+            rows[0][j] = j;
+        }
+        if (terminal[0] >= 0 && m <= maxEdits) {
+            match.accept(terminal[0], m);
+        }
+        for (int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            search(child, 1, query, maxEdits, rows, match);
+        }
+    }
+
+    private void search(int node, int depth, String query, int maxEdits, int[][] rows, Match match) {
+        int m = query.length();
+        int[] previous = rows[depth - 1];
+        int[] row = rows[depth];
+        row[0] = depth;
+        int best = row[0];
+        for (int j = 1; j <= m; j++) {
+            int substitution = previous[j - 1] + (query.charAt(j - 1) == label[node] ? 0 : 1);
+            row[j] = Math.min(substitution, Math.min(row[j - 1], previous[j]) + 1);
+            best = Math.min(best, row[j]);
+        }
+        if (terminal[node] >= 0 && row[m] <= maxEdits) {
+            match.accept(terminal[node], row[m]);
+        }
+        if (best > maxEdits) {
+            return;
+        }
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            search(child, depth + 1, query, maxEdits, rows, match);
+        }
+    }
+
+    private int walk(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int lo = firstChild[node];
+            int index = Arrays.binarySearch(label, lo, lo + childCount[node], key.charAt(i));
+            if (index < 0) {
+                return -1;
+            }
+            node = index;
+        }
+        return node;
+    }
+}
@@ -6,17 +6,24 @@ import com.example.CropApp.repositories.PredictionRepository;
 import com.example.CropApp.repositories.RecommendationRepository;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+// Créé au premier envoi : le mail n'est pas nécessaire pour servir /predict au démarrage
+@Lazy
 @Service
 public class EmailService {
 
+    private static final Logger log = LoggerFactory.getLogger(EmailService.class);
+
     @Autowired
     private JavaMailSender mailSender;
 
@@ -57,7 +64,7 @@ public class EmailService {
             mailSender.send(mimeMessage);
 
         } catch (MessagingException e) {
-            e.printStackTrace();
+            log.warn("Envoi du mail impossible : {}", e.getMessage());
             throw new RuntimeException("Failed to send email", e);
         }
     }
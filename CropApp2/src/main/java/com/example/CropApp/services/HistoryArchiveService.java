@@ -0,0 +1,548 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.Recommendation;
+import com.example.CropApp.repositories.PredictionRepository;
+import com.example.CropApp.repositories.RecommendationRepository;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Rétention de l'historique : les lignes plus anciennes que retention.archive-after-days sont déplacées
+ * par petits lots (parcours keyset par id) dans des archives colonnes compressées, par utilisateur et par
+ * mois : chaque lot ajoute un segment {archive-dir}/{table}/{userId}/{yyyy-MM}.{horodatage}-{aléa}.col.gz,
+ * fusionnés en {yyyy-MM}.col.gz à la fin du passage.
+ *
+ * Les lectures d'historique et d'export fusionnent ces archives avec la base (fichiers décodés gardés en
+ * mémoire, retention.read-cache-rows lignes au plus). Le répertoire doit être partagé entre les réplicas :
+ * un verrou MySQL (GET_LOCK) garantit qu'un seul réplica archive à la fois, et un verrou par mois sérialise
+ * toutes les modifications d'un même mois (archivage, fusion, suppression) entre réplicas.
+ */
+@Service
+public class HistoryArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryArchiveService.class);
+
+    static final List<String> PREDICTION_COLUMNS = List.of(
+            "id", "date", "result", "humidity", "temperature", "rainfall", "area", "crop", "city", "season");
+    static final List<String> RECOMMENDATION_COLUMNS = List.of(
+            "id", "date", "result", "nitrogen", "phosphorous", "pottasium", "ph", "season", "city",
+            "temperature", "humidity", "rainfall");
+
+    private static final String LOCK_NAME = "cropapp-history-retention";
+    private static final String SUFFIX = ".col.gz";
+
+    @Autowired
+    private PredictionRepository predictionRepository;
+
+    @Autowired
+    private RecommendationRepository recommendationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${retention.archive-after-days:365}")
+    private int archiveAfterDays;
+
+    @Value("${retention.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${retention.archive-dir:./data/archive}")
+    private String archiveDir;
+
+    @Value("${retention.lock-timeout-seconds:10}")
+    private int lockTimeoutSeconds;
+
+    @Value("${retention.read-cache-rows:200000}")
+    private int readCacheRows;
+
+    private final Map<Month, Object> fileLocks = new ConcurrentHashMap<>();
+    private final AtomicBoolean archiving = new AtomicBoolean();
+
+    // Ordre d'accès : le fichier le moins récemment lu part le premier quand read-cache-rows est dépassé
+    private final LinkedHashMap<Path, CachedFile> readCache = new LinkedHashMap<>(64, 0.75f, true);
+    private int cachedRows;
+
+    /**
+     * Archive d'un utilisateur pour un mois : unité de verrouillage et de fusion des segments.
+     */
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    static final class Month {
+        private final String table;
+        private final Long userId;
+        private final YearMonth month;
+
+        /** Nom du verrou MySQL (64 caractères au plus). */
+        String lockName() {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256")
+                        .digest(toString().getBytes(StandardCharsets.UTF_8));
+                return "cropapp-archive-" + HexFormat.of().formatHex(digest, 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return table + "/" + userId + "/" + month;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static final class CachedFile {
+        private final String version;
+        private final List<Map<String, Object>> rows;
+    }
+
+    /**
+     * Passage planifié lancé sur son propre thread : le thread du planificateur ne reste pas bloqué le temps de
+     * l'archivage (synchronisation des quotas, baux des jobs, membres du cache).
+     */
+    @Scheduled(cron = "${retention.cron:0 30 2 * * *}")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        if (!archiving.compareAndSet(false, true)) {
+            log.info("Rétention déjà en cours sur cette réplique");
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                archiveOldRows();
+            } catch (RuntimeException e) {
+                log.warn("Rétention en échec : {}", e.getMessage(), e);
+            } finally {
+                archiving.set(false);
+            }
+        }, "history-retention");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void archiveOldRows() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(archiveAfterDays);
+        runExclusively(() -> {
+            int predictions = archivePredictions(cutoff);
+            int recommendations = archiveRecommendations(cutoff);
+            log.info("Rétention : {} prédiction(s) et {} recommandation(s) archivées avant {}",
+                    predictions, recommendations, cutoff);
+        });
+    }
+
+    public int archivePredictions(LocalDateTime cutoff) {
+        int total = 0;
+        Integer lastId = 0;
+        Set<Month> touched = new LinkedHashSet<>();
+        List<Prediction> chunk;
+        while (!(chunk = predictionRepository.findArchivable(cutoff, lastId, PageRequest.of(0, chunkSize))).isEmpty()) {
+            Map<Month, List<Map<String, Object>>> byMonth = new LinkedHashMap<>();
+            for (Prediction p : chunk) {
+                Long userId = p.getUser() != null ? p.getUser().getId() : 0L;
+                byMonth.computeIfAbsent(new Month(WriteBehindService.PREDICTION_TABLE, userId, YearMonth.from(p.getDate())),
+                        k -> new ArrayList<>()).add(toRow(p));
+            }
+            byMonth.forEach((month, rows) -> append(month, rows));
+            touched.addAll(byMonth.keySet());
+
+            List<Integer> ids = chunk.stream().map(Prediction::getId).toList();
+            predictionRepository.deleteByIds(ids);
+            lastId = ids.get(ids.size() - 1);
+            total += ids.size();
+        }
+        touched.forEach(this::compact);
+        return total;
+    }
+
+    public int archiveRecommendations(LocalDateTime cutoff) {
+        int total = 0;
+        Long lastId = 0L;
+        Set<Month> touched = new LinkedHashSet<>();
+        List<Recommendation> chunk;
+        while (!(chunk = recommendationRepository.findArchivable(cutoff, lastId, PageRequest.of(0, chunkSize))).isEmpty()) {
+            Map<Month, List<Map<String, Object>>> byMonth = new LinkedHashMap<>();
+            for (Recommendation r : chunk) {
+                byMonth.computeIfAbsent(new Month(WriteBehindService.RECOMMENDATION_TABLE, r.getUser().getId(),
+                        YearMonth.from(r.getDate())), k -> new ArrayList<>()).add(toRow(r));
+            }
+            byMonth.forEach((month, rows) -> append(month, rows));
+            touched.addAll(byMonth.keySet());
+
+            List<Long> ids = chunk.stream().map(Recommendation::getId).toList();
+            recommendationRepository.deleteByIds(ids);
+            lastId = ids.get(ids.size() - 1);
+            total += ids.size();
+        }
+        touched.forEach(this::compact);
+        return total;
+    }
+
+    public List<Prediction> archivedPredictions(Long userId) {
+        return readAll(WriteBehindService.PREDICTION_TABLE, userId).stream().map(this::toPrediction).toList();
+    }
+
+    public List<Recommendation> archivedRecommendations(Long userId) {
+        return readAll(WriteBehindService.RECOMMENDATION_TABLE, userId).stream().map(this::toRecommendation).toList();
+    }
+
+    /**
+     * Retire des lignes archivées d'un utilisateur ; renvoie le nombre de lignes supprimées.
+     * Seuls les segments qui contiennent l'un des ids sont réécrits.
+     */
+    public int deleteArchived(String table, Long userId, Collection<? extends Number> ids) {
+        Set<Long> targets = ids.stream().map(Number::longValue).collect(Collectors.toCollection(HashSet::new));
+        List<String> columns = columns(table);
+        Set<YearMonth> months = files(table, userId, "*").stream().map(HistoryArchiveService::monthOf)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        int deleted = 0;
+        for (YearMonth yearMonth : months) {
+            Month month = new Month(table, userId, yearMonth);
+            deleted += withLock(month, () -> {
+                int removed = 0;
+                for (Path path : files(month)) {
+                    List<Map<String, Object>> rows = read(path);
+                    List<Map<String, Object>> kept = rows.stream()
+                            .filter(row -> !targets.contains(((Number) row.get("id")).longValue()))
+                            .toList();
+                    if (kept.size() == rows.size()) {
+                        continue;
+                    }
+                    removed += rows.size() - kept.size();
+                    try {
+                        if (kept.isEmpty()) {
+                            Files.delete(path);
+                        } else {
+                            ColumnarArchive.write(path, columns, kept);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return removed;
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Ajoute un lot au mois sous forme d'un nouveau segment : coût proportionnel au lot, pas au fichier.
+     */
+    void append(Month month, List<Map<String, Object>> rows) {
+        withLock(month, () -> {
+            try {
+                ColumnarArchive.write(segment(month), columns(month.getTable()), rows);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Fusionne les segments d'un mois en un seul fichier {yyyy-MM}.col.gz (dédoublonné par id : un lot rejoué
+     * après un arrêt entre l'écriture du segment et le DELETE ne crée pas de doublon). Une fois par mois touché
+     * et par passage, donc linéaire dans le nombre de lignes archivées.
+     */
+    void compact(Month month) {
+        withLock(month, () -> {
+            List<Path> segments = files(month);
+            Path merged = Path.of(archiveDir, month.getTable(), String.valueOf(month.getUserId()), month.getMonth() + SUFFIX);
+            if (segments.isEmpty() || segments.equals(List.of(merged))) {
+                return null;
+            }
+            try {
+                ColumnarArchive.write(merged, columns(month.getTable()), dedup(segments));
+                // Arrêt ici : segments et fichier fusionné coexistent, la lecture dédoublonne par id
+                for (Path segment : segments) {
+                    if (!segment.equals(merged)) {
+                        Files.deleteIfExists(segment);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    private List<Map<String, Object>> readAll(String table, Long userId) {
+        // Un segment peut disparaître entre la liste et la lecture (fusion ou suppression sur un autre réplica)
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return dedup(files(table, userId, "*"));
+            } catch (UncheckedIOException e) {
+                if (!(e.getCause() instanceof NoSuchFileException) || attempt == 3) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<Map<String, Object>> dedup(List<Path> paths) {
+        Map<Long, Map<String, Object>> rows = new LinkedHashMap<>();
+        for (Path path : paths) {
+            read(path).forEach(row -> rows.putIfAbsent(((Number) row.get("id")).longValue(), row));
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    /**
+     * Lignes d'un fichier, gardées en mémoire tant que le fichier n'a pas changé (même inode, date et taille) :
+     * un fichier n'est jamais modifié sur place, toute réécriture est un renommage atomique.
+     */
+    private List<Map<String, Object>> read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            String version = attributes.fileKey() + "/" + attributes.lastModifiedTime().toMillis() + "/" + attributes.size();
+            Path key = path.toAbsolutePath();
+            synchronized (readCache) {
+                CachedFile cached = readCache.get(key);
+                if (cached != null && cached.getVersion().equals(version)) {
+                    return cached.getRows();
+                }
+            }
+            List<Map<String, Object>> rows = Collections.unmodifiableList(ColumnarArchive.read(path));
+            synchronized (readCache) {
+                CachedFile previous = readCache.put(key, new CachedFile(version, rows));
+                cachedRows += rows.size() - (previous != null ? previous.getRows().size() : 0);
+                Iterator<CachedFile> it = readCache.values().iterator();
+                while (cachedRows > readCacheRows && it.hasNext()) {
+                    cachedRows -= it.next().getRows().size();
+                    it.remove();
+                }
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Path> files(Month month) {
+        return files(month.getTable(), month.getUserId(), month.getMonth() + "*");
+    }
+
+    private List<Path> files(String table, Long userId, String monthGlob) {
+        Path dir = Path.of(archiveDir, table, String.valueOf(userId));
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, monthGlob + SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Nouveau segment du mois : {yyyy-MM}.{horodatage}-{aléa}.col.gz, nom unique entre réplicas.
+     */
+    private Path segment(Month month) {
+        String name = month.getMonth() + "." + System.currentTimeMillis() + "-"
+                + HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextInt()) + SUFFIX;
+        return Path.of(archiveDir, month.getTable(), String.valueOf(month.getUserId()), name);
+    }
+
+    private static YearMonth monthOf(Path path) {
+        return YearMonth.parse(path.getFileName().toString().substring(0, 7));
+    }
+
+    private static List<String> columns(String table) {
+        return WriteBehindService.PREDICTION_TABLE.equals(table) ? PREDICTION_COLUMNS : RECOMMENDATION_COLUMNS;
+    }
+
+    /**
+     * Toute modification des fichiers d'un mois passe par ici : verrou local, puis verrou MySQL nommé d'après
+     * le mois (partagé par les réplicas qui partagent le répertoire) tenu sur une connexion dédiée.
+     * Sans GET_LOCK (base embarquée des tests), le verrou local seul.
+     */
+    private <T> T withLock(Month month, Supplier<T> action) {
+        synchronized (fileLocks.computeIfAbsent(month, k -> new Object())) {
+            return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+                String name = month.lockName();
+                Boolean acquired = lock(connection, name, lockTimeoutSeconds);
+                if (Boolean.FALSE.equals(acquired)) {
+                    throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                            "Archive " + month + " verrouillée par un autre réplica, réessayer");
+                }
+                try {
+                    return action.get();
+                } finally {
+                    if (acquired != null) {
+                        release(connection, name);
+                    }
+                }
+            });
+        }
+    }
+
+    private void runExclusively(Runnable job) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (Boolean.FALSE.equals(lock(connection, LOCK_NAME, 0))) {
+                log.info("Rétention déjà en cours sur un autre réplica");
+                return null;
+            }
+            try {
+                job.run();
+            } finally {
+                release(connection, LOCK_NAME);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * true si le verrou est pris, false si un autre le tient encore après timeoutSeconds,
+     * null si la base n'a pas GET_LOCK.
+     */
+    private Boolean lock(Connection connection, String name, int timeoutSeconds) {
+        try (PreparedStatement st = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            st.setString(1, name);
+            st.setInt(2, timeoutSeconds);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private void release(Connection connection, String name) {
+        try (PreparedStatement st = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            st.setString(1, name);
+            st.execute();
+        } catch (SQLException e) {
+            // rien à libérer
+        }
+    }
+
+    private Map<String, Object> toRow(Prediction p) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", p.getId());
+        row.put("date", p.getDate());
+        row.put("result", p.getResult());
+        row.put("humidity", p.getHumidity());
+        row.put("temperature", p.getTemperature());
+        row.put("rainfall", p.getRainfall());
+        row.put("area", p.getArea());
+        row.put("crop", p.getCrop());
+        row.put("city", p.getCity());
+        row.put("season", p.getSeason());
+        return row;
+    }
+
+    private Map<String, Object> toRow(Recommendation r) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", r.getId());
+        row.put("date", r.getDate());
+        row.put("result", r.getResult());
+        row.put("nitrogen", r.getNitrogen());
+        row.put("phosphorous", r.getPhosphorous());
+        row.put("pottasium", r.getPottasium());
+        row.put("ph", r.getPh());
+        row.put("season", r.getSeason());
+        row.put("city", r.getCity());
+        row.put("temperature", r.getTemperature());
+        row.put("humidity", r.getHumidity());
+        row.put("rainfall", r.getRainfall());
+        return row;
+    }
+
+    private Prediction toPrediction(Map<String, Object> row) {
+        Prediction p = new Prediction();
+        p.setId(((Number) row.get("id")).intValue());
+        p.setDate((LocalDateTime) row.get("date"));
+        p.setResult(row.get("result") != null ? ((Number) row.get("result")).doubleValue() : 0);
+        p.setHumidity(toFloat(row.get("humidity")));
+        p.setTemperature(toFloat(row.get("temperature")));
+        p.setRainfall(toFloat(row.get("rainfall")));
+        p.setArea(toFloat(row.get("area")));
+        p.setCrop((String) row.get("crop"));
+        p.setCity((String) row.get("city"));
+        // Absente des archives écrites avant la migration V7
+        p.setSeason((String) row.get("season"));
+        return p;
+    }
+
+    private Recommendation toRecommendation(Map<String, Object> row) {
+        Recommendation r = new Recommendation();
+        r.setId(((Number) row.get("id")).longValue());
+        r.setDate((LocalDateTime) row.get("date"));
+        r.setResult((String) row.get("result"));
+        r.setNitrogen(toDouble(row.get("nitrogen")));
+        r.setPhosphorous(toDouble(row.get("phosphorous")));
+        r.setPottasium(toDouble(row.get("pottasium")));
+        r.setPh(toDouble(row.get("ph")));
+        r.setSeason((String) row.get("season"));
+        r.setCity((String) row.get("city"));
+        r.setTemperature(toDouble(row.get("temperature")));
+        r.setHumidity(toDouble(row.get("humidity")));
+        r.setRainfall(toDouble(row.get("rainfall")));
+        return r;
+    }
+
+    private Float toFloat(Object value) {
+        return value == null ? null : ((Number) value).floatValue();
+    }
+
+    private Double toDouble(Object value) {
+        return value == null ? null : ((Number) value).doubleValue();
+    }
+}
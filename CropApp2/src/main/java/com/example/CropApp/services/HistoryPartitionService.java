@@ -0,0 +1,111 @@
+package com.example.CropApp.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Maintenance des partitions mensuelles de prediction et recommendation (créées par la migration V3).
+ *
+ * Chaque mois, les partitions des prochains mois sont détachées de pmax et, si
+ * history.partitions.retention-months > 0, les mois plus anciens sont supprimés d'un bloc (DROP PARTITION).
+ */
+@Service
+public class HistoryPartitionService {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryPartitionService.class);
+
+    public static final int MONTHS_AHEAD = 3;
+    public static final List<String> TABLES = List.of("prediction", "recommendation");
+
+    private static final DateTimeFormatter NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${history.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    public static String partitionName(YearMonth month) {
+        return month.format(NAME);
+    }
+
+    public static String partitionDefinition(YearMonth month) {
+        return "PARTITION " + partitionName(month) + " VALUES LESS THAN ('" + month.plusMonths(1).atDay(1) + "')";
+    }
+
+    @Scheduled(cron = "${history.partitions.cron:0 0 3 1 * *}")
+    public void maintain() {
+        for (String table : TABLES) {
+            List<String> partitions = partitions(table);
+            if (partitions.isEmpty()) {
+                continue;
+            }
+            try {
+                ensureFuturePartitions(table, partitions);
+                if (retentionMonths > 0) {
+                    dropPartitionsBefore(table, YearMonth.now().minusMonths(retentionMonths));
+                }
+            } catch (DataAccessException e) {
+                // Un autre réplica a pu faire la même opération au même moment
+                log.warn("Maintenance des partitions de {} ignorée : {}", table, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Supprime les partitions entièrement antérieures au mois donné.
+     */
+    public int dropPartitionsBefore(String table, YearMonth cutoff) {
+        String cutoffName = partitionName(cutoff);
+        List<String> old = partitions(table).stream()
+                .filter(name -> name.matches("p\\d{6}") && name.compareTo(cutoffName) < 0)
+                .toList();
+        if (!old.isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " DROP PARTITION " + String.join(", ", old));
+            int snapshots = jdbcTemplate.update("DELETE FROM " + table + WriteBehindService.SNAPSHOT_SUFFIX + " WHERE date < ?",
+                    Timestamp.valueOf(cutoff.atDay(1).atStartOfDay()));
+            log.info("Partitions supprimées de {} : {} ({} instantanés)", table, old, snapshots);
+        }
+        return old.size();
+    }
+
+    private void ensureFuturePartitions(String table, List<String> existing) {
+        YearMonth target = YearMonth.now().plusMonths(MONTHS_AHEAD);
+        StringBuilder definitions = new StringBuilder();
+        for (YearMonth month = YearMonth.now(); !month.isAfter(target); month = month.plusMonths(1)) {
+            if (!existing.contains(partitionName(month))) {
+                definitions.append(partitionDefinition(month)).append(", ");
+            }
+        }
+        if (definitions.length() > 0) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " REORGANIZE PARTITION pmax INTO ("
+                    + definitions + "PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+        }
+    }
+
+    /**
+     * Partitions existantes ; liste vide si la table n'est pas partitionnée (ou hors MySQL).
+     */
+    private List<String> partitions(String table) {
+        try {
+            return jdbcTemplate.queryForList(
+                    "SELECT PARTITION_NAME FROM information_schema.PARTITIONS"
+                            + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL"
+                            + " ORDER BY PARTITION_ORDINAL_POSITION",
+                    String.class, table);
+        } catch (DataAccessException e) {
+            return List.of();
+        }
+    }
+}
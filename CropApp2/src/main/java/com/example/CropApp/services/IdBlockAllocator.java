@@ -0,0 +1,72 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.IdBlock;
+import com.example.CropApp.repositories.IdBlockRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Réserve des identifiants par blocs dans la table id_block, pour pouvoir renvoyer l'id au client
+ * avant que la ligne ne soit réellement insérée (mode write-behind).
+ */
+@Service
+public class IdBlockAllocator {
+
+    @Autowired
+    private IdBlockRepository idBlockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${writebehind.id-block-size:100}")
+    private int blockSize;
+
+    private final Map<String, long[]> ranges = new HashMap<>();
+
+    /**
+     * Prochain id libre pour la table donnée ("prediction" ou "recommendation").
+     */
+    public synchronized long next(String table) {
+        long[] range = ranges.get(table);
+        if (range == null || range[0] >= range[1]) {
+            range = reserveBlock(table);
+            ranges.put(table, range);
+        }
+        return range[0]++;
+    }
+
+    private long[] reserveBlock(String table) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            return tx.execute(status -> lockAndAdvance(table));
+        } catch (DataIntegrityViolationException e) {
+            // Un autre réplica a créé la ligne id_block en même temps : elle existe maintenant
+            return tx.execute(status -> lockAndAdvance(table));
+        }
+    }
+
+    private long[] lockAndAdvance(String table) {
+        // max(id) protège contre les lignes insérées en AUTO_INCREMENT hors write-behind
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        IdBlock block = idBlockRepository.findForUpdate(table)
+                .orElseGet(() -> new IdBlock(table, maxId + 1));
+
+        long start = Math.max(block.getNextId(), maxId + 1);
+        block.setNextId(start + blockSize);
+        idBlockRepository.saveAndFlush(block);
+        return new long[]{start, start + blockSize};
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.config.JwtProvider;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Rejeu des soumissions portant un en-tête Idempotency-Key.
+ *
+ * La clé est rattachée à l'utilisateur du JWT et enregistrée dans la table idempotency_key, partagée par les
+ * répliques : un nouvel essai arrivé sur une autre réplique est reconnu. Une requête déjà traitée renvoie la
+ * réponse mémorisée sans rappeler Flask ni réinsérer de ligne ; une requête encore en cours reçoit 409
+ * immédiatement (Retry-After), sans occuper de thread. Le corps est comparé par SHA-256 de son JSON.
+ *
+ * Une requête en cours garde la clé au plus idempotency.in-progress-seconds (réplique arrêtée en plein calcul) ;
+ * une réponse mémorisée expire après idempotency.ttl-seconds. Chaque réservation porte un jeton aléatoire :
+ * une requête lente dont la clé a été reprise entre-temps ne peut ni écraser la réponse du nouveau détenteur
+ * ni libérer sa réservation.
+ */
+@Service
+public class IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final TypeReference<Map<String, Object>> BODY = new TypeReference<>() {};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${idempotency.in-progress-seconds:120}")
+    private long inProgressSeconds;
+
+    public ResponseEntity<Map<String, Object>> execute(String idempotencyKey, String jwt, Object requestBody,
+                                                       Supplier<ResponseEntity<Map<String, Object>>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+
+        String keyHash = sha256(JwtProvider.getEmailFromToken(jwt) + ":" + idempotencyKey);
+        String requestHash = requestHash(requestBody);
+
+        String claimToken;
+        try {
+            claimToken = claim(keyHash, requestHash);
+            if (claimToken == null) {
+                return replay(keyHash, requestHash);
+            }
+        } catch (DataAccessException e) {
+            // Base indisponible : la requête est traitée sans protection contre les doublons
+            log.warn("Idempotency-Key non vérifiée, base indisponible : {}", e.getMessage());
+            return action.get();
+        }
+
+        ResponseEntity<Map<String, Object>> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            release(keyHash, claimToken);
+            throw e;
+        }
+        if (isReplayable(response)) {
+            store(keyHash, claimToken, response);
+        } else {
+            // Les erreurs ne sont pas mémorisées : un nouvel essai doit pouvoir recalculer
+            release(keyHash, claimToken);
+        }
+        return response;
+    }
+
+    /**
+     * Réserve la clé pour cette requête et renvoie le jeton de la réservation ; null si une autre requête la
+     * détient déjà (en cours ou terminée).
+     */
+    private String claim(String keyHash, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        String claimToken = UUID.randomUUID().toString();
+        jdbcTemplate.update("DELETE FROM idempotency_key WHERE key_hash = ? AND expires_at < ?",
+                keyHash, Timestamp.valueOf(now));
+        try {
+            jdbcTemplate.update("INSERT INTO idempotency_key (key_hash, request_hash, claim_token, expires_at) "
+                    + "VALUES (?, ?, ?, ?)", keyHash, requestHash, claimToken, Timestamp.valueOf(now.plusSeconds(inProgressSeconds)));
+            return claimToken;
+        } catch (DuplicateKeyException e) {
+            return null;
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> replay(String keyHash, String requestHash) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT request_hash, status_code, response_body FROM idempotency_key WHERE key_hash = ?", keyHash);
+        if (rows.isEmpty()) {
+            // Libérée entre l'INSERT et la lecture : la requête d'origine a échoué
+            return error(HttpStatus.CONFLICT, "La requête d'origine a échoué, veuillez réessayer.");
+        }
+        Map<String, Object> row = rows.get(0);
+        if (!requestHash.equals(row.get("request_hash"))) {
+            return error(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key déjà utilisée avec une autre requête.");
+        }
+        if (row.get("status_code") == null) {
+            Map<String, Object> body = new HashMap<>();
+            body.put("error", "Une requête avec cette Idempotency-Key est toujours en cours.");
+            return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").body(body);
+        }
+        try {
+            Map<String, Object> body = row.get("response_body") != null
+                    ? objectMapper.readValue((String) row.get("response_body"), BODY) : null;
+            return ResponseEntity.status(((Number) row.get("status_code")).intValue())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Réponse mémorisée illisible", e);
+        }
+    }
+
+    private void store(String keyHash, String claimToken, ResponseEntity<Map<String, Object>> response) {
+        try {
+            int updated = jdbcTemplate.update("UPDATE idempotency_key SET status_code = ?, response_body = ?, expires_at = ? "
+                            + "WHERE key_hash = ? AND claim_token = ? AND status_code IS NULL",
+                    response.getStatusCode().value(),
+                    response.getBody() != null ? objectMapper.writeValueAsString(response.getBody()) : null,
+                    Timestamp.valueOf(LocalDateTime.now().plusSeconds(ttlSeconds)), keyHash, claimToken);
+            if (updated == 0) {
+                // Bail échu puis clé reprise par un autre essai : c'est sa réponse qui fera foi
+                log.warn("Réponse non mémorisée : Idempotency-Key reprise par une autre requête");
+            }
+        } catch (JsonProcessingException | DataAccessException e) {
+            log.warn("Réponse non mémorisée pour l'Idempotency-Key : {}", e.getMessage());
+            release(keyHash, claimToken);
+        }
+    }
+
+    private void release(String keyHash, String claimToken) {
+        try {
+            jdbcTemplate.update("DELETE FROM idempotency_key WHERE key_hash = ? AND claim_token = ? AND status_code IS NULL",
+                    keyHash, claimToken);
+        } catch (DataAccessException e) {
+            // La clé se libérera à la fin de son bail
+            log.warn("Idempotency-Key non libérée : {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purge() {
+        try {
+            jdbcTemplate.update("DELETE FROM idempotency_key WHERE expires_at < ?", Timestamp.valueOf(LocalDateTime.now()));
+        } catch (DataAccessException e) {
+            log.debug("Purge de idempotency_key impossible : {}", e.getMessage());
+        }
+    }
+
+    private boolean isReplayable(ResponseEntity<Map<String, Object>> response) {
+        return response.getStatusCode().is2xxSuccessful()
+                && (response.getBody() == null || !response.getBody().containsKey("error"));
+    }
+
+    /**
+     * SHA-256 du corps en JSON, clés triées : indépendant de l'ordre des champs envoyés.
+     */
+    private String requestHash(Object requestBody) {
+        try {
+            return sha256(objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                    .writeValueAsString(requestBody));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Corps de requête non sérialisable", e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("error", message);
+        return ResponseEntity.status(status).body(body);
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.Job;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.repositories.JobRepository;
+import com.example.CropApp.repositories.UserRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jobs asynchrones : lots de prédictions ou de recommandations trop gros pour une requête HTTP.
+ *
+ * Le job et ses éléments sont écrits en base à la soumission. Chaque réplique interroge la table toutes les
+ * jobs.poll-interval-ms et prend un job par UPDATE conditionnel (une seule réplique gagne), avec un bail
+ * prolongé après chaque élément. Si la réplique s'arrête, le bail expire et une autre reprend le job là où
+ * il en était : seuls les éléments encore PENDING sont recalculés.
+ */
+@Service
+public class JobService {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    public static final String PREDICTION = "prediction";
+    public static final String RECOMMENDATION = "recommendation";
+
+    private static final String PENDING = "PENDING";
+    private static final Set<String> FINISHED = Set.of(Job.DONE, Job.FAILED, Job.CANCELLED);
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PredictionService predictionService;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DistrictIndex districtIndex;
+
+    @Value("${jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${jobs.workers:2}")
+    private int workers;
+
+    @Value("${jobs.max-items:5000}")
+    private int maxItems;
+
+    @Value("${jobs.max-running-per-user:1}")
+    private long maxRunningPerUser;
+
+    @Value("${jobs.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${jobs.stream-interval-ms:1000}")
+    private long streamIntervalMs;
+
+    @Value("${jobs.stream-threads:4}")
+    private int streamThreads;
+
+    private final String owner = System.getenv().getOrDefault("HOSTNAME", "local") + ":" + UUID.randomUUID();
+    private final AtomicInteger running = new AtomicInteger();
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService streams;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        // File non bornée mais jamais plus de workers jobs à la fois : le compteur running limite les prises
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "job-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // Plusieurs threads : un client lent, dont l'envoi bloque, ne retarde pas les autres flux
+        AtomicInteger streamCounter = new AtomicInteger();
+        streams = Executors.newScheduledThreadPool(streamThreads, runnable -> {
+            Thread thread = new Thread(runnable, "job-streams-" + streamCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Les jobs en cours gardent leur bail jusqu'à expiration, puis une autre réplique les reprend
+        executor.shutdownNow();
+        streams.shutdownNow();
+    }
+
+    /**
+     * Enregistre le job et ses éléments (chaque élément est le formdata d'un appel /predict ou /generate).
+     */
+    public Job submit(String type, List<Map<String, Object>> items, User user) {
+        if (!PREDICTION.equals(type) && !RECOMMENDATION.equals(type)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "type doit valoir prediction ou recommendation");
+        }
+        if (items == null || items.isEmpty() || items.size() > maxItems) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "entre 1 et " + maxItems + " éléments");
+        }
+        for (int i = 0; i < items.size(); i++) {
+            try {
+                districtIndex.requireKnownCity(items.get(i));
+            } catch (ResponseStatusException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "élément " + i + " : " + e.getReason());
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(items.size());
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Job job = new Job();
+            job.setUserId(user.getId());
+            job.setType(type);
+            job.setStatus(Job.QUEUED);
+            job.setTotalItems(items.size());
+            job.setDoneItems(0);
+            job.setFailedItems(0);
+            job.setCreatedAt(LocalDateTime.now());
+            Job saved = jobRepository.save(job);
+
+            for (int i = 0; i < items.size(); i++) {
+                rows.add(new Object[]{saved.getId(), i, toJson(Map.of("formdata", items.get(i))), PENDING});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO job_item (job_id, item_index, payload, status) VALUES (?, ?, ?, ?)", rows);
+            return saved;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.poll-interval-ms:2000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        int free = workers - running.get();
+        if (free <= 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> claimedUsers = new HashSet<>();
+        for (Job candidate : jobRepository.findClaimable(now, maxRunningPerUser, PageRequest.of(0, free * 4))) {
+            if (running.get() >= workers) {
+                return;
+            }
+            // un job par utilisateur et par tour : les autres utilisateurs passent avant son job suivant
+            if (!claimedUsers.add(candidate.getUserId())) {
+                continue;
+            }
+            Long id = candidate.getId();
+            if (jobRepository.claim(id, owner, now, now.plusSeconds(leaseSeconds)) == 1) {
+                running.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        run(id);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    private void run(Long jobId) {
+        Job job = jobRepository.findById(jobId).orElseThrow();
+        int done = count(jobId, Job.DONE);
+        int failed = count(jobId, Job.FAILED);
+        try {
+            User user = userRepository.findById(job.getUserId()).orElseThrow();
+            List<Map<String, Object>> pending = jdbcTemplate.queryForList(
+                    "SELECT item_index, payload FROM job_item WHERE job_id = ? AND status = ? ORDER BY item_index",
+                    jobId, PENDING);
+
+            for (Map<String, Object> item : pending) {
+                // Bail perdu (réplique jugée morte) ou job annulé : on s'arrête sans rien écrire de plus
+                if (jobRepository.heartbeat(jobId, owner, LocalDateTime.now().plusSeconds(leaseSeconds), done, failed) == 0) {
+                    log.info("Job {} abandonné par {} (annulé ou repris ailleurs)", jobId, owner);
+                    return;
+                }
+                Map<String, Object> payload = objectMapper.readValue((String) item.get("payload"), new TypeReference<>() {});
+                Map<String, Object> result = execute(job.getType(), payload, user);
+                boolean ok = result != null && !result.containsKey("error");
+                // Écrit seulement si le bail est toujours à nous : une réplique qui l'a perdu pendant l'appel
+                // Flask ne remplace pas le résultat de celle qui a repris le job, et s'arrête
+                int updated = jdbcTemplate.update("UPDATE job_item SET status = ?, result = ?, error = ? "
+                                + "WHERE job_id = ? AND item_index = ? AND status = ? AND EXISTS (SELECT 1 FROM job "
+                                + "WHERE id = ? AND owner = ? AND status = ? AND lease_until > ?)",
+                        ok ? Job.DONE : Job.FAILED, ok ? toJson(result) : null,
+                        ok ? null : truncate(String.valueOf(result == null ? "réponse vide" : result.get("error"))),
+                        jobId, ((Number) item.get("item_index")).intValue(), PENDING,
+                        jobId, owner, Job.RUNNING, Timestamp.valueOf(LocalDateTime.now()));
+                if (updated == 0) {
+                    log.info("Job {} : bail perdu par {} pendant l'élément {}, arrêt", jobId, owner, item.get("item_index"));
+                    return;
+                }
+                if (ok) {
+                    done++;
+                } else {
+                    failed++;
+                }
+            }
+            jobRepository.finish(jobId, owner, Job.DONE, done, failed, LocalDateTime.now(), null);
+        } catch (Exception e) {
+            log.warn("Job {} en échec : {}", jobId, e.getMessage());
+            jobRepository.finish(jobId, owner, Job.FAILED, done, failed, LocalDateTime.now(),
+                    truncate(String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Messages d'erreur ramenés à la taille des colonnes error (VARCHAR(1000)).
+     */
+    private static String truncate(String error) {
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+
+    private Map<String, Object> execute(String type, Map<String, Object> payload, User user) throws Exception {
+        if (PREDICTION.equals(type)) {
+            return predictionService.callFlaskApiForUser(payload, user);
+        }
+        return recommendationService.generateRecommendationForUser(payload, user);
+    }
+
+    public Map<String, Object> view(Long jobId, User user) {
+        return view(find(jobId, user));
+    }
+
+    public List<Map<String, Object>> list(User user, int limit) {
+        return jobRepository.findByUserIdOrderByCreatedAtDesc(user.getId(), PageRequest.of(0, limit))
+                .stream().map(this::view).toList();
+    }
+
+    public List<Map<String, Object>> results(Long jobId, User user, int offset, int limit) {
+        find(jobId, user);
+        return items(jobId, offset - 1, limit);
+    }
+
+    public boolean cancel(Long jobId, User user) {
+        find(jobId, user);
+        return jobRepository.cancel(jobId, user.getId(), LocalDateTime.now()) == 1;
+    }
+
+    /**
+     * Progression (event progress) et résultats au fil de l'eau (event item), puis done quand le job est terminé.
+     */
+    public SseEmitter stream(Long jobId, User user) {
+        find(jobId, user);
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(30));
+        streams.execute(new JobStream(jobId, emitter));
+        return emitter;
+    }
+
+    /**
+     * Un tour de lecture en base par intervalle ; se replanifie tant que le job n'est pas terminé.
+     */
+    private final class JobStream implements Runnable {
+
+        private final Long jobId;
+        private final SseEmitter emitter;
+        private int lastIndex = -1;
+
+        private JobStream(Long jobId, SseEmitter emitter) {
+            this.jobId = jobId;
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Job job = jobRepository.findById(jobId).orElseThrow();
+                for (Map<String, Object> item : items(jobId, lastIndex, 500)) {
+                    emitter.send(SseEmitter.event().name("item").data(item, MediaType.APPLICATION_JSON));
+                    lastIndex = (Integer) item.get("index");
+                }
+                emitter.send(SseEmitter.event().name("progress").data(view(job), MediaType.APPLICATION_JSON));
+                if (FINISHED.contains(job.getStatus()) && lastIndex >= job.getDoneItems() + job.getFailedItems() - 1) {
+                    emitter.send(SseEmitter.event().name("done").data(Map.of("status", job.getStatus())));
+                    emitter.complete();
+                    return;
+                }
+                streams.schedule(this, streamIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // client parti, délai dépassé ou arrêt de la réplique
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private Job find(Long jobId, User user) {
+        return jobRepository.findByIdAndUserId(jobId, user.getId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Job introuvable : " + jobId));
+    }
+
+    /**
+     * Éléments terminés (DONE ou FAILED) d'index strictement supérieur à afterIndex.
+     */
+    private List<Map<String, Object>> items(Long jobId, int afterIndex, int limit) {
+        return jdbcTemplate.query("SELECT item_index, status, result, error FROM job_item "
+                        + "WHERE job_id = ? AND item_index > ? AND status <> ? ORDER BY item_index LIMIT ?",
+                (rs, rowNum) -> {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("index", rs.getInt("item_index"));
+                    item.put("status", rs.getString("status"));
+                    String result = rs.getString("result");
+                    item.put("result", result == null ? null : fromJson(result));
+                    item.put("error", rs.getString("error"));
+                    return item;
+                }, jobId, afterIndex, PENDING, limit);
+    }
+
+    private int count(Long jobId, String status) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM job_item WHERE job_id = ? AND status = ?", Integer.class, jobId, status);
+        return count == null ? 0 : count;
+    }
+
+    private Map<String, Object> view(Job job) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("id", job.getId());
+        view.put("type", job.getType());
+        view.put("status", job.getStatus());
+        view.put("total", job.getTotalItems());
+        view.put("done", job.getDoneItems());
+        view.put("failed", job.getFailedItems());
+        view.put("createdAt", job.getCreatedAt());
+        view.put("startedAt", job.getStartedAt());
+        view.put("finishedAt", job.getFinishedAt());
+        view.put("error", job.getError());
+        return view;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Object> fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
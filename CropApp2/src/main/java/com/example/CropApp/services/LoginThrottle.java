@@ -0,0 +1,101 @@
+package com.example.CropApp.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limite les tentatives de connexion ratées par compte et par adresse IP, avant tout calcul BCrypt.
+ *
+ * Après max-failures échecs dans la fenêtre, la clé est bloquée ; chaque échec supplémentaire double
+ * le blocage (plafonné à max-lock-seconds). Une connexion réussie efface le compteur du compte.
+ * Compteurs en mémoire, donc par réplique.
+ */
+@Service
+public class LoginThrottle {
+
+    @Value("${auth.throttle.window-seconds:900}")
+    private long windowSeconds;
+
+    @Value("${auth.throttle.account-max-failures:5}")
+    private int accountMaxFailures;
+
+    @Value("${auth.throttle.ip-max-failures:20}")
+    private int ipMaxFailures;
+
+    @Value("${auth.throttle.base-lock-seconds:30}")
+    private long baseLockSeconds;
+
+    @Value("${auth.throttle.max-lock-seconds:900}")
+    private long maxLockSeconds;
+
+    private final Map<String, Failures> failures = new ConcurrentHashMap<>();
+
+    /**
+     * Secondes à attendre avant une nouvelle tentative, 0 si autorisée.
+     */
+    public long retryAfterSeconds(String email, String ip) {
+        long now = System.currentTimeMillis();
+        return Math.max(lockedFor(accountKey(email), now), lockedFor(ipKey(ip), now));
+    }
+
+    public void recordFailure(String email, String ip) {
+        long now = System.currentTimeMillis();
+        record(accountKey(email), accountMaxFailures, now);
+        record(ipKey(ip), ipMaxFailures, now);
+    }
+
+    public void recordSuccess(String email) {
+        failures.remove(accountKey(email));
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        failures.values().removeIf(f -> f.lockedUntil < now && f.windowStart + windowSeconds * 1000 < now);
+    }
+
+    private long lockedFor(String key, long now) {
+        Failures f = failures.get(key);
+        if (f == null || f.lockedUntil <= now) {
+            return 0;
+        }
+        return (f.lockedUntil - now + 999) / 1000;
+    }
+
+    private void record(String key, int maxFailures, long now) {
+        failures.compute(key, (k, f) -> {
+            if (f == null || f.windowStart + windowSeconds * 1000 < now) {
+                f = new Failures(now);
+            }
+            f.count++;
+            if (f.count >= maxFailures) {
+                int excess = Math.min(f.count - maxFailures, 20);
+                long lockSeconds = Math.min(maxLockSeconds, baseLockSeconds << excess);
+                f.lockedUntil = now + lockSeconds * 1000;
+            }
+            return f;
+        });
+    }
+
+    private static String accountKey(String email) {
+        return "account:" + (email == null ? "" : email.trim().toLowerCase());
+    }
+
+    private static String ipKey(String ip) {
+        return "ip:" + ip;
+    }
+
+    private static final class Failures {
+        private final long windowStart;
+        private int count;
+        private long lockedUntil;
+
+        private Failures(long windowStart) {
+            this.windowStart = windowStart;
+        }
+    }
+}
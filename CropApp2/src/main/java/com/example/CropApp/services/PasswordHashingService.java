@@ -0,0 +1,158 @@
+package com.example.CropApp.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hachage BCrypt sur un pool dédié et borné, hors des threads Tomcat.
+ *
+ * Une rafale de connexions occupe au plus auth.hashing.threads cœurs ; au-delà de
+ * auth.hashing.queue-capacity demandes en attente, la requête est refusée (503) au lieu de s'empiler, de même
+ * qu'une demande pas terminée en auth.hashing.timeout-ms (elle n'est alors plus calculée si elle attendait en file).
+ * Le coût BCrypt est calibré au démarrage pour viser auth.hashing.target-ms par hachage sur cette machine,
+ * sans descendre sous auth.hashing.min-cost.
+ */
+@Service
+public class PasswordHashingService {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private static final int MAX_COST = 16;
+
+    @Value("${auth.hashing.threads:0}")
+    private int threads;
+
+    @Value("${auth.hashing.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${auth.hashing.cost:0}")
+    private int fixedCost;
+
+    @Value("${auth.hashing.min-cost:10}")
+    private int minCost;
+
+    @Value("${auth.hashing.target-ms:250}")
+    private long targetMs;
+
+    @Value("${auth.hashing.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private ThreadPoolExecutor executor;
+    private volatile BCryptPasswordEncoder encoder;
+    private volatile int cost;
+
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        useCost(fixedCost > 0 ? fixedCost : minCost);
+        if (fixedCost <= 0) {
+            // En tâche de fond : le démarrage n'attend pas la calibration, le coût minimal sert d'ici là
+            executor.execute(this::calibrate);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public CompletableFuture<String> encode(CharSequence rawPassword) {
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Vrai si le hash a été produit avec un coût inférieur au coût courant (on ne rehache jamais vers le bas,
+     * sinon deux répliques calibrées différemment se renverraient le hash à chaque connexion).
+     */
+    public boolean needsRehash(String encodedPassword) {
+        return encoder.upgradeEncoding(encodedPassword);
+    }
+
+    public int currentCost() {
+        return cost;
+    }
+
+    private void useCost(int newCost) {
+        encoder = new BCryptPasswordEncoder(newCost);
+        cost = newCost;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            throw saturated();
+        }
+        // orTimeout complète future lui-même : une tâche encore en file ne lance plus son calcul BCrypt
+        return future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                throw saturated();
+            }
+            throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+        });
+    }
+
+    private static ResponseStatusException saturated() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Authentification saturée, réessayez");
+    }
+
+    private void calibrate() {
+        int chosen = minCost;
+        for (int candidate = minCost; candidate <= MAX_COST; candidate++) {
+            long millis = medianMillis(new BCryptPasswordEncoder(candidate));
+            if (millis > targetMs) {
+                break;
+            }
+            chosen = candidate;
+            if (millis * 2 > targetMs) {
+                // chaque +1 double le temps : le coût suivant dépasserait la cible
+                break;
+            }
+        }
+        useCost(chosen);
+        log.info("Coût BCrypt calibré à {} (cible {} ms)", chosen, targetMs);
+    }
+
+    private long medianMillis(BCryptPasswordEncoder candidate) {
+        long[] samples = new long[3];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            candidate.encode("calibration");
+            samples[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(samples);
+        return samples[1];
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.CropApp.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ligne d'historique en attente d'insertion (mode write-behind), telle qu'écrite dans le journal.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingRow {
+
+    private String table;
+    private Long id;
+    private LocalDateTime date;
+    private Map<String, Object> columns = new LinkedHashMap<>();
+}
@@ -0,0 +1,389 @@
+package com.example.CropApp.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Calcul d'avance des formulaires les plus demandés : hors des heures de pointe (precompute.cron), les
+ * formulaires reçus le plus souvent sur precompute.window-days jours sont recalculés auprès de Flask et déposés
+ * dans ResultCache, premier endroit consulté par /predict et /generate.
+ *
+ * Une clé chaude est un formulaire complet (district, saison, culture et surface ; ou district, saison et
+ * analyse de sol), la clé de ResultCache portant sur tout le formulaire. Chaque réplique fait le même classement
+ * mais ne recalcule que les clés dont elle est propriétaire : pas de verrou, et le travail se répartit comme le
+ * cache. precompute.max-requests-per-second est un budget global, partagé entre les membres de l'anneau.
+ *
+ * Le cache étant en mémoire, une réplique redémarrée dans la journée ne retrouve ses résultats d'avance qu'au
+ * passage suivant (ou par POST /internal/precompute/run).
+ *
+ * Un seul passage à la fois par réplique : le passage planifié est sauté si un passage manuel tourne encore, et
+ * POST /internal/precompute/run répond 409. Le passage manuel tourne sur son propre thread, pas sur celui de
+ * la requête HTTP ; son bilan se lit ensuite dans GET /internal/precompute (lastRun).
+ */
+@Service
+public class PrecomputeService {
+
+    private static final Logger log = LoggerFactory.getLogger(PrecomputeService.class);
+
+    // Les prédictions antérieures à la migration V7 n'ont pas de saison : elles ne sont pas retenues
+    private static final String PREDICTION_HOT_KEYS = """
+            SELECT city, crop, season, area, COUNT(*) AS hits FROM prediction
+            WHERE date >= ? AND city IS NOT NULL AND crop IS NOT NULL AND season IS NOT NULL AND area IS NOT NULL
+            GROUP BY city, crop, season, area HAVING COUNT(*) >= ? ORDER BY hits DESC LIMIT ?""";
+    private static final String RECOMMENDATION_HOT_KEYS = """
+            SELECT nitrogen, phosphorous, pottasium, ph, season, city, COUNT(*) AS hits FROM recommendation
+            WHERE date >= ? AND nitrogen IS NOT NULL AND phosphorous IS NOT NULL AND pottasium IS NOT NULL
+              AND ph IS NOT NULL AND season IS NOT NULL AND city IS NOT NULL
+            GROUP BY nitrogen, phosphorous, pottasium, ph, season, city HAVING COUNT(*) >= ? ORDER BY hits DESC LIMIT ?""";
+    private static final String PREDICTION_TOTAL = """
+            SELECT COUNT(*) FROM prediction
+            WHERE date >= ? AND city IS NOT NULL AND crop IS NOT NULL AND season IS NOT NULL AND area IS NOT NULL""";
+    private static final String RECOMMENDATION_TOTAL = "SELECT COUNT(*) FROM recommendation WHERE date >= ?";
+
+    /**
+     * Formulaire classé : kind et key au sens de ResultCache, hits = demandes sur la fenêtre.
+     */
+    @Getter
+    @AllArgsConstructor
+    static class HotKey {
+        private String kind;
+        private String key;
+        private Map<String, Object> form;
+        private long hits;
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ResultCache resultCache;
+
+    @Autowired
+    private PredictionService predictionService;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Value("${precompute.enabled:false}")
+    private boolean enabled;
+
+    @Value("${precompute.window-days:7}")
+    private int windowDays;
+
+    @Value("${precompute.max-keys:300}")
+    private int maxKeys;
+
+    @Value("${precompute.min-requests:2}")
+    private int minRequests;
+
+    @Value("${precompute.concurrency:2}")
+    private int concurrency;
+
+    @Value("${precompute.max-requests-per-second:2.0}")
+    private double maxRequestsPerSecond;
+
+    @Value("${precompute.max-duration-minutes:60}")
+    private long maxDurationMinutes;
+
+    @Value("${precompute.ttl-seconds:93600}")
+    private long ttlSeconds;
+
+    @Value("${precompute.max-consecutive-failures:5}")
+    private int maxConsecutiveFailures;
+
+    // Instant du dernier calcul réussi, par clé possédée
+    private final Map<String, Long> refreshedAt = new ConcurrentHashMap<>();
+    private volatile List<HotKey> ownedKeys = List.of();
+    private volatile Map<String, Object> coverage = Map.of();
+    private volatile Map<String, Object> lastRun = Map.of();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Le passage planifié tourne lui aussi sur son propre thread : le thread du planificateur repart aussitôt vers
+     * les tâches courtes (synchronisation des quotas, baux des jobs, membres du cache).
+     */
+    @Scheduled(cron = "${precompute.cron:0 0 3 * * *}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            log.info("Calcul d'avance planifié ignoré : un passage est déjà en cours");
+            return;
+        }
+        startClaimed();
+    }
+
+    /**
+     * Passage synchrone ; 409 si un passage tourne déjà sur cette réplique.
+     */
+    public Map<String, Object> run() {
+        claim();
+        try {
+            return runClaimed();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Lance un passage sur un thread dédié et rend la main aussitôt ; 409 si un passage tourne déjà.
+     */
+    public void runInBackground() {
+        claim();
+        startClaimed();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void startClaimed() {
+        Thread thread = new Thread(() -> {
+            try {
+                runClaimed();
+            } catch (RuntimeException e) {
+                log.warn("Calcul d'avance en échec : {}", e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        }, "precompute-run");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void claim() {
+        if (!running.compareAndSet(false, true)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Calcul d'avance déjà en cours sur cette réplique");
+        }
+    }
+
+    /**
+     * Classe les formulaires récents puis recalcule ceux de cette réplique ; renvoie le bilan du passage.
+     */
+    private Map<String, Object> runClaimed() {
+        if (!resultCache.isEnabled()) {
+            log.info("Calcul d'avance ignoré : result-cache désactivé");
+            return lastRun;
+        }
+        long started = System.currentTimeMillis();
+        LocalDateTime since = LocalDateTime.now().minusDays(windowDays);
+        List<HotKey> hot = new ArrayList<>(mine(ResultCache.PREDICTION, PREDICTION_HOT_KEYS, since));
+        hot.addAll(mine(ResultCache.RECOMMENDATION, RECOMMENDATION_HOT_KEYS, since));
+        coverage = coverage(hot, since);
+
+        resultCache.setHotKeys(hot.stream().map(HotKey::getKey).collect(Collectors.toSet()));
+        List<HotKey> mine = hot.stream()
+                .filter(h -> resultCache.isOwner(h.getKey()))
+                .sorted(Comparator.comparingLong(HotKey::getHits).reversed())
+                .toList();
+        ownedKeys = mine;
+        refreshedAt.keySet().retainAll(mine.stream().map(HotKey::getKey).collect(Collectors.toSet()));
+
+        double rate = maxRequestsPerSecond / Math.max(1, resultCache.memberCount());
+        Batch batch = new Batch(mine, rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0,
+                System.nanoTime() + TimeUnit.MINUTES.toNanos(maxDurationMinutes));
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "precompute-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < Math.max(1, concurrency); i++) {
+            workers.submit(() -> refresh(batch));
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(maxDurationMinutes + 1, TimeUnit.MINUTES)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("startedAt", Instant.ofEpochMilli(started).toString());
+        run.put("durationMs", System.currentTimeMillis() - started);
+        run.put("mined", hot.size());
+        run.put("owned", mine.size());
+        run.put("refreshed", batch.refreshed.get());
+        run.put("failed", batch.failed.get());
+        run.put("skipped", mine.size() - batch.refreshed.get() - batch.failed.get());
+        run.put("aborted", batch.consecutiveFailures.get() >= maxConsecutiveFailures);
+        run.put("requestsPerSecond", rate);
+        lastRun = run;
+        log.info("Calcul d'avance : {} formulaire(s) chaud(s), {} possédé(s), {} recalculé(s), {} en échec",
+                hot.size(), mine.size(), batch.refreshed.get(), batch.failed.get());
+        return run;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("lastRun", lastRun);
+
+        Map<String, Object> cache = resultCache.stats();
+        Map<String, Object> live = new LinkedHashMap<>();
+        live.put("lookups", cache.get("lookups"));
+        live.put("hotLookups", cache.get("hotLookups"));
+        live.put("hotHits", cache.get("hotHits"));
+        live.put("hotHitRatio", ratio((long) cache.get("hotHits"), (long) cache.get("lookups")));
+        Map<String, Object> coverageStats = new LinkedHashMap<>(coverage);
+        coverageStats.put("live", live);
+        stats.put("coverage", coverageStats);
+
+        long now = System.currentTimeMillis();
+        List<Long> ages = new ArrayList<>();
+        for (HotKey hot : ownedKeys) {
+            Long at = refreshedAt.get(hot.getKey());
+            if (at != null && resultCache.peerGet(hot.getKey()) != null) {
+                ages.add(TimeUnit.MILLISECONDS.toSeconds(now - at));
+            }
+        }
+        ages.sort(null);
+        Map<String, Object> freshness = new LinkedHashMap<>();
+        freshness.put("ownedHotKeys", ownedKeys.size());
+        freshness.put("cached", ages.size());
+        freshness.put("medianAgeSeconds", ages.isEmpty() ? null : ages.get(ages.size() / 2));
+        freshness.put("oldestAgeSeconds", ages.isEmpty() ? null : ages.get(ages.size() - 1));
+        stats.put("freshness", freshness);
+        return stats;
+    }
+
+    private List<HotKey> mine(String kind, String sql, LocalDateTime since) {
+        // Plusieurs lignes peuvent donner la même clé (casse, espaces) : leurs demandes s'additionnent
+        Map<String, HotKey> byKey = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            Map<String, Object> form = new LinkedHashMap<>();
+            int columns = rs.getMetaData().getColumnCount();
+            for (int i = 1; i < columns; i++) {
+                String column = rs.getMetaData().getColumnLabel(i).toLowerCase();
+                form.put(column, formValue(rs.getObject(i), ResultCache.PREDICTION.equals(kind)));
+            }
+            String key = ResultCache.key(kind, form);
+            long hits = rs.getLong("hits");
+            HotKey previous = byKey.get(key);
+            byKey.put(key, new HotKey(kind, key, form, hits + (previous != null ? previous.getHits() : 0)));
+        }, since, minRequests, maxKeys);
+        return new ArrayList<>(byKey.values());
+    }
+
+    private Map<String, Object> coverage(List<HotKey> hot, LocalDateTime since) {
+        Map<String, Object> coverage = new LinkedHashMap<>();
+        for (String kind : List.of(ResultCache.PREDICTION, ResultCache.RECOMMENDATION)) {
+            Long total = jdbcTemplate.queryForObject(
+                    ResultCache.PREDICTION.equals(kind) ? PREDICTION_TOTAL : RECOMMENDATION_TOTAL, Long.class, since);
+            long covered = hot.stream().filter(h -> h.getKind().equals(kind)).mapToLong(HotKey::getHits).sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", total);
+            stats.put("hotRequests", covered);
+            stats.put("predictedRatio", ratio(covered, total != null ? total : 0));
+            coverage.put(kind, stats);
+        }
+        return coverage;
+    }
+
+    /**
+     * Valeur lue en base telle que le frontend l'envoie (nombre JSON) : entier s'il n'y a pas de décimale, sinon
+     * le décimal le plus court (une colonne FLOAT relue en double donnerait 10.300000190734863 au lieu de 10.3).
+     */
+    static Object formValue(Object value, boolean singlePrecision) {
+        if (!(value instanceof Number number)) {
+            return value;
+        }
+        double d = singlePrecision || value instanceof Float ? number.floatValue() : number.doubleValue();
+        if (d == Math.rint(d) && Math.abs(d) < Integer.MAX_VALUE) {
+            return (int) d;
+        }
+        return singlePrecision || value instanceof Float ? Double.valueOf(Float.toString(number.floatValue())) : d;
+    }
+
+    private void refresh(Batch batch) {
+        HotKey hot;
+        while ((hot = batch.queue.poll()) != null) {
+            if (batch.consecutiveFailures.get() >= maxConsecutiveFailures) {
+                return;
+            }
+            long now = System.nanoTime();
+            long slot = Math.max(now, batch.nextSlot.getAndUpdate(next -> Math.max(next, now) + batch.intervalNanos));
+            if (slot >= batch.deadline) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(slot - now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                Map<String, Object> result = ResultCache.PREDICTION.equals(hot.getKind())
+                        ? predictionService.computeResult(hot.getForm())
+                        : recommendationService.computeResult(hot.getForm());
+                if (result == null) {
+                    throw new IllegalStateException("Réponse Flask vide");
+                }
+                resultCache.preload(hot.getKey(), result, ttlSeconds);
+                refreshedAt.put(hot.getKey(), System.currentTimeMillis());
+                batch.refreshed.incrementAndGet();
+                batch.consecutiveFailures.set(0);
+            } catch (Exception e) {
+                batch.failed.incrementAndGet();
+                if (batch.consecutiveFailures.incrementAndGet() == maxConsecutiveFailures) {
+                    log.warn("Calcul d'avance interrompu après {} échecs consécutifs : {}", maxConsecutiveFailures,
+                            e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static double ratio(long part, long total) {
+        return total == 0 ? 0 : (double) part / total;
+    }
+
+    /**
+     * Passage en cours : file des clés, créneaux d'appel espacés de intervalNanos et échéance.
+     */
+    private static final class Batch {
+        final ConcurrentLinkedQueue<HotKey> queue;
+        final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+        final long intervalNanos;
+        final long deadline;
+        final AtomicInteger refreshed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        Batch(List<HotKey> keys, long intervalNanos, long deadline) {
+            this.queue = new ConcurrentLinkedQueue<>(keys);
+            this.intervalNanos = intervalNanos;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.CropApp.services;
 
+import com.example.CropApp.config.FlaskWireFormat;
+import com.example.CropApp.config.Tracing;
 import com.example.CropApp.entities.Prediction;
 import com.example.CropApp.entities.User;
 import com.example.CropApp.repositories.PredictionRepository;
@@ -8,20 +10,24 @@ import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 
 @Service
 public class PredictionService {
 
+    private static final String FLASK_API_URL = "http://apiprediction1:5000/crop-yield-predict";
+
     private final RestTemplate restTemplate;
 
     @Autowired
@@ -30,6 +36,24 @@ public class PredictionService {
     @Autowired
     private PredictionRepository predictionRepository;
 
+    @Autowired
+    private FlaskWireFormat flaskWireFormat;
+
+    @Autowired
+    private WriteBehindService writeBehindService;
+
+    @Autowired
+    private HistoryArchiveService historyArchiveService;
+
+    @Autowired
+    private ProgressiveResponseService progressiveResponseService;
+
+    @Autowired
+    private ResultSnapshotService resultSnapshotService;
+
+    @Autowired
+    private ResultCache resultCache;
+
     @Autowired
     public PredictionService(RestTemplate restTemplate) {
         this.restTemplate = restTemplate;
@@ -38,81 +62,192 @@ public class PredictionService {
     @Transactional
     @CircuitBreaker(name = "flaskApiService", fallbackMethod = "flaskFallback")
     public Map<String, Object> callFlaskApi(Map<String, Object> requestData, String jwt) {
-        String flaskApiUrl = "http://apiprediction1:5000/crop-yield-predict";
+        return predict(requestData, () -> userService.findUserProfileByJwt(jwt));
+    }
 
+    /**
+     * Même appel pour un utilisateur déjà connu (jobs asynchrones : le JWT a pu expirer entre-temps).
+     */
+    @Transactional
+    @CircuitBreaker(name = "flaskApiService", fallbackMethod = "flaskFallbackForUser")
+    public Map<String, Object> callFlaskApiForUser(Map<String, Object> requestData, User user) {
+        return predict(requestData, () -> user);
+    }
+
+    private Map<String, Object> predict(Map<String, Object> requestData, Callable<User> user) {
         if (requestData == null || !requestData.containsKey("formdata")) {
-            return flaskFallback(requestData, jwt, new IllegalArgumentException("formdata manquant"));
+            return flaskFallback(requestData, null, new IllegalArgumentException("formdata manquant"));
         }
 
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestData, headers);
-
-            ResponseEntity<Map> response = restTemplate.postForEntity(flaskApiUrl, request, Map.class);
+            Map<String, Object> formData = (Map<String, Object>) requestData.get("formdata");
+            // Même formulaire déjà calculé ici ou sur une autre réplique : Flask n'est pas rappelé
+            Map<String, Object> result = resultCache.get(ResultCache.PREDICTION, formData, () -> fetchResult(requestData));
 
-            if (response == null || response.getBody() == null) {
-                return flaskFallback(requestData, jwt, new RuntimeException("Réponse Flask vide"));
+            User owner;
+            try (Tracing.Span span = Tracing.span("user.lookup")) {
+                owner = user.call();
+            }
+            Integer savedId;
+            try (Tracing.Span span = Tracing.span("prediction.save")) {
+                savedId = savePrediction(formData, result, owner);
+                resultSnapshotService.savePrediction(savedId, LocalDateTime.now(), userId(owner), result);
             }
-
-            Map<String, Object> responseBody = response.getBody();
-            Map<String, Object> responsee = (Map<String, Object>) responseBody.getOrDefault("response", null);
-            if (responsee == null) return flaskFallback(requestData, jwt, new RuntimeException("Clé 'response' manquante"));
-
-            Map<String, Object> result = (Map<String, Object>) responsee.getOrDefault("result", null);
-            if (result == null) return flaskFallback(requestData, jwt, new RuntimeException("Clé 'result' manquante"));
-
-            // Extraction des champs
-            Map<String, Object> formData = (Map<String, Object>) requestData.get("formdata");
-            String city = (String) formData.get("city");
-            String crop = (String) formData.get("crop");
-            Float area = Float.valueOf(formData.get("area").toString());
-            Float humidity = Float.valueOf(result.get("humidity").toString());
-            Float temperature = Float.valueOf(result.get("temperature").toString());
-            Float rainfall = Float.valueOf(result.get("rainfall").toString());
-            Float prediction = Float.valueOf(result.get("prediction").toString());
-
-            Prediction newPrediction = new Prediction();
-            newPrediction.setCity(city);
-            newPrediction.setCrop(crop);
-            newPrediction.setArea(area);
-            newPrediction.setHumidity(humidity);
-            newPrediction.setTemperature(temperature);
-            newPrediction.setRainfall(rainfall);
-            newPrediction.setResult(prediction);
-            newPrediction.setDate(LocalDateTime.now());
-            newPrediction.setUser(userService.findUserProfileByJwt(jwt));
-
-            Prediction savedPrediction = predictionRepository.save(newPrediction);
 
             Map<String, Object> finalResponse = new HashMap<>();
-            finalResponse.put("id", savedPrediction.getId());
+            finalResponse.put("id", savedId);
             finalResponse.put("result", result);
 
             return finalResponse;
 
         } catch (Exception e) {
-            return flaskFallback(requestData, jwt, e);
+            return flaskFallback(requestData, null, e);
         }
     }
 
 
+    private Map<String, Object> fetchResult(Map<String, Object> requestData) {
+        HttpHeaders headers = flaskWireFormat.headers();
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestData, headers);
+
+        ResponseEntity<Map> response = restTemplate.postForEntity(FLASK_API_URL, request, Map.class);
+
+        if (response == null || response.getBody() == null) {
+            throw new RuntimeException("Réponse Flask vide");
+        }
+
+        Map<String, Object> responseBody = response.getBody();
+        Map<String, Object> responsee = (Map<String, Object>) responseBody.getOrDefault("response", null);
+        if (responsee == null) throw new RuntimeException("Clé 'response' manquante");
+
+        Map<String, Object> result = (Map<String, Object>) responsee.getOrDefault("result", null);
+        if (result == null) throw new RuntimeException("Clé 'result' manquante");
+        return result;
+    }
+
+    /**
+     * Résultat Flask d'un formulaire, sans cache ni historique (calcul d'avance, voir PrecomputeService).
+     */
+    public Map<String, Object> computeResult(Map<String, Object> formData) {
+        return fetchResult(Map.of("formdata", formData));
+    }
+
+    /**
+     * Variante SSE de callFlaskApi : weather, prediction puis saved sont envoyés avant les séries
+     * des graphiques (charts), qui sont les plus longues à calculer côté Flask.
+     */
+    public SseEmitter streamPrediction(Map<String, Object> requestData, String jwt) throws Exception {
+        if (requestData == null || !requestData.containsKey("formdata")) {
+            throw new IllegalArgumentException("formdata manquant");
+        }
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> formData = (Map<String, Object>) requestData.get("formdata");
+        Map<String, Object> result = new HashMap<>();
+
+        Integer[] savedId = new Integer[1];
+
+        return progressiveResponseService.stream("flaskApiService", FLASK_API_URL + "/stream", requestData, (stage, data, events) -> {
+            result.putAll(data);
+            events.send(stage, data);
+            if ("prediction".equals(stage)) {
+                savedId[0] = savePrediction(formData, result, user);
+                events.send("saved", Map.of("id", savedId[0]));
+            } else if ("charts".equals(stage)) {
+                // Dernière étape : l'instantané contient alors les séries des graphiques
+                resultSnapshotService.savePrediction(savedId[0], LocalDateTime.now(), userId(user), result);
+            }
+        });
+    }
+
+    private Integer savePrediction(Map<String, Object> formData, Map<String, Object> result, User user) {
+        Prediction newPrediction = new Prediction();
+        newPrediction.setCity((String) formData.get("city"));
+        newPrediction.setSeason((String) formData.get("season"));
+        newPrediction.setCrop((String) formData.get("crop"));
+        newPrediction.setArea(Float.valueOf(formData.get("area").toString()));
+        newPrediction.setHumidity(Float.valueOf(result.get("humidity").toString()));
+        newPrediction.setTemperature(Float.valueOf(result.get("temperature").toString()));
+        newPrediction.setRainfall(Float.valueOf(result.get("rainfall").toString()));
+        newPrediction.setResult(Float.valueOf(result.get("prediction").toString()));
+        newPrediction.setDate(LocalDateTime.now());
+        newPrediction.setUser(user);
+
+        return writeBehindService.savePrediction(newPrediction);
+    }
+
+    private static Long userId(User user) {
+        return user != null ? user.getId() : null;
+    }
+
+    /**
+     * Résultat complet d'une prédiction passée, sans rappeler Flask (404 si aucun instantané).
+     */
+    public Map<String, Object> getPredictionResult(Integer id, User user) {
+        return resultSnapshotService.prediction(id, user.getId());
+    }
+
+    public Map<String, Object> flaskFallbackForUser(Map<String, Object> requestData, User user, Throwable t) {
+        return flaskFallback(requestData, null, t);
+    }
+
     // Fallback si Flask est indisponible
     public Map<String, Object> flaskFallback(Map<String, Object> requestData, String jwt, Throwable t) {
+        Tracing.error(t);
         Map<String, Object> fallbackResponse = new HashMap<>();
         fallbackResponse.put("error", "Le service de prédiction est temporairement indisponible. Veuillez réessayer plus tard.");
         fallbackResponse.put("result", new HashMap<>()); // Ajouté pour éviter undefined
         return fallbackResponse;
     }
+    /**
+     * Historique complet : lignes en base puis lignes archivées (voir HistoryArchiveService).
+     */
     public List<Prediction> getPredictionsForAuthenticatedUser(User user) {
-        return predictionRepository.findByUser(user);
+        List<Prediction> predictions = new ArrayList<>(predictionRepository.findByUser(user));
+        predictions.addAll(historyArchiveService.archivedPredictions(user.getId()));
+        return predictions;
     }
 
-    public void deletePrediciton(Integer id) {
-        if (predictionRepository.existsById(id)) {
-            predictionRepository.deleteById(id);
-        } else {
+    public String exportPredictionsCsv(User user) {
+        StringBuilder csv = new StringBuilder("id,date,crop,city,area,temperature,humidity,rainfall,result\n");
+        for (Prediction p : getPredictionsForAuthenticatedUser(user)) {
+            csv.append(p.getId()).append(',')
+                    .append(p.getDate()).append(',')
+                    .append(CsvUtils.escape(p.getCrop())).append(',')
+                    .append(CsvUtils.escape(p.getCity())).append(',')
+                    .append(p.getArea()).append(',')
+                    .append(p.getTemperature()).append(',')
+                    .append(p.getHumidity()).append(',')
+                    .append(p.getRainfall()).append(',')
+                    .append(p.getResult()).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Suppression en une seule requête ; si la ligne n'est plus en base, on la cherche dans les archives.
+     */
+    public void deletePrediciton(Integer id, User user) {
+        // Limitée aux lignes de l'utilisateur, comme la suppression groupée : un id d'un autre compte est introuvable
+        if (user == null
+                || predictionRepository.deleteByIdsForUser(List.of(id), user.getId()) == 0
+                && historyArchiveService.deleteArchived(WriteBehindService.PREDICTION_TABLE, user.getId(), List.of(id)) == 0) {
             throw new RuntimeException("Prediction not found with id: " + id);
         }
+        resultSnapshotService.delete(WriteBehindService.PREDICTION_TABLE, user.getId(), List.of(id));
+    }
+
+    /**
+     * Suppression groupée des prédictions de l'utilisateur : un seul DELETE ... WHERE id IN (...).
+     */
+    public int deletePredictions(List<Integer> ids, User user) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        int deleted = predictionRepository.deleteByIdsForUser(ids, user.getId());
+        if (deleted < ids.size()) {
+            deleted += historyArchiveService.deleteArchived(WriteBehindService.PREDICTION_TABLE, user.getId(), ids);
+        }
+        resultSnapshotService.delete(WriteBehindService.PREDICTION_TABLE, user.getId(), ids);
+        return deleted;
     }
 }
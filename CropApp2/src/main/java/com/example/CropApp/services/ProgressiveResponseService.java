@@ -0,0 +1,266 @@
+package com.example.CropApp.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Relaie en Server-Sent Events les étapes produites par les routes Flask "/stream" (une ligne JSON par étape).
+ *
+ * Événements envoyés : accepted, puis chaque étape Flask (weather, prediction, charts), plus ceux ajoutés
+ * par le StageHandler (saved), et enfin done ou error. Chaque flux occupe un thread du pool
+ * sse.stream.threads le temps de l'appel Flask ; au-delà de la file, le flux se termine aussitôt par error.
+ *
+ * L'appel passe par le même disjoncteur que la route non progressive : ouvert, le flux se termine par error
+ * sans appeler Flask ; une étape error envoyée par Flask compte comme un échec. Client parti ou délai
+ * sse.stream.timeout-ms dépassé : la lecture de la réponse Flask est fermée (client HTTP du JDK, dont le flux se
+ * ferme depuis un autre thread) et le thread rendu au pool ; ces abandons ne comptent pas comme des échecs de Flask.
+ */
+@Service
+public class ProgressiveResponseService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressiveResponseService.class);
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final String UNAVAILABLE = "Le service de prédiction est temporairement indisponible. Veuillez réessayer plus tard.";
+
+    /**
+     * Traite une étape Flask ; peut émettre des événements supplémentaires (ex. saved après prediction).
+     */
+    @FunctionalInterface
+    public interface StageHandler {
+        void onStage(String stage, Map<String, Object> data, Events events) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Events {
+        void send(String name, Object data) throws IOException;
+    }
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Value("${sse.stream.threads:16}")
+    private int threads;
+
+    @Value("${sse.stream.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${sse.stream.timeout-ms:120000}")
+    private long timeoutMs;
+
+    private ThreadPoolExecutor executor;
+
+    // Créé au premier flux : les intercepteurs (traçage, load balancer) sont alors posés sur restTemplate
+    private volatile RestTemplate streamingTemplate;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "sse-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    public SseEmitter stream(String breakerName, String flaskUrl, Map<String, Object> body, StageHandler handler) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Events events = (name, data) -> emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<InputStream> flaskBody = new AtomicReference<>();
+        Runnable cancel = () -> {
+            cancelled.set(true);
+            closeQuietly(flaskBody.get());
+        };
+        // L'émetteur est déjà terminé quand onTimeout s'exécute : plus d'événement possible, le flux se ferme
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        emitter.onCompletion(cancel);
+        try {
+            events.send("accepted", Map.of());
+            executor.execute(() -> relay(circuitBreakerRegistry.circuitBreaker(breakerName), flaskUrl, body, handler,
+                    emitter, events, cancelled, flaskBody));
+        } catch (RejectedExecutionException e) {
+            fail(emitter, events, "Trop de flux en cours, réessayez plus tard.");
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    private void relay(CircuitBreaker breaker, String flaskUrl, Map<String, Object> body, StageHandler handler,
+                       SseEmitter emitter, Events events, AtomicBoolean cancelled, AtomicReference<InputStream> flaskBody) {
+        if (cancelled.get()) {
+            // Client parti pendant l'attente dans la file
+            return;
+        }
+        if (!breaker.tryAcquirePermission()) {
+            fail(emitter, events, UNAVAILABLE);
+            return;
+        }
+        long start = breaker.getCurrentTimestamp();
+        // Échec de notre côté (client parti, StageHandler) : n'est pas imputé à Flask
+        AtomicBoolean local = new AtomicBoolean();
+        // Étape error envoyée par Flask : la réponse HTTP est complète, mais c'est un échec de Flask
+        AtomicReference<String> flaskError = new AtomicReference<>();
+        Events relayed = (name, data) -> {
+            try {
+                events.send(name, data);
+            } catch (IOException e) {
+                local.set(true);
+                throw e;
+            }
+        };
+        Boolean finished;
+        try {
+            finished = streamingTemplate().execute(flaskUrl, HttpMethod.POST, request -> {
+                request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                request.getHeaders().setAccept(List.of(NDJSON));
+                objectMapper.writeValue(request.getBody(), body);
+            }, response -> {
+                InputStream in = response.getBody();
+                flaskBody.set(in);
+                if (cancelled.get()) {
+                    closeQuietly(in);
+                }
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while (!cancelled.get() && (line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    Map<String, Object> stage = objectMapper.readValue(line, new TypeReference<>() {});
+                    String name = String.valueOf(stage.get("stage"));
+                    Map<String, Object> data = stage.get("data") instanceof Map<?, ?> map
+                            ? (Map<String, Object>) map : new HashMap<>();
+                    if ("error".equals(name)) {
+                        flaskError.set(String.valueOf(data.get("error")));
+                        return false;
+                    }
+                    try {
+                        handler.onStage(name, data, relayed);
+                    } catch (Exception e) {
+                        local.set(true);
+                        throw e instanceof IOException io ? io : new IOException(e);
+                    }
+                }
+                return true;
+            });
+        } catch (Exception e) {
+            if (cancelled.get() || local.get()) {
+                breaker.releasePermission();
+                if (cancelled.get()) {
+                    log.debug("Flux progressif abandonné par le client ({}) : {}", flaskUrl, e.getMessage());
+                } else {
+                    log.warn("Flux progressif interrompu ({}) : {}", flaskUrl, e.getMessage());
+                }
+                fail(emitter, events, UNAVAILABLE);
+                return;
+            }
+            breaker.onError(breaker.getCurrentTimestamp() - start, breaker.getTimestampUnit(), e);
+            log.warn("Flux progressif interrompu ({}) : {}", flaskUrl, e.getMessage());
+            fail(emitter, events, UNAVAILABLE);
+            return;
+        }
+        if (cancelled.get()) {
+            breaker.releasePermission();
+            return;
+        }
+        if (flaskError.get() != null) {
+            breaker.onError(breaker.getCurrentTimestamp() - start, breaker.getTimestampUnit(),
+                    new IllegalStateException(flaskError.get()));
+            log.warn("Étape error reçue de Flask ({}) : {}", flaskUrl, flaskError.get());
+            fail(emitter, events, flaskError.get());
+            return;
+        }
+        breaker.onSuccess(breaker.getCurrentTimestamp() - start, breaker.getTimestampUnit());
+        if (Boolean.TRUE.equals(finished)) {
+            try {
+                events.send("done", Map.of());
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    /**
+     * Même configuration que restTemplate, sur le client HTTP du JDK : SimpleClientHttpResponse ne peut pas être
+     * fermé pendant une lecture (il vide d'abord le flux), celui du JDK se ferme et débloque la lecture.
+     */
+    private RestTemplate streamingTemplate() {
+        RestTemplate template = streamingTemplate;
+        if (template == null) {
+            template = new RestTemplate(new JdkClientHttpRequestFactory(
+                    HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()));
+            template.setInterceptors(restTemplate.getInterceptors());
+            streamingTemplate = template;
+        }
+        return template;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            // déjà fermé
+        }
+    }
+
+    private void fail(SseEmitter emitter, Events events, String message) {
+        try {
+            events.send("error", Map.of("error", message));
+            emitter.complete();
+        } catch (Exception e) {
+            // client déjà parti
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.CropApp.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limitation de débit par utilisateur (ou par IP sans jeton) et par groupe de routes, en token buckets.
+ *
+ * Les buckets sont répartis sur rate-limit.shards partitions, chacune protégée par son propre verrou : deux
+ * utilisateurs différents ne se bloquent presque jamais. Toutes les rate-limit.sync-interval-ms, chaque
+ * réplique ajoute sa consommation locale dans rate_limit_usage et retire de ses buckets ce que les autres
+ * répliques ont consommé depuis la synchronisation précédente : le quota tient donc, à l'intervalle de
+ * synchronisation près, sur l'ensemble des répliques. Si la base est indisponible, chaque réplique continue
+ * d'appliquer son quota localement.
+ */
+@Service
+public class RateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimiter.class);
+
+    /**
+     * Groupe de routes et son quota : capacity jetons au plus, perMinute jetons rendus par minute.
+     */
+    @Getter
+    public static final class Limit {
+        private final String name;
+        private final long capacity;
+        private final long perMinute;
+        private final double tokensPerNano;
+
+        Limit(String name, long capacity, long perMinute) {
+            this.name = name;
+            this.capacity = capacity;
+            this.perMinute = perMinute;
+            this.tokensPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Decision {
+        private final boolean allowed;
+        private final long limit;
+        private final long remaining;
+        /** Secondes avant que le bucket soit de nouveau plein. */
+        private final long resetSeconds;
+        /** Secondes avant le prochain jeton, 0 si la requête passe. */
+        private final long retryAfterSeconds;
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.shards:64}")
+    private int shardCount;
+
+    @Value("${rate-limit.predict.capacity:20}")
+    private long predictCapacity;
+
+    @Value("${rate-limit.predict.per-minute:30}")
+    private long predictPerMinute;
+
+    @Value("${rate-limit.batch.capacity:3}")
+    private long batchCapacity;
+
+    @Value("${rate-limit.batch.per-minute:6}")
+    private long batchPerMinute;
+
+    @Value("${rate-limit.auth.capacity:20}")
+    private long authCapacity;
+
+    @Value("${rate-limit.auth.per-minute:20}")
+    private long authPerMinute;
+
+    @Value("${rate-limit.api.capacity:120}")
+    private long apiCapacity;
+
+    @Value("${rate-limit.api.per-minute:300}")
+    private long apiPerMinute;
+
+    @Value("${rate-limit.sync-enabled:true}")
+    private boolean syncEnabled;
+
+    @Value("${rate-limit.sync-window-seconds:30}")
+    private long syncWindowSeconds;
+
+    @Value("${rate-limit.idle-seconds:600}")
+    private long idleSeconds;
+
+    private final String replicaId = System.getenv().getOrDefault("HOSTNAME", "local") + ":" + UUID.randomUUID();
+    private final Map<String, Limit> limits = new HashMap<>();
+    /** Dernier cumul lu pour chaque (bucket, autre réplique), pour n'en retirer que la différence. */
+    private final Map<String, Long> remoteSeen = new ConcurrentHashMap<>();
+    private final Map<String, Long> remoteSeenAt = new ConcurrentHashMap<>();
+    private Shard[] shards;
+    private volatile boolean firstSync = true;
+    private volatile boolean syncFailing;
+
+    @PostConstruct
+    public void start() {
+        for (Limit limit : List.of(new Limit("predict", predictCapacity, predictPerMinute),
+                new Limit("batch", batchCapacity, batchPerMinute),
+                new Limit("auth", authCapacity, authPerMinute),
+                new Limit("api", apiCapacity, apiPerMinute))) {
+            limits.put(limit.getName(), limit);
+        }
+        int size = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Groupe de la route, null si elle n'est pas limitée.
+     */
+    public Limit limitFor(String method, String path) {
+        if (!enabled || path == null) {
+            return null;
+        }
+        boolean post = "POST".equalsIgnoreCase(method);
+        if (post && (path.equals("/api/predictions/predict") || path.equals("/api/predictions/predict/stream")
+                || path.equals("/api/recommendations/generate") || path.equals("/api/recommendations/generate/stream"))) {
+            return limits.get("predict");
+        }
+        if (post && (path.equals("/api/predictions/sweep") || path.equals("/api/jobs"))) {
+            return limits.get("batch");
+        }
+        if (path.startsWith("/auth/")) {
+            return limits.get("auth");
+        }
+        if (path.startsWith("/api/")) {
+            return limits.get("api");
+        }
+        return null;
+    }
+
+    public Decision tryConsume(Limit limit, String identity) {
+        String key = limit.getName() + ":" + identity;
+        long now = System.nanoTime();
+        Shard shard = shard(key);
+        shard.lock.lock();
+        try {
+            Bucket bucket = shard.buckets.computeIfAbsent(key, k -> new Bucket(limit, now));
+            bucket.refill(now);
+            bucket.lastUsed = now;
+            boolean allowed = bucket.tokens >= 1;
+            if (allowed) {
+                bucket.tokens -= 1;
+                bucket.pending++;
+            }
+            long retryAfter = allowed ? 0 : seconds((1 - bucket.tokens) / limit.tokensPerNano);
+            long reset = seconds((limit.capacity - bucket.tokens) / limit.tokensPerNano);
+            return new Decision(allowed, limit.capacity, (long) Math.floor(bucket.tokens), reset, retryAfter);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Publie la consommation locale puis applique celle des autres répliques.
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.sync-interval-ms:1000}")
+    public void sync() {
+        if (!enabled || !syncEnabled) {
+            return;
+        }
+        Map<String, Long> deltas = drainPending();
+        try {
+            publish(deltas);
+        } catch (DataAccessException e) {
+            // rendue aux buckets, la consommation sera republiée au prochain tour
+            deltas.forEach((key, delta) -> adjust(key, 0, delta));
+            syncFailed(e);
+            return;
+        }
+        try {
+            applyRemote();
+            if (syncFailing) {
+                log.info("Synchronisation des quotas rétablie");
+                syncFailing = false;
+            }
+        } catch (DataAccessException e) {
+            syncFailed(e);
+        }
+    }
+
+    private void syncFailed(DataAccessException e) {
+        if (!syncFailing) {
+            log.warn("Synchronisation des quotas impossible, quotas appliqués par réplique : {}", e.getMessage());
+            syncFailing = true;
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.buckets.values().removeIf(bucket -> bucket.pending == 0 && now - bucket.lastUsed > idleNanos);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        // Les cumuls relus sont gardés aussi longtemps que les lignes de rate_limit_usage (2 x idle-seconds) : une
+        // ligne encore présente mais oubliée ici serait recomptée en entier au prochain tour
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(usageRetentionSeconds());
+        remoteSeenAt.entrySet().removeIf(entry -> {
+            boolean stale = entry.getValue() < cutoff;
+            if (stale) {
+                remoteSeen.remove(entry.getKey());
+            }
+            return stale;
+        });
+        if (enabled && syncEnabled) {
+            try {
+                jdbcTemplate.update("DELETE FROM rate_limit_usage WHERE updated_at < ?",
+                        Timestamp.valueOf(LocalDateTime.now().minusSeconds(usageRetentionSeconds())));
+            } catch (DataAccessException e) {
+                log.debug("Purge de rate_limit_usage impossible : {}", e.getMessage());
+            }
+        }
+    }
+
+    private long usageRetentionSeconds() {
+        return idleSeconds * 2;
+    }
+
+    private Map<String, Long> drainPending() {
+        Map<String, Long> deltas = new HashMap<>();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                for (Map.Entry<String, Bucket> entry : shard.buckets.entrySet()) {
+                    if (entry.getValue().pending > 0) {
+                        deltas.put(entry.getKey(), entry.getValue().pending);
+                        entry.getValue().pending = 0;
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return deltas;
+    }
+
+    private void publish(Map<String, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        deltas.forEach((key, delta) -> rows.add(new Object[]{key, replicaId, delta, now}));
+        jdbcTemplate.batchUpdate("INSERT INTO rate_limit_usage (bucket_key, replica_id, consumed, updated_at) "
+                + "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE consumed = consumed + VALUES(consumed), "
+                + "updated_at = VALUES(updated_at)", rows);
+    }
+
+    private void applyRemote() {
+        // Fenêtre large devant l'intervalle : tolère un décalage d'horloge entre répliques
+        Timestamp since = Timestamp.valueOf(LocalDateTime.now().minusSeconds(syncWindowSeconds));
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT bucket_key, replica_id, consumed "
+                + "FROM rate_limit_usage WHERE replica_id <> ? AND updated_at >= ?", replicaId, since);
+        long seenAt = System.currentTimeMillis();
+        for (Map<String, Object> row : rows) {
+            String key = (String) row.get("bucket_key");
+            long consumed = ((Number) row.get("consumed")).longValue();
+            String seenKey = key + "|" + row.get("replica_id");
+            Long previous = remoteSeen.put(seenKey, consumed);
+            remoteSeenAt.put(seenKey, seenAt);
+            // Au premier tour on ne fait que relever les cumuls ; ensuite une ligne inconnue est entièrement neuve
+            long delta = previous != null ? consumed - previous : firstSync ? 0 : consumed;
+            if (delta > 0) {
+                adjust(key, delta, 0);
+            }
+        }
+        firstSync = false;
+    }
+
+    /**
+     * Retire tokens jetons du bucket (consommés ailleurs) et lui rend pending jetons à republier.
+     */
+    private void adjust(String key, long tokens, long pending) {
+        Limit limit = limits.get(key.substring(0, key.indexOf(':')));
+        if (limit == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Shard shard = shard(key);
+        shard.lock.lock();
+        try {
+            Bucket bucket = shard.buckets.computeIfAbsent(key, k -> new Bucket(limit, now));
+            bucket.refill(now);
+            bucket.tokens = Math.max(0, bucket.tokens - tokens);
+            bucket.pending += pending;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private Shard shard(String key) {
+        int hash = key.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private static long seconds(double nanos) {
+        return Math.max(0, (long) Math.ceil(nanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Bucket> buckets = new HashMap<>();
+    }
+
+    private static final class Bucket {
+        private final Limit limit;
+        private double tokens;
+        private long refilledAt;
+        private long lastUsed;
+        /** Jetons consommés localement, pas encore publiés dans rate_limit_usage. */
+        private long pending;
+
+        private Bucket(Limit limit, long now) {
+            this.limit = limit;
+            this.tokens = limit.capacity;
+            this.refilledAt = now;
+            this.lastUsed = now;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(limit.capacity, tokens + (now - refilledAt) * limit.tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.CropApp.services;
 
+import com.example.CropApp.config.FlaskWireFormat;
+import com.example.CropApp.config.Tracing;
 import com.example.CropApp.entities.Recommendation;
 import com.example.CropApp.entities.User;
 import com.example.CropApp.repositories.RecommendationRepository;
@@ -11,14 +13,19 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 @Service
 public class RecommendationService {
 
+    private static final String FLASK_API_URL = "http://apiprediction1:5000/crop-predict";
+
     private final RestTemplate restTemplate;
 
     @Autowired
@@ -27,6 +34,24 @@ public class RecommendationService {
     @Autowired
     private RecommendationRepository recommendationRepository;
 
+    @Autowired
+    private FlaskWireFormat flaskWireFormat;
+
+    @Autowired
+    private WriteBehindService writeBehindService;
+
+    @Autowired
+    private HistoryArchiveService historyArchiveService;
+
+    @Autowired
+    private ProgressiveResponseService progressiveResponseService;
+
+    @Autowired
+    private ResultSnapshotService resultSnapshotService;
+
+    @Autowired
+    private ResultCache resultCache;
+
     @Autowired
     public RecommendationService(RestTemplate restTemplate) {
         this.restTemplate = restTemplate;
@@ -38,15 +63,59 @@ public class RecommendationService {
     @Transactional
     @CircuitBreaker(name = "flaskRecommendationService", fallbackMethod = "recommendationFallback")
     public Map<String, Object> generateRecommendation(Map<String, Object> inputData, String jwt) throws Exception {
-        String flaskApiUrl = "http://apiprediction1:5000/crop-predict";
+        return recommend(inputData, () -> userService.findUserProfileByJwt(jwt));
+    }
+
+    /**
+     * Même appel pour un utilisateur déjà connu (jobs asynchrones : le JWT a pu expirer entre-temps)
+     */
+    @Transactional
+    @CircuitBreaker(name = "flaskRecommendationService", fallbackMethod = "recommendationFallbackForUser")
+    public Map<String, Object> generateRecommendationForUser(Map<String, Object> inputData, User user) throws Exception {
+        return recommend(inputData, () -> user);
+    }
+
+    private Map<String, Object> recommend(Map<String, Object> inputData, Callable<User> user) throws Exception {
+        Map<String, Object> formData = (Map<String, Object>) inputData.get("formdata");
+        // Même formulaire déjà calculé ici ou sur une autre réplique : Flask n'est pas rappelé
+        Map<String, Object> result = resultCache.get(ResultCache.RECOMMENDATION, formData, () -> fetchResult(inputData));
+
+        // Extraction de chart_data et détermination du crop recommandé
+        Map<String, Double> chartData = (Map<String, Double>) result.get("chart_data");
+
+        String maxCrop = null;
+        Double maxValue = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<String, Double> entry : chartData.entrySet()) {
+            if (entry.getValue() > maxValue) {
+                maxValue = entry.getValue();
+                maxCrop = entry.getKey();
+            }
+        }
+
+        User owner;
+        try (Tracing.Span span = Tracing.span("user.lookup")) {
+            owner = user.call();
+        }
+        Long savedId;
+        try (Tracing.Span span = Tracing.span("recommendation.save")) {
+            savedId = saveRecommendation(formData, result, maxCrop, owner);
+            resultSnapshotService.saveRecommendation(savedId, LocalDateTime.now(), owner.getId(), result);
+        }
+
+        Map<String, Object> finalResponse = new HashMap<>();
+        finalResponse.put("id", savedId);
+        finalResponse.put("result", result);
+
+        return finalResponse;
+    }
 
+    private Map<String, Object> fetchResult(Map<String, Object> inputData) {
         // Préparer les en-têtes
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
+        HttpHeaders headers = flaskWireFormat.headers();
         HttpEntity<Map<String, Object>> request = new HttpEntity<>(inputData, headers);
 
         // Appel à Flask
-        ResponseEntity<Map> response = restTemplate.postForEntity(flaskApiUrl, request, Map.class);
+        ResponseEntity<Map> response = restTemplate.postForEntity(FLASK_API_URL, request, Map.class);
 
         if (response == null || response.getBody() == null) {
             throw new RuntimeException("La réponse de l'API Flask est vide ou invalide.");
@@ -56,30 +125,49 @@ public class RecommendationService {
         Map<String, Object> responsee = (Map<String, Object>) responseBody.get("response");
         Map<String, Object> result = (Map<String, Object>) responsee.get("result");
 
-        Map<String, Object> formData = (Map<String, Object>) inputData.get("formdata");
-
-        // Extraction de chart_data et détermination du crop recommandé
+        // Vérifié avant la mise en cache : une réponse incomplète n'est jamais partagée
         Map<String, Double> chartData = (Map<String, Double>) result.get("chart_data");
         if (chartData == null || chartData.size() < 4) {
             throw new RuntimeException("Structure invalide dans la réponse Flask.");
         }
+        return result;
+    }
 
-        String maxCrop = null;
-        Double maxValue = Double.NEGATIVE_INFINITY;
-        for (Map.Entry<String, Double> entry : chartData.entrySet()) {
-            if (entry.getValue() > maxValue) {
-                maxValue = entry.getValue();
-                maxCrop = entry.getKey();
-            }
+    /**
+     * Résultat Flask d'un formulaire, sans cache ni historique (calcul d'avance, voir PrecomputeService).
+     */
+    public Map<String, Object> computeResult(Map<String, Object> formData) {
+        return fetchResult(Map.of("formdata", formData));
+    }
+
+    /**
+     * Variante SSE : weather, prediction (culture retenue par Flask) et saved arrivent avant chart_data
+     */
+    public SseEmitter streamRecommendation(Map<String, Object> inputData, String jwt) throws Exception {
+        if (inputData == null || !inputData.containsKey("formdata")) {
+            throw new IllegalArgumentException("formdata manquant");
         }
+        User user = userService.findUserProfileByJwt(jwt);
+        Map<String, Object> formData = (Map<String, Object>) inputData.get("formdata");
+        Map<String, Object> result = new HashMap<>();
 
-        // Extraction des valeurs spécifiques
-        String recommendedCrop = maxCrop;
-        Double temperature = Double.valueOf(result.get("temperature").toString());
-        Double humidity = Double.valueOf(result.get("humidity").toString());
-        Double rainfall = Double.valueOf(result.get("rainfall").toString());
+        Long[] savedId = new Long[1];
 
-        // Création et sauvegarde de la recommandation
+        return progressiveResponseService.stream("flaskRecommendationService", FLASK_API_URL + "/stream", inputData, (stage, data, events) -> {
+            result.putAll(data);
+            events.send(stage, data);
+            if ("prediction".equals(stage)) {
+                String crop = ((List<?>) data.get("prediction")).get(0).toString();
+                savedId[0] = saveRecommendation(formData, result, crop, user);
+                events.send("saved", Map.of("id", savedId[0]));
+            } else if ("charts".equals(stage)) {
+                // Dernière étape : l'instantané contient alors chart_data
+                resultSnapshotService.saveRecommendation(savedId[0], LocalDateTime.now(), user.getId(), result);
+            }
+        });
+    }
+
+    private Long saveRecommendation(Map<String, Object> formData, Map<String, Object> result, String crop, User user) {
         Recommendation recommendation = new Recommendation();
         recommendation.setNitrogen(Double.valueOf(formData.get("nitrogen").toString()));
         recommendation.setPhosphorous(Double.valueOf(formData.get("phosphorous").toString()));
@@ -87,48 +175,93 @@ public class RecommendationService {
         recommendation.setPh(Double.valueOf(formData.get("ph").toString()));
         recommendation.setSeason(formData.get("season").toString());
         recommendation.setCity(formData.get("city").toString());
-        recommendation.setTemperature(temperature);
-        recommendation.setHumidity(humidity);
-        recommendation.setRainfall(rainfall);
-        recommendation.setResult(recommendedCrop);
+        recommendation.setTemperature(Double.valueOf(result.get("temperature").toString()));
+        recommendation.setHumidity(Double.valueOf(result.get("humidity").toString()));
+        recommendation.setRainfall(Double.valueOf(result.get("rainfall").toString()));
+        recommendation.setResult(crop);
         recommendation.setDate(LocalDateTime.now());
+        recommendation.setUser(user);
 
-        User authenticatedUser = userService.findUserProfileByJwt(jwt);
-        recommendation.setUser(authenticatedUser);
-
-        Recommendation savedRecommendation = recommendationRepository.save(recommendation);
+        return writeBehindService.saveRecommendation(recommendation);
+    }
 
-        Map<String, Object> finalResponse = new HashMap<>();
-        finalResponse.put("id", savedRecommendation.getId());
-        finalResponse.put("result", result);
+    /**
+     * Résultat complet d'une recommandation passée, sans rappeler Flask (404 si aucun instantané).
+     */
+    public Map<String, Object> getRecommendationResult(Long id, User user) {
+        return resultSnapshotService.recommendation(id, user.getId());
+    }
 
-        return finalResponse;
+    public Map<String, Object> recommendationFallbackForUser(Map<String, Object> inputData, User user, Throwable t) {
+        return recommendationFallback(inputData, null, t);
     }
 
     /**
      * Fallback si Flask est indisponible
      */
     public Map<String, Object> recommendationFallback(Map<String, Object> inputData, String jwt, Throwable t) {
+        Tracing.error(t);
         Map<String, Object> fallbackResponse = new HashMap<>();
         fallbackResponse.put("error", "Le service de recommandation est temporairement indisponible. Veuillez réessayer plus tard.");
         return fallbackResponse;
     }
 
     /**
-     * Récupérer toutes les recommandations d’un utilisateur
+     * Récupérer toutes les recommandations d’un utilisateur (base puis archives)
      */
     public List<Recommendation> getRecommendationsForAuthenticatedUser(User user) {
-        return recommendationRepository.findByUser(user);
+        List<Recommendation> recommendations = new ArrayList<>(recommendationRepository.findByUser(user));
+        recommendations.addAll(historyArchiveService.archivedRecommendations(user.getId()));
+        return recommendations;
+    }
+
+    /**
+     * Export CSV de l’historique complet
+     */
+    public String exportRecommendationsCsv(User user) {
+        StringBuilder csv = new StringBuilder("id,date,result,season,city,nitrogen,phosphorous,pottasium,ph,temperature,humidity,rainfall\n");
+        for (Recommendation r : getRecommendationsForAuthenticatedUser(user)) {
+            csv.append(r.getId()).append(',')
+                    .append(r.getDate()).append(',')
+                    .append(CsvUtils.escape(r.getResult())).append(',')
+                    .append(CsvUtils.escape(r.getSeason())).append(',')
+                    .append(CsvUtils.escape(r.getCity())).append(',')
+                    .append(r.getNitrogen()).append(',')
+                    .append(r.getPhosphorous()).append(',')
+                    .append(r.getPottasium()).append(',')
+                    .append(r.getPh()).append(',')
+                    .append(r.getTemperature()).append(',')
+                    .append(r.getHumidity()).append(',')
+                    .append(r.getRainfall()).append('\n');
+        }
+        return csv.toString();
     }
 
     /**
-     * Supprimer une recommandation par ID
+     * Supprimer une recommandation par ID, en une seule requête (ou dans les archives)
      */
-    public void deleteRecommendation(Long id) {
-        if (recommendationRepository.existsById(id)) {
-            recommendationRepository.deleteById(id);
-        } else {
+    public void deleteRecommendation(Long id, User user) {
+        // Limitée aux lignes de l'utilisateur, comme la suppression groupée : un id d'un autre compte est introuvable
+        if (user == null
+                || recommendationRepository.deleteByIdsForUser(List.of(id), user.getId()) == 0
+                && historyArchiveService.deleteArchived(WriteBehindService.RECOMMENDATION_TABLE, user.getId(), List.of(id)) == 0) {
             throw new RuntimeException("Recommendation not found with id: " + id);
         }
+        resultSnapshotService.delete(WriteBehindService.RECOMMENDATION_TABLE, user.getId(), List.of(id));
+    }
+
+    /**
+     * Suppression groupée des recommandations de l’utilisateur : un seul DELETE ... WHERE id IN (...)
+     */
+    public int deleteRecommendations(List<Long> ids, User user) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        int deleted = recommendationRepository.deleteByIdsForUser(ids, user.getId());
+        if (deleted < ids.size()) {
+            deleted += historyArchiveService.deleteArchived(WriteBehindService.RECOMMENDATION_TABLE, user.getId(), ids);
+        }
+        resultSnapshotService.delete(WriteBehindService.RECOMMENDATION_TABLE, user.getId(), ids);
+        return deleted;
     }
 }
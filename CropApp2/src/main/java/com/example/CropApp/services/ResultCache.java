@@ -0,0 +1,601 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.config.InternalPortConfig;
+import com.example.CropApp.config.Tracing;
+import com.example.CropApp.config.TracingInterceptor;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache des résultats Flask partagé entre les répliques CropApp2.
+ *
+ * Les répliques se découvrent par Eureka et se répartissent les clés sur un anneau de hachage cohérent : chaque
+ * clé (type + formdata normalisé) a une réplique propriétaire qui en garde la valeur result-cache.ttl-seconds.
+ * Les autres répliques en gardent une copie proche (near-cache) au plus result-cache.near-ttl-seconds.
+ *
+ * Sur un défaut local, la réplique interroge la propriétaire avant d'appeler Flask ; si elle calcule elle-même
+ * la valeur, elle la pousse chez la propriétaire. Une propriétaire qui reçoit une valeur différente de la sienne
+ * envoie une invalidation aux autres répliques. Quand les membres changent, les entrées qui changent de
+ * propriétaire lui sont transmises. Une réplique injoignable est ignorée result-cache.peer-retry-ms : le cache
+ * dégrade alors en cache local, jamais en erreur.
+ *
+ * Les échanges passent par le connecteur interne (internal.port, voir InternalPortConfig) et portent
+ * result-cache.peer-token, obligatoire quand le cache est actif : sans lui, la réplique refuse de démarrer.
+ *
+ * PrecomputeService y dépose d'avance, chez leur propriétaire, les résultats des formulaires les plus demandés
+ * (clés chaudes) ; les compteurs hotLookups et hotHits mesurent la part du trafic qu'ils couvrent.
+ *
+ * Les résultats renvoyés sont partagés entre requêtes : ne pas les modifier.
+ */
+@Service
+public class ResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+    public static final String PREDICTION = "prediction";
+    public static final String RECOMMENDATION = "recommendation";
+    public static final String PEER_TOKEN_HEADER = "X-Result-Cache-Token";
+    public static final String PEER_ID_HEADER = "X-Result-Cache-Peer";
+    static final String PATH = "/internal/result-cache/";
+
+    /**
+     * Valeur échangée entre répliques ; expiresAt en millisecondes epoch (horloges supposées synchronisées).
+     */
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private Map<String, Object> result;
+        private long expiresAt;
+    }
+
+    /**
+     * Appels vers une autre réplique ; HTTP en production, en mémoire dans les tests.
+     */
+    interface PeerTransport {
+        /** Entrée détenue par peer, null si absente. */
+        Entry fetch(String peer, String key);
+
+        void store(String peer, String key, Entry entry);
+
+        void invalidate(String peer, String key);
+    }
+
+    @Autowired
+    private ObjectProvider<DiscoveryClient> discoveryClient;
+
+    @Autowired
+    private ObjectProvider<Registration> registration;
+
+    @Value("${spring.application.name:CropApp2}")
+    private String serviceId;
+
+    @Value("${result-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${result-cache.ttl-seconds:900}")
+    private long ttlSeconds;
+
+    @Value("${result-cache.near-ttl-seconds:60}")
+    private long nearTtlSeconds;
+
+    @Value("${result-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${result-cache.near-max-entries:1000}")
+    private int nearMaxEntries;
+
+    @Value("${result-cache.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${result-cache.peer-timeout-ms:300}")
+    private int peerTimeoutMs;
+
+    @Value("${result-cache.peer-retry-ms:5000}")
+    private long peerRetryMs;
+
+    @Value("${result-cache.peer-token:}")
+    private String peerToken;
+
+    private String selfId = "local";
+    private PeerTransport transport;
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, URI> peerUris = Map.of();
+    private final Map<String, Long> suspectUntil = new ConcurrentHashMap<>();
+
+    // Ordre d'accès : l'entrée la moins récemment lue est en tête et part la première
+    private final LinkedHashMap<String, Entry> owned = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Entry> near = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+    private volatile Set<String> hotKeys = Set.of();
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong peerHits = new AtomicLong();
+    private final AtomicLong computes = new AtomicLong();
+    private final AtomicLong peerFailures = new AtomicLong();
+    private final AtomicLong handedOff = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hotLookups = new AtomicLong();
+    private final AtomicLong hotHits = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (enabled && (peerToken == null || peerToken.isBlank())) {
+            throw new IllegalStateException(
+                    "result-cache.peer-token (RESULT_CACHE_PEER_TOKEN) est requis quand result-cache.enabled=true");
+        }
+        Registration self = registration.getIfAvailable();
+        if (self != null && self.getInstanceId() != null) {
+            selfId = self.getInstanceId();
+        }
+        transport = new HttpPeerTransport();
+        updateMembers(Map.of(selfId, URI.create("http://localhost")));
+    }
+
+    /**
+     * Membres lus dans le registre Eureka (qui lui-même ne se rafraîchit que toutes les 30 s par défaut).
+     */
+    @Scheduled(fixedDelayString = "${result-cache.membership-refresh-ms:15000}", initialDelayString = "${result-cache.membership-refresh-ms:15000}")
+    public void refreshMembership() {
+        DiscoveryClient client = discoveryClient.getIfAvailable();
+        if (!enabled || client == null) {
+            return;
+        }
+        try {
+            Map<String, URI> members = new HashMap<>();
+            for (ServiceInstance instance : client.getInstances(serviceId)) {
+                if (instance.getInstanceId() != null) {
+                    members.put(instance.getInstanceId(), internalUri(instance));
+                }
+            }
+            // Pas encore (ou plus) visible dans le registre : on reste membre de notre propre anneau
+            members.putIfAbsent(selfId, URI.create("http://localhost"));
+            updateMembers(members);
+        } catch (RuntimeException e) {
+            log.warn("Membres du cache de résultats non rafraîchis : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Adresse du connecteur interne annoncé dans Eureka (voir InternalPortConfig), sinon celle de l'instance.
+     */
+    static URI internalUri(ServiceInstance instance) {
+        String port = instance.getMetadata().get(InternalPortConfig.METADATA_KEY);
+        if (port == null || port.isBlank()) {
+            return instance.getUri();
+        }
+        return UriComponentsBuilder.fromUri(instance.getUri()).port(Integer.parseInt(port)).build().toUri();
+    }
+
+    /**
+     * Nouveau jeu de membres (identifiant d'instance vers URI). Si l'ensemble change, l'anneau est reconstruit
+     * et les entrées possédées qui changent de propriétaire lui sont transmises puis gardées en copie proche.
+     */
+    void updateMembers(Map<String, URI> members) {
+        peerUris = Map.copyOf(members);
+        ConsistentHashRing current = ring;
+        if (current != null && current.members().equals(members.keySet())) {
+            return;
+        }
+        ConsistentHashRing next = new ConsistentHashRing(members.keySet(), virtualNodes);
+        ring = next;
+        suspectUntil.keySet().retainAll(members.keySet());
+
+        Map<String, Entry> moving = new LinkedHashMap<>();
+        synchronized (owned) {
+            Iterator<Map.Entry<String, Entry>> it = owned.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> entry = it.next();
+                if (!selfId.equals(next.owner(entry.getKey()))) {
+                    moving.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> entry : moving.entrySet()) {
+            if (entry.getValue().getExpiresAt() > now) {
+                sendToOwner(next.owner(entry.getKey()), entry.getKey(), entry.getValue());
+                putNear(entry.getKey(), entry.getValue(), now);
+            }
+        }
+        handedOff.addAndGet(moving.size());
+        log.info("Cache de résultats : {} membre(s), {} entrée(s) transmise(s) à leur nouveau propriétaire",
+                members.size(), moving.size());
+    }
+
+    /**
+     * Résultat en cache pour ce formulaire, sinon celui de la réplique propriétaire, sinon compute (l'appel Flask).
+     * Un résultat null ou une exception de compute ne sont pas mis en cache ; les appels simultanés pour la même
+     * clé sur une réplique n'appellent compute qu'une fois.
+     */
+    public Map<String, Object> get(String kind, Map<String, Object> formData, Callable<Map<String, Object>> compute)
+            throws Exception {
+        if (!enabled || formData == null) {
+            return compute.call();
+        }
+        String key = key(kind, formData);
+        boolean hot = hotKeys.contains(key);
+        lookups.incrementAndGet();
+        if (hot) {
+            hotLookups.incrementAndGet();
+        }
+        Map<String, Object> local = local(key);
+        if (local != null) {
+            localHits.incrementAndGet();
+            if (hot) {
+                hotHits.incrementAndGet();
+            }
+            return local;
+        }
+
+        CompletableFuture<Map<String, Object>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        try {
+            Map<String, Object> result = load(key, compute, hot);
+            mine.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Retire ce résultat de toutes les répliques (modèle Flask redéployé, données corrigées...).
+     */
+    public void invalidate(String kind, Map<String, Object> formData) {
+        String key = key(kind, formData);
+        peerInvalidate(key);
+        broadcastInvalidate(key, null);
+    }
+
+    /**
+     * Résultat calculé d'avance pour une clé dont cette réplique est propriétaire, gardé ttlSeconds.
+     * Comme peerStore : une valeur qui remplace une valeur différente invalide les copies proches des autres.
+     */
+    public void preload(String key, Map<String, Object> result, long ttlSeconds) {
+        peerStore(key, new Entry(result, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds)), null);
+    }
+
+    /**
+     * Clés chaudes du moment (toutes répliques confondues) : seulement pour les compteurs de couverture.
+     */
+    public void setHotKeys(Set<String> keys) {
+        hotKeys = Set.copyOf(keys);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isOwner(String key) {
+        return selfId.equals(owner(key));
+    }
+
+    public int memberCount() {
+        ConsistentHashRing current = ring;
+        return current != null ? current.members().size() : 1;
+    }
+
+    private Map<String, Object> load(String key, Callable<Map<String, Object>> compute, boolean hot) throws Exception {
+        String owner = owner(key);
+        boolean self = selfId.equals(owner);
+        if (!self) {
+            Entry remote = fetchFromOwner(owner, key);
+            long now = System.currentTimeMillis();
+            if (remote != null && remote.getResult() != null && remote.getExpiresAt() > now) {
+                peerHits.incrementAndGet();
+                if (hot) {
+                    hotHits.incrementAndGet();
+                }
+                putNear(key, remote, now);
+                return remote.getResult();
+            }
+        }
+
+        computes.incrementAndGet();
+        Map<String, Object> result = compute.call();
+        if (result == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(result, now + TimeUnit.SECONDS.toMillis(ttlSeconds));
+        if (self) {
+            putOwned(key, entry);
+        } else {
+            putNear(key, entry, now);
+            sendToOwner(owner, key, entry);
+        }
+        return result;
+    }
+
+    // --- Côté propriétaire : appelé par ResultCacheController pour les autres répliques ---
+
+    public Entry peerGet(String key) {
+        synchronized (owned) {
+            Entry entry = owned.get(key);
+            if (entry != null && entry.getExpiresAt() <= System.currentTimeMillis()) {
+                owned.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    public void peerStore(String key, Entry entry, String fromPeer) {
+        if (entry == null || entry.getResult() == null || entry.getExpiresAt() <= System.currentTimeMillis()) {
+            return;
+        }
+        Entry previous = putOwned(key, entry);
+        synchronized (near) {
+            near.remove(key);
+        }
+        if (previous != null && !previous.getResult().equals(entry.getResult())) {
+            // Les copies proches de l'ancienne valeur ne doivent pas survivre jusqu'à leur expiration
+            broadcastInvalidate(key, fromPeer);
+        }
+    }
+
+    public void peerInvalidate(String key) {
+        synchronized (owned) {
+            owned.remove(key);
+        }
+        synchronized (near) {
+            near.remove(key);
+        }
+    }
+
+    /**
+     * Sans jeton configuré (cache désactivé), aucune requête de réplique n'est acceptée.
+     */
+    public boolean acceptsPeer(String token) {
+        if (peerToken == null || peerToken.isBlank()) {
+            return false;
+        }
+        return token != null && MessageDigest.isEqual(peerToken.getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static boolean isValidKey(String key) {
+        return key != null && key.matches("[a-z]+-[0-9a-f]{32}");
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        ConsistentHashRing current = ring;
+        stats.put("self", selfId);
+        stats.put("members", current != null ? current.shares() : Map.of());
+        synchronized (owned) {
+            stats.put("owned", owned.size());
+        }
+        synchronized (near) {
+            stats.put("near", near.size());
+        }
+        stats.put("localHits", localHits.get());
+        stats.put("peerHits", peerHits.get());
+        stats.put("computes", computes.get());
+        stats.put("peerFailures", peerFailures.get());
+        stats.put("handedOff", handedOff.get());
+        stats.put("lookups", lookups.get());
+        stats.put("hotKeys", hotKeys.size());
+        stats.put("hotLookups", hotLookups.get());
+        stats.put("hotHits", hotHits.get());
+        return stats;
+    }
+
+    /**
+     * Clé indépendante de l'ordre des champs, des espaces et de la casse : kind-<128 bits de SHA-256>.
+     */
+    static String key(String kind, Map<String, Object> formData) {
+        StringBuilder canonical = new StringBuilder(kind);
+        for (Map.Entry<String, Object> field : new TreeMap<>(formData).entrySet()) {
+            canonical.append('\n').append(field.getKey()).append('=')
+                    .append(String.valueOf(field.getValue()).trim().toLowerCase(Locale.ROOT));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return kind + "-" + HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String owner(String key) {
+        ConsistentHashRing current = ring;
+        String owner = current != null ? current.owner(key) : null;
+        return owner != null ? owner : selfId;
+    }
+
+    private Map<String, Object> local(String key) {
+        long now = System.currentTimeMillis();
+        Entry entry = peerGet(key);
+        if (entry != null) {
+            return entry.getResult();
+        }
+        synchronized (near) {
+            entry = near.get(key);
+            if (entry != null && entry.getExpiresAt() <= now) {
+                near.remove(key);
+                entry = null;
+            }
+        }
+        return entry != null ? entry.getResult() : null;
+    }
+
+    private Entry putOwned(String key, Entry entry) {
+        synchronized (owned) {
+            Entry previous = owned.put(key, entry);
+            Iterator<Entry> it = owned.values().iterator();
+            while (owned.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+            return previous;
+        }
+    }
+
+    private void putNear(String key, Entry entry, long now) {
+        long expiresAt = Math.min(entry.getExpiresAt(), now + TimeUnit.SECONDS.toMillis(nearTtlSeconds));
+        synchronized (near) {
+            near.put(key, new Entry(entry.getResult(), expiresAt));
+            Iterator<Entry> it = near.values().iterator();
+            while (near.size() > nearMaxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private Entry fetchFromOwner(String owner, String key) {
+        if (suspect(owner)) {
+            return null;
+        }
+        try (Tracing.Span span = Tracing.span("result-cache.peer-get")) {
+            span.attribute("peer", owner);
+            return transport.fetch(owner, key);
+        } catch (RuntimeException e) {
+            markSuspect(owner, e);
+            return null;
+        }
+    }
+
+    private void sendToOwner(String owner, String key, Entry entry) {
+        if (suspect(owner)) {
+            return;
+        }
+        try {
+            transport.store(owner, key, entry);
+        } catch (RuntimeException e) {
+            markSuspect(owner, e);
+        }
+    }
+
+    private void broadcastInvalidate(String key, String except) {
+        ConsistentHashRing current = ring;
+        if (current == null) {
+            return;
+        }
+        for (String peer : current.members()) {
+            if (peer.equals(selfId) || peer.equals(except) || suspect(peer)) {
+                continue;
+            }
+            try {
+                transport.invalidate(peer, key);
+            } catch (RuntimeException e) {
+                markSuspect(peer, e);
+            }
+        }
+    }
+
+    private boolean suspect(String peer) {
+        Long until = suspectUntil.get(peer);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    private void markSuspect(String peer, RuntimeException e) {
+        peerFailures.incrementAndGet();
+        suspectUntil.put(peer, System.currentTimeMillis() + peerRetryMs);
+        log.warn("Réplique {} injoignable pour le cache de résultats, ignorée {} ms : {}", peer, peerRetryMs, e.getMessage());
+    }
+
+    /**
+     * Appels directs à l'instance (sans load balancer), avec des délais courts : un défaut chez la
+     * propriétaire ne doit jamais coûter plus cher que l'appel Flask qu'il évite.
+     */
+    private class HttpPeerTransport implements PeerTransport {
+
+        private final RestTemplate restTemplate;
+
+        HttpPeerTransport() {
+            SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+            factory.setConnectTimeout(peerTimeoutMs);
+            factory.setReadTimeout(peerTimeoutMs);
+            restTemplate = new RestTemplate(factory);
+            restTemplate.getInterceptors().add(new TracingInterceptor());
+        }
+
+        @Override
+        public Entry fetch(String peer, String key) {
+            try {
+                return restTemplate.exchange(uri(peer, key), HttpMethod.GET, new HttpEntity<>(headers()), Entry.class).getBody();
+            } catch (HttpClientErrorException.NotFound e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void store(String peer, String key, Entry entry) {
+            restTemplate.exchange(uri(peer, key), HttpMethod.PUT, new HttpEntity<>(entry, headers()), Void.class);
+        }
+
+        @Override
+        public void invalidate(String peer, String key) {
+            restTemplate.exchange(uri(peer, key), HttpMethod.DELETE, new HttpEntity<>(headers()), Void.class);
+        }
+
+        private URI uri(String peer, String key) {
+            URI base = peerUris.get(peer);
+            if (base == null) {
+                throw new IllegalStateException("Réplique inconnue : " + peer);
+            }
+            return base.resolve(PATH + key);
+        }
+
+        private HttpHeaders headers() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(PEER_ID_HEADER, selfId);
+            if (peerToken != null && !peerToken.isBlank()) {
+                headers.set(PEER_TOKEN_HEADER, peerToken);
+            }
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.CropApp.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Format des résultats complets stockés dans prediction_snapshot / recommendation_snapshot.
+ *
+ * Le résultat Flask est écrit en JSON puis compressé en deflate brut avec un dictionnaire prédéfini : les clés
+ * (year_yield, season_yield, chart_data...), saisons et noms de cultures y figurent déjà, si bien qu'un résultat
+ * de quelques centaines d'octets ne paie presque que ses nombres. Le premier octet donne la version du
+ * dictionnaire ; un dictionnaire publié ne doit plus jamais changer (ajouter une version à la place).
+ */
+final class ResultSnapshotCodec {
+
+    private static final byte CURRENT_VERSION = 1;
+
+    // Les fragments les plus fréquents en fin de dictionnaire : deflate y trouve les distances les plus courtes
+    private static final byte[] DICTIONARY_V1 = ("\"probability\":0.,\"chart_data\":{"
+            + "\"apple\":0.,\"banana\":0.,\"black gram\":0.,\"chickpea\":0.,\"coconut\":0.,\"coffee\":0.,"
+            + "\"cotton\":0.,\"grapes\":0.,\"jute\":0.,\"kidney beans\":0.,\"lentil\":0.,\"maize\":0.,\"mango\":0.,"
+            + "\"moth beans\":0.,\"mung bean\":0.,\"musk melon\":0.,\"orange\":0.,\"papaya\":0.,\"pigeon pea\":0.,"
+            + "\"pomegranate\":0.,\"rice\":0.,\"watermelon\":0.},\"prediction\":[\""
+            + "\"season_yield\":{\"Kharif\":,\"Rabi\":,\"Summer\":,\"Whole Year\":,\"Winter\":,\"Autumn\":},"
+            + "\"year_yield\":{\"2018\":,\"2019\":,\"2020\":,\"2021\":,\"2022\":},"
+            + "\"temp_yield\":{\",\"rain_yield\":{\",\"humid_yield\":{\","
+            + "{\"prediction\":,\"temperature\":,\"humidity\":,\"rainfall\":")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {};
+
+    private ResultSnapshotCodec() {
+    }
+
+    static byte[] encode(ObjectMapper objectMapper, Map<String, Object> result) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(result);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(dictionary(CURRENT_VERSION));
+            deflater.setInput(json);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2 + 16);
+            out.write(CURRENT_VERSION);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static Map<String, Object> decode(ObjectMapper objectMapper, byte[] payload) throws IOException {
+        if (payload == null || payload.length == 0) {
+            throw new IOException("Instantané vide");
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(dictionary(payload[0]));
+            inflater.setInput(payload, 1, payload.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Instantané tronqué");
+                }
+                out.write(buffer, 0, n);
+            }
+            return objectMapper.readValue(out.toByteArray(), MAP);
+        } catch (DataFormatException e) {
+            throw new IOException("Instantané illisible", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] dictionary(byte version) throws IOException {
+        if (version == 1) {
+            return DICTIONARY_V1;
+        }
+        throw new IOException("Version de dictionnaire inconnue : " + version);
+    }
+}
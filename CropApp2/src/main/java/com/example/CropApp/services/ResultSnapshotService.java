@@ -0,0 +1,103 @@
+package com.example.CropApp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Résultat Flask complet (séries year_yield, season_yield... ou chart_data) de chaque prédiction et
+ * recommandation, conservé compressé à côté de la ligne d'historique qui n'en garde que quelques colonnes.
+ *
+ * Seuls les endpoints de détail le lisent, par clé primaire : rouvrir un résultat passé ne rappelle pas Flask.
+ * Un échec d'écriture de l'instantané ne fait pas échouer la prédiction (le détail répondra alors 404).
+ */
+@Service
+public class ResultSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultSnapshotService.class);
+
+    @Autowired
+    private WriteBehindService writeBehindService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${history.snapshots.enabled:true}")
+    private boolean enabled;
+
+    public void savePrediction(Number id, LocalDateTime date, Long userId, Map<String, Object> result) {
+        save(WriteBehindService.PREDICTION_TABLE, id, date, userId, result);
+    }
+
+    public void saveRecommendation(Number id, LocalDateTime date, Long userId, Map<String, Object> result) {
+        save(WriteBehindService.RECOMMENDATION_TABLE, id, date, userId, result);
+    }
+
+    public Map<String, Object> prediction(Number id, Long userId) {
+        return load(WriteBehindService.PREDICTION_TABLE, id, userId);
+    }
+
+    public Map<String, Object> recommendation(Number id, Long userId) {
+        return load(WriteBehindService.RECOMMENDATION_TABLE, id, userId);
+    }
+
+    /**
+     * Suppression avec les lignes d'historique correspondantes ; userId null : quel que soit le propriétaire.
+     */
+    public int delete(String historyTable, Long userId, Collection<? extends Number> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>(ids);
+        String sql = "DELETE FROM " + historyTable + WriteBehindService.SNAPSHOT_SUFFIX
+                + " WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        if (userId != null) {
+            sql += " AND user_id = ?";
+            args.add(userId);
+        }
+        return jdbcTemplate.update(sql, args.toArray());
+    }
+
+    private void save(String historyTable, Number id, LocalDateTime date, Long userId, Map<String, Object> result) {
+        if (!enabled || id == null || result == null) {
+            return;
+        }
+        try {
+            byte[] payload = ResultSnapshotCodec.encode(objectMapper, result);
+            writeBehindService.saveSnapshot(historyTable, id.longValue(), date, userId, payload);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Instantané du résultat {} {} non enregistré : {}", historyTable, id, e.getMessage());
+        }
+    }
+
+    private Map<String, Object> load(String historyTable, Number id, Long userId) {
+        List<byte[]> payloads = jdbcTemplate.query("SELECT payload FROM " + historyTable + WriteBehindService.SNAPSHOT_SUFFIX
+                        + " WHERE id = ? AND user_id = ?", (rs, rowNum) -> rs.getBytes(1), id.longValue(), userId);
+        if (payloads.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Résultat complet indisponible pour " + historyTable + " " + id);
+        }
+        try {
+            return ResultSnapshotCodec.decode(objectMapper, payloads.get(0));
+        } catch (IOException e) {
+            log.warn("Instantané {} {} illisible : {}", historyTable, id, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Résultat complet illisible pour " + historyTable + " " + id);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.config.FlaskWireFormat;
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.User;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Balayage "what-if" : toutes les combinaisons culture x saison pour un district et une surface.
+ *
+ * La grille est découpée en lots envoyés à la route Flask /crop-yield-predict/batch (une météo et un
+ * predict() vectorisé par lot), au plus sweep.parallelism lots en vol par balayage. Seuls les k meilleurs
+ * résultats sont gardés, dans un tas min borné, et seuls eux sont enregistrés dans l'historique.
+ *
+ * Chaque lot passe par le disjoncteur flaskApiService, comme /predict : ouvert, le balayage est refusé (503)
+ * sans appeler Flask, et les lots en échec comptent pour son ouverture.
+ */
+@Service
+public class SweepService {
+
+    private static final String FLASK_BATCH_URL = "http://apiprediction1:5000/crop-yield-predict/batch";
+
+    private static final String BREAKER = "flaskApiService";
+
+    private static final String UNAVAILABLE = "Le service de prédiction est temporairement indisponible. Veuillez réessayer plus tard.";
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private FlaskWireFormat flaskWireFormat;
+
+    @Autowired
+    private WriteBehindService writeBehindService;
+
+    @Autowired
+    private DistrictIndex districtIndex;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Value("${sweep.batch-size:100}")
+    private int batchSize;
+
+    @Value("${sweep.threads:8}")
+    private int threads;
+
+    @Value("${sweep.parallelism:4}")
+    private int parallelism;
+
+    @Value("${sweep.max-combinations:2000}")
+    private int maxCombinations;
+
+    @Value("${sweep.max-k:50}")
+    private int maxK;
+
+    @Value("${sweep.timeout-seconds:60}")
+    private long timeoutSeconds;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        // sweep.threads pour toute la réplique, sweep.parallelism lots en vol par balayage
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sweep-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Corps : {"city", "area", "crops": [...], "seasons": [...], "k"} ; renvoie le classement des k meilleurs.
+     */
+    public Map<String, Object> sweep(Map<String, Object> request, User user) throws Exception {
+        String city = districtIndex.resolve(required(request, "city").toString());
+        Float area = Float.valueOf(required(request, "area").toString());
+        List<String> crops = distinct(required(request, "crops"));
+        List<String> seasons = distinct(required(request, "seasons"));
+        int k = request.get("k") == null ? 5 : Integer.parseInt(request.get("k").toString());
+        if (k < 1 || k > maxK) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "k doit être entre 1 et " + maxK);
+        }
+        long size = (long) crops.size() * seasons.size();
+        if (size == 0 || size > maxCombinations) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "entre 1 et " + maxCombinations + " combinaisons (" + size + " demandées)");
+        }
+
+        List<Map<String, Object>> combos = new ArrayList<>((int) size);
+        for (String crop : crops) {
+            for (String season : seasons) {
+                combos.add(Map.of("crop", crop, "season", season));
+            }
+        }
+
+        CircuitBreaker breaker = circuitBreakerRegistry.circuitBreaker(BREAKER);
+        if (breaker.getState() == CircuitBreaker.State.OPEN) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, UNAVAILABLE);
+        }
+
+        TopK top = new TopK(k);
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger answered = new AtomicInteger();
+        Map<String, Object> weather = new HashMap<>();
+        Semaphore inFlight = new Semaphore(parallelism);
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+
+        for (int from = 0; from < combos.size(); from += batchSize) {
+            List<Map<String, Object>> batch = combos.subList(from, Math.min(from + batchSize, combos.size()));
+            if (!inFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                batches.forEach(pending -> pending.cancel(true));
+                throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Balayage trop long, réduisez la grille");
+            }
+            batches.add(CompletableFuture.runAsync(() -> {
+                try {
+                    Map<String, Object> response = breaker.executeSupplier(() -> callBatch(city, area, batch));
+                    answered.incrementAndGet();
+                    synchronized (weather) {
+                        weather.putIfAbsent("temperature", response.get("temperature"));
+                        weather.putIfAbsent("humidity", response.get("humidity"));
+                    }
+                    for (Map<String, Object> result : (List<Map<String, Object>>) response.get("results")) {
+                        if (result.containsKey("error")) {
+                            failed.incrementAndGet();
+                        } else {
+                            top.offer(result);
+                        }
+                    }
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                } finally {
+                    inFlight.release();
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            batches.forEach(pending -> pending.cancel(true));
+            throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Balayage trop long, réduisez la grille");
+        }
+
+        if (answered.get() == 0) {
+            // Aucun lot n'a abouti (Flask injoignable ou disjoncteur ouvert en cours de route)
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, UNAVAILABLE);
+        }
+
+        List<Map<String, Object>> ranking = new ArrayList<>();
+        int rank = 1;
+        for (Map<String, Object> result : top.sortedDescending()) {
+            Map<String, Object> entry = new LinkedHashMap<>(result);
+            entry.put("rank", rank++);
+            entry.put("id", save(city, area, result, weather, user));
+            ranking.add(entry);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("city", city);
+        response.put("area", area);
+        response.put("temperature", weather.get("temperature"));
+        response.put("humidity", weather.get("humidity"));
+        response.put("evaluated", combos.size() - failed.get());
+        response.put("failed", failed.get());
+        response.put("top", ranking);
+        return response;
+    }
+
+    private Map<String, Object> callBatch(String city, Float area, List<Map<String, Object>> combos) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("city", city);
+        body.put("area", area);
+        body.put("combos", combos);
+        ResponseEntity<Map> response = restTemplate.postForEntity(FLASK_BATCH_URL,
+                new HttpEntity<>(body, flaskWireFormat.headers()), Map.class);
+        if (response.getBody() == null || response.getBody().get("results") == null) {
+            throw new IllegalStateException("Réponse Flask invalide");
+        }
+        return response.getBody();
+    }
+
+    private Integer save(String city, Float area, Map<String, Object> result, Map<String, Object> weather, User user) {
+        Prediction prediction = new Prediction();
+        prediction.setCity(city);
+        prediction.setCrop(result.get("crop").toString());
+        prediction.setSeason(result.get("season").toString());
+        prediction.setArea(area);
+        prediction.setRainfall(Float.valueOf(result.get("rainfall").toString()));
+        prediction.setTemperature(weather.get("temperature") == null ? null : Float.valueOf(weather.get("temperature").toString()));
+        prediction.setHumidity(weather.get("humidity") == null ? null : Float.valueOf(weather.get("humidity").toString()));
+        prediction.setResult(score(result));
+        prediction.setDate(LocalDateTime.now());
+        prediction.setUser(user);
+        return writeBehindService.savePrediction(prediction);
+    }
+
+    private static Object required(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        if (value == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, key + " manquant");
+        }
+        return value;
+    }
+
+    private static List<String> distinct(Object values) {
+        if (!(values instanceof List<?> list)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "liste attendue");
+        }
+        LinkedHashSet<String> set = new LinkedHashSet<>();
+        list.forEach(value -> set.add(String.valueOf(value)));
+        return new ArrayList<>(set);
+    }
+
+    private static double score(Map<String, Object> result) {
+        return ((Number) result.get("prediction")).doubleValue();
+    }
+
+    /**
+     * Tas min de taille k : la racine est le moins bon des k meilleurs, remplacée si un meilleur arrive.
+     */
+    private static final class TopK {
+
+        private final int k;
+        private final PriorityQueue<Map<String, Object>> heap =
+                new PriorityQueue<>(Comparator.comparingDouble(SweepService::score));
+
+        private TopK(int k) {
+            this.k = k;
+        }
+
+        synchronized void offer(Map<String, Object> result) {
+            if (heap.size() < k) {
+                heap.add(result);
+            } else if (score(result) > score(heap.peek())) {
+                heap.poll();
+                heap.add(result);
+            }
+        }
+
+        synchronized List<Map<String, Object>> sortedDescending() {
+            List<Map<String, Object>> sorted = new ArrayList<>(heap);
+            sorted.sort(Comparator.comparingDouble(SweepService::score).reversed());
+            return sorted;
+        }
+    }
+}
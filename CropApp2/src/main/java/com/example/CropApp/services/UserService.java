@@ -2,6 +2,7 @@ package com.example.CropApp.services;
 
 
 import com.example.CropApp.entities.User;
+import com.example.CropApp.response.UserProfileResponse;
 import org.springframework.stereotype.Service;
 
 
@@ -13,6 +14,8 @@ public interface UserService {
 
     User findUserById(Long userId) throws Exception;
 
+    UserProfileResponse findUserProfileSummaryByJwt(String jwt) throws Exception;
+
 
 
 }
@@ -3,6 +3,7 @@ package com.example.CropApp.services;
 import com.example.CropApp.config.JwtProvider;
 import com.example.CropApp.entities.User;
 import com.example.CropApp.repositories.UserRepository;
+import com.example.CropApp.response.UserProfileResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -39,5 +40,15 @@ public class UserServiceImpl implements UserService{
         return optionalUser.get();
     }
 
+    @Override
+    public UserProfileResponse findUserProfileSummaryByJwt(String jwt) throws Exception {
+        String email = JwtProvider.getEmailFromToken(jwt);
+        UserProfileResponse profile = userRepository.findProfileByEmail(email);
+        if(profile == null) {
+            throw new Exception("User not found");
+        }
+        return profile;
+    }
+
 
 }
@@ -0,0 +1,386 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.config.JwtProvider;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Préchauffage d'une réplique avant qu'elle reçoive du trafic.
+ *
+ * L'instance s'enregistre dans Eureka en STARTING (eureka.instance.initial-status) et le groupe de santé
+ * readiness reste OUT_OF_SERVICE (WarmupHealthIndicator) pendant que ce service :
+ * - ouvre warmup.pool-connections connexions du pool Hikari ;
+ * - sérialise des résultats types (Jackson) et compresse un instantané (ResultSnapshotCodec) ;
+ * - rejoue, en HTTP sur la boucle locale et à travers les vrais filtres et contrôleurs, un petit scénario
+ *   (profil, historiques, suggestions de districts, résultats complets) avec un compte technique ;
+ *   au premier tour, une prédiction et une recommandation passent par Flask et remplissent le cache de résultats.
+ *
+ * Les tours s'enchaînent jusqu'à ce que le p99 d'un tour tienne sous warmup.target-p99-ms pendant
+ * warmup.stable-rounds tours consécutifs (après au moins warmup.min-rounds tours), ou jusqu'à
+ * warmup.max-duration-seconds : une base lente retarde la réplique mais ne la garde jamais hors service.
+ * L'instance passe ensuite UP dans Eureka et le readiness probe répond UP.
+ */
+@Service
+public class WarmupService {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupService.class);
+
+    /** En-tête des requêtes de préchauffage, exemptées de limitation de débit. */
+    public static final String HEADER = "X-Warmup";
+    private static final String TOKEN = UUID.randomUUID().toString();
+    private static final String USER_EMAIL = "warmup@cropapp.internal";
+
+    public enum State { PENDING, RUNNING, READY }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private DistrictIndex districtIndex;
+
+    @Autowired
+    private WriteBehindService writeBehindService;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+
+    @Value("${warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${warmup.pool-connections:4}")
+    private int poolConnections;
+
+    @Value("${warmup.concurrency:4}")
+    private int concurrency;
+
+    @Value("${warmup.requests-per-round:40}")
+    private int requestsPerRound;
+
+    @Value("${warmup.min-rounds:20}")
+    private int minRounds;
+
+    @Value("${warmup.stable-rounds:3}")
+    private int stableRounds;
+
+    @Value("${warmup.target-p99-ms:50}")
+    private long targetP99Ms;
+
+    @Value("${warmup.max-duration-seconds:120}")
+    private long maxDurationSeconds;
+
+    @Value("${warmup.flask-requests:true}")
+    private boolean flaskRequests;
+
+    private volatile State state = State.PENDING;
+    private final AtomicInteger serverErrors = new AtomicInteger();
+    private final Map<String, Object> details = new LinkedHashMap<>();
+
+    /**
+     * Vrai pour les requêtes envoyées par ce processus pendant le préchauffage (jeton tiré au démarrage).
+     */
+    public static boolean isWarmupRequest(HttpServletRequest request) {
+        return TOKEN.equals(request.getHeader(HEADER));
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Map<String, Object> details() {
+        synchronized (details) {
+            return new LinkedHashMap<>(details);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            detail("skipped", "warmup.enabled=false");
+            ready();
+            return;
+        }
+        state = State.RUNNING;
+        Thread thread = new Thread(this::run, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        try {
+            prefillPool();
+            touchSerializers();
+            String port = environment.getProperty("local.server.port");
+            if (port != null) {
+                replay("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port, start);
+            } else {
+                detail("replay", "pas de serveur HTTP");
+            }
+        } catch (Exception e) {
+            log.warn("Préchauffage interrompu : {}", e.getMessage(), e);
+            detail("error", e.getMessage());
+        } finally {
+            detail("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            ready();
+        }
+    }
+
+    private void ready() {
+        state = State.READY;
+        ApplicationInfoManager manager = applicationInfoManager.getIfAvailable();
+        if (manager != null) {
+            manager.setInstanceStatus(InstanceInfo.InstanceStatus.UP);
+        }
+        log.info("Préchauffage terminé, instance UP : {}", details());
+    }
+
+    private void prefillPool() throws Exception {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < poolConnections; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SELECT 1");
+                }
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+        detail("poolConnections", connections.size());
+    }
+
+    private void touchSerializers() throws Exception {
+        Map<String, Object> prediction = new LinkedHashMap<>();
+        prediction.put("prediction", 1834.5);
+        prediction.put("temperature", 27.4);
+        prediction.put("humidity", 81.0);
+        prediction.put("rainfall", 1023.4);
+        prediction.put("year_yield", Map.of("2018", 2.41, "2019", 2.38, "2020", 2.5, "2021", 2.47, "2022", 2.45));
+        prediction.put("season_yield", Map.of("Kharif", 2.45, "Rabi", 1.98, "Summer", 1.2, "Whole Year", 2.1, "Winter", 1.7));
+        Map<String, Object> recommendation = new LinkedHashMap<>();
+        recommendation.put("prediction", List.of("rice"));
+        recommendation.put("chart_data", Map.of("rice", 0.62, "maize", 0.21, "jute", 0.1, "coffee", 0.07));
+        for (int i = 0; i < 200; i++) {
+            for (Map<String, Object> result : List.of(prediction, recommendation)) {
+                byte[] json = objectMapper.writeValueAsBytes(Map.of("id", i, "result", result));
+                objectMapper.readValue(json, Map.class);
+                ResultSnapshotCodec.decode(objectMapper, ResultSnapshotCodec.encode(objectMapper, result));
+            }
+        }
+    }
+
+    private void replay(String base, long start) throws Exception {
+        String jwt = "Bearer " + JwtProvider.generateToken(
+                new UsernamePasswordAuthenticationToken(warmupUser().getEmail(), null));
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        String city = sampleCity();
+        long deadline = start + TimeUnit.SECONDS.toNanos(maxDurationSeconds);
+
+        List<Object> predictionIds = new ArrayList<>();
+        List<Object> recommendationIds = new ArrayList<>();
+        if (flaskRequests && city != null) {
+            // Une seule fois : ces appels coûtent du calcul Flask et passent par le cache de résultats
+            Map<?, ?> predicted = post(client, base + "/api/predictions/predict", jwt, Map.of("formdata",
+                    Map.of("crop", "Rice", "area", "100", "season", "Kharif", "city", city)));
+            Map<?, ?> recommended = post(client, base + "/api/recommendations/generate", jwt, Map.of("formdata",
+                    Map.of("nitrogen", 90, "phosphorous", 42, "pottasium", 43, "ph", 6.5, "season", "Kharif", "city", city)));
+            addId(predictionIds, predicted);
+            addId(recommendationIds, recommended);
+            detail("flaskReachable", predicted.containsKey("id") && !predicted.containsKey("error"));
+        }
+
+        List<String> script = new ArrayList<>(List.of("/api/users/profile", "/api/predictions/my-predictions",
+                "/api/recommendations/my-recommendations", "/api/jobs", "/api/districts/suggest?q=hyder",
+                "/api/districts/suggest?q=pun", "/api/districts/suggest?q=madras&limit=5"));
+        predictionIds.forEach(id -> script.add("/api/predictions/" + id + "/result"));
+        recommendationIds.forEach(id -> script.add("/api/recommendations/" + id + "/result"));
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, concurrency));
+        int rounds = 0;
+        int stable = 0;
+        long p99 = -1;
+        try {
+            while (System.nanoTime() < deadline) {
+                long[] latencies = round(client, workers, base, jwt, script, rounds);
+                p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+                rounds++;
+                stable = p99 <= targetP99Ms ? stable + 1 : 0;
+                if (rounds >= minRounds && stable >= stableRounds) {
+                    break;
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            detail("rounds", rounds);
+            detail("p99Ms", p99);
+            detail("targetMet", stable >= stableRounds);
+            detail("serverErrors", serverErrors.get());
+        }
+        if (stable < stableRounds) {
+            log.warn("Préchauffage : p99 {} ms au-dessus de {} ms après {} s, instance mise UP quand même",
+                    p99, targetP99Ms, maxDurationSeconds);
+        }
+
+        // Les lignes créées pour le préchauffage ne restent pas dans l'historique du compte technique ; en mode
+        // write-behind elles peuvent être encore en file, la suppression attend donc qu'elles soient écrites
+        if (!writeBehindService.awaitFlushed(TimeUnit.SECONDS.toMillis(10))) {
+            log.warn("Préchauffage : file write-behind non vidée en 10 s, lignes de préchauffage peut-être conservées");
+        }
+        delete(client, base + "/api/predictions/delete", jwt, predictionIds);
+        delete(client, base + "/api/recommendations/delete", jwt, recommendationIds);
+    }
+
+    private long[] round(HttpClient client, ExecutorService workers, String base, String jwt, List<String> script,
+                         int round) throws Exception {
+        List<Future<Long>> calls = new ArrayList<>(requestsPerRound);
+        for (int i = 0; i < requestsPerRound; i++) {
+            String path = script.get((round + i) % script.size());
+            calls.add(workers.submit(() -> {
+                long start = System.nanoTime();
+                HttpResponse<Void> response = client.send(request(base + path, jwt).GET().build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 500) {
+                    serverErrors.incrementAndGet();
+                }
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }));
+        }
+        long[] latencies = new long[calls.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = calls.get(i).get();
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private Map<?, ?> post(HttpClient client, String uri, String jwt, Object body) {
+        try {
+            HttpResponse<byte[]> response = client.send(request(uri, jwt)
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(30))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body))).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            return objectMapper.readValue(response.body(), Map.class);
+        } catch (Exception e) {
+            log.warn("Préchauffage : {} en échec ({})", uri, e.getMessage());
+            return Map.of("error", String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void delete(HttpClient client, String uri, String jwt, List<Object> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            client.send(request(uri, jwt).header("Content-Type", "application/json")
+                    .method("DELETE", HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(ids))).build(),
+                    HttpResponse.BodyHandlers.discarding());
+        } catch (Exception e) {
+            log.warn("Préchauffage : suppression {} en échec ({})", uri, e.getMessage());
+        }
+    }
+
+    private static HttpRequest.Builder request(String uri, String jwt) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .timeout(Duration.ofSeconds(10))
+                .header("Authorization", jwt)
+                .header(HEADER, TOKEN);
+    }
+
+    private static void addId(List<Object> ids, Map<?, ?> response) {
+        if (response.get("id") != null) {
+            ids.add(response.get("id"));
+        }
+    }
+
+    /**
+     * Compte technique partagé par les répliques, créé au premier préchauffage ; son mot de passe aléatoire
+     * n'est connu de personne, seul un JWT signé ici peut l'utiliser.
+     */
+    private User warmupUser() {
+        User user = userRepository.findByEmail(USER_EMAIL);
+        if (user != null) {
+            return user;
+        }
+        try {
+            return userRepository.save(User.builder()
+                    .email(USER_EMAIL)
+                    .username("cropapp-warmup")
+                    .fullName("Préchauffage")
+                    .password(passwordEncoder.encode(UUID.randomUUID().toString()))
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Une autre réplique l'a créé au même moment
+            return userRepository.findByEmail(USER_EMAIL);
+        }
+    }
+
+    private String sampleCity() {
+        for (String prefix : List.of("hyderabad", "pune", "nagpur")) {
+            for (Map<String, Object> suggestion : districtIndex.suggest(prefix, 3)) {
+                if (Boolean.TRUE.equals(suggestion.get("rainfall"))) {
+                    return suggestion.get("name").toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void detail(String key, Object value) {
+        synchronized (details) {
+            details.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.CropApp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Journal local (une ligne JSON par ligne en attente), synchronisé sur disque avant la réponse au client.
+ * Il est vidé dès que toutes les lignes journalisées ont été commitées en base.
+ */
+public class WriteBehindJournal implements AutoCloseable {
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+    private long uncommitted;
+
+    public WriteBehindJournal(Path path, ObjectMapper objectMapper) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Lignes restées dans le journal lors d'un arrêt brutal.
+     */
+    public synchronized List<PendingRow> readAll() throws IOException {
+        List<PendingRow> rows = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                rows.add(objectMapper.readValue(line, PendingRow.class));
+            } catch (IOException e) {
+                // Dernière ligne tronquée par le crash : elle n'a jamais été acquittée au client
+                break;
+            }
+        }
+        uncommitted = rows.size();
+        return rows;
+    }
+
+    public synchronized void append(PendingRow row) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(row) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            uncommitted++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture du journal write-behind impossible", e);
+        }
+    }
+
+    /**
+     * Acquitte des lignes commitées ; le fichier est tronqué quand plus rien n'est en attente.
+     */
+    public synchronized void committed(int count) {
+        uncommitted -= count;
+        if (uncommitted <= 0) {
+            uncommitted = 0;
+            try {
+                channel.truncate(0);
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Troncature du journal write-behind impossible", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.Recommendation;
+import com.example.CropApp.repositories.PredictionRepository;
+import com.example.CropApp.repositories.RecommendationRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TypeMismatchDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sauvegarde des prédictions et recommandations.
+ *
+ * Par défaut, simple save() JPA. Avec writebehind.enabled=true, l'id est réservé d'avance, la ligne est
+ * journalisée sur disque puis mise en file ; un thread unique l'insère ensuite par lots dans une seule
+ * transaction (group commit). Tous les réplicas doivent utiliser le même mode.
+ *
+ * Un lot refusé par la base pour une ligne invalide (contrainte, donnée hors format), ou writebehind.max-attempts
+ * fois de suite (8 essais par défaut, 100 ms puis doublé : environ 12,7 s), est repris ligne par ligne. Seules
+ * les lignes refusées pour elles-mêmes vont dans write_behind_dead_letter (ou, si cette insertion échoue aussi,
+ * dans le fichier journal-path + ".dead") : une ligne invalide ne bloque pas la file. Une panne de connexion est
+ * réessayée sans limite (pause plafonnée à 10 s) : les lignes restent en file et au journal, la file se remplit
+ * et les écritures suivantes sont refusées au bout de writebehind.offer-timeout-ms.
+ */
+@Service
+public class WriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindService.class);
+
+    static final String PREDICTION_TABLE = "prediction";
+    static final String RECOMMENDATION_TABLE = "recommendation";
+    static final String SNAPSHOT_SUFFIX = "_snapshot";
+
+    private static final long MAX_BACKOFF_MS = 10_000;
+
+    // Le journal est en JSON : un byte[] y est écrit en base64 et relu comme chaîne
+    private static final Set<String> BINARY_COLUMNS = Set.of("payload");
+
+    @Autowired
+    private PredictionRepository predictionRepository;
+
+    @Autowired
+    private RecommendationRepository recommendationRepository;
+
+    @Autowired
+    private IdBlockAllocator idBlockAllocator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${writebehind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${writebehind.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${writebehind.batch-size:100}")
+    private int batchSize;
+
+    @Value("${writebehind.offer-timeout-ms:500}")
+    private long offerTimeoutMs;
+
+    @Value("${writebehind.journal-path:./data/write-behind.journal}")
+    private String journalPath;
+
+    @Value("${writebehind.max-attempts:8}")
+    private int maxAttempts;
+
+    private final LinkedBlockingQueue<PendingRow> queue = new LinkedBlockingQueue<>();
+    // Lignes mises en file et lignes écrites depuis le démarrage, sous flushLock (voir awaitFlushed)
+    private final Object flushLock = new Object();
+    private long enqueued;
+    private long flushed;
+    private Semaphore capacity;
+    private WriteBehindJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        capacity = new Semaphore(queueCapacity);
+        journal = new WriteBehindJournal(Path.of(journalPath), objectMapper);
+
+        List<PendingRow> leftovers = journal.readAll();
+        if (!leftovers.isEmpty()) {
+            log.warn("Rejeu de {} ligne(s) du journal write-behind", leftovers.size());
+            if (!commit(missing(leftovers))) {
+                // Journal conservé : rejoué au prochain démarrage
+                throw new IllegalStateException("Rejeu du journal write-behind impossible, base indisponible");
+            }
+            journal.committed(leftovers.size());
+        }
+
+        running = true;
+        writer = new Thread(this::drainLoop, "write-behind-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        journal.close();
+    }
+
+    public Integer savePrediction(Prediction prediction) {
+        if (!enabled) {
+            return predictionRepository.save(prediction).getId();
+        }
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("result", prediction.getResult());
+        columns.put("humidity", prediction.getHumidity());
+        columns.put("temperature", prediction.getTemperature());
+        columns.put("rainfall", prediction.getRainfall());
+        columns.put("area", prediction.getArea());
+        columns.put("crop", prediction.getCrop());
+        columns.put("city", prediction.getCity());
+        columns.put("season", prediction.getSeason());
+        columns.put("user_id", prediction.getUser() != null ? prediction.getUser().getId() : null);
+
+        long id = enqueue(PREDICTION_TABLE, idBlockAllocator.next(PREDICTION_TABLE), prediction.getDate(), columns);
+        prediction.setId((int) id);
+        return prediction.getId();
+    }
+
+    public Long saveRecommendation(Recommendation recommendation) {
+        if (!enabled) {
+            return recommendationRepository.save(recommendation).getId();
+        }
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("result", recommendation.getResult());
+        columns.put("nitrogen", recommendation.getNitrogen());
+        columns.put("phosphorous", recommendation.getPhosphorous());
+        columns.put("pottasium", recommendation.getPottasium());
+        columns.put("ph", recommendation.getPh());
+        columns.put("season", recommendation.getSeason());
+        columns.put("city", recommendation.getCity());
+        columns.put("temperature", recommendation.getTemperature());
+        columns.put("humidity", recommendation.getHumidity());
+        columns.put("rainfall", recommendation.getRainfall());
+        columns.put("user_id", recommendation.getUser() != null ? recommendation.getUser().getId() : null);
+
+        long id = enqueue(RECOMMENDATION_TABLE, idBlockAllocator.next(RECOMMENDATION_TABLE), recommendation.getDate(), columns);
+        recommendation.setId(id);
+        return id;
+    }
+
+    /**
+     * Instantané compressé du résultat complet (voir ResultSnapshotService), même id que la ligne d'historique.
+     * En mode write-behind il suit la ligne dans la même file et le même group commit.
+     */
+    public void saveSnapshot(String historyTable, long id, LocalDateTime date, Long userId, byte[] payload) {
+        String table = historyTable + SNAPSHOT_SUFFIX;
+        if (!enabled) {
+            jdbcTemplate.update("INSERT INTO " + table + " (id, date, user_id, payload) VALUES (?, ?, ?, ?)",
+                    id, date != null ? Timestamp.valueOf(date) : null, userId, payload);
+            return;
+        }
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("user_id", userId);
+        columns.put("payload", payload);
+        enqueue(table, id, date, columns);
+    }
+
+    private long enqueue(String table, long id, LocalDateTime date, Map<String, Object> columns) {
+        // Contre-pression : au-delà de queue-capacity lignes en attente, l'appelant patiente puis échoue
+        try {
+            if (!capacity.tryAcquire(offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("File d'écriture saturée, veuillez réessayer.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Écriture interrompue", e);
+        }
+
+        try {
+            PendingRow row = new PendingRow(table, id, date, columns);
+            journal.append(row);
+            synchronized (flushLock) {
+                queue.add(row);
+                enqueued++;
+            }
+            return row.getId();
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Attend que toutes les lignes mises en file avant l'appel soient écrites (ou mises à l'écart) ; false si
+     * timeoutMs s'écoule avant. Sans write-behind, les lignes sont déjà en base.
+     */
+    public boolean awaitFlushed(long timeoutMs) throws InterruptedException {
+        if (!enabled) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (flushLock) {
+            long target = enqueued;
+            while (flushed < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                flushLock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingRow> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRow first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (!commit(batch)) {
+                    // Arrêt pendant une panne : le lot et la file restent au journal, rejoués au démarrage
+                    return;
+                }
+                journal.committed(batch.size());
+                capacity.release(batch.size());
+                synchronized (flushLock) {
+                    flushed += batch.size();
+                    flushLock.notifyAll();
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Group commit avec réessais (backoff exponentiel) ; sur une ligne invalide, ou après max-attempts essais,
+     * insertion ligne par ligne. Renvoie false si le service s'arrête pendant une panne de la base : le lot
+     * n'est alors pas acquitté dans le journal.
+     */
+    private boolean commit(List<PendingRow> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        long backoffMs = 100;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                insert(batch);
+                return true;
+            } catch (RuntimeException e) {
+                if (isRowError(e) || attempt >= maxAttempts) {
+                    log.warn("Échec du group commit de {} ligne(s) après {} essai(s), insertion ligne par ligne",
+                            batch.size(), attempt, e);
+                    break;
+                }
+                log.warn("Échec du group commit de {} ligne(s), nouvel essai dans {} ms", batch.size(), backoffMs, e);
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+        for (PendingRow row : batch) {
+            if (!commitRow(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insère une ligne seule : refusée pour elle-même, elle est mise à l'écart ; sinon (connexion, verrou,
+     * délai) elle est réessayée jusqu'à ce que la base réponde ou que le service s'arrête.
+     */
+    private boolean commitRow(PendingRow row) throws InterruptedException {
+        long backoffMs = 100;
+        while (true) {
+            try {
+                insert(List.of(row));
+                return true;
+            } catch (RuntimeException e) {
+                if (isRowError(e)) {
+                    deadLetter(row, e);
+                    return true;
+                }
+                if (!running) {
+                    log.warn("Ligne {} #{} non écrite à l'arrêt, gardée au journal : {}", row.getTable(), row.getId(),
+                            e.getMessage());
+                    return false;
+                }
+                log.error("Base indisponible pour la ligne {} #{}, nouvel essai dans {} ms : {}", row.getTable(),
+                        row.getId(), backoffMs, e.getMessage());
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    /**
+     * Erreur propre aux lignes envoyées (contrainte, valeur trop longue ou du mauvais type) : la réessayer ne
+     * changera rien. Toute autre erreur est traitée comme une panne passagère de la base.
+     */
+    private static boolean isRowError(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException || e instanceof TypeMismatchDataAccessException;
+    }
+
+    private void deadLetter(PendingRow row, RuntimeException cause) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(row);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        String error = String.valueOf(cause.getMessage());
+        try {
+            jdbcTemplate.update("INSERT INTO write_behind_dead_letter (table_name, row_id, row_json, error, failed_at) "
+                            + "VALUES (?, ?, ?, ?, ?)", row.getTable(), row.getId(), json,
+                    error.substring(0, Math.min(error.length(), 1000)), Timestamp.valueOf(LocalDateTime.now()));
+            log.error("Ligne {} #{} écartée dans write_behind_dead_letter : {}", row.getTable(), row.getId(), error);
+        } catch (RuntimeException e) {
+            // Base injoignable : la ligne reste sur disque, au format du journal
+            Path deadFile = Path.of(journalPath + ".dead");
+            try {
+                Files.writeString(deadFile, json + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+            } catch (IOException io) {
+                log.error("Ligne write-behind perdue : {}", json, io);
+                return;
+            }
+            log.error("Ligne {} #{} écartée dans {} : {}", row.getTable(), row.getId(), deadFile, error, e);
+        }
+    }
+
+    /**
+     * Insère un lot dans une seule transaction, une requête batch par table.
+     */
+    private void insert(List<PendingRow> rows) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Map<String, List<PendingRow>> byTable = rows.stream()
+                    .collect(Collectors.groupingBy(PendingRow::getTable, LinkedHashMap::new, Collectors.toList()));
+            byTable.forEach((table, tableRows) -> {
+                List<String> names = new ArrayList<>(tableRows.get(0).getColumns().keySet());
+                String sql = "INSERT INTO " + table + " (id, date, " + String.join(", ", names) + ") VALUES (?, ?"
+                        + ", ?".repeat(names.size()) + ")";
+                jdbcTemplate.batchUpdate(sql, tableRows, tableRows.size(), (ps, row) -> {
+                    ps.setLong(1, row.getId());
+                    ps.setTimestamp(2, row.getDate() != null ? Timestamp.valueOf(row.getDate()) : null);
+                    for (int i = 0; i < names.size(); i++) {
+                        Object value = row.getColumns().get(names.get(i));
+                        if (value instanceof String text && BINARY_COLUMNS.contains(names.get(i))) {
+                            value = Base64.getDecoder().decode(text);
+                        }
+                        ps.setObject(i + 3, value);
+                    }
+                });
+            });
+        });
+    }
+
+    /**
+     * Rejeu idempotent : seules les lignes absentes de la base sont réinsérées.
+     */
+    private List<PendingRow> missing(List<PendingRow> rows) {
+        List<PendingRow> missing = new ArrayList<>();
+        for (Map.Entry<String, List<PendingRow>> entry : rows.stream()
+                .collect(Collectors.groupingBy(PendingRow::getTable)).entrySet()) {
+            List<Long> ids = entry.getValue().stream().map(PendingRow::getId).toList();
+            String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+            Set<Long> existing = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT id FROM " + entry.getKey() + " WHERE id IN (" + placeholders + ")", Long.class, ids.toArray()));
+            entry.getValue().stream().filter(row -> !existing.contains(row.getId())).forEach(missing::add);
+        }
+        return missing;
+    }
+}
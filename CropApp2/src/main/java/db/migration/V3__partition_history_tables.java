@@ -0,0 +1,80 @@
+package db.migration;
+
+import com.example.CropApp.services.HistoryPartitionService;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitionnement mensuel (RANGE COLUMNS sur date) des tables prediction et recommendation.
+ *
+ * MySQL impose que la clé de partition fasse partie de la clé primaire et refuse les clés étrangères
+ * sur une table partitionnée : la PK devient (id, date) et les FK vers users sont supprimées.
+ * Sans effet sur une autre base que MySQL (bases embarquées des tests).
+ */
+public class V3__partition_history_tables extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        if (!"MySQL".equals(connection.getMetaData().getDatabaseProductName())) {
+            return;
+        }
+        partition(connection, "prediction");
+        partition(connection, "recommendation");
+    }
+
+    private void partition(Connection connection, String table) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            for (String fk : foreignKeys(connection, table)) {
+                st.execute("ALTER TABLE " + table + " DROP FOREIGN KEY " + fk);
+            }
+            st.execute("UPDATE " + table + " SET `date` = NOW() WHERE `date` IS NULL");
+            st.execute("ALTER TABLE " + table + " MODIFY `date` DATETIME(6) NOT NULL,"
+                    + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, `date`)");
+
+            YearMonth first = firstMonth(connection, table);
+            YearMonth last = YearMonth.now().plusMonths(HistoryPartitionService.MONTHS_AHEAD);
+            List<String> partitions = new ArrayList<>();
+            for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                partitions.add(HistoryPartitionService.partitionDefinition(month));
+            }
+            partitions.add("PARTITION pmax VALUES LESS THAN (MAXVALUE)");
+            st.execute("ALTER TABLE " + table + " PARTITION BY RANGE COLUMNS(`date`) ("
+                    + String.join(", ", partitions) + ")");
+        }
+    }
+
+    private List<String> foreignKeys(Connection connection, String table) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS"
+                        + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private YearMonth firstMonth(Connection connection, String table) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MIN(`date`) FROM " + table)) {
+            rs.next();
+            Timestamp min = rs.getTimestamp(1);
+            return min == null ? YearMonth.now() : YearMonth.from(min.toLocalDateTime());
+        }
+    }
+}
@@ -0,0 +1,4 @@
+-- Jeton aléatoire de la requête qui détient la clé : après reprise d'un bail échu, l'ancien détenteur ne peut plus
+-- écraser la réponse du nouveau ni libérer sa clé (voir IdempotencyStore).
+
+ALTER TABLE idempotency_key ADD COLUMN claim_token CHAR(36);
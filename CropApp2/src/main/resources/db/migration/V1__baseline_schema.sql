@@ -0,0 +1,52 @@
+-- Schéma initial, identique à celui généré jusqu'ici par ddl-auto=update.
+-- IF NOT EXISTS : une base existante est adoptée telle quelle (baseline-on-migrate).
+
+CREATE TABLE IF NOT EXISTS users (
+    id        BIGINT       NOT NULL AUTO_INCREMENT,
+    email     VARCHAR(255) NOT NULL,
+    full_name VARCHAR(255),
+    password  VARCHAR(255) NOT NULL,
+    username  VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_users_email UNIQUE (email),
+    CONSTRAINT uk_users_username UNIQUE (username)
+);
+
+CREATE TABLE IF NOT EXISTS prediction (
+    id          INTEGER     NOT NULL AUTO_INCREMENT,
+    area        FLOAT,
+    city        VARCHAR(255),
+    crop        VARCHAR(255),
+    date        DATETIME(6),
+    humidity    FLOAT,
+    rainfall    FLOAT,
+    result      DOUBLE      NOT NULL,
+    temperature FLOAT,
+    user_id     BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_prediction_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE TABLE IF NOT EXISTS recommendation (
+    id          BIGINT      NOT NULL AUTO_INCREMENT,
+    city        VARCHAR(255),
+    date        DATETIME(6),
+    humidity    DOUBLE,
+    nitrogen    DOUBLE,
+    ph          DOUBLE,
+    phosphorous DOUBLE,
+    pottasium   DOUBLE,
+    rainfall    DOUBLE,
+    result      VARCHAR(255),
+    season      VARCHAR(255),
+    temperature DOUBLE,
+    user_id     BIGINT      NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_recommendation_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE TABLE IF NOT EXISTS id_block (
+    name    VARCHAR(255) NOT NULL,
+    next_id BIGINT,
+    PRIMARY KEY (name)
+);
@@ -0,0 +1,6 @@
+-- Historique par utilisateur, trié par date (my-predictions, my-recommendations, rétention)
+CREATE INDEX idx_prediction_user_date ON prediction (user_id, date);
+CREATE INDEX idx_recommendation_user_date ON recommendation (user_id, date);
+
+-- Authentification : email + mot de passe lus sans passer par l'index cluster
+CREATE INDEX idx_users_email_password ON users (email, password);
@@ -0,0 +1,32 @@
+-- Jobs asynchrones (POST /api/jobs) : un job par demande, une ligne job_item par élément à calculer.
+-- La progression est en base : un job repris par une autre réplique saute les éléments déjà faits.
+
+CREATE TABLE job (
+    id           BIGINT       NOT NULL AUTO_INCREMENT,
+    user_id      BIGINT       NOT NULL,
+    type         VARCHAR(20)  NOT NULL,
+    status       VARCHAR(20)  NOT NULL,
+    total_items  INTEGER      NOT NULL,
+    done_items   INTEGER      NOT NULL DEFAULT 0,
+    failed_items INTEGER      NOT NULL DEFAULT 0,
+    owner        VARCHAR(255),
+    lease_until  DATETIME(6),
+    created_at   DATETIME(6)  NOT NULL,
+    started_at   DATETIME(6),
+    finished_at  DATETIME(6),
+    error        VARCHAR(1000),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_job_status_created ON job (status, created_at);
+CREATE INDEX idx_job_user_status ON job (user_id, status);
+
+CREATE TABLE job_item (
+    job_id     BIGINT      NOT NULL,
+    item_index INTEGER     NOT NULL,
+    payload    TEXT        NOT NULL,
+    status     VARCHAR(20) NOT NULL,
+    result     TEXT,
+    error      VARCHAR(1000),
+    PRIMARY KEY (job_id, item_index)
+);
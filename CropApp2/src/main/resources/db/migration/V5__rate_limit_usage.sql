@@ -0,0 +1,12 @@
+-- Consommation cumulée des buckets de limitation de débit, une ligne par (bucket, réplique).
+-- Chaque réplique y ajoute sa consommation locale et retire de ses propres buckets celle des autres.
+
+CREATE TABLE rate_limit_usage (
+    bucket_key VARCHAR(255) NOT NULL,
+    replica_id VARCHAR(100) NOT NULL,
+    consumed   BIGINT       NOT NULL,
+    updated_at DATETIME(6)  NOT NULL,
+    PRIMARY KEY (bucket_key, replica_id)
+);
+
+CREATE INDEX idx_rate_limit_usage_updated ON rate_limit_usage (updated_at);
@@ -0,0 +1,23 @@
+-- Résultat Flask complet de chaque prédiction / recommandation (séries des graphiques), compressé par
+-- ResultSnapshotCodec. Même id que la ligne d'historique ; pas de clé étrangère, les tables d'historique étant
+-- partitionnées. Lu uniquement par GET /api/predictions/{id}/result et /api/recommendations/{id}/result.
+
+CREATE TABLE prediction_snapshot (
+    id      BIGINT      NOT NULL,
+    date    DATETIME(6),
+    user_id BIGINT,
+    payload MEDIUMBLOB  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_prediction_snapshot_date ON prediction_snapshot (date);
+
+CREATE TABLE recommendation_snapshot (
+    id      BIGINT      NOT NULL,
+    date    DATETIME(6),
+    user_id BIGINT,
+    payload MEDIUMBLOB  NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_recommendation_snapshot_date ON recommendation_snapshot (date);
@@ -0,0 +1,5 @@
+-- Saison du formulaire de prédiction (déjà envoyée à Flask, jusqu'ici non enregistrée) : avec city, crop et area,
+-- elle reconstitue le formulaire complet, donc la clé du cache de résultats (voir PrecomputeService).
+-- Nulle pour les lignes antérieures, qui sont ignorées par le calcul d'avance.
+
+ALTER TABLE prediction ADD COLUMN season VARCHAR(255);
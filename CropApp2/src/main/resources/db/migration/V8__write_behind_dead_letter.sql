@@ -0,0 +1,13 @@
+-- Lignes write-behind que le group commit n'a pas pu insérer après writebehind.max-attempts essais, puis une à une.
+-- row_json a le format du journal (une ligne JSON PendingRow) : après correction, la ligne peut être rejouée en la
+-- recopiant dans le journal avant un redémarrage.
+
+CREATE TABLE write_behind_dead_letter (
+    id         BIGINT        NOT NULL AUTO_INCREMENT,
+    table_name VARCHAR(100)  NOT NULL,
+    row_id     BIGINT        NOT NULL,
+    row_json   MEDIUMTEXT    NOT NULL,
+    error      VARCHAR(1000),
+    failed_at  DATETIME(6)   NOT NULL,
+    PRIMARY KEY (id)
+);
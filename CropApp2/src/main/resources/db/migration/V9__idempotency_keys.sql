@@ -0,0 +1,14 @@
+-- Idempotency-Key de /predict et /generate, partagées par toutes les répliques (voir IdempotencyStore).
+-- status_code nul : requête en cours, expires_at est alors la fin de son bail ; sinon la réponse mémorisée expire
+-- à expires_at. key_hash et request_hash sont des SHA-256 en hexadécimal.
+
+CREATE TABLE idempotency_key (
+    key_hash      CHAR(64)    NOT NULL,
+    request_hash  CHAR(64)    NOT NULL,
+    status_code   INT,
+    response_body MEDIUMTEXT,
+    expires_at    DATETIME(6) NOT NULL,
+    PRIMARY KEY (key_hash)
+);
+
+CREATE INDEX idx_idempotency_key_expires ON idempotency_key (expires_at);
@@ -3,7 +3,7 @@ package com.example.CropApp;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "result-cache.peer-token=test")
 class CropAppApplicationTests {
 
 	@Test
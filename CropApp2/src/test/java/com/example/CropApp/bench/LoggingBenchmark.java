@@ -0,0 +1,146 @@
+package com.example.CropApp.bench;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.JsonEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import com.example.CropApp.config.SamplingTurboFilter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût de la journalisation sur le chemin d'une requête /predict : avant (System.out.println des maps complètes)
+ * et après (événement INFO paramétré et échantillonné, réponse en DEBUG désactivé, AsyncAppender + JSON).
+ * Le temps mesuré inclut le thread d'écriture de l'AsyncAppender, qui partage les cœurs avec les requêtes.
+ * La sortie va dans un fichier temporaire, comme le stdout d'un conteneur redirigé.
+ * Sans échantillonnage (1/1), le chemin asynchrone JSON coûte plus cher que println sur un seul cœur :
+ * seul l'échantillonnage réduit le coût par requête.
+ *
+ * Lancement : mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *             -Dexec.mainClass=com.example.CropApp.bench.LoggingBenchmark
+ */
+public class LoggingBenchmark {
+
+    private static final int ITERATIONS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Object> request = request();
+        Map<String, Object> response = response();
+
+        for (int threads : new int[]{1, 8}) {
+            System.out.printf("%n== %d thread(s), %d requêtes par thread ==%n", threads, ITERATIONS);
+
+            File before = File.createTempFile("logging-before", ".log");
+            try (PrintStream out = new PrintStream(new FileOutputStream(before), true)) {
+                report("avant  : println des maps", threads, () -> {
+                    out.println("Received requestData: " + request);
+                    out.println("Flask response: " + response);
+                });
+            }
+
+            for (int sampling : new int[]{1, 10}) {
+                File after = File.createTempFile("logging-after", ".log");
+                LoggerContext context = context(after, sampling);
+                Logger log = context.getLogger("com.example.CropApp.controlleurs.Bench");
+                report("après  : async JSON, 1/" + sampling, threads, () -> {
+                    log.info("Demande de recommandation city={}", request.get("city"));
+                    log.debug("Réponse Flask : {}", response);
+                });
+                context.stop();
+                after.delete();
+            }
+            before.delete();
+        }
+    }
+
+    private static void report(String label, int threads, Runnable requestPath) throws Exception {
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            requestPath.run();
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        requestPath.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%-32s %8.0f ns/requête%n", label, elapsed / (double) ITERATIONS);
+    }
+
+    private static LoggerContext context(File file, int sampling) {
+        LoggerContext context = new LoggerContext();
+        context.start();
+
+        JsonEncoder encoder = new JsonEncoder();
+        encoder.setContext(context);
+        encoder.start();
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(context);
+        fileAppender.setFile(file.getAbsolutePath());
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(context);
+        async.setQueueSize(8192);
+        async.setNeverBlock(true);
+        async.addAppender(fileAppender);
+        async.start();
+
+        SamplingTurboFilter sampler = new SamplingTurboFilter();
+        sampler.setContext(context);
+        sampler.addSample("com.example.CropApp.controlleurs=" + sampling);
+        sampler.start();
+        context.addTurboFilter(sampler);
+
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.INFO);
+        root.addAppender(async);
+        return context;
+    }
+
+    private static Map<String, Object> request() {
+        Map<String, Object> request = new HashMap<>();
+        request.put("city", "Adilabad");
+        request.put("nitrogen", 90);
+        request.put("phosphorus", 42);
+        request.put("potassium", 43);
+        request.put("ph", 6.5);
+        return request;
+    }
+
+    private static Map<String, Object> response() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("result", "rice");
+        response.put("temperature", 27.4);
+        response.put("humidity", 81.0);
+        response.put("rainfall", 1023.5);
+        response.put("probabilities", List.of(0.82, 0.07, 0.04, 0.03, 0.02, 0.01, 0.01));
+        response.put("chart", "data:image/png;base64," + "A".repeat(4000));
+        return response;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.CropApp.bench;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mesure le temps entre le lancement d'une réplique et la première réponse /predict réussie
+ * (HTTP 200 sans clé "error", donc Flask et MySQL joignables, pas le fallback du circuit breaker).
+ *
+ * Nécessite MySQL, Flask et un JWT valide ; chaque mode est lancé bench.runs fois sur le même port.
+ *
+ * Lancement : mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *             -Dexec.mainClass=com.example.CropApp.bench.StartupBenchmark
+ *             -Dbench.token="Bearer ..." -Dbench.dir=/tmp/cropapp
+ *
+ * bench.dir contient app.jar (build normal) et, pour le mode rapide, le résultat de Dockerfile.fast
+ * (application.jar, BOOT-INF/lib, app.jsa, jvm.args) ; voir Dockerfile.fast.
+ */
+public class StartupBenchmark {
+
+    private static final String PAYLOAD =
+            "{\"formdata\":{\"city\":\"Agra\",\"crop\":\"Wheat\",\"area\":12.5}}";
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(System.getProperty("bench.dir", "."));
+        String token = System.getProperty("bench.token", "");
+        int port = Integer.getInteger("bench.port", 9192);
+        int runs = Integer.getInteger("bench.runs", 3);
+        String[] common = {"-Dserver.port=" + port};
+
+        report("classique (java -jar)", dir, port, token, runs,
+                command(common, "java", "-jar", "app.jar"));
+        report("rapide (AOT + CDS)", dir, port, token, runs,
+                command(common, "java", "@jvm.args", "com.example.CropApp.CropAppApplication"));
+    }
+
+    private static List<String> command(String[] common, String java, String... rest) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(Arrays.asList(common));
+        command.addAll(Arrays.asList(rest));
+        return command;
+    }
+
+    private static void report(String label, File dir, int port, String token, int runs, List<String> command)
+            throws Exception {
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long elapsed = timeToFirstPredict(dir, port, token, command);
+            total += elapsed;
+            best = Math.min(best, elapsed);
+        }
+        System.out.printf("%-24s moyenne=%6d ms  meilleur=%6d ms  (%d lancements)%n", label, total / runs, best, runs);
+    }
+
+    private static long timeToFirstPredict(File dir, int port, String token, List<String> command) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/predictions/predict"))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .header("Authorization", token)
+                .POST(HttpRequest.BodyPublishers.ofString(PAYLOAD))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(dir)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            long deadline = start + Duration.ofMinutes(5).toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("La réplique s'est arrêtée (code " + process.exitValue() + ")");
+                }
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200 && !response.body().contains("\"error\"")) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (java.io.IOException e) {
+                    // pas encore à l'écoute
+                }
+                Thread.sleep(50);
+            }
+            throw new IllegalStateException("Aucune réponse /predict réussie en 5 minutes");
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+}
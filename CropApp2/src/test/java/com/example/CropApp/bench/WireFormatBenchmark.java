@@ -0,0 +1,114 @@
+package com.example.CropApp.bench;
+
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.Recommendation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compare JSON et CBOR sur des historiques réalistes : taille brute, taille gzip et temps de sérialisation.
+ *
+ * Lancement : mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *             -Dexec.mainClass=com.example.CropApp.bench.WireFormatBenchmark
+ */
+public class WireFormatBenchmark {
+
+    private static final String[] CITIES = {"Adilabad", "Agra", "Ahmednagar", "Ajmer", "Akola", "Alappuzha"};
+    private static final String[] CROPS = {"Rice", "Wheat", "Maize", "Cotton(lint)", "Sugarcane", "Groundnut"};
+    private static final String[] SEASONS = {"Kharif", "Rabi", "Summer", "Autumn"};
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper cbor = Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
+
+        for (int size : new int[]{10, 100, 1000}) {
+            List<Prediction> predictions = predictions(size);
+            List<Recommendation> recommendations = recommendations(size);
+
+            System.out.printf("%n== historique de %d lignes ==%n", size);
+            report("predictions", predictions, json, cbor);
+            report("recommendations", recommendations, json, cbor);
+        }
+    }
+
+    private static void report(String label, Object history, ObjectMapper json, ObjectMapper cbor) throws Exception {
+        byte[] jsonBytes = json.writeValueAsBytes(history);
+        byte[] cborBytes = cbor.writeValueAsBytes(history);
+
+        System.out.printf("%-16s json=%7d o (gzip %6d)  cbor=%7d o (gzip %6d)  json=%8.1f us  cbor=%8.1f us%n",
+                label,
+                jsonBytes.length, gzip(jsonBytes).length,
+                cborBytes.length, gzip(cborBytes).length,
+                microsPerOp(json, history), microsPerOp(cbor, history));
+    }
+
+    private static double microsPerOp(ObjectMapper mapper, Object value) throws Exception {
+        int warmup = 2_000;
+        int iterations = 5_000;
+        for (int i = 0; i < warmup; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mapper.writeValueAsBytes(value);
+        }
+        return (System.nanoTime() - start) / 1_000.0 / iterations;
+    }
+
+    private static byte[] gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Prediction> predictions(int size) {
+        Random random = new Random(42);
+        List<Prediction> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Prediction p = new Prediction();
+            p.setId(i + 1);
+            p.setResult(1000 + random.nextDouble() * 50_000);
+            p.setDate(LocalDateTime.now().minusHours(i));
+            p.setHumidity(40 + random.nextFloat() * 50);
+            p.setTemperature(15 + random.nextFloat() * 20);
+            p.setRainfall(random.nextFloat() * 1200);
+            p.setArea(1 + random.nextFloat() * 100);
+            p.setCrop(CROPS[random.nextInt(CROPS.length)]);
+            p.setCity(CITIES[random.nextInt(CITIES.length)]);
+            list.add(p);
+        }
+        return list;
+    }
+
+    private static List<Recommendation> recommendations(int size) {
+        Random random = new Random(42);
+        List<Recommendation> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Recommendation r = new Recommendation();
+            r.setId((long) i + 1);
+            r.setResult(CROPS[random.nextInt(CROPS.length)]);
+            r.setDate(LocalDateTime.now().minusHours(i));
+            r.setNitrogen(random.nextDouble() * 140);
+            r.setPhosphorous(random.nextDouble() * 145);
+            r.setPottasium(random.nextDouble() * 205);
+            r.setPh(3.5 + random.nextDouble() * 6);
+            r.setSeason(SEASONS[random.nextInt(SEASONS.length)]);
+            r.setCity(CITIES[random.nextInt(CITIES.length)]);
+            r.setTemperature(15 + random.nextDouble() * 20);
+            r.setHumidity(40 + random.nextDouble() * 50);
+            r.setRainfall(random.nextDouble() * 1200);
+            list.add(r);
+        }
+        return list;
+    }
+}
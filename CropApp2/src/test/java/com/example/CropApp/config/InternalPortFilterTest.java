@@ -0,0 +1,48 @@
+package com.example.CropApp.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InternalPortFilterTest {
+
+    private final InternalPortFilter filter = new InternalPortFilter(9292);
+
+    @Test
+    void internalPathsAreServedOnlyOnTheInternalConnector() throws Exception {
+        // Port public (celui publié ou joint par la passerelle) : /internal introuvable, même avec un en-tête
+        // X-Forwarded-Port qui prétendrait le contraire
+        MockHttpServletRequest outside = request("/internal/result-cache/prediction-00", 9192);
+        outside.addHeader("X-Forwarded-Port", "9292");
+        assertNull(pass(outside));
+
+        assertNotNull(pass(request("/internal/precompute", 9292)));
+        assertNotNull(pass(request("/api/predictions/my-predictions", 9192)));
+        // Le connecteur interne ne sert pas l'API
+        assertNull(pass(request("/api/predictions/my-predictions", 9292)));
+    }
+
+    private MockHttpServletRequest request(String uri, int localPort) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setLocalPort(localPort);
+        return request;
+    }
+
+    /**
+     * Requête transmise à la suite de la chaîne, null si le filtre a répondu 404.
+     */
+    private Object pass(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        if (chain.getRequest() == null) {
+            assertEquals(404, response.getStatus());
+        }
+        return chain.getRequest();
+    }
+}
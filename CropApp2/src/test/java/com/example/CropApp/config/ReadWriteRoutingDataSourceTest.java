@@ -0,0 +1,84 @@
+package com.example.CropApp.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Deux bases H2 embarquées jouent le primaire et le réplica ; chacune contient une ligne qui l'identifie.
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = embedded("primary");
+        replica = embedded("replica");
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaAndWritesToPrimary() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, true);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+        assertEquals("replica", whoAmI(dataSource, true));
+        assertEquals("primary", whoAmI(dataSource, false));
+        assertEquals("primary", new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+    }
+
+    @Test
+    void fallsBackToPrimaryWhenReplicaLags() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, true);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        replicaJdbc.execute("CREATE TABLE replica_status (seconds_behind_source BIGINT)");
+
+        replicaJdbc.update("INSERT INTO replica_status VALUES (30)");
+        routing.checkReplica("SELECT seconds_behind_source FROM replica_status", 5);
+        assertFalse(routing.isReplicaHealthy());
+        assertEquals("primary", whoAmI(dataSource, true));
+
+        replicaJdbc.update("UPDATE replica_status SET seconds_behind_source = 1");
+        routing.checkReplica("SELECT seconds_behind_source FROM replica_status", 5);
+        assertTrue(routing.isReplicaHealthy());
+        assertEquals("replica", whoAmI(dataSource, true));
+    }
+
+    @Test
+    void fallsBackToPrimaryWhenReplicaIsDown() {
+        DataSource broken = new DriverManagerDataSource("jdbc:h2:mem:missing;IFEXISTS=TRUE");
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, broken, true);
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+        assertEquals("primary", whoAmI(dataSource, true));
+        assertFalse(routing.isReplicaHealthy());
+    }
+
+    private String whoAmI(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        tx.setReadOnly(readOnly);
+        return tx.execute(status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+    }
+
+    private DataSource embedded(String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE node (name VARCHAR(20))");
+        jdbc.update("INSERT INTO node VALUES (?)", name);
+        return dataSource;
+    }
+}
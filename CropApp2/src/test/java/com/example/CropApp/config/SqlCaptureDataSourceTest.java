@@ -0,0 +1,106 @@
+package com.example.CropApp.config;
+
+import com.example.CropApp.support.SqlAssertions;
+import com.example.CropApp.support.SqlBudget;
+import com.example.CropApp.support.SqlCaptureExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.opentest4j.AssertionFailedError;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Capture JDBC sur une base H2 embarquée : boucle N+1 détectée, requête IN groupée acceptée, capture par
+ * requête HTTP (MockMvc) emboîtée dans celle du test.
+ */
+@ExtendWith(SqlCaptureExtension.class)
+class SqlCaptureDataSourceTest {
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource h2 = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(new SqlCaptureDataSource(h2));
+        jdbc.execute("CREATE TABLE prediction (id INT PRIMARY KEY, crop VARCHAR(32))");
+        jdbc.batchUpdate("INSERT INTO prediction VALUES (?, ?)", List.of(
+                new Object[]{1, "rice"}, new Object[]{2, "wheat"}, new Object[]{3, "maize"}));
+    }
+
+    @Test
+    void loopOfSingleRowQueriesIsReportedAsRepeatedShape(SqlStatementCapture.Capture test) {
+        try (SqlStatementCapture.Capture capture = SqlStatementCapture.start()) {
+            for (int id = 1; id <= 3; id++) {
+                jdbc.queryForObject("SELECT crop FROM prediction WHERE id = ?", String.class, id);
+            }
+            jdbc.queryForObject("SELECT crop FROM prediction WHERE id = 1", String.class);
+
+            assertEquals(4, capture.count());
+            assertEquals(4, capture.mostRepeated().getValue());
+            assertThrows(AssertionFailedError.class, () -> SqlAssertions.assertNoRepeatedShape(capture));
+            assertThrows(AssertionFailedError.class, () -> SqlAssertions.assertAtMost(3, capture));
+        }
+        // setUp (CREATE + un executeBatch) et les 4 SELECT comptent aussi dans la capture du test
+        assertEquals(6, test.count());
+    }
+
+    @Test
+    @SqlBudget(maxStatements = 4)
+    void groupedQueriesFitTheBudget() {
+        NamedParameterJdbcTemplate named = new NamedParameterJdbcTemplate(jdbc);
+        named.queryForList("SELECT crop FROM prediction WHERE id IN (:ids)", Map.of("ids", List.of(1, 2)), String.class);
+
+        assertEquals(SqlStatementCapture.shape("select crop from prediction where id in (?, ?, ?)"),
+                SqlStatementCapture.shape("SELECT crop FROM prediction WHERE id IN (?,?)"));
+    }
+
+    @Test
+    void eachHttpRequestGetsItsOwnCapture(SqlStatementCapture.Capture test) throws Exception {
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new CropsController(jdbc))
+                .addFilters(new SqlBudgetFilter(20, 5))
+                .build();
+
+        MvcResult first = mvc.perform(get("/crops")).andReturn();
+        MvcResult second = mvc.perform(get("/crops")).andReturn();
+
+        assertEquals(3, SqlAssertions.forRequest(first).count());
+        assertEquals(3, SqlAssertions.forRequest(second).count());
+        assertThrows(AssertionFailedError.class,
+                () -> SqlAssertions.assertNoRepeatedShape(SqlAssertions.forRequest(first)));
+        assertEquals(2 + 6, test.count());
+    }
+
+    @RestController
+    static class CropsController {
+
+        private final JdbcTemplate jdbc;
+
+        CropsController(JdbcTemplate jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        @GetMapping("/crops")
+        List<String> crops() {
+            // N+1 volontaire : une requête par identifiant
+            return List.of(1, 2, 3).stream()
+                    .map(id -> jdbc.queryForObject("SELECT crop FROM prediction WHERE id = ?", String.class, id))
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.CropApp.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TracingTest {
+
+    private static final String INCOMING = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01";
+
+    @AfterEach
+    void uninstall() {
+        Tracing.install(null, 200);
+    }
+
+    @Test
+    void continuesIncomingTraceAndNestsFlaskStages() {
+        List<Tracing.Trace> completed = new ArrayList<>();
+        Tracing.install(completed::add, 200);
+
+        try (Tracing.Span root = Tracing.root("POST /api/predictions/predict", INCOMING)) {
+            try (Tracing.Span client = Tracing.span("http.client POST /crop-yield-predict")) {
+                String traceparent = Tracing.traceparent();
+                assertTrue(traceparent.startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-"));
+                TracingInterceptor.recordServerTiming(
+                        "weather;desc=\"0.4\";dur=120.5, inference;desc=\"121.0\";dur=3.2", client.startEpochMicros());
+            }
+        }
+        assertNull(Tracing.traceparent());
+
+        assertEquals(1, completed.size());
+        Tracing.Trace trace = completed.get(0);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", trace.traceId());
+        Map<String, Map<String, Object>> byName = new HashMap<>();
+        trace.spans().forEach(span -> byName.put((String) span.toMap().get("name"), span.toMap()));
+
+        Map<String, Object> root = byName.get("POST /api/predictions/predict");
+        Map<String, Object> client = byName.get("http.client POST /crop-yield-predict");
+        Map<String, Object> weather = byName.get("flask.weather");
+        assertEquals("00f067aa0ba902b7", root.get("parentId"));
+        assertEquals(root.get("spanId"), client.get("parentId"));
+        assertEquals(client.get("spanId"), weather.get("parentId"));
+        assertEquals(120_500L, weather.get("durationMicros"));
+        assertEquals("apiprediction", weather.get("service"));
+        assertEquals(3_200L, byName.get("flask.inference").get("durationMicros"));
+    }
+
+    @Test
+    void tailSamplingKeepsErroredTracesAndDropsFastOnes() {
+        TraceExporter exporter = new TraceExporter();
+        BlockingQueue<Tracing.Trace> queue = new ArrayBlockingQueue<>(10);
+        ReflectionTestUtils.setField(exporter, "queue", queue);
+        ReflectionTestUtils.setField(exporter, "slowThresholdMs", 1_000L);
+        ReflectionTestUtils.setField(exporter, "sampleRate", 0.0);
+        Tracing.install(exporter::onTraceComplete, 200);
+
+        try (Tracing.Span root = Tracing.root("GET /api/predictions", null)) {
+            try (Tracing.Span lookup = Tracing.span("user.lookup")) {
+                lookup.attribute("cache", "hit");
+            }
+        }
+        assertTrue(queue.isEmpty());
+
+        try (Tracing.Span root = Tracing.root("POST /api/predictions/predict", null)) {
+            try (Tracing.Span save = Tracing.span("prediction.save")) {
+                Tracing.error(new IllegalStateException("Flask indisponible"));
+            }
+        }
+        Tracing.Trace kept = queue.poll();
+        assertTrue(kept.hasError());
+        assertEquals(2, kept.spans().size());
+        assertNull(queue.poll());
+    }
+}
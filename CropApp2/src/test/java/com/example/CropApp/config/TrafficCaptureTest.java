@@ -0,0 +1,108 @@
+package com.example.CropApp.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrafficCaptureTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesSanitizedRecordsWithStablePseudonyms(@TempDir Path dir) throws Exception {
+        TrafficCapture capture = new TrafficCapture();
+        ReflectionTestUtils.setField(capture, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(capture, "dir", dir.toString());
+        ReflectionTestUtils.setField(capture, "sampleRate", 1.0);
+        ReflectionTestUtils.setField(capture, "maxRecords", 100L);
+        ReflectionTestUtils.setField(capture, "maxBodyBytes", 16384);
+        ReflectionTestUtils.setField(capture, "queueCapacity", 100);
+        ReflectionTestUtils.setField(capture, "pseudonymKey", "test-key");
+        capture.start();
+        TrafficCaptureFilter filter = new TrafficCaptureFilter(capture, objectMapper);
+
+        MockHttpServletRequest signup = new MockHttpServletRequest("POST", "/auth/signup");
+        signup.setContentType("application/json");
+        signup.setContent("{\"email\":\"Alice@Example.com\",\"password\":\"secret\",\"fullName\":\"Alice\"}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse created = new MockHttpServletResponse();
+        created.setStatus(201);
+        filter.doFilter(signup, created, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                // Le contrôleur lit le corps : c'est ce que ContentCachingRequestWrapper garde pour la capture
+                request.getInputStream().readAllBytes();
+            }
+        }));
+
+        MockHttpServletRequest delete = new MockHttpServletRequest("DELETE", "/api/predictions/delete/42");
+        filter.doFilter(delete, new MockHttpServletResponse(), new MockFilterChain());
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), new MockHttpServletResponse(), new MockFilterChain());
+        capture.stop();
+
+        List<Map<String, Object>> lines;
+        Path file;
+        try (Stream<Path> files = Files.list(dir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)),
+                StandardCharsets.UTF_8))) {
+            lines = reader.lines().map(this::parse).toList();
+        }
+        assertEquals(3, lines.size());
+        assertEquals(1, lines.get(0).get("v"));
+
+        Map<String, Object> record = lines.get(1);
+        String pseudonym = capture.pseudonym("alice@example.com");
+        assertEquals(pseudonym, record.get("u"));
+        assertEquals(201, record.get("s"));
+        Map<String, Object> body = (Map<String, Object>) record.get("b");
+        assertEquals(pseudonym + TrafficCapture.PSEUDONYM_DOMAIN, body.get("email"));
+        assertEquals("<redacted>", body.get("password"));
+        assertEquals("xxxxx", body.get("fullName"));
+        assertFalse(lines.toString().contains("secret") || lines.toString().toLowerCase().contains("alice"));
+
+        assertEquals("/api/predictions/delete/{id}", lines.get(2).get("r"));
+        assertTrue((Double) lines.get(2).get("t") >= (Double) record.get("t"));
+    }
+
+    @Test
+    void keepsFormFieldsThatDriveTheComputation() {
+        TrafficCapture capture = new TrafficCapture();
+        ReflectionTestUtils.setField(capture, "maxBodyBytes", 16384);
+        Map<String, Object> form = Map.of("formdata", Map.of("crop", "Rice", "city", "PUNE", "area", 100, "notes", "abc"));
+
+        Map<String, Object> clean = (Map<String, Object>) capture.sanitize(null, form);
+
+        assertEquals(Map.of("crop", "Rice", "city", "PUNE", "area", 100, "notes", "xxx"), clean.get("formdata"));
+    }
+
+    private Map<String, Object> parse(String line) {
+        try {
+            return objectMapper.readValue(line, Map.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.config.JwtProvider;
+import com.example.CropApp.config.SqlStatementCapture;
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.repositories.PredictionRepository;
+import com.example.CropApp.repositories.UserRepository;
+import com.example.CropApp.support.SqlAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Budget SQL des endpoints les plus appelés, sur le contexte complet (sécurité, SqlBudgetFilter, H2 migrée par
+ * Flyway). Chaque requête MockMvc a sa propre capture : un User.predictions chargé en lazy, un existsById avant
+ * le DELETE ou un findByEmail répété font dépasser le budget. Flask est remplacé par MockRestServiceServer,
+ * derrière le load balancer (instance apiprediction1 déclarée en dur).
+ */
+@SpringBootTest(properties = {
+        "result-cache.peer-token=test",
+        "spring.datasource.url=jdbc:h2:mem:sql-budget;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.client.simple.instances.apiprediction1[0].uri=http://apiprediction1:5000"
+})
+@AutoConfigureMockMvc
+class EndpointSqlBudgetTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PredictionRepository predictionRepository;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private MockRestServiceServer flask;
+    private User user;
+    private String jwt;
+
+    @BeforeEach
+    void setUp() {
+        String name = UUID.randomUUID().toString();
+        user = new User();
+        user.setFullName(name);
+        user.setUsername(name);
+        user.setEmail(name + "@cropapp.test");
+        user.setPassword("x");
+        user = userRepository.save(user);
+        // Historique assez long pour qu'un chargement de User.predictions se voie
+        for (int i = 0; i < 5; i++) {
+            predictionRepository.save(prediction(10 + i));
+        }
+        jwt = "Bearer " + JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(user.getEmail(), null));
+        flask = MockRestServiceServer.bindTo(restTemplate).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        flask.reset();
+    }
+
+    @Test
+    void profileIsASingleProjectionQuery() throws Exception {
+        MvcResult result = mvc.perform(get("/api/users/profile").header("Authorization", jwt))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value(user.getEmail()))
+                .andReturn();
+
+        SqlStatementCapture.Capture capture = SqlAssertions.forRequest(result);
+        // Projection : ni l'entité User ni ses collections d'historique
+        SqlAssertions.assertAtMost(1, capture);
+        assertEquals(0, count(capture, "from prediction p1_0 where p1_0.user_id=?"));
+    }
+
+    @Test
+    void singleDeleteDoesNotLoadTheRowFirst() throws Exception {
+        Integer id = predictionRepository.save(prediction(42)).getId();
+
+        MvcResult result = mvc.perform(delete("/api/predictions/delete/" + id).header("Authorization", jwt))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        SqlStatementCapture.Capture capture = SqlAssertions.forRequest(result);
+        assertFalse(predictionRepository.existsById(id));
+        // Utilisateur, DELETE filtré par propriétaire, instantané : pas de SELECT de la prédiction avant
+        SqlAssertions.assertAtMost(3, capture);
+        SqlAssertions.assertNoRepeatedShape(capture);
+        assertEquals(1, count(capture, "from users"));
+        assertEquals(0, count(capture, "select p1_0.id"));
+    }
+
+    @Test
+    void predictLooksTheUserUpOnce() throws Exception {
+        flask.expect(requestTo("http://apiprediction1:5000/crop-yield-predict"))
+                .andRespond(withSuccess("{\"response\":{\"result\":{\"prediction\":4.2,\"temperature\":31.5,"
+                        + "\"humidity\":60,\"rainfall\":800}}}", MediaType.APPLICATION_JSON));
+
+        MvcResult result = mvc.perform(post("/api/predictions/predict")
+                        .header("Authorization", jwt)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"formdata\":{\"area\":10,\"crop\":\"Rice\",\"city\":\"Adilabad\",\"season\":\"Kharif\"}}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").isNumber())
+                .andReturn();
+
+        SqlStatementCapture.Capture capture = SqlAssertions.forRequest(result);
+        flask.verify();
+        // Utilisateur, ligne d'historique, instantané du résultat
+        SqlAssertions.assertAtMost(3, capture);
+        SqlAssertions.assertNoRepeatedShape(capture);
+        assertEquals(1, count(capture, "from users"));
+    }
+
+    private static long count(SqlStatementCapture.Capture capture, String fragment) {
+        return capture.statements().stream().filter(sql -> sql.toLowerCase().contains(fragment)).count();
+    }
+
+    private Prediction prediction(float area) {
+        Prediction prediction = new Prediction();
+        prediction.setCity("Adilabad");
+        prediction.setCrop("Rice");
+        prediction.setSeason("Kharif");
+        prediction.setArea(area);
+        prediction.setTemperature(31.5f);
+        prediction.setHumidity(60f);
+        prediction.setRainfall(800f);
+        prediction.setResult(4.2f);
+        prediction.setDate(LocalDateTime.now());
+        prediction.setUser(user);
+        return prediction;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.config.JwtProvider;
+import com.example.CropApp.config.SqlStatementCapture;
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.Recommendation;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.repositories.PredictionRepository;
+import com.example.CropApp.repositories.RecommendationRepository;
+import com.example.CropApp.repositories.UserRepository;
+import com.example.CropApp.support.SqlAssertions;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Réponses réelles des endpoints d'historique, sérialisées par le contexte complet (même configuration que
+ * EndpointSqlBudgetTest, donc même contexte). Chaque élément ne porte que ses colonnes : ni l'utilisateur, ni
+ * ses collections User.predictions / User.recommendations, qui seraient chargées en lazy pendant la
+ * sérialisation (requêtes en plus dans la capture) ou feraient boucler Jackson.
+ */
+@SpringBootTest(properties = {
+        "result-cache.peer-token=test",
+        "spring.datasource.url=jdbc:h2:mem:sql-budget;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "eureka.client.enabled=false",
+        "spring.cloud.discovery.client.simple.instances.apiprediction1[0].uri=http://apiprediction1:5000"
+})
+@AutoConfigureMockMvc
+class HistoryGraphSerializationGuardTest {
+
+    private static final Set<String> PREDICTION_FIELDS = Set.of("id", "result", "date", "humidity", "temperature",
+            "rainfall", "area", "crop", "city", "season");
+
+    private static final Set<String> RECOMMENDATION_FIELDS = Set.of("id", "result", "date", "nitrogen", "phosphorous",
+            "pottasium", "ph", "season", "city", "temperature", "humidity", "rainfall");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PredictionRepository predictionRepository;
+
+    @Autowired
+    private RecommendationRepository recommendationRepository;
+
+    private User user;
+    private String jwt;
+
+    @BeforeEach
+    void setUp() {
+        String name = UUID.randomUUID().toString();
+        user = new User();
+        user.setFullName(name);
+        user.setUsername(name);
+        user.setEmail(name + "@cropapp.test");
+        user.setPassword("x");
+        user = userRepository.save(user);
+        for (int i = 0; i < 3; i++) {
+            predictionRepository.save(prediction(10 + i));
+            recommendationRepository.save(recommendation(6.0 + i));
+        }
+        jwt = "Bearer " + JwtProvider.generateToken(new UsernamePasswordAuthenticationToken(user.getEmail(), null));
+    }
+
+    @Test
+    void predictionHistoryCarriesOnlyItsOwnColumns() throws Exception {
+        MvcResult result = mvc.perform(get("/api/predictions/my-predictions").header("Authorization", jwt))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertFlatHistory(result, PREDICTION_FIELDS);
+    }
+
+    @Test
+    void recommendationHistoryCarriesOnlyItsOwnColumns() throws Exception {
+        MvcResult result = mvc.perform(get("/api/recommendations/my-recommendations").header("Authorization", jwt))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertFlatHistory(result, RECOMMENDATION_FIELDS);
+    }
+
+    private void assertFlatHistory(MvcResult result, Set<String> fields) throws Exception {
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        List<Map<String, Object>> rows = objectMapper.readValue(body, new TypeReference<>() {});
+
+        assertEquals(3, rows.size());
+        for (Map<String, Object> row : rows) {
+            assertEquals(fields, row.keySet());
+        }
+        assertFalse(body.contains(user.getEmail()), "l'utilisateur est sérialisé avec son historique");
+
+        // Utilisateur puis lignes d'historique : aucune collection chargée pendant la sérialisation
+        SqlStatementCapture.Capture capture = SqlAssertions.forRequest(result);
+        SqlAssertions.assertAtMost(2, capture);
+        SqlAssertions.assertNoRepeatedShape(capture);
+    }
+
+    private Prediction prediction(float area) {
+        Prediction prediction = new Prediction();
+        prediction.setCity("Adilabad");
+        prediction.setCrop("Rice");
+        prediction.setSeason("Kharif");
+        prediction.setArea(area);
+        prediction.setTemperature(31.5f);
+        prediction.setHumidity(60f);
+        prediction.setRainfall(800f);
+        prediction.setResult(4.2f);
+        prediction.setDate(LocalDateTime.now());
+        prediction.setUser(user);
+        return prediction;
+    }
+
+    private Recommendation recommendation(double ph) {
+        Recommendation recommendation = new Recommendation();
+        recommendation.setCity("Adilabad");
+        recommendation.setSeason("Kharif");
+        recommendation.setNitrogen(90.0);
+        recommendation.setPhosphorous(42.0);
+        recommendation.setPottasium(43.0);
+        recommendation.setPh(ph);
+        recommendation.setTemperature(31.5);
+        recommendation.setHumidity(60.0);
+        recommendation.setRainfall(800.0);
+        recommendation.setResult("rice");
+        recommendation.setDate(LocalDateTime.now());
+        recommendation.setUser(user);
+        return recommendation;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.entities.User;
+import com.example.CropApp.services.JobService;
+import com.example.CropApp.services.UserServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Corps mal formés refusés par le contrôleur ; JobService n'est jamais atteint (champs laissés à null).
+ */
+class JobControllerTest {
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        JobController jobs = new JobController();
+        ReflectionTestUtils.setField(jobs, "jobService", new JobService());
+        ReflectionTestUtils.setField(jobs, "userService", new UserServiceImpl() {
+            @Override
+            public User findUserProfileByJwt(String jwt) {
+                return new User();
+            }
+        });
+        mvc = MockMvcBuilders.standaloneSetup(jobs).build();
+    }
+
+    @Test
+    void itemsThatAreNotAListOfObjectsAreABadRequest() throws Exception {
+        for (String items : new String[] {"\"Rice\"", "{\"city\":\"Adilabad\"}", "[\"Rice\"]", "[{\"city\":\"Adilabad\"}, 3]"}) {
+            mvc.perform(post("/api/jobs")
+                            .header("Authorization", "Bearer test")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"type\":\"prediction\",\"items\":" + items + "}"))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+}
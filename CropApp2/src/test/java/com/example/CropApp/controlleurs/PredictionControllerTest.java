@@ -0,0 +1,100 @@
+package com.example.CropApp.controlleurs;
+
+import com.example.CropApp.services.DistrictIndex;
+import com.example.CropApp.services.IdempotencyStore;
+import com.example.CropApp.services.PredictionService;
+import com.example.CropApp.services.RecommendationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Corps envoyés tels que le frontend les construit ({"formdata": {...}}, voir PredictionForm.tsx et
+ * RecommendationForm.tsx) ; Flask remplacé par des sous-classes qui gardent la requête reçue.
+ */
+class PredictionControllerTest {
+
+    private final List<Map<String, Object>> flaskRequests = new ArrayList<>();
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DistrictIndex districtIndex = new DistrictIndex();
+        ReflectionTestUtils.setField(districtIndex, "resource", "data/districts.csv");
+        ReflectionTestUtils.setField(districtIndex, "maxEdits", 2);
+        ReflectionTestUtils.setField(districtIndex, "defaultLimit", 10);
+        districtIndex.load();
+
+        PredictionController predictions = new PredictionController();
+        ReflectionTestUtils.setField(predictions, "districtIndex", districtIndex);
+        ReflectionTestUtils.setField(predictions, "idempotencyStore", new IdempotencyStore());
+        ReflectionTestUtils.setField(predictions, "predictionService", new PredictionService(null) {
+            @Override
+            public Map<String, Object> callFlaskApi(Map<String, Object> requestData, String jwt) {
+                flaskRequests.add(requestData);
+                return Map.of("prediction", 42);
+            }
+        });
+
+        RecommendationController recommendations = new RecommendationController();
+        ReflectionTestUtils.setField(recommendations, "districtIndex", districtIndex);
+        ReflectionTestUtils.setField(recommendations, "idempotencyStore", new IdempotencyStore());
+        ReflectionTestUtils.setField(recommendations, "recommendationService", new RecommendationService(null) {
+            @Override
+            public Map<String, Object> generateRecommendation(Map<String, Object> inputData, String jwt) {
+                flaskRequests.add(inputData);
+                return Map.of("result", "rice");
+            }
+        });
+
+        mvc = MockMvcBuilders.standaloneSetup(predictions, recommendations).build();
+    }
+
+    @Test
+    void frontendBodiesReachFlaskWithTheCanonicalCity() throws Exception {
+        mvc.perform(post("/api/predictions/predict")
+                        .header("Authorization", "Bearer test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"formdata\":{\"area\":10,\"crop\":\"Rice\",\"city\":\"madras\",\"season\":\"Kharif\"}}"))
+                .andExpect(status().isOk());
+        mvc.perform(post("/api/recommendations/generate")
+                        .header("Authorization", "Bearer test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"formdata\":{\"nitrogen\":90,\"phosphorous\":42,\"pottasium\":43,\"ph\":6.5,"
+                                + "\"city\":\" ADILABAD \",\"season\":\"Kharif\"}}"))
+                .andExpect(status().isOk());
+
+        assertEquals(2, flaskRequests.size());
+        assertEquals("Chennai (Madras)", ((Map<?, ?>) flaskRequests.get(0).get("formdata")).get("city"));
+        assertEquals("Adilabad", ((Map<?, ?>) flaskRequests.get(1).get("formdata")).get("city"));
+    }
+
+    @Test
+    void unknownCityIsRejectedBeforeFlask() throws Exception {
+        mvc.perform(post("/api/predictions/predict")
+                        .header("Authorization", "Bearer test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"formdata\":{\"area\":10,\"crop\":\"Rice\",\"city\":\"Atlantis\",\"season\":\"Kharif\"}}"))
+                .andExpect(status().isBadRequest());
+        assertEquals(0, flaskRequests.size());
+    }
+
+    @Test
+    void singleDeleteWithoutTokenIsABadRequest() throws Exception {
+        // Réplique jointe sans passer par la passerelle : pas de 500, et le service n'est pas appelé
+        mvc.perform(delete("/api/predictions/delete/1")).andExpect(status().isBadRequest());
+        mvc.perform(delete("/api/recommendations/delete/1")).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.CropApp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Index chargé depuis le vrai data/districts.csv, sans contexte Spring.
+ */
+class DistrictIndexTest {
+
+    private DistrictIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        index = new DistrictIndex();
+        ReflectionTestUtils.setField(index, "resource", "data/districts.csv");
+        ReflectionTestUtils.setField(index, "maxEdits", 2);
+        ReflectionTestUtils.setField(index, "defaultLimit", 10);
+        index.load();
+    }
+
+    @Test
+    void prefixSuggestionsAreCaseInsensitiveAndSorted() {
+        List<String> names = names(index.suggest("  hyder", 5));
+        assertEquals(List.of("Hyderabad"), names);
+
+        List<String> anan = names(index.suggest("ANAN", 5));
+        assertEquals(List.of("Anand", "Anantapur", "Anantnag (Kashmir South)"), anan);
+    }
+
+    @Test
+    void typosFallBackToBoundedEditDistance() {
+        assertEquals("Hyderabad", names(index.suggest("hydrabad", 3)).get(0));
+        assertEquals("Thiruvananthapuram (Triv)", names(index.suggest("thiruvanathapuram", 3)).get(0));
+        // trop court pour tolérer une faute : pas de suggestion approximative
+        assertTrue(index.suggest("zq", 3).isEmpty());
+    }
+
+    @Test
+    void resolvesAliasesToTheNameExpectedByFlask() {
+        assertEquals("Chennai (Madras)", index.resolve("chennai"));
+        assertEquals("Chennai (Madras)", index.resolve("Madras"));
+        assertEquals("Darrang (Mangaldai)", index.resolve("DARRANG"));
+        assertEquals("Hamirpur", index.resolve("hamirpur"));
+
+        Map<String, Object> formData = new HashMap<>(Map.of("city", "  adilabad "));
+        index.requireKnownCity(formData);
+        assertEquals("Adilabad", formData.get("city"));
+
+        // Corps des contrôleurs : {"formdata": {...}}
+        Map<String, Object> body = new HashMap<>(Map.of("formdata", new HashMap<>(Map.of("city", "ADILABAD"))));
+        index.requireKnownCity(body);
+        assertEquals("Adilabad", ((Map<?, ?>) body.get("formdata")).get("city"));
+    }
+
+    @Test
+    void rejectsUnknownAmbiguousOrRainlessDistricts() {
+        ResponseStatusException unknown = assertThrows(ResponseStatusException.class, () -> index.resolve("Hydrabad"));
+        assertEquals(400, unknown.getStatusCode().value());
+        assertTrue(unknown.getReason().contains("Hyderabad"), unknown.getReason());
+
+        ResponseStatusException ambiguous = assertThrows(ResponseStatusException.class, () -> index.resolve("Upper Subansiri"));
+        assertTrue(ambiguous.getReason().contains("Upper Subansiri (Ziro)"), ambiguous.getReason());
+
+        assertThrows(ResponseStatusException.class, () -> index.resolve("Anjaw"));
+        assertThrows(ResponseStatusException.class, () -> index.requireKnownCity(new HashMap<>()));
+    }
+
+    private static List<String> names(List<Map<String, Object>> suggestions) {
+        return suggestions.stream().map(suggestion -> suggestion.get("name").toString()).toList();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.Prediction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fichiers d'archive dans un répertoire temporaire ; H2 n'a pas GET_LOCK, seul le verrou local s'applique.
+ */
+class HistoryArchiveServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private HistoryArchiveService archive;
+    private final HistoryArchiveService.Month january =
+            new HistoryArchiveService.Month(WriteBehindService.PREDICTION_TABLE, 7L, YearMonth.of(2024, 1));
+
+    @BeforeEach
+    void setUp() {
+        archive = service();
+    }
+
+    @Test
+    void chunksAreAppendedAsSegmentsThenCompacted() throws Exception {
+        archive.append(january, rows(1, 3));
+        archive.append(january, rows(4, 6));
+        // Lot rejoué après un arrêt entre l'écriture du segment et le DELETE
+        archive.append(january, rows(4, 6));
+        assertEquals(3, files().size());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), ids(archive.archivedPredictions(7L)));
+
+        archive.compact(january);
+        assertEquals(List.of("2024-01.col.gz"), files());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), ids(archive.archivedPredictions(7L)));
+
+        // Un autre réplica (même répertoire, autre cache de lecture) voit l'état courant
+        archive.append(january, rows(7, 7));
+        HistoryArchiveService other = service();
+        assertEquals(7, other.archivedPredictions(7L).size());
+        assertEquals(2, other.deleteArchived(WriteBehindService.PREDICTION_TABLE, 7L, List.of(2, 7, 99)));
+        assertEquals(List.of(1, 3, 4, 5, 6), ids(archive.archivedPredictions(7L)));
+        assertEquals(List.of("2024-01.col.gz"), files());
+    }
+
+    private HistoryArchiveService service() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        HistoryArchiveService service = new HistoryArchiveService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", new JdbcTemplate(dataSource));
+        ReflectionTestUtils.setField(service, "archiveDir", dir.toString());
+        ReflectionTestUtils.setField(service, "lockTimeoutSeconds", 1);
+        ReflectionTestUtils.setField(service, "readCacheRows", 1000);
+        return service;
+    }
+
+    private List<Map<String, Object>> rows(int fromId, int toId) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int id = fromId; id <= toId; id++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", id);
+            row.put("date", LocalDateTime.of(2024, 1, id, 10, 0));
+            row.put("result", 2.5 * id);
+            row.put("area", 10f);
+            row.put("crop", "Rice");
+            row.put("city", "Pune");
+            row.put("season", "Kharif");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Fichiers du répertoire de l'utilisateur, aucun fichier temporaire ne doit rester.
+     */
+    private List<String> files() throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve(WriteBehindService.PREDICTION_TABLE).resolve("7"))) {
+            List<String> names = files.map(path -> path.getFileName().toString()).sorted().toList();
+            assertTrue(names.stream().allMatch(name -> name.endsWith(".col.gz")), names.toString());
+            return names;
+        }
+    }
+
+    private static List<Integer> ids(List<Prediction> predictions) {
+        return predictions.stream().map(Prediction::getId).sorted().toList();
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.config.JwtProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Deux IdempotencyStore sur la même base H2 (mode MySQL) migrée par Flyway, comme deux répliques.
+ */
+class IdempotencyStoreTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final String jwt = "Bearer " + JwtProvider.generateToken(new UsernamePasswordAuthenticationToken("a@b.c", null));
+    private JdbcTemplate jdbcTemplate;
+    private IdempotencyStore replicaA;
+    private IdempotencyStore replicaB;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        replicaA = store();
+        replicaB = store();
+    }
+
+    @Test
+    void storedResponseIsReplayedByAnotherReplica() {
+        ResponseEntity<Map<String, Object>> first = replicaA.execute("k1", jwt, body("Adilabad", "Rice"), this::ok);
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("formdata", Map.of("crop", "Rice", "city", "Adilabad"));
+        ResponseEntity<Map<String, Object>> retry = replicaB.execute("k1", jwt, reordered, this::ok);
+
+        assertEquals(1, calls.get());
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    void sameKeyWithAnotherBodyIsRejected() {
+        replicaA.execute("k1", jwt, body("Adilabad", "Rice"), this::ok);
+        ResponseEntity<Map<String, Object>> other = replicaB.execute("k1", jwt, body("Adilabad", "Wheat"), this::ok);
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, other.getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void requestInProgressGetsAnImmediateConflict() {
+        Map<String, Object> body = body("Adilabad", "Rice");
+        ResponseEntity<Map<String, Object>> first = replicaA.execute("k1", jwt, body, () -> {
+            ResponseEntity<Map<String, Object>> concurrent = replicaB.execute("k1", jwt, body, this::ok);
+            assertEquals(HttpStatus.CONFLICT, concurrent.getStatusCode());
+            assertEquals("1", concurrent.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            return ok();
+        });
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void failuresReleaseTheKey() {
+        Map<String, Object> body = body("Adilabad", "Rice");
+        ResponseEntity<Map<String, Object>> rejected = replicaA.execute("k1", jwt, body,
+                () -> ResponseEntity.badRequest().body(Map.of("error", "Flask indisponible")));
+        assertEquals(HttpStatus.BAD_REQUEST, rejected.getStatusCode());
+        assertThrows(IllegalStateException.class, () -> replicaA.execute("k1", jwt, body, () -> {
+            throw new IllegalStateException("panne");
+        }));
+
+        ResponseEntity<Map<String, Object>> retry = replicaB.execute("k1", jwt, body, this::ok);
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertNull(retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void abandonedRequestIsTakenOverAfterItsLease() {
+        Map<String, Object> body = body("Adilabad", "Rice");
+        replicaA.execute("k1", jwt, body, this::ok);
+        // Réplique arrêtée en plein calcul : la ligne reste en cours, bail échu
+        jdbcTemplate.update("UPDATE idempotency_key SET status_code = NULL, response_body = NULL, expires_at = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)));
+
+        ResponseEntity<Map<String, Object>> retry = replicaB.execute("k1", jwt, body, this::ok);
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(2, calls.get());
+
+        replicaB.purge();
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_key", Integer.class));
+    }
+
+    @Test
+    void staleOwnerFinishingAfterATakeoverDoesNotOverwriteTheNewResponse() {
+        Map<String, Object> body = body("Adilabad", "Rice");
+        ResponseEntity<Map<String, Object>> slow = replicaA.execute("k1", jwt, body, () -> {
+            // La requête de A dépasse son bail : B reprend la clé et termine avant elle
+            expireLease();
+            ResponseEntity<Map<String, Object>> takeover = replicaB.execute("k1", jwt, body, this::ok);
+            assertEquals(HttpStatus.OK, takeover.getStatusCode());
+            return ok();
+        });
+        assertEquals(1002, slow.getBody().get("prediction"));
+
+        ResponseEntity<Map<String, Object>> retry = replicaA.execute("k1", jwt, body, this::ok);
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(1001, retry.getBody().get("prediction"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void staleOwnerFailingAfterATakeoverDoesNotReleaseTheNewClaim() {
+        Map<String, Object> body = body("Adilabad", "Rice");
+        assertThrows(IllegalStateException.class, () -> replicaA.execute("k1", jwt, body, () -> {
+            // Bail de A échu et clé réservée à nouveau par une autre requête, dont le calcul est encore en cours
+            jdbcTemplate.update("UPDATE idempotency_key SET claim_token = ?, expires_at = ?", UUID.randomUUID().toString(),
+                    Timestamp.valueOf(LocalDateTime.now().plusSeconds(120)));
+            throw new IllegalStateException("A échoue après la reprise");
+        }));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_key", Integer.class));
+    }
+
+    private void expireLease() {
+        jdbcTemplate.update("UPDATE idempotency_key SET expires_at = ? WHERE status_code IS NULL",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)));
+    }
+
+    private IdempotencyStore store() {
+        IdempotencyStore store = new IdempotencyStore();
+        ReflectionTestUtils.setField(store, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(store, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(store, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(store, "inProgressSeconds", 120L);
+        return store;
+    }
+
+    private ResponseEntity<Map<String, Object>> ok() {
+        return ResponseEntity.ok(Map.of("prediction", 1000 + calls.incrementAndGet()));
+    }
+
+    private static Map<String, Object> body(String city, String crop) {
+        Map<String, Object> formdata = new LinkedHashMap<>();
+        formdata.put("city", city);
+        formdata.put("crop", crop);
+        return Map.of("formdata", formdata);
+    }
+}
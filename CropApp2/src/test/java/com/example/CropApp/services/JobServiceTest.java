@@ -0,0 +1,264 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.Job;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.repositories.JobRepository;
+import com.example.CropApp.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Deux JobService sur la même base (H2 migrée par Flyway), comme deux répliques ; Flask est remplacé par une
+ * sous-classe de PredictionService qui note les appels et bloque les blockedCalls premiers. Hors transaction de
+ * test : les workers doivent voir les lignes commitées.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JobServiceTest {
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<JobService> replicas = new ArrayList<>();
+    private final CountDownLatch flask = new CountDownLatch(1);
+    private DistrictIndex districtIndex;
+    private volatile String flaskError;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate.update("DELETE FROM job_item");
+        jdbcTemplate.update("DELETE FROM job");
+        districtIndex = new DistrictIndex();
+        ReflectionTestUtils.setField(districtIndex, "resource", "data/districts.csv");
+        ReflectionTestUtils.setField(districtIndex, "maxEdits", 2);
+        ReflectionTestUtils.setField(districtIndex, "defaultLimit", 10);
+        districtIndex.load();
+    }
+
+    @AfterEach
+    void tearDown() {
+        flask.countDown();
+        replicas.forEach(JobService::stop);
+    }
+
+    @Test
+    void onlyOneReplicaClaimsAJob() throws Exception {
+        List<String> callsA = new CopyOnWriteArrayList<>();
+        List<String> callsB = new CopyOnWriteArrayList<>();
+        JobService a = replica("a", 1, callsA, 0);
+        JobService b = replica("b", 1, callsB, 0);
+        Job job = a.submit(JobService.PREDICTION, items(3), user());
+
+        a.poll();
+        b.poll();
+        await(() -> Job.DONE.equals(status(job.getId())));
+
+        assertEquals(3, callsA.size());
+        assertEquals(0, callsB.size());
+        Job finished = jobRepository.findById(job.getId()).orElseThrow();
+        assertEquals(3, finished.getDoneItems());
+        assertEquals(List.of("DONE", "DONE", "DONE"), itemStatuses(job.getId()));
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverWithoutOverwritingFinishedItems() throws Exception {
+        List<String> callsA = new CopyOnWriteArrayList<>();
+        List<String> callsB = new CopyOnWriteArrayList<>();
+        JobService a = replica("a", 1, callsA, 1);
+        JobService b = replica("b", 1, callsB, 0);
+        Job job = a.submit(JobService.PREDICTION, items(3), user());
+
+        // a prend le job et reste bloquée sur l'élément 0
+        a.poll();
+        await(() -> callsA.size() == 1);
+        b.poll();
+        assertEquals(0, callsB.size());
+
+        // a est jugée morte : bail échu, b reprend et calcule tous les éléments encore PENDING
+        jdbcTemplate.update("UPDATE job SET lease_until = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), job.getId());
+        b.poll();
+        await(() -> Job.DONE.equals(status(job.getId())));
+        assertEquals(3, callsB.size());
+
+        // a se réveille : son résultat pour l'élément 0 ne remplace pas celui de b, et elle s'arrête
+        flask.countDown();
+        await(() -> running(a) == 0);
+        assertEquals(1, callsA.size());
+        assertEquals("b", jdbcTemplate.queryForObject(
+                "SELECT result FROM job_item WHERE job_id = ? AND item_index = 0", String.class, job.getId())
+                .replaceAll(".*\"replica\":\"(\\w+)\".*", "$1"));
+        assertEquals(3, jobRepository.findById(job.getId()).orElseThrow().getDoneItems());
+    }
+
+    @Test
+    void replicaThatLostItsLeaseWritesNothingAndStops() throws Exception {
+        List<String> callsA = new CopyOnWriteArrayList<>();
+        JobService a = replica("a", 1, callsA, 1);
+        Job job = a.submit(JobService.PREDICTION, items(3), user());
+
+        a.poll();
+        await(() -> callsA.size() == 1);
+
+        // bail échu pendant l'appel Flask, personne n'a encore repris le job
+        jdbcTemplate.update("UPDATE job SET lease_until = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), job.getId());
+        flask.countDown();
+        await(() -> running(a) == 0);
+
+        assertEquals(1, callsA.size());
+        assertEquals(List.of("PENDING", "PENDING", "PENDING"), itemStatuses(job.getId()));
+        assertEquals(0, jobRepository.findById(job.getId()).orElseThrow().getDoneItems());
+    }
+
+    @Test
+    void longFlaskErrorIsTruncatedToTheColumn() throws Exception {
+        flaskError = "x".repeat(5_000);
+        JobService a = replica("a", 1, new CopyOnWriteArrayList<>(), 0);
+        Job job = a.submit(JobService.PREDICTION, items(1), user());
+
+        a.poll();
+        await(() -> Job.DONE.equals(status(job.getId())));
+
+        assertEquals(List.of("FAILED"), itemStatuses(job.getId()));
+        assertEquals(1000, jdbcTemplate.queryForObject(
+                "SELECT error FROM job_item WHERE job_id = ?", String.class, job.getId()).length());
+    }
+
+    @Test
+    void eachUserGetsAJobPerRoundBeforeAnyoneGetsASecond() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        JobService a = replica("a", 2, calls, Integer.MAX_VALUE);
+        User heavy = user();
+        User light = user();
+        Job first = a.submit(JobService.PREDICTION, items(1), heavy);
+        Job second = a.submit(JobService.PREDICTION, items(1), heavy);
+        Job other = a.submit(JobService.PREDICTION, items(1), light);
+
+        a.poll();
+        await(() -> calls.size() == 2);
+        assertEquals(Job.RUNNING, status(first.getId()));
+        assertEquals(Job.QUEUED, status(second.getId()));
+        assertEquals(Job.RUNNING, status(other.getId()));
+    }
+
+    private JobService replica(String name, int maxRunningPerUser, List<String> calls, int blockedCalls) {
+        PredictionService flaskStub = new PredictionService(null) {
+            @Override
+            public Map<String, Object> callFlaskApiForUser(Map<String, Object> requestData, User user) {
+                calls.add(name);
+                if (calls.size() <= blockedCalls) {
+                    try {
+                        flask.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Map<String, Object> result = new HashMap<>();
+                if (flaskError != null) {
+                    result.put("error", flaskError);
+                    return result;
+                }
+                result.put("prediction", 4.2);
+                result.put("replica", name);
+                return result;
+            }
+        };
+        JobService service = new JobService();
+        ReflectionTestUtils.setField(service, "jobRepository", jobRepository);
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "predictionService", flaskStub);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "districtIndex", districtIndex);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "maxItems", 100);
+        ReflectionTestUtils.setField(service, "maxRunningPerUser", (long) maxRunningPerUser);
+        ReflectionTestUtils.setField(service, "leaseSeconds", 60L);
+        ReflectionTestUtils.setField(service, "streamThreads", 1);
+        ReflectionTestUtils.setField(service, "owner", name);
+        service.start();
+        replicas.add(service);
+        return service;
+    }
+
+    private User user() {
+        String name = UUID.randomUUID().toString();
+        User user = new User();
+        user.setFullName(name);
+        user.setUsername(name);
+        user.setEmail(name + "@cropapp.test");
+        user.setPassword("x");
+        return userRepository.save(user);
+    }
+
+    private static List<Map<String, Object>> items(int count) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("city", "Adilabad");
+            item.put("crop", "Rice");
+            item.put("season", "Kharif");
+            item.put("area", 10 + i);
+            items.add(item);
+        }
+        return items;
+    }
+
+    private String status(Long jobId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM job WHERE id = ?", String.class, jobId);
+    }
+
+    private List<String> itemStatuses(Long jobId) {
+        return jdbcTemplate.queryForList("SELECT status FROM job_item WHERE job_id = ? ORDER BY item_index",
+                String.class, jobId);
+    }
+
+    private static int running(JobService service) {
+        return ((AtomicInteger) ReflectionTestUtils.getField(service, "running")).get();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition non atteinte en 5 s");
+            Thread.sleep(20);
+        }
+    }
+}
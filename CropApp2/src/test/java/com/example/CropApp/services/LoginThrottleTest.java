@@ -0,0 +1,66 @@
+package com.example.CropApp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Seuils réduits (3 échecs par compte, 5 par adresse IP, blocage de 30 s doublé jusqu'à 100 s) ; les délais
+ * sont lus juste après l'échec, sans attendre.
+ */
+class LoginThrottleTest {
+
+    private LoginThrottle throttle;
+
+    @BeforeEach
+    void setUp() {
+        throttle = new LoginThrottle();
+        ReflectionTestUtils.setField(throttle, "windowSeconds", 900L);
+        ReflectionTestUtils.setField(throttle, "accountMaxFailures", 3);
+        ReflectionTestUtils.setField(throttle, "ipMaxFailures", 5);
+        ReflectionTestUtils.setField(throttle, "baseLockSeconds", 30L);
+        ReflectionTestUtils.setField(throttle, "maxLockSeconds", 100L);
+    }
+
+    @Test
+    void accountIsLockedAfterMaxFailures() {
+        throttle.recordFailure("a@b.c", "10.0.0.1");
+        throttle.recordFailure("a@b.c", "10.0.0.2");
+        assertEquals(0, throttle.retryAfterSeconds("a@b.c", "10.0.0.3"));
+
+        throttle.recordFailure("a@b.c", "10.0.0.3");
+        // Compte bloqué quelle que soit l'adresse, et sans tenir compte de la casse ni des espaces
+        assertEquals(30, throttle.retryAfterSeconds(" A@B.C ", "10.0.0.4"));
+        assertEquals(0, throttle.retryAfterSeconds("other@b.c", "10.0.0.4"));
+    }
+
+    @Test
+    void eachFurtherFailureDoublesTheLockUpToTheCap() {
+        for (int i = 0; i < 3; i++) {
+            throttle.recordFailure("a@b.c", "10.0.0." + i);
+        }
+        assertEquals(30, throttle.retryAfterSeconds("a@b.c", "10.0.0.9"));
+
+        throttle.recordFailure("a@b.c", "10.0.0.3");
+        assertEquals(60, throttle.retryAfterSeconds("a@b.c", "10.0.0.9"));
+
+        throttle.recordFailure("a@b.c", "10.0.0.4");
+        assertEquals(100, throttle.retryAfterSeconds("a@b.c", "10.0.0.9"));
+    }
+
+    @Test
+    void successResetsTheAccountButNotTheAddress() {
+        for (int i = 0; i < 5; i++) {
+            throttle.recordFailure("a@b.c", "10.0.0.1");
+        }
+        assertEquals(0, throttle.retryAfterSeconds("other@b.c", "10.0.0.2"));
+        assertEquals(30, throttle.retryAfterSeconds("other@b.c", "10.0.0.1"));
+
+        throttle.recordSuccess("a@b.c");
+        assertEquals(0, throttle.retryAfterSeconds("a@b.c", "10.0.0.2"));
+        // L'adresse qui a accumulé les échecs reste bloquée pour tous les comptes
+        assertEquals(30, throttle.retryAfterSeconds("a@b.c", "10.0.0.1"));
+    }
+}
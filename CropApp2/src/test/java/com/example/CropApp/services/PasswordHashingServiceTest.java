@@ -0,0 +1,89 @@
+package com.example.CropApp.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pool d'un thread et file d'une place, coût BCrypt fixe au minimum (4) ; le thread est occupé par une tâche
+ * bloquée sur un verrou pour remplir le pool.
+ */
+class PasswordHashingServiceTest {
+
+    private final CountDownLatch busy = new CountDownLatch(1);
+    private PasswordHashingService hashing;
+
+    @BeforeEach
+    void setUp() {
+        hashing = new PasswordHashingService();
+        ReflectionTestUtils.setField(hashing, "threads", 1);
+        ReflectionTestUtils.setField(hashing, "queueCapacity", 1);
+        ReflectionTestUtils.setField(hashing, "fixedCost", 4);
+        ReflectionTestUtils.setField(hashing, "minCost", 4);
+        ReflectionTestUtils.setField(hashing, "targetMs", 250L);
+        ReflectionTestUtils.setField(hashing, "timeoutMs", 300L);
+        hashing.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        busy.countDown();
+        hashing.stop();
+    }
+
+    @Test
+    void hashMatchesItsPassword() throws Exception {
+        String hash = hashing.encode("secret").get(5, TimeUnit.SECONDS);
+
+        assertTrue(hashing.matches("secret", hash).get(5, TimeUnit.SECONDS));
+        assertFalse(hashing.matches("other", hash).get(5, TimeUnit.SECONDS));
+        assertFalse(hashing.needsRehash(hash));
+    }
+
+    @Test
+    void requestBeyondTheQueueIsRejectedAtOnce() {
+        occupyTheThread();
+        hashing.encode("queued");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> hashing.encode("rejected"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+    }
+
+    @Test
+    void requestStillQueuedAfterTheTimeoutFails() throws Exception {
+        occupyTheThread();
+        long start = System.nanoTime();
+        CompletableFuture<String> queued = hashing.encode("queued");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, e.getCause());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, cause.getStatusCode());
+    }
+
+    private void occupyTheThread() {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(hashing, "executor");
+        executor.execute(() -> {
+            try {
+                busy.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.CropApp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Historique sur une base H2 (mode MySQL), une seule réplique propriétaire de toutes les clés, Flask remplacé
+ * par des sous-classes qui comptent les appels.
+ */
+class PrecomputeServiceTest {
+
+    private final AtomicInteger flaskCalls = new AtomicInteger();
+    private volatile CountDownLatch flaskGate = new CountDownLatch(0);
+    private JdbcTemplate jdbcTemplate;
+    private ResultCache resultCache;
+    private PrecomputeService precompute;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE prediction (id INTEGER NOT NULL AUTO_INCREMENT, area FLOAT, city VARCHAR(255), "
+                + "crop VARCHAR(255), season VARCHAR(255), date DATETIME(6), PRIMARY KEY (id))");
+        jdbcTemplate.execute("CREATE TABLE recommendation (id BIGINT NOT NULL AUTO_INCREMENT, city VARCHAR(255), "
+                + "date DATETIME(6), nitrogen DOUBLE, ph DOUBLE, phosphorous DOUBLE, pottasium DOUBLE, "
+                + "season VARCHAR(255), PRIMARY KEY (id))");
+
+        resultCache = new ResultCache();
+        ReflectionTestUtils.setField(resultCache, "enabled", true);
+        ReflectionTestUtils.setField(resultCache, "ttlSeconds", 900L);
+        ReflectionTestUtils.setField(resultCache, "maxEntries", 1000);
+        ReflectionTestUtils.setField(resultCache, "nearMaxEntries", 1000);
+        ReflectionTestUtils.setField(resultCache, "virtualNodes", 16);
+        ReflectionTestUtils.setField(resultCache, "selfId", "cropapp2-1");
+        resultCache.updateMembers(Map.of("cropapp2-1", URI.create("http://cropapp2-1:9192")));
+
+        precompute = new PrecomputeService();
+        ReflectionTestUtils.setField(precompute, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(precompute, "resultCache", resultCache);
+        ReflectionTestUtils.setField(precompute, "predictionService", new PredictionService(null) {
+            @Override
+            public Map<String, Object> computeResult(Map<String, Object> formData) {
+                flaskCalls.incrementAndGet();
+                try {
+                    flaskGate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Map.of("prediction", formData.get("area"));
+            }
+        });
+        ReflectionTestUtils.setField(precompute, "recommendationService", new RecommendationService(null) {
+            @Override
+            public Map<String, Object> computeResult(Map<String, Object> formData) {
+                flaskCalls.incrementAndGet();
+                return Map.of("recommendation", "rice");
+            }
+        });
+        ReflectionTestUtils.setField(precompute, "windowDays", 7);
+        ReflectionTestUtils.setField(precompute, "maxKeys", 2);
+        ReflectionTestUtils.setField(precompute, "minRequests", 2);
+        ReflectionTestUtils.setField(precompute, "concurrency", 2);
+        ReflectionTestUtils.setField(precompute, "maxRequestsPerSecond", 0.0);
+        ReflectionTestUtils.setField(precompute, "maxDurationMinutes", 1L);
+        ReflectionTestUtils.setField(precompute, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(precompute, "maxConsecutiveFailures", 5);
+    }
+
+    @Test
+    void mostRequestedFormsAreServedFromTheCache() throws Exception {
+        LocalDateTime recent = LocalDateTime.now().minusDays(1);
+        insertPredictions("Pune", "Rice", "Kharif", 10f, recent, 5);
+        insertPredictions("pune ", "rice", "kharif", 10f, recent, 1);
+        insertPredictions("Nagpur", "Cotton", "Kharif", 2.5f, recent, 3);
+        insertPredictions("Satara", "Wheat", "Rabi", 4f, recent, 2);
+        // Trop ancienne, demandée une seule fois, ou sans saison (avant V7) : pas chaude
+        insertPredictions("Akola", "Jowar", "Rabi", 7f, LocalDateTime.now().minusDays(30), 9);
+        insertPredictions("Wardha", "Rice", "Kharif", 1f, recent, 1);
+        insertPredictions("Latur", "Rice", null, 1f, recent, 4);
+        for (int i = 0; i < 2; i++) {
+            jdbcTemplate.update("INSERT INTO recommendation (city, date, nitrogen, ph, phosphorous, pottasium, season) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)", "Pune", recent, 90.0, 6.5, 42.0, 43.0, "Kharif");
+        }
+
+        Map<String, Object> run = precompute.run();
+        assertEquals(3, run.get("mined"));
+        assertEquals(3, run.get("refreshed"));
+        assertEquals(3, flaskCalls.get());
+
+        // Formulaires tels que le frontend les envoie : nombres JSON
+        Map<String, Object> pune = Map.of("area", 10, "crop", "Rice", "city", "Pune", "season", "Kharif");
+        Map<String, Object> nagpur = Map.of("area", 2.5, "crop", "Cotton", "city", "Nagpur", "season", "Kharif");
+        Map<String, Object> soil = Map.of("nitrogen", 90, "phosphorous", 42, "pottasium", 43, "ph", 6.5,
+                "city", "Pune", "season", "Kharif");
+        assertEquals(10, resultCache.get(ResultCache.PREDICTION, pune, this::flask).get("prediction"));
+        assertEquals(2.5, resultCache.get(ResultCache.PREDICTION, nagpur, this::flask).get("prediction"));
+        assertEquals("rice", resultCache.get(ResultCache.RECOMMENDATION, soil, this::flask).get("recommendation"));
+        // max-keys = 2 : Satara reste calculé à la demande
+        resultCache.get(ResultCache.PREDICTION, Map.of("area", 4, "crop", "Wheat", "city", "Satara", "season", "Rabi"), this::flask);
+        assertEquals(4, flaskCalls.get());
+
+        Map<String, Object> stats = precompute.stats();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> coverage = (Map<String, Object>) stats.get("coverage");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> predictions = (Map<String, Object>) coverage.get("prediction");
+        assertEquals(12L, predictions.get("requests"));
+        assertEquals(8L, predictions.get("hotRequests"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> live = (Map<String, Object>) coverage.get("live");
+        assertEquals(3L, live.get("hotHits"));
+        assertEquals(4L, live.get("lookups"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> freshness = (Map<String, Object>) stats.get("freshness");
+        assertEquals(3, freshness.get("cached"));
+    }
+
+    @Test
+    void manualRunIsRefusedWhileAnotherIsInProgress() throws Exception {
+        LocalDateTime recent = LocalDateTime.now().minusDays(1);
+        insertPredictions("Pune", "Rice", "Kharif", 10f, recent, 3);
+        flaskGate = new CountDownLatch(1);
+
+        precompute.runInBackground();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (flaskCalls.get() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "passage non démarré en 5 s");
+            Thread.sleep(20);
+        }
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> precompute.run());
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        ReflectionTestUtils.setField(precompute, "enabled", true);
+        precompute.scheduledRun();
+        assertEquals(1, flaskCalls.get());
+
+        flaskGate.countDown();
+        while (precompute.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "passage non terminé en 5 s");
+            Thread.sleep(20);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> lastRun = (Map<String, Object>) precompute.stats().get("lastRun");
+        assertEquals(1, lastRun.get("refreshed"));
+        assertEquals(1, precompute.run().get("refreshed"));
+    }
+
+    @Test
+    void scheduledRunHandsTheSchedulerThreadBackAtOnce() throws Exception {
+        insertPredictions("Pune", "Rice", "Kharif", 10f, LocalDateTime.now().minusDays(1), 3);
+        flaskGate = new CountDownLatch(1);
+        ReflectionTestUtils.setField(precompute, "enabled", true);
+
+        // Flask retenu : un passage exécuté sur ce thread bloquerait ici jusqu'à 5 s
+        long started = System.currentTimeMillis();
+        precompute.scheduledRun();
+        assertTrue(System.currentTimeMillis() - started < 1_000);
+        assertTrue(precompute.isRunning());
+
+        flaskGate.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (precompute.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "passage non terminé en 5 s");
+            Thread.sleep(20);
+        }
+        assertEquals(1, flaskCalls.get());
+    }
+
+    private void insertPredictions(String city, String crop, String season, float area, LocalDateTime date, int count) {
+        for (int i = 0; i < count; i++) {
+            jdbcTemplate.update("INSERT INTO prediction (area, city, crop, season, date) VALUES (?, ?, ?, ?, ?)",
+                    area, city, crop, season, date);
+        }
+    }
+
+    private Map<String, Object> flask() {
+        flaskCalls.incrementAndGet();
+        return Map.of("prediction", -1);
+    }
+}
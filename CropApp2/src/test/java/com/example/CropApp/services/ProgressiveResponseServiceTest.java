@@ -0,0 +1,235 @@
+package com.example.CropApp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Route Flask "/stream" simulée par un serveur HTTP local qui écrit ses lignes NDJSON une à une et peut rester
+ * bloqué ensuite ; le flux SSE est servi par MockMvc, dont le contexte asynchrone simule départ du client et délai.
+ */
+class ProgressiveResponseServiceTest {
+
+    private static final String BREAKER = "flaskApiService";
+
+    private final AtomicInteger flaskCalls = new AtomicInteger();
+    private final CountDownLatch flaskHold = new CountDownLatch(1);
+    private final List<String> stages = new CopyOnWriteArrayList<>();
+    private volatile int flaskStatus = 200;
+    private volatile boolean flaskHangs;
+    private volatile boolean flaskErrorStage;
+    private HttpServer flask;
+    private ProgressiveResponseService service;
+    private CircuitBreaker breaker;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        flask = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        flask.createContext("/stream", exchange -> {
+            flaskCalls.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(flaskStatus, flaskStatus == 200 ? 0 : -1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (flaskStatus != 200) {
+                    return;
+                }
+                line(out, "{\"stage\":\"weather\",\"data\":{\"temperature\":31.5}}");
+                if (flaskErrorStage) {
+                    line(out, "{\"stage\":\"error\",\"data\":{\"error\":\"modèle indisponible\"}}");
+                    return;
+                }
+                if (flaskHangs) {
+                    flaskHold.await(10, TimeUnit.SECONDS);
+                    return;
+                }
+                line(out, "{\"stage\":\"prediction\",\"data\":{\"prediction\":4.2}}");
+                line(out, "{\"stage\":\"charts\",\"data\":{\"series\":[1,2,3]}}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // connexion fermée par CropApp
+            }
+        });
+        flask.start();
+
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        breaker = registry.circuitBreaker(BREAKER);
+        service = new ProgressiveResponseService();
+        ReflectionTestUtils.setField(service, "restTemplate", new RestTemplate());
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "circuitBreakerRegistry", registry);
+        ReflectionTestUtils.setField(service, "threads", 2);
+        ReflectionTestUtils.setField(service, "queueCapacity", 2);
+        ReflectionTestUtils.setField(service, "timeoutMs", 10_000L);
+        service.start();
+
+        String url = "http://127.0.0.1:" + flask.getAddress().getPort() + "/stream";
+        mvc = MockMvcBuilders.standaloneSetup(new StreamController(service, url, stages)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        flaskHold.countDown();
+        service.stop();
+        flask.stop(0);
+    }
+
+    @Test
+    void stagesAreRelayedThenDone() throws Exception {
+        MvcResult result = start();
+        result.getAsyncResult(5_000);
+
+        assertEquals(List.of("weather", "prediction", "charts"), stages);
+        assertEquals(List.of("accepted", "weather", "prediction", "charts", "done"), events(result));
+        assertEquals(1, breaker.getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    void openBreakerEndsTheStreamWithoutCallingFlask() throws Exception {
+        breaker.transitionToOpenState();
+        MvcResult result = start();
+        result.getAsyncResult(5_000);
+
+        assertEquals(List.of("accepted", "error"), events(result));
+        assertEquals(0, flaskCalls.get());
+    }
+
+    @Test
+    void flaskFailureIsRecordedByTheBreaker() throws Exception {
+        flaskStatus = 500;
+        MvcResult result = start();
+        result.getAsyncResult(5_000);
+
+        assertEquals(List.of("accepted", "error"), events(result));
+        assertEquals(1, breaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test
+    void errorStageFromFlaskIsRecordedAsAFailure() throws Exception {
+        flaskErrorStage = true;
+        MvcResult result = start();
+        result.getAsyncResult(5_000);
+
+        assertEquals(List.of("accepted", "weather", "error"), events(result));
+        assertTrue(result.getResponse().getContentAsString(StandardCharsets.UTF_8).contains("modèle indisponible"));
+        assertEquals(1, breaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(0, breaker.getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    void clientDisconnectClosesTheFlaskRead() throws Exception {
+        flaskHangs = true;
+        MvcResult result = start();
+        await(() -> stages.contains("weather"));
+
+        MockAsyncContext context = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onError(new AsyncEvent(context, new IOException("client parti")));
+        }
+
+        // Flask retient encore sa réponse : seule la fermeture de la lecture rend le thread
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(service, "executor");
+        await(() -> executor.getActiveCount() == 0);
+        assertFalse(stages.contains("prediction"));
+        assertEquals(0, breaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(0, breaker.getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    @Test
+    void timeoutClosesTheFlaskRead() throws Exception {
+        flaskHangs = true;
+        MvcResult result = start();
+        await(() -> stages.contains("weather"));
+
+        MockAsyncContext context = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : context.getListeners()) {
+            listener.onTimeout(new AsyncEvent(context));
+        }
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(service, "executor");
+        await(() -> executor.getActiveCount() == 0);
+        assertEquals(List.of("accepted", "weather"), events(result));
+        assertEquals(0, breaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    private MvcResult start() throws Exception {
+        return mvc.perform(post("/stream")).andExpect(request().asyncStarted()).andReturn();
+    }
+
+    private static List<String> events(MvcResult result) throws Exception {
+        return result.getResponse().getContentAsString().lines()
+                .filter(line -> line.startsWith("event:"))
+                .map(line -> line.substring("event:".length()))
+                .toList();
+    }
+
+    private static void line(OutputStream out, String json) throws IOException {
+        out.write((json + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition non atteinte en 5 s");
+            Thread.sleep(20);
+        }
+    }
+
+    @RestController
+    static class StreamController {
+
+        private final ProgressiveResponseService service;
+        private final String url;
+        private final List<String> stages;
+
+        StreamController(ProgressiveResponseService service, String url, List<String> stages) {
+            this.service = service;
+            this.url = url;
+            this.stages = stages;
+        }
+
+        @PostMapping("/stream")
+        SseEmitter stream() {
+            return service.stream(BREAKER, url, Map.of("formdata", Map.of("city", "Adilabad")), (stage, data, events) -> {
+                stages.add(stage);
+                events.send(stage, data);
+            });
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.CropApp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Deux RateLimiter partagent une base H2 (mode MySQL) et jouent deux répliques.
+ */
+class RateLimiterTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE rate_limit_usage (bucket_key VARCHAR(255) NOT NULL, "
+                + "replica_id VARCHAR(100) NOT NULL, consumed BIGINT NOT NULL, updated_at DATETIME(6) NOT NULL, "
+                + "PRIMARY KEY (bucket_key, replica_id))");
+    }
+
+    @Test
+    void bucketRejectsOnceEmptyWithHeadersValues() {
+        RateLimiter limiter = replica();
+        RateLimiter.Limit predict = limiter.limitFor("POST", "/api/predictions/predict");
+
+        for (int i = 0; i < 5; i++) {
+            RateLimiter.Decision decision = limiter.tryConsume(predict, "user:a@x");
+            assertTrue(decision.isAllowed());
+            assertEquals(4 - i, decision.getRemaining());
+        }
+        RateLimiter.Decision rejected = limiter.tryConsume(predict, "user:a@x");
+        assertFalse(rejected.isAllowed());
+        assertEquals(5, rejected.getLimit());
+        assertTrue(rejected.getRetryAfterSeconds() >= 1);
+        // un autre utilisateur a son propre bucket
+        assertTrue(limiter.tryConsume(predict, "user:b@x").isAllowed());
+    }
+
+    @Test
+    void routesAreGrouped() {
+        RateLimiter limiter = replica();
+        assertEquals("predict", limiter.limitFor("POST", "/api/recommendations/generate/stream").getName());
+        assertEquals("batch", limiter.limitFor("POST", "/api/jobs").getName());
+        assertEquals("api", limiter.limitFor("GET", "/api/jobs").getName());
+        assertEquals("auth", limiter.limitFor("POST", "/auth/signing").getName());
+        assertNull(limiter.limitFor("GET", "/actuator/health"));
+    }
+
+    @Test
+    void consumptionIsSharedAcrossReplicas() {
+        RateLimiter first = replica();
+        RateLimiter second = replica();
+        RateLimiter.Limit predict = first.limitFor("POST", "/api/predictions/predict");
+        first.sync();
+        second.sync();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(first.tryConsume(predict, "user:a@x").isAllowed());
+        }
+        first.sync();
+        second.sync();
+
+        // 4 jetons pris sur la première réplique : il n'en reste qu'un sur la seconde
+        assertTrue(second.tryConsume(predict, "user:a@x").isAllowed());
+        assertFalse(second.tryConsume(predict, "user:a@x").isAllowed());
+
+        second.sync();
+        first.sync();
+        assertFalse(first.tryConsume(predict, "user:a@x").isAllowed());
+        assertEquals(5L, jdbcTemplate.queryForObject(
+                "SELECT SUM(consumed) FROM rate_limit_usage WHERE bucket_key = 'predict:user:a@x'", Long.class));
+    }
+
+    @Test
+    void remoteTotalsOutliveIdleBucketsUntilTheirRowsArePurged() {
+        RateLimiter first = replica();
+        RateLimiter second = replica();
+        RateLimiter.Limit predict = first.limitFor("POST", "/api/predictions/predict");
+        first.sync();
+        second.sync();
+        assertTrue(first.tryConsume(predict, "user:a@x").isAllowed());
+        assertTrue(first.tryConsume(predict, "user:a@x").isAllowed());
+        first.sync();
+        second.sync();
+
+        // Cumul relu il y a 1,5 x idle-seconds : la ligne en base n'est pas encore purgée (2 x idle-seconds)
+        @SuppressWarnings("unchecked")
+        Map<String, Long> seenAt = (Map<String, Long>) ReflectionTestUtils.getField(second, "remoteSeenAt");
+        seenAt.replaceAll((key, at) -> at - 900_000);
+        second.evictIdle();
+
+        assertTrue(first.tryConsume(predict, "user:a@x").isAllowed());
+        first.sync();
+        second.sync();
+
+        // Seul le nouveau jeton est retiré : 5 - 3 = 2 restants sur la seconde réplique
+        assertTrue(second.tryConsume(predict, "user:a@x").isAllowed());
+        assertTrue(second.tryConsume(predict, "user:a@x").isAllowed());
+        assertFalse(second.tryConsume(predict, "user:a@x").isAllowed());
+    }
+
+    private RateLimiter replica() {
+        RateLimiter limiter = new RateLimiter();
+        ReflectionTestUtils.setField(limiter, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        ReflectionTestUtils.setField(limiter, "syncEnabled", true);
+        ReflectionTestUtils.setField(limiter, "shardCount", 8);
+        ReflectionTestUtils.setField(limiter, "predictCapacity", 5L);
+        // rechargement négligeable pendant le test
+        ReflectionTestUtils.setField(limiter, "predictPerMinute", 1L);
+        ReflectionTestUtils.setField(limiter, "batchCapacity", 3L);
+        ReflectionTestUtils.setField(limiter, "batchPerMinute", 6L);
+        ReflectionTestUtils.setField(limiter, "authCapacity", 20L);
+        ReflectionTestUtils.setField(limiter, "authPerMinute", 20L);
+        ReflectionTestUtils.setField(limiter, "apiCapacity", 120L);
+        ReflectionTestUtils.setField(limiter, "apiPerMinute", 300L);
+        ReflectionTestUtils.setField(limiter, "syncWindowSeconds", 30L);
+        ReflectionTestUtils.setField(limiter, "idleSeconds", 600L);
+        limiter.start();
+        return limiter;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.CropApp.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plusieurs répliques dans le même processus, reliées par un transport en mémoire à la place de HTTP.
+ */
+class ResultCacheTest {
+
+    private final Map<String, ResultCache> nodes = new LinkedHashMap<>();
+    private final Set<String> down = new HashSet<>();
+    private final AtomicInteger flaskCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        for (String id : new String[]{"cropapp2-1", "cropapp2-2", "cropapp2-3"}) {
+            nodes.put(id, node(id));
+        }
+        join();
+    }
+
+    @Test
+    void eachFormIsComputedOnceAcrossReplicas() throws Exception {
+        for (int district = 0; district < 30; district++) {
+            Map<String, Object> form = form("District" + district);
+            for (ResultCache node : nodes.values()) {
+                assertEquals(district, node.get(ResultCache.PREDICTION, form, () -> flask(form)).get("prediction"));
+            }
+        }
+        assertEquals(30, flaskCalls.get());
+
+        // Ordre des champs, casse et espaces n'entrent pas dans la clé
+        Map<String, Object> reordered = new LinkedHashMap<>(Map.of("season", "kharif ", "city", "district3", "area", "10", "crop", "RICE"));
+        assertEquals(ResultCache.key(ResultCache.PREDICTION, form("District3")), ResultCache.key(ResultCache.PREDICTION, reordered));
+
+        // Chaque clé n'est possédée que par une réplique
+        int owned = 0;
+        for (ResultCache node : nodes.values()) {
+            owned += (int) node.stats().get("owned");
+        }
+        assertEquals(30, owned);
+    }
+
+    @Test
+    void newMemberReceivesItsKeysWithoutRecomputing() throws Exception {
+        for (int district = 0; district < 30; district++) {
+            Map<String, Object> form = form("District" + district);
+            nodes.get("cropapp2-1").get(ResultCache.PREDICTION, form, () -> flask(form));
+        }
+        nodes.put("cropapp2-4", node("cropapp2-4"));
+        join();
+
+        ResultCache newcomer = nodes.get("cropapp2-4");
+        int moved = (int) newcomer.stats().get("owned");
+        assertTrue(moved > 0 && moved < 20, moved + " clés déplacées sur 30");
+        for (int district = 0; district < 30; district++) {
+            Map<String, Object> form = form("District" + district);
+            newcomer.get(ResultCache.PREDICTION, form, () -> flask(form));
+        }
+        assertEquals(30, flaskCalls.get());
+        assertEquals(moved, (long) newcomer.stats().get("localHits"));
+    }
+
+    @Test
+    void unreachableOwnerFallsBackToFlaskAndReplacedValuesInvalidateNearCopies() throws Exception {
+        Map<String, Object> form = form("Pune");
+        String key = ResultCache.key(ResultCache.PREDICTION, form);
+        String ownerId = nodes.get("cropapp2-1").owner(key);
+        ResultCache other = nodes.entrySet().stream()
+                .filter(e -> !e.getKey().equals(ownerId)).findFirst().orElseThrow().getValue();
+
+        down.add(ownerId);
+        other.get(ResultCache.PREDICTION, form, () -> flask(form));
+        assertEquals(1L, other.stats().get("peerFailures"));
+        down.clear();
+
+        // Copie proche chez une réplique, puis nouvelle valeur poussée chez la propriétaire
+        ResultCache reader = nodes.entrySet().stream()
+                .filter(e -> !e.getKey().equals(ownerId) && e.getValue() != other).findFirst().orElseThrow().getValue();
+        nodes.get(ownerId).peerStore(key, new ResultCache.Entry(Map.of("prediction", 1), Long.MAX_VALUE), null);
+        assertEquals(1, reader.get(ResultCache.PREDICTION, form, () -> flask(form)).get("prediction"));
+        nodes.get(ownerId).peerStore(key, new ResultCache.Entry(Map.of("prediction", 2), Long.MAX_VALUE), null);
+        assertEquals(2, reader.get(ResultCache.PREDICTION, form, () -> flask(form)).get("prediction"));
+        assertNotEquals(0L, reader.stats().get("peerHits"));
+        assertEquals(1, flaskCalls.get());
+    }
+
+    @Test
+    void enabledCacheRequiresAPeerToken() {
+        ResultCache open = new ResultCache();
+        ReflectionTestUtils.setField(open, "enabled", true);
+        ReflectionTestUtils.setField(open, "peerToken", "");
+        assertThrows(IllegalStateException.class, open::start);
+        assertFalse(open.acceptsPeer(null));
+        assertFalse(open.acceptsPeer(""));
+
+        ReflectionTestUtils.setField(open, "peerToken", "s3cret");
+        assertTrue(open.acceptsPeer("s3cret"));
+        assertFalse(open.acceptsPeer("s3cre"));
+    }
+
+    private Map<String, Object> flask(Map<String, Object> form) {
+        flaskCalls.incrementAndGet();
+        String city = (String) form.get("city");
+        return Map.of("prediction", city.startsWith("District") ? Integer.parseInt(city.substring(8)) : -1);
+    }
+
+    private static Map<String, Object> form(String city) {
+        return Map.of("crop", "rice", "area", "10", "season", "Kharif", "city", city);
+    }
+
+    private void join() {
+        Map<String, URI> members = new LinkedHashMap<>();
+        nodes.keySet().forEach(id -> members.put(id, URI.create("http://" + id + ":9192")));
+        nodes.values().forEach(node -> node.updateMembers(members));
+    }
+
+    private ResultCache node(String id) {
+        ResultCache node = new ResultCache();
+        ReflectionTestUtils.setField(node, "enabled", true);
+        ReflectionTestUtils.setField(node, "ttlSeconds", 900L);
+        ReflectionTestUtils.setField(node, "nearTtlSeconds", 60L);
+        ReflectionTestUtils.setField(node, "maxEntries", 1000);
+        ReflectionTestUtils.setField(node, "nearMaxEntries", 1000);
+        ReflectionTestUtils.setField(node, "virtualNodes", 64);
+        ReflectionTestUtils.setField(node, "peerRetryMs", 5000L);
+        ReflectionTestUtils.setField(node, "selfId", id);
+        ReflectionTestUtils.setField(node, "transport", new ResultCache.PeerTransport() {
+            @Override
+            public ResultCache.Entry fetch(String peer, String key) {
+                return reach(peer).peerGet(key);
+            }
+
+            @Override
+            public void store(String peer, String key, ResultCache.Entry entry) {
+                reach(peer).peerStore(key, entry, id);
+            }
+
+            @Override
+            public void invalidate(String peer, String key) {
+                reach(peer).peerInvalidate(key);
+            }
+        });
+        return node;
+    }
+
+    private ResultCache reach(String peer) {
+        if (down.contains(peer)) {
+            throw new IllegalStateException("Connection refused: " + peer);
+        }
+        return nodes.get(peer);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.CropApp.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Instantanés sur une base H2 (mode MySQL), write-behind désactivé : écriture directe puis lecture par id.
+ */
+class ResultSnapshotServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private JdbcTemplate jdbcTemplate;
+    private ResultSnapshotService snapshots;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE prediction_snapshot (id BIGINT NOT NULL, date DATETIME(6), user_id BIGINT, "
+                + "payload MEDIUMBLOB NOT NULL, PRIMARY KEY (id))");
+
+        WriteBehindService writeBehind = new WriteBehindService();
+        ReflectionTestUtils.setField(writeBehind, "jdbcTemplate", jdbcTemplate);
+        snapshots = new ResultSnapshotService();
+        ReflectionTestUtils.setField(snapshots, "writeBehindService", writeBehind);
+        ReflectionTestUtils.setField(snapshots, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(snapshots, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(snapshots, "enabled", true);
+    }
+
+    @Test
+    void fullResultIsReadBackOnlyByItsOwner() {
+        Map<String, Object> result = predictionResult();
+        snapshots.savePrediction(42, LocalDateTime.now(), 7L, result);
+
+        assertEquals(objectMapper.convertValue(result, Map.class), snapshots.prediction(42, 7L));
+        assertThrows(ResponseStatusException.class, () -> snapshots.prediction(42, 8L));
+        assertThrows(ResponseStatusException.class, () -> snapshots.prediction(43, 7L));
+
+        assertEquals(0, snapshots.delete(WriteBehindService.PREDICTION_TABLE, 8L, List.of(42)));
+        assertEquals(1, snapshots.delete(WriteBehindService.PREDICTION_TABLE, 7L, List.of(42)));
+        assertThrows(ResponseStatusException.class, () -> snapshots.prediction(42, 7L));
+    }
+
+    @Test
+    void sharedDictionaryBeatsPlainDeflate() throws Exception {
+        Map<String, Object> result = predictionResult();
+        byte[] json = objectMapper.writeValueAsBytes(result);
+        byte[] snapshot = ResultSnapshotCodec.encode(objectMapper, result);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(plain, new Deflater(Deflater.BEST_COMPRESSION, true))) {
+            out.write(json);
+        }
+        assertTrue(snapshot.length < plain.size(), snapshot.length + " octets, deflate seul : " + plain.size());
+        assertTrue(snapshot.length * 2 < json.length, snapshot.length + " octets pour " + json.length + " en JSON");
+        assertEquals(objectMapper.readValue(json, Map.class), ResultSnapshotCodec.decode(objectMapper, snapshot));
+    }
+
+    private static Map<String, Object> predictionResult() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("prediction", 1834.5);
+        result.put("temperature", 27.41);
+        result.put("humidity", 81.0);
+        result.put("rainfall", 1023.45);
+        result.put("year_yield", Map.of("2018", 2.41, "2019", 2.38, "2020", 2.5, "2021", 2.47, "2022", 2.45));
+        result.put("season_yield", Map.of("Kharif", 2.45, "Rabi", 1.98, "Summer", 1.2, "Whole Year", 2.1, "Winter", 1.7));
+        result.put("temp_yield", Map.of("17.41", 2.1, "22.41", 2.3, "27.41", 2.45, "32.41", 2.2, "37.41", 1.9));
+        result.put("rain_yield", Map.of("923.45", 2.2, "973.45", 2.3, "1023.45", 2.45, "1073.45", 2.5, "1123.45", 2.4));
+        result.put("humid_yield", Map.of("61.0", 2.0, "71.0", 2.2, "81.0", 2.45, "91.0", 2.4, "101.0", 2.3));
+        return result;
+    }
+}
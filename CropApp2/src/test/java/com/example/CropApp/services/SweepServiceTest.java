@@ -0,0 +1,176 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.config.FlaskWireFormat;
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.User;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Route Flask /batch remplacée par un RestTemplate qui note chaque lot et renvoie un score déterministe par
+ * combinaison ; les lignes d'historique sont gardées par une sous-classe de WriteBehindService.
+ */
+class SweepServiceTest {
+
+    private static final List<String> CROPS = List.of("Rice", "Wheat", "Maize", "Cotton(lint)", "Banana");
+    private static final List<String> SEASONS = List.of("Kharif", "Rabi", "Whole Year");
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final List<Prediction> saved = new CopyOnWriteArrayList<>();
+    private volatile boolean flaskDown;
+    private CircuitBreakerRegistry breakers;
+    private SweepService sweep;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DistrictIndex districtIndex = new DistrictIndex();
+        ReflectionTestUtils.setField(districtIndex, "resource", "data/districts.csv");
+        ReflectionTestUtils.setField(districtIndex, "maxEdits", 2);
+        ReflectionTestUtils.setField(districtIndex, "defaultLimit", 10);
+        districtIndex.load();
+
+        AtomicInteger ids = new AtomicInteger(100);
+        WriteBehindService writeBehind = new WriteBehindService() {
+            @Override
+            public Integer savePrediction(Prediction prediction) {
+                prediction.setId(ids.incrementAndGet());
+                saved.add(prediction);
+                return prediction.getId();
+            }
+        };
+
+        breakers = CircuitBreakerRegistry.ofDefaults();
+        sweep = new SweepService();
+        ReflectionTestUtils.setField(sweep, "restTemplate", flask());
+        ReflectionTestUtils.setField(sweep, "flaskWireFormat", new FlaskWireFormat());
+        ReflectionTestUtils.setField(sweep, "writeBehindService", writeBehind);
+        ReflectionTestUtils.setField(sweep, "districtIndex", districtIndex);
+        ReflectionTestUtils.setField(sweep, "circuitBreakerRegistry", breakers);
+        ReflectionTestUtils.setField(sweep, "batchSize", 4);
+        ReflectionTestUtils.setField(sweep, "threads", 2);
+        ReflectionTestUtils.setField(sweep, "parallelism", 2);
+        ReflectionTestUtils.setField(sweep, "maxCombinations", 15);
+        ReflectionTestUtils.setField(sweep, "maxK", 10);
+        ReflectionTestUtils.setField(sweep, "timeoutSeconds", 10L);
+        sweep.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sweep.stop();
+    }
+
+    @Test
+    void bestCombinationsAreRankedAndOnlyTheyAreSaved() throws Exception {
+        Map<String, Object> response = sweep.sweep(request(CROPS, 3), user());
+
+        assertEquals(List.of(4, 4, 4, 3), batchSizes.stream().sorted(Comparator.reverseOrder()).toList());
+        assertEquals("Adilabad", response.get("city"));
+        assertEquals(15, response.get("evaluated"));
+        List<Map<String, Object>> top = (List<Map<String, Object>>) response.get("top");
+        assertEquals(List.of("Banana/Whole Year", "Banana/Rabi", "Banana/Kharif"),
+                top.stream().map(entry -> entry.get("crop") + "/" + entry.get("season")).toList());
+        assertEquals(List.of(1, 2, 3), top.stream().map(entry -> entry.get("rank")).toList());
+
+        assertEquals(3, saved.size());
+        assertEquals(top.stream().map(entry -> entry.get("id")).toList(),
+                saved.stream().sorted((a, b) -> Double.compare(b.getResult(), a.getResult())).map(Prediction::getId).toList());
+        Prediction best = saved.stream().filter(p -> p.getId().equals(top.get(0).get("id"))).findFirst().orElseThrow();
+        assertEquals("Banana", best.getCrop());
+        assertEquals("Whole Year", best.getSeason());
+        assertEquals(7L, best.getUser().getId());
+        assertEquals(31.5f, best.getTemperature());
+    }
+
+    @Test
+    void gridLargerThanTheLimitIsRejectedBeforeFlask() {
+        List<String> crops = new ArrayList<>(CROPS);
+        crops.add("Sugarcane");
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> sweep.sweep(request(crops, 3), user()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        assertEquals(0, batchSizes.size());
+    }
+
+    @Test
+    void openBreakerRefusesTheSweepWithoutCallingFlask() {
+        breakers.circuitBreaker("flaskApiService").transitionToOpenState();
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> sweep.sweep(request(CROPS, 3), user()));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals(0, batchSizes.size());
+    }
+
+    @Test
+    void failedBatchesAreRecordedByTheBreaker() {
+        flaskDown = true;
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> sweep.sweep(request(CROPS, 3), user()));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals(4, breakers.circuitBreaker("flaskApiService").getMetrics().getNumberOfFailedCalls());
+        assertEquals(0, saved.size());
+    }
+
+    private RestTemplate flask() {
+        return new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> postForEntity(String url, Object request, Class<T> responseType, Object... uriVariables) {
+                Map<String, Object> body = (Map<String, Object>) ((HttpEntity<?>) request).getBody();
+                List<Map<String, Object>> combos = (List<Map<String, Object>>) body.get("combos");
+                batchSizes.add(combos.size());
+                if (flaskDown) {
+                    throw new ResourceAccessException("Connection refused");
+                }
+                List<Map<String, Object>> results = new ArrayList<>();
+                for (Map<String, Object> combo : combos) {
+                    Map<String, Object> result = new HashMap<>(combo);
+                    // Score croissant avec la position de la culture puis de la saison dans les listes
+                    result.put("prediction", CROPS.indexOf(combo.get("crop")) * 10 + SEASONS.indexOf(combo.get("season")));
+                    result.put("rainfall", 800);
+                    results.add(result);
+                }
+                Map<String, Object> response = new HashMap<>();
+                response.put("temperature", 31.5);
+                response.put("humidity", 60);
+                response.put("results", results);
+                return (ResponseEntity<T>) ResponseEntity.ok(response);
+            }
+        };
+    }
+
+    private static Map<String, Object> request(List<String> crops, int k) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("city", "adilabad");
+        request.put("area", 12.5);
+        request.put("crops", crops);
+        request.put("seasons", SEASONS);
+        request.put("k", k);
+        return request;
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(7L);
+        return user;
+    }
+}
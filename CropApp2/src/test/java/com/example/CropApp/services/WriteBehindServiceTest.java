@@ -0,0 +1,276 @@
+package com.example.CropApp.services;
+
+import com.example.CropApp.entities.IdBlock;
+import com.example.CropApp.entities.Prediction;
+import com.example.CropApp.entities.Recommendation;
+import com.example.CropApp.entities.User;
+import com.example.CropApp.repositories.IdBlockRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Write-behind activé sur une base H2 (mode MySQL) migrée par Flyway ; le JdbcTemplate compte les group commits
+ * et peut en faire échouer ou en retenir. Chaque test appelle stop(), qui vide la file avant de rendre la main.
+ */
+class WriteBehindServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final AtomicInteger batches = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final List<CountDownLatch> gates = new ArrayList<>();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private WriteBehindService writeBehind;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> pss) {
+                batches.incrementAndGet();
+                for (CountDownLatch gate : gates) {
+                    try {
+                        gate.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (failures.getAndDecrement() > 0) {
+                    throw new DataAccessResourceFailureException("connexion refusée (panne simulée)");
+                }
+                return super.batchUpdate(sql, batchArgs, batchSize, pss);
+            }
+        };
+        jdbcTemplate.update("INSERT INTO users (id, email, password, username) VALUES (7, 'a@b.c', 'x', 'alice')");
+        user = new User();
+        user.setId(7L);
+        writeBehind = service(1000, 5);
+    }
+
+    @Test
+    void idsAreReservedByBlockAndRowsFlushedOnStop() throws Exception {
+        // Ligne insérée hors write-behind : les blocs démarrent après max(id)
+        jdbcTemplate.update("INSERT INTO prediction (id, result) VALUES (10, 1.0)");
+        writeBehind.start();
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(writeBehind.savePrediction(prediction()));
+        }
+        assertEquals(List.of(11, 12, 13, 14, 15), ids);
+        assertEquals(17L, jdbcTemplate.queryForObject("SELECT next_id FROM id_block WHERE name = 'prediction'", Long.class));
+
+        writeBehind.stop();
+        assertEquals(ids, jdbcTemplate.queryForList("SELECT id FROM prediction WHERE id > 10 ORDER BY id", Integer.class));
+        assertEquals(0, Files.size(journal()));
+    }
+
+    @Test
+    void transientFailureIsRetried() throws Exception {
+        failures.set(2);
+        writeBehind.start();
+        int id = writeBehind.savePrediction(prediction());
+
+        writeBehind.stop();
+        assertEquals(3, batches.get());
+        assertEquals(List.of(id), jdbcTemplate.queryForList("SELECT id FROM prediction", Integer.class));
+        assertEquals(0, deadLetters());
+    }
+
+    @Test
+    void outageLongerThanMaxAttemptsKeepsTheRows() throws Exception {
+        // max-attempts = 3 : deux échecs de plus que les essais du lot, repris ligne par ligne
+        failures.set(5);
+        writeBehind.start();
+        int id = writeBehind.savePrediction(prediction());
+
+        assertTrue(writeBehind.awaitFlushed(5_000));
+        writeBehind.stop();
+        assertEquals(List.of(id), jdbcTemplate.queryForList("SELECT id FROM prediction", Integer.class));
+        assertEquals(0, deadLetters());
+        assertEquals(0, Files.size(journal()));
+    }
+
+    @Test
+    void rowsStillUnwrittenAtShutdownStayInTheJournal() throws Exception {
+        failures.set(Integer.MAX_VALUE);
+        writeBehind.start();
+        int id = writeBehind.savePrediction(prediction());
+
+        writeBehind.stop();
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM prediction", Integer.class));
+        assertEquals(0, deadLetters());
+        assertFalse(Files.readString(journal()).isBlank());
+
+        // Base revenue : le redémarrage rejoue la ligne
+        failures.set(0);
+        WriteBehindService restarted = service(1000, 5);
+        restarted.start();
+        restarted.stop();
+        assertEquals(List.of(id), jdbcTemplate.queryForList("SELECT id FROM prediction", Integer.class));
+        assertEquals(0, Files.size(journal()));
+    }
+
+    @Test
+    void rejectedRowIsSetAsideWithoutBlockingTheQueue() throws Exception {
+        ReflectionTestUtils.setField(writeBehind, "maxAttempts", 2);
+        writeBehind.start();
+        // user_id est NOT NULL dans recommendation : la ligne ne passera jamais
+        Recommendation orphan = new Recommendation();
+        orphan.setResult("rice");
+        orphan.setDate(LocalDateTime.now());
+        long rejected = writeBehind.saveRecommendation(orphan);
+        int id = writeBehind.savePrediction(prediction());
+
+        writeBehind.stop();
+        assertEquals(List.of(id), jdbcTemplate.queryForList("SELECT id FROM prediction", Integer.class));
+        Map<String, Object> dead = jdbcTemplate.queryForMap("SELECT table_name, row_id, row_json FROM write_behind_dead_letter");
+        assertEquals("recommendation", dead.get("table_name"));
+        assertEquals(rejected, ((Number) dead.get("row_id")).longValue());
+        assertEquals(rejected, objectMapper.readValue((String) dead.get("row_json"), PendingRow.class).getId());
+        assertEquals(0, Files.size(journal()));
+    }
+
+    @Test
+    void fullQueueRejectsTheCallerAfterTheOfferTimeout() throws Exception {
+        writeBehind = service(1, 1);
+        CountDownLatch gate = new CountDownLatch(1);
+        gates.add(gate);
+        writeBehind.start();
+
+        int first = writeBehind.savePrediction(prediction());
+        assertThrows(IllegalStateException.class, () -> writeBehind.savePrediction(prediction()));
+
+        gate.countDown();
+        writeBehind.stop();
+        assertEquals(List.of(first), jdbcTemplate.queryForList("SELECT id FROM prediction", Integer.class));
+    }
+
+    @Test
+    void awaitFlushedReturnsOnceQueuedRowsAreWritten() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        gates.add(gate);
+        writeBehind.start();
+        int id = writeBehind.savePrediction(prediction());
+
+        // Group commit retenu : la ligne n'est pas encore en base, une suppression la manquerait
+        assertFalse(writeBehind.awaitFlushed(200));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM prediction", Integer.class));
+
+        gate.countDown();
+        assertTrue(writeBehind.awaitFlushed(5_000));
+        assertEquals(1, jdbcTemplate.update("DELETE FROM prediction WHERE id = ?", id));
+        writeBehind.stop();
+    }
+
+    @Test
+    void journalLeftoversAreReplayedOnceAtStartup() throws Exception {
+        PendingRow committed = new PendingRow(WriteBehindService.PREDICTION_TABLE, 1L, LocalDateTime.now(),
+                new LinkedHashMap<>(Map.of("result", 1.0, "user_id", 7)));
+        PendingRow lost = new PendingRow(WriteBehindService.PREDICTION_TABLE, 2L, LocalDateTime.now(),
+                new LinkedHashMap<>(Map.of("result", 2.0, "user_id", 7)));
+        jdbcTemplate.update("INSERT INTO prediction (id, result, user_id) VALUES (1, 1.0, 7)");
+        Files.writeString(journal(), objectMapper.writeValueAsString(committed) + "\n"
+                + objectMapper.writeValueAsString(lost) + "\n" + "{\"table\":\"predic");
+
+        writeBehind.start();
+        writeBehind.stop();
+        assertEquals(List.of(1, 2), jdbcTemplate.queryForList("SELECT id FROM prediction ORDER BY id", Integer.class));
+        assertEquals(0, Files.size(journal()));
+    }
+
+    private WriteBehindService service(int queueCapacity, long offerTimeoutMs) {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        IdBlockAllocator allocator = new IdBlockAllocator();
+        ReflectionTestUtils.setField(allocator, "idBlockRepository", idBlocks());
+        ReflectionTestUtils.setField(allocator, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(allocator, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(allocator, "blockSize", 3);
+
+        WriteBehindService service = new WriteBehindService();
+        ReflectionTestUtils.setField(service, "idBlockAllocator", allocator);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(service, "batchSize", 100);
+        ReflectionTestUtils.setField(service, "offerTimeoutMs", offerTimeoutMs);
+        ReflectionTestUtils.setField(service, "journalPath", journal().toString());
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        return service;
+    }
+
+    /**
+     * Les deux méthodes de IdBlockRepository qu'utilise IdBlockAllocator, en SQL sur la même base.
+     */
+    private IdBlockRepository idBlocks() {
+        return (IdBlockRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{IdBlockRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findForUpdate" -> jdbcTemplate.query("SELECT next_id FROM id_block WHERE name = ? FOR UPDATE",
+                            (rs, i) -> new IdBlock((String) args[0], rs.getLong(1)), args[0]).stream().findFirst();
+                    case "saveAndFlush" -> {
+                        IdBlock block = (IdBlock) args[0];
+                        jdbcTemplate.update("MERGE INTO id_block (name, next_id) KEY (name) VALUES (?, ?)",
+                                block.getName(), block.getNextId());
+                        yield block;
+                    }
+                    case "toString" -> "IdBlockRepository(H2)";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private Prediction prediction() {
+        Prediction prediction = new Prediction();
+        prediction.setResult(3.5);
+        prediction.setCity("Adilabad");
+        prediction.setDate(LocalDateTime.now());
+        prediction.setUser(user);
+        return prediction;
+    }
+
+    private int deadLetters() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM write_behind_dead_letter", Integer.class);
+    }
+
+    private Path journal() {
+        return dir.resolve("write-behind.journal");
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.CropApp.support;
+
+import com.example.CropApp.config.SqlBudgetFilter;
+import com.example.CropApp.config.SqlStatementCapture;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Assertions sur les requêtes SQL capturées (test entier via SqlCaptureExtension, ou une requête MockMvc via
+ * forRequest). Les messages d'échec listent les requêtes, pour voir tout de suite la boucle en cause.
+ */
+public final class SqlAssertions {
+
+    private SqlAssertions() {
+    }
+
+    /**
+     * Capture de la requête HTTP jouée par MockMvc (filtre SqlBudgetFilter ajouté au MockMvc).
+     */
+    public static SqlStatementCapture.Capture forRequest(MvcResult result) {
+        Object capture = result.getRequest().getAttribute(SqlBudgetFilter.CAPTURE_ATTRIBUTE);
+        assertNotNull(capture, "Pas de capture SQL : SqlBudgetFilter n'est pas dans la chaîne MockMvc");
+        return (SqlStatementCapture.Capture) capture;
+    }
+
+    public static void assertAtMost(int maxStatements, SqlStatementCapture.Capture capture) {
+        if (capture.count() > maxStatements) {
+            fail(capture.count() + " requêtes SQL, au plus " + maxStatements + " attendues :\n" + describe(capture));
+        }
+    }
+
+    public static void assertNoRepeatedShape(SqlStatementCapture.Capture capture) {
+        assertNoShapeRepeatedMoreThan(1, capture);
+    }
+
+    public static void assertNoShapeRepeatedMoreThan(int maxRepeats, SqlStatementCapture.Capture capture) {
+        Map<String, Integer> repeated = capture.shapes().entrySet().stream()
+                .filter(entry -> entry.getValue() > maxRepeats)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (!repeated.isEmpty()) {
+            fail("Requêtes répétées plus de " + maxRepeats + " fois (N+1 ?) : " + repeated + "\n" + describe(capture));
+        }
+    }
+
+    private static String describe(SqlStatementCapture.Capture capture) {
+        StringBuilder description = new StringBuilder();
+        int i = 1;
+        for (String sql : capture.statements()) {
+            description.append(String.format("%3d. %s%n", i++, sql));
+        }
+        return description.toString();
+    }
+}
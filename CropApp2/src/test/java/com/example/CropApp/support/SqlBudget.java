@@ -0,0 +1,24 @@
+package com.example.CropApp.support;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Budget SQL d'une méthode de test, vérifié par SqlCaptureExtension à la fin du test.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface SqlBudget {
+
+    /**
+     * Nombre maximal de requêtes SQL exécutées par le thread du test.
+     */
+    int maxStatements() default Integer.MAX_VALUE;
+
+    /**
+     * Nombre maximal d'exécutions d'une même forme de requête (1 : aucune répétition).
+     */
+    int maxRepeats() default 1;
+}
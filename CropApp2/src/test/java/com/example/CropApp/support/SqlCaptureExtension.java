@@ -0,0 +1,53 @@
+package com.example.CropApp.support;
+
+import com.example.CropApp.config.SqlStatementCapture;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+/**
+ * Ouvre une capture SQL par méthode de test (@ExtendWith(SqlCaptureExtension.class)).
+ *
+ * La capture est injectable en paramètre du test ; si la méthode ou la classe porte @SqlBudget, le budget est
+ * vérifié à la fin du test. Les requêtes exécutées dans @BeforeEach sont comptées aussi.
+ */
+public class SqlCaptureExtension implements BeforeEachCallback, AfterEachCallback, ParameterResolver {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(SqlCaptureExtension.class);
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        context.getStore(NAMESPACE).put(SqlStatementCapture.Capture.class, SqlStatementCapture.start());
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        SqlStatementCapture.Capture capture = capture(context);
+        capture.close();
+        SqlBudget budget = AnnotatedElementUtils.findMergedAnnotation(context.getRequiredTestMethod(), SqlBudget.class);
+        if (budget == null) {
+            budget = AnnotatedElementUtils.findMergedAnnotation(context.getRequiredTestClass(), SqlBudget.class);
+        }
+        if (budget != null && context.getExecutionException().isEmpty()) {
+            SqlAssertions.assertAtMost(budget.maxStatements(), capture);
+            SqlAssertions.assertNoShapeRepeatedMoreThan(budget.maxRepeats(), capture);
+        }
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == SqlStatementCapture.Capture.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return capture(extensionContext);
+    }
+
+    private static SqlStatementCapture.Capture capture(ExtensionContext context) {
+        return context.getStore(NAMESPACE).get(SqlStatementCapture.Capture.class, SqlStatementCapture.Capture.class);
+    }
+}
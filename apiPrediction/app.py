@@ -1,4 +1,4 @@
-from flask import Flask, request, jsonify
+from flask import Flask, request, jsonify, g, has_request_context
 from tensorflow.keras.models import load_model
 import numpy as np
 from weather import weather_fetch
@@ -9,12 +9,15 @@ from weather import weather_fetch
 from rain import rain_info
 from info import info_range
 import json
-from flask import Response
+from flask import Response, stream_with_context
 import pandas as pd
 from flask_cors import CORS
+import cbor2
 from keras import metrics
 import pickle
 import joblib
+import time
+import contextlib
 
 rainfall_data = rain_info()
 os.environ['CUDA_VISIBLE_DEVICES'] = '-1'
@@ -23,6 +26,36 @@ app = Flask(__name__)
 CORS(app) 
 
 
+# Traçage : chaque étape mesurée par timed() est renvoyée dans l'en-tête Server-Timing (début relatif en ms
+# dans desc, durée en ms dans dur). CropApp2 en fait des spans enfants de son appel, dans la même trace.
+@app.before_request
+def start_timing():
+    g.started = time.perf_counter()
+    g.timings = []
+
+
+@contextlib.contextmanager
+def timed(name):
+    start = time.perf_counter()
+    try:
+        yield
+    finally:
+        if has_request_context() and g.get('timings') is not None:
+            g.timings.append((name, (start - g.started) * 1000, (time.perf_counter() - start) * 1000))
+
+
+@app.after_request
+def server_timing(response):
+    timings = g.get('timings')
+    if timings:
+        response.headers['Server-Timing'] = ', '.join(
+            f'{name};desc="{offset:.1f}";dur={duration:.1f}' for name, offset, duration in timings)
+    traceparent = request.headers.get('traceparent')
+    if traceparent:
+        response.headers['traceparent'] = traceparent
+    return response
+
+
 
 crop_recommendation_model_path = './models/RandomForest.pkl'
 crop_yield_model_path = "./models/DecisionTree.pkl"
@@ -102,12 +135,21 @@ def crop_yield(formdata):
 """
 
 def crop_yield(formdata):
+    season = formdata["season"]
+    city = formdata["city"]
+    with timed("weather"):
+        temperature, humidity = weather_fetch(city)
+    with timed("rainfall"):
+        rainfall = rainfall_data[rainfall_data["DIST"] == city][season].values[0]
+    with timed("inference"):
+        prediction = predict_yield(formdata, temperature, rainfall)
+    return prediction, temperature, humidity, rainfall
+
+def predict_yield(formdata, temperature, rainfall):
     crop = formdata["crop"]
     area = int(formdata["area"])
     season = formdata["season"]
     city = formdata["city"]
-    temperature, humidity = weather_fetch(city)
-    rainfall = rainfall_data[rainfall_data["DIST"] == city][season].values[0]
     columns = [index for index in data]
     df = pd.DataFrame(columns=columns)
     df.loc[0] = 0
@@ -119,8 +161,7 @@ def crop_yield(formdata):
     df["Temperature"] = temperature
     df["Rainfall"] = rainfall
     my_prediction = crop_yield_model.predict(df)
-    prediction = my_prediction[0]
-    return prediction, temperature, humidity, rainfall
+    return my_prediction[0]
 
 def ensure_serializable(obj):
     
@@ -134,18 +175,44 @@ def ensure_serializable(obj):
         return int(obj)  # Convert numpy int to Python int
     return obj
 
+CBOR_MIMETYPE = 'application/cbor'
+
+
+def read_payload():
+    # Corps CBOR si CropApp2 l'annonce (flask.api.format=cbor), JSON sinon
+    if request.mimetype == CBOR_MIMETYPE:
+        return cbor2.loads(request.get_data())
+    return request.json
+
+
+def write_payload(obj, status=200):
+    # Même format en sortie qu'en entrée ; les clés sont converties en chaînes comme en JSON
+    if request.accept_mimetypes.best == CBOR_MIMETYPE:
+        body = cbor2.dumps(stringify_keys(ensure_serializable(obj)))
+        return Response(body, status=status, mimetype=CBOR_MIMETYPE)
+    return obj, status
+
+
+def stringify_keys(obj):
+    if isinstance(obj, dict):
+        return {str(key): stringify_keys(value) for key, value in obj.items()}
+    elif isinstance(obj, list):
+        return [stringify_keys(item) for item in obj]
+    return obj
+
 @app.route('/crop-yield-predict', methods=['POST'])
 def crop_yield_prediction():
     try:
-        data = request.json
+        data = read_payload()
         formdata = data['formdata']
         
         prediction, temperature, humidity, rainfall = crop_yield(formdata)
         rainfall = round(rainfall, 2)
         
-        (year_yield, season_yield, temp_yield, rain_yield, humid_yield) = info_range(
-            formdata, temperature, humidity, rainfall
-        )
+        with timed("charts"):
+            (year_yield, season_yield, temp_yield, rain_yield, humid_yield) = info_range(
+                formdata, temperature, humidity, rainfall
+            )
         
         year_yield[2022] = round(prediction/int(formdata['area']), 2)
         
@@ -168,13 +235,13 @@ def crop_yield_prediction():
             response = {"status": "success", "result": pred,
                         "message": "Crop Yield fetched successfully"}
         
-        return {"response": response}
+        return write_payload({"response": response})
         
     except KeyError as e:
-        return {"error": f"Missing required field: {str(e)}"}, 400
+        return write_payload({"error": f"Missing required field: {str(e)}"}, 400)
         
     except Exception as e:
-        return {"error": str(e)}, 400
+        return write_payload({"error": str(e)}, 400)
 
 
 
@@ -275,24 +342,28 @@ def crop_recommendation(formdata):
 """
 
 def crop_recommendation(formdata):
-    rainfall_data = rain_info()
     N = formdata['nitrogen']
     P = formdata['phosphorous']
     K = formdata['pottasium']
     ph = formdata['ph']
     season = formdata['season']
     city = formdata['city']
-    temperature, humidity = weather_fetch(city)
-    rainfall = rainfall_data[rainfall_data["DIST"] == city][season].values[0]
+    with timed("rainfall"):
+        rainfall_data = rain_info()
+        rainfall = rainfall_data[rainfall_data["DIST"] == city][season].values[0]
+    with timed("weather"):
+        temperature, humidity = weather_fetch(city)
     data = [[N, P, K, temperature, humidity, ph, rainfall]]
-    my_prediction = crop_recommendation_model.predict(data)
+    with timed("inference"):
+        my_prediction = crop_recommendation_model.predict(data)
     prediction = []
     for i in range(0, len(my_prediction[0])):
         if my_prediction[0][i] == 1:
             prediction.append(crops[i])
     if len(prediction) == 0:
         prediction = ['No crop']
-    chart_data = topCrops(crops, data)
+    with timed("charts"):
+        chart_data = topCrops(crops, data)
     return prediction, temperature, humidity, rainfall, chart_data
     
 def temp_list(formdata, prediction, temperature, humidity, rainfall):
@@ -379,7 +450,7 @@ def crop_prediction():
 """
 @app.route('/crop-predict', methods=['POST'])
 def crop_prediction():
-    data = request.json
+    data = read_payload()
     formdata = data['formdata']
     prediction, temperature, humidity, rainfall, chart_data = crop_recommendation(
         formdata)
@@ -399,9 +470,130 @@ def crop_prediction():
     else:
         response = {"status": "success", "result": pred,
                     "message": "Crop recommendation fetched successfully"}
-    return {
+    return write_payload({
         "response": response
-    }
+    })
+
+# Balayage de scénarios : une seule météo et un seul predict() vectorisé pour toutes les combinaisons
+# culture/saison d'un district. Les combinaisons inconnues du modèle sont renvoyées en erreur une à une.
+@app.route('/crop-yield-predict/batch', methods=['POST'])
+def crop_yield_prediction_batch():
+    try:
+        payload = read_payload()
+        city = payload['city']
+        area = int(payload['area'])
+        combos = payload['combos']
+        columns = [index for index in data]
+        if city not in columns:
+            return write_payload({"error": f"Unknown city: {city}"}, 400)
+        district = rainfall_data[rainfall_data["DIST"] == city]
+        if district.empty:
+            return write_payload({"error": f"No rainfall data for city: {city}"}, 400)
+
+        temperature, humidity = weather_fetch(city)
+
+        results = [None] * len(combos)
+        rows = []
+        for i, combo in enumerate(combos):
+            crop, season = combo.get('crop'), combo.get('season')
+            if crop not in columns or season not in columns or season not in district.columns:
+                results[i] = {"crop": crop, "season": season, "error": "Unknown crop or season"}
+                continue
+            rows.append((i, crop, season, district[season].values[0]))
+
+        if rows:
+            df = pd.DataFrame(0, index=range(len(rows)), columns=columns)
+            df["Year"] = 2016
+            df[city] = 1
+            df["Area"] = area
+            df["Temperature"] = temperature
+            df["Rainfall"] = 0.0
+            for row, (i, crop, season, rainfall) in enumerate(rows):
+                df.loc[row, crop] = 1
+                df.loc[row, season] = 1
+                df.loc[row, "Rainfall"] = rainfall
+            predictions = crop_yield_model.predict(df)
+            for row, (i, crop, season, rainfall) in enumerate(rows):
+                results[i] = {"crop": crop, "season": season, "rainfall": round(rainfall, 2),
+                              "prediction": predictions[row]}
+
+        return write_payload(ensure_serializable({
+            "temperature": temperature,
+            "humidity": humidity,
+            "results": results,
+        }))
+
+    except KeyError as e:
+        return write_payload({"error": f"Missing required field: {str(e)}"}, 400)
+
+    except Exception as e:
+        return write_payload({"error": str(e)}, 400)
+
+# Variantes progressives : une ligne JSON par étape (weather, prediction, charts, ou error),
+# envoyée dès qu'elle est prête. Toujours en JSON, quel que soit le format demandé.
+def ndjson(stage, payload):
+    return json.dumps({"stage": stage, "data": stringify_keys(ensure_serializable(payload))}) + "\n"
+
+@app.route('/crop-yield-predict/stream', methods=['POST'])
+def crop_yield_prediction_stream():
+    formdata = read_payload()['formdata']
+
+    def stages():
+        try:
+            city = formdata["city"]
+            season = formdata["season"]
+            temperature, humidity = weather_fetch(city)
+            rainfall = rainfall_data[rainfall_data["DIST"] == city][season].values[0]
+            yield ndjson("weather", {"temperature": temperature, "humidity": humidity,
+                                     "rainfall": round(rainfall, 2)})
+
+            prediction = predict_yield(formdata, temperature, rainfall)
+            yield ndjson("prediction", {"prediction": prediction})
+
+            rainfall = round(rainfall, 2)
+            (year_yield, season_yield, temp_yield, rain_yield, humid_yield) = info_range(
+                formdata, temperature, humidity, rainfall
+            )
+            year_yield[2022] = round(prediction/int(formdata['area']), 2)
+            yield ndjson("charts", {
+                "year_yield": year_yield,
+                "season_yield": season_yield,
+                "temp_yield": temp_yield,
+                "rain_yield": rain_yield,
+                "humid_yield": humid_yield,
+            })
+        except KeyError as e:
+            yield ndjson("error", {"error": f"Missing required field: {str(e)}"})
+        except Exception as e:
+            yield ndjson("error", {"error": str(e)})
+
+    return Response(stream_with_context(stages()), mimetype="application/x-ndjson")
+
+@app.route('/crop-predict/stream', methods=['POST'])
+def crop_prediction_stream():
+    formdata = read_payload()['formdata']
+
+    def stages():
+        try:
+            city = formdata['city']
+            season = formdata['season']
+            temperature, humidity = weather_fetch(city)
+            rainfall = rainfall_data[rainfall_data["DIST"] == city][season].values[0]
+            yield ndjson("weather", {"temperature": temperature, "humidity": humidity,
+                                     "rainfall": round(rainfall, 2)})
+
+            features = [[formdata['nitrogen'], formdata['phosphorous'], formdata['pottasium'],
+                         temperature, humidity, formdata['ph'], rainfall]]
+            chart_data = topCrops(crops, features)
+            best_crop = list(chart_data.keys())[0]
+            yield ndjson("prediction", {"prediction": [best_crop], "probability": chart_data[best_crop]})
+            yield ndjson("charts", {"chart_data": chart_data})
+        except KeyError as e:
+            yield ndjson("error", {"error": f"Missing required field: {str(e)}"})
+        except Exception as e:
+            yield ndjson("error", {"error": str(e)})
+
+    return Response(stream_with_context(stages()), mimetype="application/x-ndjson")
 
 if __name__ == "__main__":
     app.run(host="0.0.0.0", port=5000, debug=True)
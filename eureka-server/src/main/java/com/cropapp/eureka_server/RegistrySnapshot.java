@@ -0,0 +1,195 @@
+package com.cropapp.eureka_server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.LeaseInfo;
+import com.netflix.discovery.converters.wrappers.CodecWrapper;
+import com.netflix.discovery.converters.wrappers.CodecWrappers;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.eureka.registry.PeerAwareInstanceRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.netflix.eureka.server.event.EurekaRegistryAvailableEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instantané du registre sur disque, rechargé au démarrage
+ *
+ * Sans lui, un serveur Eureka redémarré répond un registre vide jusqu'à ce que chaque client se réenregistre
+ * (jusqu'à 30 s) : pendant ce temps CropApp2 ne trouve plus aucune instance de prédiction.
+ *
+ * Toutes les registry-snapshot.interval-seconds (et à l'arrêt), les instances locales sont écrites dans
+ * registry-snapshot.file. Au démarrage, un instantané de moins de registry-snapshot.max-age-seconds est rechargé :
+ * - chaque instance reçoit un bail neuf de restored-lease-seconds au plus : un client vivant le renouvelle au
+ *   battement suivant, un client disparu est évincé à son expiration ;
+ * - les instances dont le bail avait déjà expiré au moment de l'instantané sont ignorées ;
+ * - les instances déjà réenregistrées (ou reçues d'un pair) ne sont pas écrasées ;
+ * - le chargement n'est pas répliqué vers les pairs (ils ont leur propre registre).
+ * Le dirty timestamp d'origine est gardé : un client dont l'instance a changé entre-temps reçoit 404 à son
+ * battement et se réenregistre avec ses données à jour.
+ */
+@Component
+@ConditionalOnProperty(name = "registry-snapshot.enabled", havingValue = "true", matchIfMissing = true)
+public class RegistrySnapshot {
+
+	private static final Logger log = LoggerFactory.getLogger(RegistrySnapshot.class);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final CodecWrapper codec = CodecWrappers.getCodec(CodecWrappers.JacksonJson.class);
+
+	@Autowired
+	private PeerAwareInstanceRegistry registry;
+
+	@Autowired
+	private ApplicationInfoManager applicationInfoManager;
+
+	@Value("${registry-snapshot.file:./data/registry-snapshot.json}")
+	private String file;
+
+	@Value("${registry-snapshot.interval-seconds:30}")
+	private long intervalSeconds;
+
+	@Value("${registry-snapshot.max-age-seconds:600}")
+	private long maxAgeSeconds;
+
+	@Value("${registry-snapshot.restored-lease-seconds:90}")
+	private int restoredLeaseSeconds;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Registre ouvert (après la synchronisation avec les pairs) : rechargement puis instantanés périodiques.
+	 */
+	@EventListener(EurekaRegistryAvailableEvent.class)
+	public void start() {
+		int restored = restore();
+		if (restored > 0) {
+			// Recalcule le seuil d'auto-préservation sur le registre rechargé et lève l'attente
+			// wait-time-in-ms-when-sync-empty : le registre n'est plus vide
+			registry.openForTraffic(applicationInfoManager, countInstances(registry.getApplicationsFromLocalRegionOnly()));
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "registry-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::saveQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Dernier instantané avant l'arrêt du serveur Eureka (ContextClosedEvent précède l'arrêt du registre).
+	 */
+	@EventListener(ContextClosedEvent.class)
+	public void onClose() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			saveQuietly();
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Écrit les instances locales dans le fichier (remplacement atomique : un arrêt brutal laisse l'ancien fichier).
+	 */
+	public int save() throws IOException {
+		Applications applications = registry.getApplicationsFromLocalRegionOnly();
+		ObjectNode snapshot = objectMapper.createObjectNode();
+		snapshot.put("takenAt", System.currentTimeMillis());
+		snapshot.set("applications", objectMapper.readTree(codec.encode(applications)));
+
+		Path target = Paths.get(file).toAbsolutePath();
+		Files.createDirectories(target.getParent());
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		Files.write(temporary, objectMapper.writeValueAsBytes(snapshot));
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return countInstances(applications);
+	}
+
+	/**
+	 * Recharge l'instantané s'il existe et n'est pas trop vieux ; renvoie le nombre d'instances rechargées.
+	 */
+	public int restore() {
+		Path source = Paths.get(file);
+		if (!Files.exists(source)) {
+			return 0;
+		}
+		try {
+			JsonNode snapshot = objectMapper.readTree(Files.readAllBytes(source));
+			long takenAt = snapshot.path("takenAt").asLong();
+			long ageMillis = System.currentTimeMillis() - takenAt;
+			if (ageMillis > TimeUnit.SECONDS.toMillis(maxAgeSeconds)) {
+				log.info("Instantané du registre ignoré : pris il y a {} s (max {} s)", ageMillis / 1000, maxAgeSeconds);
+				return 0;
+			}
+			Applications applications = codec.decode(snapshot.get("applications").toString(), Applications.class);
+
+			int restored = 0;
+			int expired = 0;
+			for (Application application : applications.getRegisteredApplications()) {
+				for (InstanceInfo instance : application.getInstances()) {
+					if (registry.getInstanceByAppAndId(instance.getAppName(), instance.getId(), false) != null) {
+						continue;
+					}
+					LeaseInfo lease = instance.getLeaseInfo();
+					int duration = lease != null && lease.getDurationInSecs() > 0 ? lease.getDurationInSecs() : restoredLeaseSeconds;
+					if (lease != null && lease.getRenewalTimestamp() > 0
+							&& takenAt - lease.getRenewalTimestamp() > TimeUnit.SECONDS.toMillis(duration)) {
+						expired++;
+						continue;
+					}
+					registry.register(instance, Math.min(duration, restoredLeaseSeconds), true);
+					restored++;
+				}
+			}
+			log.info("Registre rechargé depuis {} : {} instances (instantané de {} s, {} baux expirés ignorés)",
+					source.toAbsolutePath(), restored, ageMillis / 1000, expired);
+			return restored;
+		} catch (IOException | RuntimeException e) {
+			// Fichier illisible : démarrage à vide, comme sans instantané
+			log.warn("Instantané du registre illisible ({}) : {}", source.toAbsolutePath(), e.getMessage());
+			return 0;
+		}
+	}
+
+	private void saveQuietly() {
+		try {
+			save();
+		} catch (IOException | RuntimeException e) {
+			log.warn("Instantané du registre non écrit ({}) : {}", file, e.getMessage());
+		}
+	}
+
+	private static int countInstances(Applications applications) {
+		int count = 0;
+		for (Application application : applications.getRegisteredApplications()) {
+			count += application.getInstances().size();
+		}
+		return count;
+	}
+}
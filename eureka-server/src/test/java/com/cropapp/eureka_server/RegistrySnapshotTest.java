@@ -0,0 +1,106 @@
+package com.cropapp.eureka_server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegistrySnapshotTest {
+
+	private static final String INSTANCE = """
+			{"instance":{"instanceId":"cropapp2-1","hostName":"cropapp2-1","app":"CROPAPP-SERVICE","ipAddr":"10.0.0.11",
+			"status":"UP","port":{"$":9192,"@enabled":"true"},"securePort":{"$":443,"@enabled":"false"},
+			"vipAddress":"cropapp-service","secureVipAddress":"cropapp-service",
+			"dataCenterInfo":{"@class":"com.netflix.appinfo.InstanceInfo$DefaultDataCenterInfo","name":"MyOwn"},
+			"leaseInfo":{"renewalIntervalInSecs":30,"durationInSecs":90}}}
+			""";
+
+	private final HttpClient http = HttpClient.newHttpClient();
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void instancesStayResolvableAcrossARestart() throws Exception {
+		Path snapshot = dir.resolve("registry-snapshot.json");
+
+		try (ConfigurableApplicationContext first = start(snapshot)) {
+			int port = port(first);
+			assertEquals(204, send(port, HttpRequest.newBuilder(uri(port, "/eureka/apps/CROPAPP-SERVICE"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(INSTANCE))).statusCode());
+			assertEquals(200, get(port, "/eureka/apps/CROPAPP-SERVICE").statusCode());
+		}
+		// L'arrêt écrit le dernier instantané
+		assertTrue(Files.exists(snapshot));
+
+		try (ConfigurableApplicationContext second = start(snapshot)) {
+			int port = port(second);
+			// Aucun client ne s'est réenregistré : l'instance vient de l'instantané
+			HttpResponse<String> lookup = awaitOk(port, "/eureka/apps/CROPAPP-SERVICE");
+			assertEquals(200, lookup.statusCode());
+			assertTrue(lookup.body().contains("cropapp2-1"));
+			assertTrue(get(port, "/eureka/apps/").body().contains("10.0.0.11"));
+
+			// Le client vivant renouvelle son bail sur le registre rechargé, sans se réenregistrer
+			assertEquals(200, send(port, HttpRequest.newBuilder(uri(port, "/eureka/apps/CROPAPP-SERVICE/cropapp2-1?status=UP"))
+					.PUT(HttpRequest.BodyPublishers.noBody())).statusCode());
+		}
+
+		// Sans instantané : registre vide au démarrage
+		try (ConfigurableApplicationContext cold = start(dir.resolve("absent.json"))) {
+			int port = port(cold);
+			awaitOk(port, "/eureka/apps/");
+			assertEquals(404, get(port, "/eureka/apps/CROPAPP-SERVICE").statusCode());
+		}
+	}
+
+	private static ConfigurableApplicationContext start(Path snapshot) {
+		return new SpringApplicationBuilder(EurekaServerApplication.class).run(
+				"--server.port=0",
+				"--registry-snapshot.file=" + snapshot,
+				"--registry-snapshot.interval-seconds=3600",
+				"--eureka.client.register-with-eureka=false",
+				"--eureka.client.fetch-registry=false");
+	}
+
+	private static int port(ConfigurableApplicationContext context) {
+		return ((WebServerApplicationContext) context).getWebServer().getPort();
+	}
+
+	/**
+	 * Le registre s'ouvre sur un thread de Spring Cloud juste après le démarrage du contexte : quelques
+	 * essais rapprochés, bien en deçà des 30 s qu'attendrait un client pour se réenregistrer.
+	 */
+	private HttpResponse<String> awaitOk(int port, String path) throws Exception {
+		HttpResponse<String> response = get(port, path);
+		for (int attempt = 0; attempt < 50 && response.statusCode() != 200; attempt++) {
+			Thread.sleep(100);
+			response = get(port, path);
+		}
+		return response;
+	}
+
+	private HttpResponse<String> get(int port, String path) throws Exception {
+		return send(port, HttpRequest.newBuilder(uri(port, path)).GET());
+	}
+
+	private HttpResponse<String> send(int port, HttpRequest.Builder request) throws Exception {
+		return http.send(request.header("Accept", "application/json").build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static URI uri(int port, String path) {
+		return URI.create("http://localhost:" + port + path);
+	}
+}
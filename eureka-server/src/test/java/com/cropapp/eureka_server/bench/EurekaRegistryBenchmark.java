@@ -0,0 +1,342 @@
+package com.cropapp.eureka_server.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Charge de registre sur un cluster Eureka : bench.instances instances simulées (bench.apps applications)
+ * s'enregistrent, envoient leurs battements de cœur et récupèrent le delta du registre, comme des clients réels
+ * (intervalles de 30 s par défaut, phases aléatoires).
+ *
+ * Rapport : latence des enregistrements, battements et récupérations (delta et registre complet),
+ * délai de réplication (instance enregistrée sur un nœud, visible par GET direct sur les autres),
+ * délai de visibilité dans /eureka/apps/delta des autres nœuds (réplication + cache de réponses),
+ * nombre d'instances vues par chaque nœud et CPU des nœuds (process.cpu.usage de l'actuator).
+ *
+ * Les instances sont réparties sur les nœuds à tour de rôle : toute écriture est répliquée vers les autres.
+ * Toutes les instances sont désenregistrées à la fin.
+ *
+ * Lancement (cluster démarré, par exemple docker compose up eureka-server eureka-server-2 eureka-server-3) :
+ *             mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *             -Dexec.mainClass=com.cropapp.eureka_server.bench.EurekaRegistryBenchmark
+ *             -Dbench.nodes=http://localhost:8761,http://localhost:8762,http://localhost:8763
+ *             -Dbench.instances=500 -Dbench.duration-seconds=180
+ */
+public class EurekaRegistryBenchmark {
+
+	private static final Pattern METRIC_VALUE = Pattern.compile("\"value\"\\s*:\\s*([-0-9.Ee]+)");
+	private static final Pattern INSTANCE_ID = Pattern.compile("\"instanceId\"\\s*:\\s*\"");
+
+	private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+	private final List<String> nodes;
+	private final String runId = Long.toHexString(System.nanoTime() & 0xffffff);
+
+	EurekaRegistryBenchmark(List<String> nodes) {
+		this.nodes = nodes;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> nodes = Arrays.stream(System.getProperty("bench.nodes",
+						"http://localhost:8761,http://localhost:8762,http://localhost:8763").split(","))
+				.map(String::trim).map(node -> node.replaceAll("/+$", "")).toList();
+		int instances = Integer.getInteger("bench.instances", 500);
+		int apps = Integer.getInteger("bench.apps", 20);
+		int durationSeconds = Integer.getInteger("bench.duration-seconds", 180);
+		int heartbeatSeconds = Integer.getInteger("bench.heartbeat-seconds", 30);
+		int fetchSeconds = Integer.getInteger("bench.fetch-seconds", 30);
+		int lagProbes = Integer.getInteger("bench.lag-probes", 20);
+		int threads = Integer.getInteger("bench.threads", 64);
+
+		new EurekaRegistryBenchmark(nodes).run(instances, apps, durationSeconds, heartbeatSeconds, fetchSeconds,
+				lagProbes, threads);
+	}
+
+	void run(int instances, int apps, int durationSeconds, int heartbeatSeconds, int fetchSeconds, int lagProbes,
+			 int threads) throws Exception {
+		System.out.printf("Cluster : %s%n%d instances (%d applications), %d s, battements toutes les %d s, delta toutes les %d s%n",
+				nodes, instances, apps, durationSeconds, heartbeatSeconds, fetchSeconds);
+
+		Recorder register = new Recorder();
+		Recorder heartbeat = new Recorder();
+		Recorder delta = new Recorder();
+		Recorder full = new Recorder();
+		Recorder replication = new Recorder();
+		Recorder visibility = new Recorder();
+		List<CpuSampler> cpu = nodes.stream().map(CpuSampler::new).toList();
+
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(threads);
+		List<Instance> simulated = new ArrayList<>();
+		for (int i = 0; i < instances; i++) {
+			simulated.add(new Instance("BENCH-" + runId.toUpperCase(Locale.ROOT) + "-" + (i % apps),
+					"bench-" + runId + "-" + i, nodes.get(i % nodes.size())));
+		}
+
+		// Enregistrement de toutes les instances, en parallèle
+		long registerStart = System.nanoTime();
+		List<Future<?>> registrations = new ArrayList<>();
+		for (Instance instance : simulated) {
+			registrations.add(scheduler.submit(() -> register.time(() -> register(instance.node, instance))));
+		}
+		for (Future<?> registration : registrations) {
+			registration.get();
+		}
+		System.out.printf("Enregistrement : %d instances en %.1f s%n", instances,
+				(System.nanoTime() - registerStart) / 1e9);
+
+		// Régime établi : battements et récupérations du delta, chacun à sa phase
+		for (Instance instance : simulated) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			scheduler.scheduleAtFixedRate(() -> heartbeat.time(() -> renew(instance)),
+					random.nextLong(heartbeatSeconds * 1000L), heartbeatSeconds * 1000L, TimeUnit.MILLISECONDS);
+			scheduler.scheduleAtFixedRate(() -> delta.time(() -> get(instance.node + "/eureka/apps/delta")),
+					random.nextLong(fetchSeconds * 1000L), fetchSeconds * 1000L, TimeUnit.MILLISECONDS);
+		}
+		for (String node : nodes) {
+			scheduler.scheduleAtFixedRate(() -> full.time(() -> get(node + "/eureka/apps/")), 0, 10, TimeUnit.SECONDS);
+		}
+		for (CpuSampler sampler : cpu) {
+			scheduler.scheduleAtFixedRate(sampler::sample, 0, 2, TimeUnit.SECONDS);
+		}
+
+		long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+		long probeEvery = TimeUnit.SECONDS.toNanos(durationSeconds) / Math.max(1, lagProbes);
+		for (int probe = 0; probe < lagProbes && System.nanoTime() < end; probe++) {
+			long next = System.nanoTime() + probeEvery;
+			probeLag(probe, end, replication, visibility);
+			TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+		}
+		TimeUnit.NANOSECONDS.sleep(Math.max(0, end - System.nanoTime()));
+
+		List<String> registrySizes = new ArrayList<>();
+		for (String node : nodes) {
+			String body = get(node + "/eureka/apps/");
+			registrySizes.add(node + " : " + count(INSTANCE_ID, body) + " instances");
+		}
+
+		scheduler.shutdownNow();
+		scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		for (Instance instance : simulated) {
+			try {
+				send(HttpRequest.newBuilder(URI.create(instance.node + "/eureka/apps/" + instance.app + "/" + instance.id))
+						.DELETE());
+			} catch (Exception ignored) {
+				// Désenregistrement au mieux : l'éviction s'occupe du reste
+			}
+		}
+
+		System.out.printf("%n%-38s%8s%7s%9s%9s%9s%9s%n", "opération (ms)", "n", "err", "p50", "p95", "p99", "max");
+		register.print("enregistrement");
+		heartbeat.print("battement de cœur (PUT renew)");
+		delta.print("récupération du delta");
+		full.print("récupération du registre complet");
+		replication.print("réplication (GET direct sur un pair)");
+		visibility.print("visibilité dans le delta d'un pair");
+		System.out.println();
+		registrySizes.forEach(System.out::println);
+		for (CpuSampler sampler : cpu) {
+			sampler.print();
+		}
+	}
+
+	/**
+	 * Enregistre une instance sur un nœud puis mesure, sur chaque autre nœud, le délai avant qu'elle soit
+	 * lisible directement (réplication) et avant qu'elle apparaisse dans /eureka/apps/delta (ce que voient les clients).
+	 */
+	private void probeLag(int probe, long end, Recorder replication, Recorder visibility) throws Exception {
+		if (nodes.size() < 2) {
+			return;
+		}
+		String origin = nodes.get(probe % nodes.size());
+		Instance instance = new Instance("BENCH-" + runId.toUpperCase(Locale.ROOT) + "-PROBE", "probe-" + runId + "-" + probe, origin);
+		register(origin, instance);
+		long registered = System.nanoTime();
+		ConcurrentHashMap<String, Boolean> replicated = new ConcurrentHashMap<>();
+		ConcurrentHashMap<String, Boolean> visible = new ConcurrentHashMap<>();
+		List<String> peers = nodes.stream().filter(node -> !node.equals(origin)).toList();
+		// Jamais au-delà de la fin du régime établi : une instance non répliquée à temps compte comme erreur
+		long deadline = Math.min(registered + TimeUnit.SECONDS.toNanos(60), end);
+		while ((replicated.size() < peers.size() || visible.size() < peers.size()) && System.nanoTime() < deadline) {
+			for (String peer : peers) {
+				try {
+					if (!replicated.containsKey(peer) && status(peer + "/eureka/apps/" + instance.app + "/" + instance.id) == 200) {
+						replicated.put(peer, true);
+						replication.record(System.nanoTime() - registered, false);
+					}
+					if (!visible.containsKey(peer) && get(peer + "/eureka/apps/delta").contains(instance.id)) {
+						visible.put(peer, true);
+						visibility.record(System.nanoTime() - registered, false);
+					}
+				} catch (Exception e) {
+					// Pair saturé ou injoignable : nouvel essai au tour suivant, jusqu'à l'échéance
+				}
+			}
+			TimeUnit.MILLISECONDS.sleep(20);
+		}
+		for (int missing = replicated.size(); missing < peers.size(); missing++) {
+			replication.record(0, true);
+		}
+		for (int missing = visible.size(); missing < peers.size(); missing++) {
+			visibility.record(0, true);
+		}
+		send(HttpRequest.newBuilder(URI.create(origin + "/eureka/apps/" + instance.app + "/" + instance.id)).DELETE());
+	}
+
+	private String register(String node, Instance instance) throws Exception {
+		String body = """
+				{"instance":{"instanceId":"%s","hostName":"%s.bench.invalid","app":"%s","ipAddr":"10.%d.%d.%d",
+				"status":"UP","port":{"$":8080,"@enabled":"true"},"securePort":{"$":443,"@enabled":"false"},
+				"vipAddress":"%s","secureVipAddress":"%s",
+				"dataCenterInfo":{"@class":"com.netflix.appinfo.InstanceInfo$DefaultDataCenterInfo","name":"MyOwn"},
+				"leaseInfo":{"renewalIntervalInSecs":30,"durationInSecs":90}}}
+				""".formatted(instance.id, instance.id, instance.app, instance.hashCode() >>> 16 & 0xff,
+				instance.hashCode() >>> 8 & 0xff, instance.hashCode() & 0xff,
+				instance.app.toLowerCase(Locale.ROOT), instance.app.toLowerCase(Locale.ROOT));
+		return send(HttpRequest.newBuilder(URI.create(node + "/eureka/apps/" + instance.app))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body)));
+	}
+
+	private String renew(Instance instance) throws Exception {
+		return send(HttpRequest.newBuilder(URI.create(instance.node + "/eureka/apps/" + instance.app + "/" + instance.id
+				+ "?status=UP"))
+				.PUT(HttpRequest.BodyPublishers.noBody()));
+	}
+
+	private String get(String url) throws Exception {
+		return send(HttpRequest.newBuilder(URI.create(url)).GET());
+	}
+
+	private int status(String url) throws Exception {
+		return http.send(HttpRequest.newBuilder(URI.create(url)).header("Accept", "application/json")
+				.timeout(Duration.ofSeconds(5)).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+
+	private String send(HttpRequest.Builder request) throws Exception {
+		HttpResponse<String> response = http.send(request.header("Accept", "application/json")
+				.timeout(Duration.ofSeconds(5)).build(), HttpResponse.BodyHandlers.ofString());
+		if (response.statusCode() >= 300) {
+			throw new IllegalStateException("HTTP " + response.statusCode() + " sur " + response.uri());
+		}
+		return response.body();
+	}
+
+	private static int count(Pattern pattern, String text) {
+		Matcher matcher = pattern.matcher(text);
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		return count;
+	}
+
+	private static final class Instance {
+
+		private final String app;
+		private final String id;
+		private final String node;
+
+		private Instance(String app, String id, String node) {
+			this.app = app;
+			this.id = id;
+			this.node = node;
+		}
+	}
+
+	/**
+	 * Durées en nanosecondes, triées seulement à l'affichage.
+	 */
+	private static final class Recorder {
+
+		private final List<Long> durations = new ArrayList<>();
+		private final AtomicLong errors = new AtomicLong();
+
+		void time(Call call) {
+			long start = System.nanoTime();
+			try {
+				call.run();
+				record(System.nanoTime() - start, false);
+			} catch (Exception e) {
+				record(0, true);
+			}
+		}
+
+		synchronized void record(long nanos, boolean error) {
+			if (error) {
+				errors.incrementAndGet();
+			} else {
+				durations.add(nanos);
+			}
+		}
+
+		synchronized void print(String label) {
+			long[] sorted = durations.stream().mapToLong(Long::longValue).sorted().toArray();
+			System.out.printf("%-38s%8d%7d%9.1f%9.1f%9.1f%9.1f%n", label, sorted.length, errors.get(),
+					percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+					sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+		}
+
+		private static double percentile(long[] sorted, double p) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(p / 100 * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, rank))] / 1e6;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Call {
+		Object run() throws Exception;
+	}
+
+	/**
+	 * CPU d'un nœud (process.cpu.usage, entre 0 et 1 pour toute la machine) relevé pendant le régime établi.
+	 */
+	private final class CpuSampler {
+
+		private final String node;
+		private final List<Double> samples = new ArrayList<>();
+
+		private CpuSampler(String node) {
+			this.node = node;
+		}
+
+		void sample() {
+			try {
+				Matcher matcher = METRIC_VALUE.matcher(get(node + "/actuator/metrics/process.cpu.usage"));
+				if (matcher.find()) {
+					synchronized (samples) {
+						samples.add(Double.parseDouble(matcher.group(1)));
+					}
+				}
+			} catch (Exception ignored) {
+				// Nœud injoignable pendant un relevé : l'échantillon manque, les erreurs sont dans les autres mesures
+			}
+		}
+
+		void print() {
+			synchronized (samples) {
+				double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+				double max = samples.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+				System.out.printf("CPU %s : moyenne %.1f %%, max %.1f %% (%d relevés)%n", node, mean * 100, max * 100,
+						samples.size());
+			}
+		}
+	}
+}
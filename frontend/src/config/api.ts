@@ -1,7 +1,8 @@
 import axios, { AxiosInstance } from "axios";
 
 
-export const API_BASE_URL: string = "http://localhost:9192"
+// Passerelle d'entrée (gateway) : répartit les requêtes sur toutes les répliques CropApp2
+export const API_BASE_URL: string = import.meta.env.VITE_API_URL ?? "http://localhost:8080"
 
 const api: AxiosInstance = axios.create({baseURL:API_BASE_URL})
 
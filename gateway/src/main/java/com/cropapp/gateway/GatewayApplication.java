@@ -0,0 +1,23 @@
+package com.cropapp.gateway;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+
+/**
+ * Passerelle d'entrée de CropApp
+ *
+ * Seul point d'accès du frontend : route /api/** et /auth/** vers toutes les répliques cropapp-service
+ * enregistrées dans Eureka (instance la moins chargée), vérifie les jetons JWT, met en cache les GET cacheables,
+ * compresse les réponses et porte la configuration CORS.
+ *
+ * Voir application.yml pour les routes.
+ */
+@SpringBootApplication
+@LoadBalancerClients(defaultConfiguration = LeastLoadedConfiguration.class)
+public class GatewayApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(GatewayApplication.class, args);
+	}
+}
@@ -0,0 +1,54 @@
+package com.cropapp.gateway;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requêtes en cours par instance, lues par LeastLoadedLoadBalancer
+ *
+ * Placé juste après le choix de l'instance : compté au départ vers l'instance, décompté à la fin de l'échange
+ * (réponse écrite, erreur ou client parti). Un flux SSE compte pour toute sa durée, une réponse servie par le
+ * cache local ne compte pas.
+ */
+@Component
+public class InFlightRequests implements GlobalFilter, Ordered {
+
+	private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		Response<ServiceInstance> chosen = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+		if (chosen == null || !chosen.hasServer()) {
+			return chain.filter(exchange);
+		}
+		AtomicInteger count = counts.computeIfAbsent(key(chosen.getServer()), k -> new AtomicInteger());
+		count.incrementAndGet();
+		return chain.filter(exchange).doFinally(signal -> count.decrementAndGet());
+	}
+
+	@Override
+	public int getOrder() {
+		return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+	}
+
+	public int get(ServiceInstance instance) {
+		AtomicInteger count = counts.get(key(instance));
+		return count == null ? 0 : count.get();
+	}
+
+	private static String key(ServiceInstance instance) {
+		return instance.getHost() + ":" + instance.getPort();
+	}
+}
@@ -0,0 +1,74 @@
+package com.cropapp.gateway;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Vérification des jetons à l'entrée : une requête /api/** sans jeton valide (signature, expiration) reçoit 401
+ * ici, sans occuper de connexion ni de thread sur les répliques.
+ *
+ * Même clé que JwtProvider de CropApp2 (gateway.jwt.secret). Les répliques revérifient le jeton (elles restent
+ * joignables directement, et le coût d'une vérification HMAC est négligeable devant le reste de la requête).
+ * Passe avant le cache local : une réponse en cache n'est jamais servie à un jeton refusé.
+ */
+@Component
+public class JwtAuthenticationFilter implements GlobalFilter, Ordered {
+
+	private static final String BEARER = "Bearer ";
+
+	private final JwtParser parser;
+
+	public JwtAuthenticationFilter(@Value("${gateway.jwt.secret}") String secret) {
+		this.parser = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(secret.getBytes())).build();
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		ServerHttpRequest request = exchange.getRequest();
+		if (!request.getPath().value().startsWith("/api/") || HttpMethod.OPTIONS.equals(request.getMethod())) {
+			return chain.filter(exchange);
+		}
+		String header = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+		if (header == null || !header.startsWith(BEARER)) {
+			return reject(exchange, "Jeton manquant");
+		}
+		try {
+			parser.parseSignedClaims(header.substring(BEARER.length()));
+		} catch (JwtException | IllegalArgumentException e) {
+			return reject(exchange, "Jeton invalide ou expiré");
+		}
+		return chain.filter(exchange);
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE + 10;
+	}
+
+	private static Mono<Void> reject(ServerWebExchange exchange, String message) {
+		ServerHttpResponse response = exchange.getResponse();
+		response.setStatusCode(HttpStatus.UNAUTHORIZED);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		DataBuffer body = response.bufferFactory()
+				.wrap(("{\"error\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+		return response.writeWith(Mono.just(body));
+	}
+}
@@ -0,0 +1,23 @@
+package com.cropapp.gateway;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Configuration de chaque client load balancer (un contexte enfant par service, voir @LoadBalancerClients).
+ * Volontairement sans @Configuration : le scan du contexte principal ne doit pas l'enregistrer.
+ */
+public class LeastLoadedConfiguration {
+
+	@Bean
+	public ReactorLoadBalancer<ServiceInstance> leastLoadedLoadBalancer(Environment environment,
+			LoadBalancerClientFactory clientFactory, InFlightRequests inFlight) {
+		String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+		return new LeastLoadedLoadBalancer(clientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+				inFlight);
+	}
+}
@@ -0,0 +1,60 @@
+package com.cropapp.gateway;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Choisit l'instance qui a le moins de requêtes en cours (compteurs d'InFlightRequests)
+ *
+ * Le tourniquet par défaut ignore la durée des requêtes : une réplique occupée par des prédictions lentes ou des
+ * flux SSE reçoit autant de nouvelles requêtes que les autres. Ici les égalités sont départagées au hasard,
+ * pour ne pas envoyer toutes les requêtes d'un creux sur la première instance de la liste.
+ */
+public class LeastLoadedLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private final ObjectProvider<ServiceInstanceListSupplier> suppliers;
+	private final InFlightRequests inFlight;
+
+	public LeastLoadedLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> suppliers, InFlightRequests inFlight) {
+		this.suppliers = suppliers;
+		this.inFlight = inFlight;
+	}
+
+	@Override
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		ServiceInstanceListSupplier supplier = suppliers.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		return supplier.get(request).next().map(this::choose);
+	}
+
+	Response<ServiceInstance> choose(List<ServiceInstance> instances) {
+		if (instances.isEmpty()) {
+			return new EmptyResponse();
+		}
+		ServiceInstance best = null;
+		int bestLoad = Integer.MAX_VALUE;
+		int ties = 0;
+		for (ServiceInstance instance : instances) {
+			int load = inFlight.get(instance);
+			if (load < bestLoad) {
+				best = instance;
+				bestLoad = load;
+				ties = 1;
+			} else if (load == bestLoad && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+				// Tirage uniforme parmi les ex aequo (échantillonnage par réservoir)
+				best = instance;
+			}
+		}
+		return new DefaultResponse(best);
+	}
+}
@@ -0,0 +1,71 @@
+package com.cropapp.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LeastLoadedLoadBalancerTest {
+
+	private final ServiceInstance first = instance("cropapp2-1");
+	private final ServiceInstance second = instance("cropapp2-2");
+	private final ServiceInstance third = instance("cropapp2-3");
+	private final List<ServiceInstance> instances = List.of(first, second, third);
+
+	private final InFlightRequests inFlight = new InFlightRequests();
+	private final LeastLoadedLoadBalancer loadBalancer = new LeastLoadedLoadBalancer(null, inFlight);
+
+	@Test
+	void picksTheInstanceWithFewestRequestsInFlight() {
+		// Deux requêtes en cours (par exemple des flux SSE) sur la première, une sur la deuxième
+		Disposable a = hold(first);
+		Disposable b = hold(first);
+		Disposable c = hold(second);
+
+		assertEquals(third, loadBalancer.choose(instances).getServer());
+
+		// Client parti : la requête annulée est décomptée
+		a.dispose();
+		b.dispose();
+		assertEquals(0, inFlight.get(first));
+		assertEquals(1, inFlight.get(second));
+		assertNotEquals(second, loadBalancer.choose(instances).getServer());
+		c.dispose();
+	}
+
+	@Test
+	void spreadsTiesAcrossInstances() {
+		Set<ServiceInstance> chosen = new HashSet<>();
+		for (int i = 0; i < 200; i++) {
+			chosen.add(loadBalancer.choose(instances).getServer());
+		}
+		assertEquals(Set.copyOf(instances), chosen);
+		assertNull(loadBalancer.choose(List.of()).getServer());
+	}
+
+	/**
+	 * Requête routée vers l'instance et toujours en cours jusqu'à dispose().
+	 */
+	private Disposable hold(ServiceInstance instance) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/predictions/my-predictions"));
+		exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR, new DefaultResponse(instance));
+		return inFlight.filter(exchange, routed -> Mono.never()).subscribe();
+	}
+
+	private static ServiceInstance instance(String host) {
+		return new DefaultServiceInstance(host + ":9192", "cropapp-service", host, 9192, false);
+	}
+}
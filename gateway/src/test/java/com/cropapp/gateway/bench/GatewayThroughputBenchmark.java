@@ -0,0 +1,227 @@
+package com.cropapp.gateway.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Débit et latence à travers la passerelle, comparés à l'accès direct aux répliques
+ *
+ * Pour chaque scénario, bench.concurrency clients en boucle fermée envoient des requêtes pendant
+ * bench.duration-seconds (après bench.warmup-seconds non comptées), d'abord vers la passerelle puis en direct
+ * (bench.direct : une ou plusieurs répliques, réparties à tour de rôle côté client) :
+ * - districts : GET /api/districts/suggest sur un jeu de préfixes (cache local de la passerelle) ;
+ * - history : GET /api/predictions/my-predictions (routé à chaque fois, réponse compressée par la passerelle) ;
+ * - bad-token : GET /api/predictions/my-predictions avec un jeton invalide (refusé à l'entrée par la passerelle,
+ *   par le filtre JWT de la réplique en direct).
+ *
+ * Rapport par scénario et par cible : requêtes/s, latence p50/p95/p99/max en ms, erreurs (statut inattendu ou
+ * exception) et octets reçus par réponse (Accept-Encoding: gzip, le corps n'est pas décompressé).
+ *
+ * Jeton : bench.token, ou bench.email et bench.password (connexion par /auth/signing sur la passerelle).
+ *
+ * Lancement (pile démarrée avec les ports des répliques publiés, qui ne le sont pas par défaut :
+ * docker compose -f docker-compose.yml -f docker-compose.bench.yml up) :
+ *             mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *             -Dexec.mainClass=com.cropapp.gateway.bench.GatewayThroughputBenchmark
+ *             -Dbench.gateway=http://localhost:8080 -Dbench.direct=http://localhost:9192,http://localhost:9193,http://localhost:9194
+ *             -Dbench.email=bench@example.com -Dbench.password=secret -Dbench.concurrency=32
+ */
+public class GatewayThroughputBenchmark {
+
+	private static final Pattern JWT = Pattern.compile("\"jwt\"\\s*:\\s*\"([^\"]+)\"");
+	private static final String[] PREFIXES = {"hyd", "pun", "bang", "chen", "kol", "mum", "del", "jai", "luc", "nag"};
+
+	private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+	private final String token;
+
+	GatewayThroughputBenchmark(String token) {
+		this.token = token;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String gateway = trim(System.getProperty("bench.gateway", "http://localhost:8080"));
+		List<String> direct = Arrays.stream(System.getProperty("bench.direct", "http://localhost:9192").split(","))
+				.map(GatewayThroughputBenchmark::trim).toList();
+		int concurrency = Integer.getInteger("bench.concurrency", 32);
+		int durationSeconds = Integer.getInteger("bench.duration-seconds", 30);
+		int warmupSeconds = Integer.getInteger("bench.warmup-seconds", 5);
+
+		String token = System.getProperty("bench.token");
+		if (token == null) {
+			token = signIn(gateway, System.getProperty("bench.email"), System.getProperty("bench.password"));
+		}
+		new GatewayThroughputBenchmark(token).run(gateway, direct, concurrency, durationSeconds, warmupSeconds);
+	}
+
+	void run(String gateway, List<String> direct, int concurrency, int durationSeconds, int warmupSeconds)
+			throws Exception {
+		System.out.printf("Passerelle : %s, direct : %s%n%d clients, %d s par mesure (+%d s de chauffe)%n%n",
+				gateway, direct, concurrency, durationSeconds, warmupSeconds);
+		System.out.printf("%-12s%-10s%10s%9s%9s%9s%9s%9s%8s%10s%n", "scénario", "cible", "req/s", "p50", "p95",
+				"p99", "max", "n", "err", "oct/rép");
+
+		for (Scenario scenario : Scenario.values()) {
+			measure(scenario, "gateway", List.of(gateway), concurrency, durationSeconds, warmupSeconds);
+			measure(scenario, "direct", direct, concurrency, durationSeconds, warmupSeconds);
+		}
+	}
+
+	private void measure(Scenario scenario, String label, List<String> targets, int concurrency, int durationSeconds,
+						 int warmupSeconds) throws Exception {
+		Recorder recorder = new Recorder();
+		long start = System.nanoTime();
+		long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+		AtomicLong sequence = new AtomicLong();
+
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+		List<Future<?>> loops = new ArrayList<>();
+		for (int i = 0; i < concurrency; i++) {
+			loops.add(workers.submit(() -> {
+				while (System.nanoTime() < end) {
+					long n = sequence.getAndIncrement();
+					String target = targets.get((int) (n % targets.size()));
+					long sent = System.nanoTime();
+					try {
+						HttpResponse<byte[]> response = http.send(scenario.request(target, token, n),
+								HttpResponse.BodyHandlers.ofByteArray());
+						if (sent >= measureFrom) {
+							recorder.record(System.nanoTime() - sent, response.body().length,
+									!scenario.expected(response.statusCode()));
+						}
+					} catch (Exception e) {
+						if (sent >= measureFrom) {
+							recorder.record(0, 0, true);
+						}
+					}
+				}
+			}));
+		}
+		for (Future<?> loop : loops) {
+			loop.get();
+		}
+		workers.shutdown();
+		recorder.print(scenario.label, label, durationSeconds);
+	}
+
+	private static String signIn(String gateway, String email, String password) throws Exception {
+		if (email == null || password == null) {
+			throw new IllegalArgumentException("bench.token ou bench.email et bench.password requis");
+		}
+		HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(gateway + "/auth/signing"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString("{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}"))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		Matcher matcher = JWT.matcher(response.body());
+		if (response.statusCode() != 200 || !matcher.find()) {
+			throw new IllegalStateException("Connexion refusée (" + response.statusCode() + ") : " + response.body());
+		}
+		return matcher.group(1);
+	}
+
+	private static String trim(String url) {
+		return url.trim().replaceAll("/+$", "");
+	}
+
+	private enum Scenario {
+		DISTRICTS("districts") {
+			@Override
+			String path(long n) {
+				return "/api/districts/suggest?q=" + PREFIXES[(int) (n % PREFIXES.length)] + "&limit=8";
+			}
+		},
+		HISTORY("history") {
+			@Override
+			String path(long n) {
+				return "/api/predictions/my-predictions";
+			}
+		},
+		BAD_TOKEN("bad-token") {
+			@Override
+			String path(long n) {
+				return "/api/predictions/my-predictions";
+			}
+
+			@Override
+			boolean expected(int status) {
+				return status >= 400;
+			}
+
+			@Override
+			String token(String token) {
+				return token.substring(0, token.length() - 4) + "AAAA";
+			}
+		};
+
+		final String label;
+
+		Scenario(String label) {
+			this.label = label;
+		}
+
+		abstract String path(long n);
+
+		boolean expected(int status) {
+			return status == 200;
+		}
+
+		String token(String token) {
+			return token;
+		}
+
+		HttpRequest request(String target, String token, long n) {
+			return HttpRequest.newBuilder(URI.create(target + path(n)))
+					.timeout(Duration.ofSeconds(30))
+					.header("Authorization", "Bearer " + token(token))
+					.header("Accept", "application/json")
+					.header("Accept-Encoding", "gzip")
+					.GET()
+					.build();
+		}
+	}
+
+	private static final class Recorder {
+
+		private final List<Long> durations = new ArrayList<>();
+		private long bytes;
+		private long errors;
+
+		synchronized void record(long nanos, int length, boolean error) {
+			if (error) {
+				errors++;
+			} else {
+				durations.add(nanos);
+				bytes += length;
+			}
+		}
+
+		synchronized void print(String scenario, String target, int durationSeconds) {
+			long[] sorted = durations.stream().mapToLong(Long::longValue).sorted().toArray();
+			System.out.printf("%-12s%-10s%10.1f%9.1f%9.1f%9.1f%9.1f%9d%8d%10d%n", scenario, target,
+					sorted.length / (double) durationSeconds, percentile(sorted, 50), percentile(sorted, 95),
+					percentile(sorted, 99), sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, sorted.length,
+					errors, sorted.length == 0 ? 0 : bytes / sorted.length);
+		}
+
+		private static double percentile(long[] sorted, double p) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(p / 100 * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, rank))] / 1e6;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+"""
+Collecteur de traces minimal pour le développement (remplace un Jaeger/Tempo local).
+
+POST /v1/traces      {"spans": [...]} envoyé par TraceExporter : les spans sont ajoutés à TRACES_FILE (une ligne
+                     JSON par span) et chaque trace reçue est résumée en cascade sur la sortie standard.
+GET  /v1/traces      identifiants des dernières traces reçues.
+GET  /v1/traces/<id> spans de la trace, triés par début.
+
+Uniquement la bibliothèque standard : python collector.py
+"""
+import json
+import os
+import threading
+from collections import OrderedDict
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+PORT = int(os.environ.get("PORT", "4318"))
+TRACES_FILE = os.environ.get("TRACES_FILE", "traces.ndjson")
+MAX_TRACES = int(os.environ.get("MAX_TRACES", "1000"))
+
+traces = OrderedDict()
+lock = threading.Lock()
+
+
+def waterfall(spans):
+    spans = sorted(spans, key=lambda span: (span["start"], -span["durationMicros"]))
+    origin = spans[0]["start"]
+    by_id = {span["spanId"]: span for span in spans}
+    lines = []
+    for span in spans:
+        depth = 0
+        parent = by_id.get(span.get("parentId"))
+        while parent is not None and depth < 20:
+            depth += 1
+            parent = by_id.get(parent.get("parentId"))
+        offset_ms = (span["start"] - origin) / 1000
+        duration_ms = span["durationMicros"] / 1000
+        error = "  !! " + span["error"] if span.get("error") else ""
+        lines.append(f"  {offset_ms:9.1f} ms {duration_ms:9.1f} ms  {'  ' * depth}{span['name']} [{span['service']}]{error}")
+    return "\n".join(lines)
+
+
+class Handler(BaseHTTPRequestHandler):
+
+    def do_POST(self):
+        if self.path != "/v1/traces":
+            self.send_error(404)
+            return
+        length = int(self.headers.get("Content-Length", 0))
+        spans = json.loads(self.rfile.read(length) or b"{}").get("spans", [])
+        received = OrderedDict()
+        for span in spans:
+            received.setdefault(span["traceId"], []).append(span)
+        with lock:
+            with open(TRACES_FILE, "a") as out:
+                for span in spans:
+                    out.write(json.dumps(span) + "\n")
+            for trace_id, trace_spans in received.items():
+                traces.setdefault(trace_id, []).extend(trace_spans)
+                traces.move_to_end(trace_id)
+            while len(traces) > MAX_TRACES:
+                traces.popitem(last=False)
+        for trace_id, trace_spans in received.items():
+            print(f"trace {trace_id}\n{waterfall(trace_spans)}", flush=True)
+        self.send_response(202)
+        self.end_headers()
+
+    def do_GET(self):
+        with lock:
+            if self.path == "/v1/traces":
+                body = list(traces.keys())[::-1]
+            elif self.path.startswith("/v1/traces/"):
+                spans = traces.get(self.path[len("/v1/traces/"):])
+                if spans is None:
+                    self.send_error(404)
+                    return
+                body = sorted(spans, key=lambda span: span["start"])
+            else:
+                self.send_error(404)
+                return
+        payload = json.dumps(body).encode()
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(payload)))
+        self.end_headers()
+        self.wfile.write(payload)
+
+    def log_message(self, format, *args):
+        pass
+
+
+if __name__ == "__main__":
+    print(f"Collecteur de traces sur :{PORT}, spans dans {TRACES_FILE}", flush=True)
+    ThreadingHTTPServer(("", PORT), Handler).serve_forever()
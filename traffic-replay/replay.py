@@ -0,0 +1,441 @@
+"""
+Rejeu du trafic capturé par TrafficCapture (traffic-capture.enabled=true) pour comparer les latences de deux builds.
+
+python replay.py stubs                       bouchons Flask (:5001) et SMTP (:2525), réponses déterministes
+python replay.py run CAPTURE --out a.json    rejoue une capture (.ndjson.gz) contre CropApp2 (profil replay)
+python replay.py compare a.json b.json       latences par route, code de sortie 1 si régression
+
+Rejeu : chaque pseudonyme de la capture devient un compte <pseudonyme>.<run>@replay.invalid créé avant le début ;
+les requêtes d'un même utilisateur partent dans l'ordre de la capture, aux mêmes écarts (divisés par --speed),
+jamais avant la fin de la précédente. Les {id} sont remplacés par les identifiants créés par cet utilisateur
+pendant le rejeu. Partir d'une base vide à chaque run pour que deux runs restent comparables.
+
+Uniquement la bibliothèque standard.
+"""
+import argparse
+import gzip
+import hashlib
+import heapq
+import itertools
+import json
+import os
+import re
+import socketserver
+import sys
+import threading
+import time
+import urllib.error
+import urllib.parse
+import urllib.request
+import uuid
+from collections import defaultdict, deque
+from concurrent.futures import ThreadPoolExecutor
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+PASSWORD = "Replay-Passw0rd!"
+CAPTURE_DOMAIN = "@capture.invalid"
+SAVED_EVENT = re.compile(r"event:\s*saved\s*\ndata:\s*(\{[^\n]*\})")
+
+
+# --- Bouchons ---------------------------------------------------------------------------------------------------
+
+def draw(*parts):
+    """Nombre dans [0, 1) tiré du formulaire : mêmes entrées, même réponse d'un run à l'autre."""
+    digest = hashlib.sha256(json.dumps(parts, sort_keys=True, default=str).encode()).digest()
+    return int.from_bytes(digest[:8], "big") / 2 ** 64
+
+
+def weather(city):
+    return {"temperature": round(18 + 17 * draw("t", city), 2), "humidity": round(30 + 60 * draw("h", city), 2),
+            "rainfall": round(200 + 2500 * draw("r", city), 2)}
+
+
+def yield_result(form):
+    area = float(form.get("area") or 1)
+    prediction = round(area * (0.5 + 4 * draw("p", form.get("crop"), form.get("season"), form.get("city"))), 2)
+    charts = {
+        "year_yield": {year: round(prediction / area * (0.8 + 0.4 * draw("y", year, form)), 2) for year in range(2010, 2023)},
+        "season_yield": {season: round(3 * draw("s", season, form), 2) for season in ("Kharif", "Rabi", "Summer", "Whole Year")},
+        "temp_yield": {str(t): round(3 * draw("ty", t, form), 2) for t in range(15, 40, 5)},
+        "rain_yield": {str(r): round(3 * draw("ry", r, form), 2) for r in range(500, 3000, 500)},
+        "humid_yield": {str(h): round(3 * draw("hy", h, form), 2) for h in range(30, 100, 10)},
+    }
+    return weather(form.get("city")), {"prediction": prediction}, charts
+
+
+CROPS = ["rice", "maize", "chickpea", "kidneybeans", "pigeonpeas", "mothbeans", "mungbean", "blackgram", "lentil",
+         "pomegranate", "banana", "mango", "grapes", "watermelon", "muskmelon", "apple", "orange", "papaya", "coconut",
+         "cotton", "jute", "coffee"]
+
+
+def recommendation_result(form):
+    scores = sorted(((round(draw("c", crop, form), 4), crop) for crop in CROPS), reverse=True)[:5]
+    chart_data = {crop: score for score, crop in scores}
+    best = scores[0][1]
+    return weather(form.get("city")), {"prediction": [best], "probability": chart_data[best]}, {"chart_data": chart_data}
+
+
+class StubHandler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+    latency = 0.0
+
+    def do_POST(self):
+        body = json.loads(self.rfile.read(int(self.headers.get("Content-Length", 0))) or b"{}")
+        form = body.get("formdata") or {}
+        if self.path == "/crop-yield-predict/batch":
+            base = weather(body.get("city"))
+            results = [{"crop": c.get("crop"), "season": c.get("season"), "rainfall": base["rainfall"],
+                        "prediction": yield_result({**c, "area": body.get("area"), "city": body.get("city")})[1]["prediction"]}
+                       for c in body.get("combos", [])]
+            self.pause(1 + len(results) / 50)
+            self.send_json({"temperature": base["temperature"], "humidity": base["humidity"], "results": results})
+        elif self.path in ("/crop-yield-predict", "/crop-predict"):
+            stages = yield_result(form) if self.path == "/crop-yield-predict" else recommendation_result(form)
+            self.pause(3)
+            result = {key: value for stage in stages for key, value in stage.items()}
+            self.send_json({"response": {"status": "success", "result": result, "message": "stub"}})
+        elif self.path in ("/crop-yield-predict/stream", "/crop-predict/stream"):
+            stages = yield_result(form) if self.path.startswith("/crop-yield") else recommendation_result(form)
+            self.send_response(200)
+            self.send_header("Content-Type", "application/x-ndjson")
+            self.send_header("Transfer-Encoding", "chunked")
+            self.end_headers()
+            for name, data in zip(("weather", "prediction", "charts"), stages):
+                self.pause(1)
+                line = (json.dumps({"stage": name, "data": data}) + "\n").encode()
+                self.wfile.write(b"%x\r\n%s\r\n" % (len(line), line))
+                self.wfile.flush()
+            self.wfile.write(b"0\r\n\r\n")
+        else:
+            self.send_json({"error": "unknown route"}, 404)
+
+    def pause(self, factor):
+        # Latence simulée fixe (pas de tirage aléatoire) : seul le build testé fait varier les mesures
+        if self.latency:
+            time.sleep(self.latency * factor)
+
+    def send_json(self, body, status=200):
+        payload = json.dumps(body).encode()
+        self.send_response(status)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(payload)))
+        self.end_headers()
+        self.wfile.write(payload)
+
+    def log_message(self, format, *args):
+        pass
+
+
+class SmtpSink(socketserver.StreamRequestHandler):
+    """Serveur SMTP minimal : accepte tout et jette les messages."""
+
+    def reply(self, line):
+        self.wfile.write((line + "\r\n").encode())
+
+    def handle(self):
+        self.reply("220 replay ESMTP")
+        in_data = False
+        for raw in self.rfile:
+            line = raw.decode(errors="replace").rstrip("\r\n")
+            if in_data:
+                if line == ".":
+                    in_data = False
+                    self.reply("250 OK")
+                continue
+            command = line[:4].upper()
+            if command == "EHLO":
+                self.reply("250-replay")
+                self.reply("250 8BITMIME")
+            elif command == "DATA":
+                in_data = True
+                self.reply("354 End data with <CR><LF>.<CR><LF>")
+            elif command == "QUIT":
+                self.reply("221 Bye")
+                return
+            else:
+                self.reply("250 OK")
+
+
+def stubs(args):
+    StubHandler.latency = args.latency_ms / 1000
+    smtp = socketserver.ThreadingTCPServer(("", args.smtp_port), SmtpSink)
+    smtp.daemon_threads = True
+    threading.Thread(target=smtp.serve_forever, daemon=True).start()
+    print(f"Bouchon Flask sur :{args.flask_port} ({args.latency_ms} ms par étape), SMTP sur :{args.smtp_port}", flush=True)
+    server = ThreadingHTTPServer(("", args.flask_port), StubHandler)
+    server.daemon_threads = True
+    server.serve_forever()
+
+
+# --- Rejeu ------------------------------------------------------------------------------------------------------
+
+def read_capture(path):
+    opener = gzip.open if path.endswith(".gz") else open
+    with opener(path, "rt") as lines:
+        header = json.loads(next(lines))
+        records = []
+        for line in lines:
+            try:
+                records.append(json.loads(line))
+            except ValueError:
+                # Dernière ligne tronquée si la JVM a été tuée pendant l'écriture
+                break
+    records.sort(key=lambda record: record["t"])
+    return header, records
+
+
+def resource(route):
+    if "prediction" in route:
+        return "predictions"
+    if "recommendation" in route:
+        return "recommendations"
+    if route.startswith("/api/jobs"):
+        return "jobs"
+    return None
+
+
+class Replay:
+
+    def __init__(self, args, records):
+        self.base = args.base_url.rstrip("/")
+        self.speed = args.speed
+        self.timeout = args.timeout
+        self.run_id = args.run_id or uuid.uuid4().hex[:8]
+        self.records = records
+        self.jwt = {}
+        self.ids = defaultdict(lambda: defaultdict(list))
+        self.results = []
+        self.lock = threading.Lock()
+        self.signups = 0
+
+    def email(self, pseudonym):
+        return f"{pseudonym}.{self.run_id}@replay.invalid"
+
+    def call(self, method, path, body=None, headers=None):
+        data = json.dumps(body).encode() if body is not None else None
+        request = urllib.request.Request(self.base + path, data=data, method=method, headers=dict(headers or {}))
+        if data is not None:
+            request.add_header("Content-Type", "application/json")
+        try:
+            with urllib.request.urlopen(request, timeout=self.timeout) as response:
+                return response.status, response.headers.get("Content-Type", ""), response.read()
+        except urllib.error.HTTPError as e:
+            return e.code, e.headers.get("Content-Type", ""), e.read()
+        except (urllib.error.URLError, OSError):
+            return 0, "", b""
+
+    def create_users(self):
+        for pseudonym in sorted({record["u"] for record in self.records if record.get("u")}):
+            account = {"email": self.email(pseudonym), "password": PASSWORD, "fullName": "Replay",
+                       "username": f"{pseudonym}.{self.run_id}"}
+            status, _, payload = self.call("POST", "/auth/signup", account)
+            if status != 201:
+                status, _, payload = self.call("POST", "/auth/signing", {"email": account["email"], "password": PASSWORD})
+            try:
+                self.jwt[pseudonym] = json.loads(payload)["jwt"]
+            except (ValueError, KeyError, TypeError):
+                sys.exit(f"Compte {account['email']} impossible à créer (HTTP {status})")
+
+    def rewrite(self, value, route):
+        """Remplace pseudonymes et mots de passe masqués par des valeurs valides pour ce run."""
+        if isinstance(value, dict):
+            return {key: self.rewrite(item, route) for key, item in value.items()}
+        if isinstance(value, list):
+            return [self.rewrite(item, route) for item in value]
+        if value == "<redacted>":
+            return PASSWORD
+        if isinstance(value, str) and value.endswith(CAPTURE_DOMAIN):
+            pseudonym = value[:-len(CAPTURE_DOMAIN)]
+            if route == "/auth/signup":
+                # Le compte existe déjà (create_users) : inscription rejouée sur une adresse neuve
+                with self.lock:
+                    self.signups += 1
+                    return f"{pseudonym}.{self.run_id}.{self.signups}@replay.invalid"
+            return self.email(pseudonym)
+        return value
+
+    def path(self, record):
+        user_ids = self.ids[record.get("u")][resource(record["r"])]
+        route = record["r"]
+        if "{id}" in route:
+            created = user_ids.pop() if record["m"] == "DELETE" and user_ids else (user_ids[-1] if user_ids else 0)
+            route = route.replace("{id}", str(created))
+        if record.get("q"):
+            route += "?" + urllib.parse.urlencode(record["q"])
+        return route
+
+    def remember(self, record, status, content_type, payload):
+        if record["m"] != "POST" or not 200 <= status < 300 or resource(record["r"]) is None or "{id}" in record["r"]:
+            return
+        created = None
+        if "event-stream" in content_type:
+            saved = SAVED_EVENT.search(payload.decode(errors="replace"))
+            created = json.loads(saved.group(1)).get("id") if saved else None
+        elif "json" in content_type:
+            try:
+                body = json.loads(payload)
+                created = body.get("id") if isinstance(body, dict) else None
+            except ValueError:
+                pass
+        if created is not None:
+            self.ids[record.get("u")][resource(record["r"])].append(created)
+
+    def send(self, record, due, origin):
+        headers = {}
+        user = record.get("u")
+        if user and not record["r"].startswith("/auth/"):
+            headers["Authorization"] = "Bearer " + self.jwt[user]
+        if record.get("k"):
+            headers["Idempotency-Key"] = str(uuid.uuid4())
+        body = self.rewrite(record["b"], record["r"]) if isinstance(record.get("b"), (dict, list)) else None
+        if record["r"] == "/auth/signup" and isinstance(body, dict) and "email" in body:
+            # username unique lui aussi : dérivé de l'adresse neuve
+            body["username"] = body["email"].split("@")[0]
+        started = time.monotonic()
+        # Lecture complète de la réponse, flux SSE compris : la durée couvre tout le flux comme à la capture
+        status, content_type, payload = self.call(record["m"], self.path(record), body, headers)
+        elapsed = time.monotonic() - started
+        self.remember(record, status, content_type, payload)
+        with self.lock:
+            self.results.append({"m": record["m"], "r": record["r"], "s": status, "cs": record.get("s"),
+                                 "ms": round(elapsed * 1000, 1), "lag": round((started - origin - due) * 1000, 1)})
+
+    def run(self, concurrency):
+        self.create_users()
+        queues = defaultdict(deque)
+        anonymous = []
+        for record in self.records:
+            (queues[record["u"]].append(record) if record.get("u") else anonymous.append(record))
+        first_t = self.records[0]["t"] if self.records else 0
+        order = itertools.count()
+        heads = anonymous + [user_queue.popleft() for user_queue in queues.values()]
+        heap = [((record["t"] - first_t) / 1000 / self.speed, next(order), record) for record in heads]
+        heapq.heapify(heap)
+        condition = threading.Condition()
+        pending = [len(self.records)]
+        origin = time.monotonic()
+
+        def task(due, record):
+            try:
+                self.send(record, due, origin)
+            finally:
+                with condition:
+                    pending[0] -= 1
+                    user_queue = queues.get(record.get("u"))
+                    if user_queue:
+                        # Suivante du même utilisateur : à son heure, mais jamais avant la fin de celle-ci
+                        following = user_queue.popleft()
+                        following_due = max((following["t"] - first_t) / 1000 / self.speed, time.monotonic() - origin)
+                        heapq.heappush(heap, (following_due, next(order), following))
+                    condition.notify()
+
+        with ThreadPoolExecutor(max_workers=concurrency) as executor:
+            with condition:
+                while pending[0] > 0:
+                    now = time.monotonic() - origin
+                    if heap and heap[0][0] <= now:
+                        due, _, record = heapq.heappop(heap)
+                        executor.submit(task, due, record)
+                    else:
+                        condition.wait(timeout=(heap[0][0] - now) if heap else 1.0)
+        return time.monotonic() - origin
+
+
+def run(args):
+    header, records = read_capture(args.capture)
+    if args.limit:
+        records = records[:args.limit]
+    replay = Replay(args, records)
+    print(f"Rejeu de {len(records)} requêtes ({header.get('host')}, x{args.speed}) contre {replay.base}", flush=True)
+    duration = replay.run(args.concurrency)
+    results = replay.results
+    mismatched = sum(1 for result in results if result["cs"] is not None and result["s"] != result["cs"])
+    lags = sorted(result["lag"] for result in results)
+    print(f"Terminé en {duration:.1f} s ; statut différent de la capture : {mismatched} ; "
+          f"retard p99 : {percentile(lags, 99):.1f} ms", flush=True)
+    with open(args.out, "w") as out:
+        json.dump({"capture": os.path.basename(args.capture), "runId": replay.run_id, "speed": args.speed,
+                   "baseUrl": replay.base, "durationSeconds": round(duration, 1), "requests": results}, out)
+
+
+# --- Comparaison ------------------------------------------------------------------------------------------------
+
+def percentile(values, p):
+    if not values:
+        return 0.0
+    rank = max(0, min(len(values) - 1, int(round(p / 100 * len(values) + 0.5)) - 1))
+    return values[rank]
+
+
+def summarize(path):
+    with open(path) as source:
+        run_data = json.load(source)
+    routes = defaultdict(list)
+    errors = defaultdict(int)
+    for result in run_data["requests"]:
+        key = f"{result['m']} {result['r']}"
+        routes[key].append(result["ms"])
+        if result["s"] == 0 or result["s"] >= 500:
+            errors[key] += 1
+    return run_data, {key: {"n": len(values), "errors": errors[key], "p50": percentile(sorted(values), 50),
+                            "p95": percentile(sorted(values), 95), "p99": percentile(sorted(values), 99)}
+                      for key, values in routes.items()}
+
+
+def compare(args):
+    base_run, base = summarize(args.baseline)
+    candidate_run, candidate = summarize(args.candidate)
+    print(f"référence {base_run['runId']} ({base_run['capture']}, x{base_run['speed']})  "
+          f"candidat {candidate_run['runId']} ({candidate_run['capture']}, x{candidate_run['speed']})")
+    print(f"{'route':<48}{'n':>6}{'err':>5}{'p50':>9}{'p95':>9}{'p99':>9}{'p95 ref':>9}{'Δp95':>8}")
+    regressions = []
+    for key in sorted(set(base) | set(candidate)):
+        now, before = candidate.get(key), base.get(key)
+        if now is None:
+            print(f"{key:<48}{'absente du candidat':>46}")
+            continue
+        delta = ""
+        if before and before["p95"] > 0:
+            change = (now["p95"] - before["p95"]) / before["p95"] * 100
+            delta = f"{change:+.0f}%"
+            if change > args.threshold and now["n"] >= args.min_count:
+                regressions.append(key)
+        if before and now["errors"] > before["errors"] and now["n"] >= args.min_count:
+            regressions.append(key)
+        print(f"{key:<48}{now['n']:>6}{now['errors']:>5}{now['p50']:>9.1f}{now['p95']:>9.1f}{now['p99']:>9.1f}"
+              f"{(before or {}).get('p95', 0):>9.1f}{delta:>8}")
+    if regressions:
+        print(f"Régression (p95 > +{args.threshold:.0f}% ou erreurs en hausse) : {', '.join(sorted(set(regressions)))}")
+        sys.exit(1)
+
+
+if __name__ == "__main__":
+    parser = argparse.ArgumentParser(description="Rejeu du trafic capturé par CropApp2")
+    commands = parser.add_subparsers(dest="command", required=True)
+
+    stub_parser = commands.add_parser("stubs", help="bouchons Flask et SMTP")
+    stub_parser.add_argument("--flask-port", type=int, default=int(os.environ.get("FLASK_PORT", "5001")))
+    stub_parser.add_argument("--smtp-port", type=int, default=int(os.environ.get("SMTP_PORT", "2525")))
+    stub_parser.add_argument("--latency-ms", type=float, default=20, help="latence simulée par étape Flask")
+    stub_parser.set_defaults(handler=stubs)
+
+    run_parser = commands.add_parser("run", help="rejoue une capture")
+    run_parser.add_argument("capture")
+    run_parser.add_argument("--out", required=True)
+    run_parser.add_argument("--base-url", default="http://localhost:9192")
+    run_parser.add_argument("--speed", type=float, default=1.0, help="1 = cadence réelle, 10 = dix fois plus vite")
+    run_parser.add_argument("--concurrency", type=int, default=64)
+    run_parser.add_argument("--timeout", type=float, default=60)
+    run_parser.add_argument("--limit", type=int, default=0, help="seulement les N premières requêtes")
+    run_parser.add_argument("--run-id", default=None)
+    run_parser.set_defaults(handler=run)
+
+    compare_parser = commands.add_parser("compare", help="compare deux runs")
+    compare_parser.add_argument("baseline")
+    compare_parser.add_argument("candidate")
+    compare_parser.add_argument("--threshold", type=float, default=10, help="hausse du p95 tolérée, en %%")
+    compare_parser.add_argument("--min-count", type=int, default=20, help="routes ignorées sous ce nombre de requêtes")
+    compare_parser.set_defaults(handler=compare)
+
+    arguments = parser.parse_args()
+    arguments.handler(arguments)